@@ -0,0 +1,82 @@
+package http4j.benchmarks;
+
+import http4j.core.HttpFilter;
+import http4j.core.HttpHandler;
+import http4j.core.HttpPipeline;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The cost of five layers that each add a response header, written as nested {@link HttpFilter}s
+ * that copy the response and as {@link HttpPipeline} stages, against the bare handler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FilterChainBenchmark {
+
+  private static final int LAYERS = 5;
+
+  private final HttpRequest request = HttpRequest.get("http://localhost/ping");
+
+  private final HttpHandler handler =
+      request -> HttpResponse.status(200).header("Content-Type", "text/plain").body("pong");
+
+  private final HttpHandler nested = buildNested();
+  private final HttpHandler pipeline = buildPipeline();
+
+  private HttpHandler buildNested() {
+    HttpHandler wrapped = handler;
+    for (int i = 0; i < LAYERS; i++) {
+      String name = "X-Layer-" + i;
+      HttpFilter filter = next -> request -> next.handle(request).header(name, "on");
+      wrapped = filter.handle(wrapped);
+    }
+    return wrapped;
+  }
+
+  private HttpHandler buildPipeline() {
+    HttpPipeline.Builder builder = HttpPipeline.builder();
+    for (int i = 0; i < LAYERS; i++) {
+      String name = "X-Layer-" + i;
+      builder.onResponse((request, response) -> response.addHeader(name, "on"));
+    }
+    return builder.build(handler);
+  }
+
+  @Benchmark
+  public HttpResponse handler() {
+    return handler.handle(request);
+  }
+
+  @Benchmark
+  public HttpResponse nestedFilters() {
+    return nested.handle(request);
+  }
+
+  @Benchmark
+  public HttpResponse pipeline() {
+    return pipeline.handle(request);
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(FilterChainBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
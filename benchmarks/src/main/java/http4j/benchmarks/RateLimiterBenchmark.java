@@ -0,0 +1,140 @@
+package http4j.benchmarks;
+
+import com.google.common.collect.LinkedListMultimap;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.ratelimit.RateLimiter;
+import java.io.ByteArrayInputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * The cost of the {@link RateLimiter} filter on every thread at once, all on one hot key or each on
+ * its own client address, against the bare handler. The limit is high enough that every request is
+ * let through, so the numbers are the bookkeeping alone. {@code churningKeys} instead brings a new
+ * key with every call to a limiter that is full of keys still in use.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(Threads.MAX)
+@State(Scope.Benchmark)
+public class RateLimiterBenchmark {
+
+  private final HttpHandler handler = request -> HttpResponse.status(200).body("pong");
+
+  @Param({"tokenBucket", "slidingWindow"})
+  private String mode;
+
+  private HttpHandler limited;
+  private RateLimiter churning;
+
+  @Setup
+  public void setUp() {
+    limited =
+        limiter()
+            .limit(1_000_000, Duration.ofMillis(1))
+            .rateLimitHeaders(false)
+            .build()
+            .handle(handler);
+    //every key takes its only permit for the hour, so none of them is ever idle
+    churning = limiter().limit(1, Duration.ofHours(1)).maxKeys(10_000).build();
+  }
+
+  private RateLimiter.Builder limiter() {
+    RateLimiter.Builder builder = RateLimiter.builder();
+    if (mode.equals("slidingWindow")) {
+      builder.slidingWindow();
+    }
+    return builder;
+  }
+
+  /** A request from a client address of its own for each benchmark thread. */
+  @State(Scope.Thread)
+  public static class Client {
+
+    private static final AtomicInteger CLIENTS = new AtomicInteger();
+
+    private final HttpRequest request = request(CLIENTS.incrementAndGet());
+  }
+
+  /** The same client address for every thread, so they all contend on one limit. */
+  @State(Scope.Benchmark)
+  public static class HotClient {
+
+    private final HttpRequest request = request(0);
+  }
+
+  /** A key never used before on every call, for each benchmark thread. */
+  @State(Scope.Thread)
+  public static class ChurningKeys {
+
+    private static final AtomicInteger THREADS = new AtomicInteger();
+
+    private final long thread = (long) THREADS.incrementAndGet() << 40;
+    private long calls;
+
+    private Long next() {
+      return thread | calls++;
+    }
+  }
+
+  private static HttpRequest request(int client) {
+    return new HttpRequest(
+        HttpMethod.GET,
+        new ByteArrayInputStream(new byte[0]),
+        0L,
+        LinkedListMultimap.create(),
+        URI.create("http://localhost/ping"),
+        new InetSocketAddress("10.0." + (client >> 8) + "." + (client & 0xFF), 4000),
+        Collections.emptyMap());
+  }
+
+  @Benchmark
+  public HttpResponse handler(Client client) {
+    return handler.handle(client.request);
+  }
+
+  @Benchmark
+  public HttpResponse perClient(Client client) {
+    return limited.handle(client.request);
+  }
+
+  @Benchmark
+  public HttpResponse hotKey(HotClient client) {
+    return limited.handle(client.request);
+  }
+
+  @Benchmark
+  public boolean churningKeys(ChurningKeys keys) {
+    return churning.tryAcquire(keys.next());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(RateLimiterBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
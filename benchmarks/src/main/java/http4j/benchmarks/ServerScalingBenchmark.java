@@ -0,0 +1,160 @@
+package http4j.benchmarks;
+
+import http4j.core.HttpHandlers;
+import http4j.core.HttpServer;
+import http4j.server.nio.NioHttpServerCreator;
+import http4j.server.nio.NioServerConfig;
+import http4j.server.sun.SunHttpServerConfig;
+import http4j.server.sun.SunHttpServerCreator;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Keep-alive ping throughput on localhost as the server gets more selector loops. Every benchmark
+ * thread is a client with its own connection, so there are always more connections than loops.
+ *
+ * <p>{@code sun} is the JDK server with its single dispatcher thread, {@code nio-N} is the NIO
+ * server with N selector loops. Loops beyond the number of cores can not help, and the clients
+ * compete with the server for the same cores, so compare runs on a machine with cores to spare.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+public class ServerScalingBenchmark {
+
+  private static final byte[] REQUEST =
+      "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  @State(Scope.Benchmark)
+  public static class Server {
+
+    @Param({"sun", "nio-1", "nio-2", "nio-4", "nio-8", "nio-16", "nio-32"})
+    public String server;
+
+    HttpServer httpServer;
+
+    @Setup
+    public void start() {
+      if (server.equals("sun")) {
+        httpServer =
+            new SunHttpServerCreator(
+                    SunHttpServerConfig.builder()
+                        .port(0)
+                        .backlog(1024)
+                        .executor(Executors.newFixedThreadPool(64))
+                        .build())
+                .create(HttpHandlers.pong());
+      } else {
+        int loops = Integer.parseInt(server.substring("nio-".length()));
+        httpServer =
+            new NioHttpServerCreator(
+                    NioServerConfig.builder()
+                        .port(0)
+                        .backlog(1024)
+                        .selectorThreads(loops)
+                        .reusePort(true)
+                        .build())
+                .create(HttpHandlers.pong());
+      }
+      httpServer.start();
+    }
+
+    @TearDown
+    public void stop() {
+      httpServer.shutdown(Duration.ZERO);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Client {
+
+    private Socket socket;
+    private InputStream in;
+    private OutputStream out;
+
+    @Setup(Level.Trial)
+    public void connect(Server server) throws IOException {
+      socket = new Socket("localhost", server.httpServer.getPort());
+      socket.setTcpNoDelay(true);
+      in = new BufferedInputStream(socket.getInputStream());
+      out = socket.getOutputStream();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+      socket.close();
+    }
+
+    /** Send a ping and read the response, returning its length in bytes. */
+    int ping() throws IOException {
+      out.write(REQUEST);
+      out.flush();
+      int read = 0;
+      long contentLength = 0;
+      StringBuilder line = new StringBuilder();
+      while (true) {
+        int c = in.read();
+        if (c < 0) {
+          throw new IOException("Connection closed");
+        }
+        read++;
+        if (c == '\n') {
+          if (line.length() == 0) {
+            break;
+          }
+          String header = line.toString();
+          if (header.regionMatches(true, 0, "content-length:", 0, 15)) {
+            contentLength = Long.parseLong(header.substring(15).trim());
+          }
+          line.setLength(0);
+        } else if (c != '\r') {
+          line.append((char) c);
+        }
+      }
+      for (long i = 0; i < contentLength; i++) {
+        if (in.read() < 0) {
+          throw new IOException("Connection closed");
+        }
+        read++;
+      }
+      return read;
+    }
+  }
+
+  @Benchmark
+  public int ping(Client client) throws IOException {
+    return client.ping();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    new Runner(new OptionsBuilder().include(ServerScalingBenchmark.class.getSimpleName()).build())
+        .run();
+  }
+}
@@ -3,6 +3,11 @@ package http4j.client.memory;
 import http4j.core.HttpHandler;
 import http4j.core.HttpRequest;
 import http4j.core.HttpResponse;
+import http4j.core.websocket.LocalWebSockets;
+import http4j.core.websocket.WebSocket;
+import http4j.core.websocket.WebSocketConfig;
+import http4j.core.websocket.WebSocketHandler;
+import java.io.IOException;
 import java.util.Objects;
 
 public class InMemoryClient implements HttpHandler {
@@ -18,4 +23,18 @@ public class InMemoryClient implements HttpHandler {
   public HttpResponse handle(HttpRequest request) {
     return server.handle(request);
   }
+
+  /**
+   * Open a WebSocket to the server, exchanging real frames in memory.
+   *
+   * @throws IOException if the server did not accept the upgrade
+   */
+  public WebSocket webSocket(String uri, WebSocketHandler handler) throws IOException {
+    return LocalWebSockets.connect(server, uri, handler);
+  }
+
+  public WebSocket webSocket(HttpRequest request, WebSocketHandler handler, WebSocketConfig config)
+      throws IOException {
+    return LocalWebSockets.connect(server, request, handler, config);
+  }
 }
@@ -0,0 +1,442 @@
+package http4j.client.memory;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.codec.ChunkedDecoder;
+import http4j.core.codec.Http1Encoder;
+import http4j.core.codec.HttpCodecException;
+import http4j.core.codec.HttpHead;
+import http4j.core.codec.HttpHeadParser;
+import http4j.core.util.QueryParams;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client that talks HTTP/1.1 to an {@link HttpHandler} over in-process pipes. Unlike {@link
+ * InMemoryClient} every exchange is written out and parsed back with the same codec the NIO server
+ * uses, so framing, chunked bodies and header handling behave as they would on a socket, and {@link
+ * WireFaults} can make that wire slow or unreliable. Each request gets its own connection, closed
+ * once the response has been read; any number can be in flight at once.
+ *
+ * <p>Failures of the wire are thrown as {@link UncheckedIOException}, like {@code JdkClient}.
+ */
+public class LoopbackClient implements HttpHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoopbackClient.class);
+
+  private static final Executor EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("loopback-%d")
+              .setDaemon(true)
+              .setUncaughtExceptionHandler(
+                  (t, e) -> LOG.error("Uncaught exception for {}", t.getName(), e))
+              .build());
+
+  private static final int MAX_HEAD_SIZE = 64 * 1024;
+  private static final int CHUNK_SIZE = 8 * 1024;
+  private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+  private static final InetSocketAddress REMOTE =
+      new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+  private final HttpHandler server;
+  private final WireFaults faults;
+
+  public LoopbackClient(HttpHandler server) {
+    this(server, WireFaults.none());
+  }
+
+  public LoopbackClient(HttpHandler server, WireFaults faults) {
+    this.server = Objects.requireNonNull(server);
+    this.faults = Objects.requireNonNull(faults);
+  }
+
+  @Override
+  public HttpResponse handle(HttpRequest request) {
+    LoopbackPipe upstream =
+        new LoopbackPipe(
+            faults.bufferSize(),
+            faults.latency(),
+            faults.truncateRequestAfter(),
+            faults.requestReadSize(),
+            faults.requestReadPause());
+    LoopbackPipe downstream =
+        new LoopbackPipe(
+            faults.bufferSize(),
+            faults.latency(),
+            faults.truncateResponseAfter(),
+            faults.responseReadSize(),
+            faults.responseReadPause());
+    EXECUTOR.execute(() -> send(request, upstream));
+    EXECUTOR.execute(() -> serve(upstream, downstream));
+    try {
+      return receive(request.method() == HttpMethod.HEAD, new WireInput(downstream.input()));
+    } catch (IOException e) {
+      downstream.closeInput();
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /** Write the request to the server. Runs on its own thread, as the server may not read it all. */
+  private static void send(HttpRequest request, LoopbackPipe pipe) {
+    OutputStream out = pipe.output();
+    try {
+      URI uri = request.uri();
+      List<Map.Entry<String, String>> headers = new ArrayList<>(request.headers().size() + 2);
+      boolean hasHost = false;
+      for (Map.Entry<String, String> entry : request.headers().entries()) {
+        String name = entry.getKey();
+        if (name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)
+            || name.equalsIgnoreCase(HttpHeaders.TRANSFER_ENCODING)) {
+          //framing is decided here from the request length
+          continue;
+        }
+        hasHost |= name.equalsIgnoreCase(HttpHeaders.HOST);
+        headers.add(entry);
+      }
+      if (!hasHost) {
+        String authority = uri.getRawAuthority();
+        headers.add(
+            Maps.immutableEntry(HttpHeaders.HOST, authority == null ? "localhost" : authority));
+      }
+      Long length = request.length().orElse(null);
+      if (length == null) {
+        headers.add(Maps.immutableEntry(HttpHeaders.TRANSFER_ENCODING, "chunked"));
+      } else if (length > 0) {
+        headers.add(Maps.immutableEntry(HttpHeaders.CONTENT_LENGTH, Long.toString(length)));
+      }
+
+      String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+      String target = uri.getRawQuery() == null ? path : path + '?' + uri.getRawQuery();
+      out.write(Http1Encoder.requestHead(request.method().name(), target, headers));
+      if (length == null) {
+        writeChunked(request.body(), out);
+      } else if (length > 0) {
+        writeFixed(request.body(), out, length);
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to send request {}", request.uri(), e);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to send request {}", request.uri(), e);
+    } finally {
+      pipe.closeOutput();
+    }
+  }
+
+  /** The server end of the connection: read one request, run the handler, write its response. */
+  private void serve(LoopbackPipe upstream, LoopbackPipe downstream) {
+    OutputStream out = downstream.output();
+    WireInput in = new WireInput(upstream.input());
+    HttpResponse response = null;
+    try {
+      HttpRequest request;
+      try {
+        request = parseRequest(in.readHead(HttpHeadParser.Kind.REQUEST), in);
+      } catch (HttpCodecException e) {
+        writeResponse(out, false, HttpResponse.status(e.status()));
+        return;
+      }
+      try {
+        response = server.handle(request);
+      } catch (Throwable t) {
+        LOG.error("Uncaught error thrown.", t);
+        response = HttpResponse.status(500);
+      }
+      writeResponse(out, request.method() == HttpMethod.HEAD, response);
+    } catch (IOException e) {
+      LOG.debug("Loopback connection failed", e);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to write response", e);
+    } finally {
+      if (response != null) {
+        try {
+          response.body().close();
+        } catch (IOException e) {
+          LOG.debug("Failed to close response body", e);
+        }
+      }
+      upstream.closeInput();
+      downstream.closeOutput();
+    }
+  }
+
+  /**
+   * Turn a head into a request the way the NIO server does.
+   *
+   * @throws HttpCodecException with the status to answer a request the server would refuse
+   */
+  private static HttpRequest parseRequest(HttpHead head, WireInput in) {
+    HttpMethod method = HttpMethod.parse(head.method());
+    if (method == null) {
+      throw new HttpCodecException(501, "Unknown method " + head.method());
+    }
+    URI uri;
+    try {
+      uri = new URI(head.target());
+    } catch (URISyntaxException e) {
+      throw new HttpCodecException(400, "Invalid request target " + head.target());
+    }
+    long contentLength = head.contentLength();
+    boolean chunked = head.isChunked();
+    if (head.header(HttpHeaders.TRANSFER_ENCODING) != null && !chunked) {
+      throw new HttpCodecException(501, "Unsupported transfer coding");
+    }
+    if (chunked && contentLength >= 0) {
+      //both framings at once is a request smuggling attempt, RFC 7230 3.3.3
+      throw new HttpCodecException(400, "Both Content-Length and chunked");
+    }
+    InputStream body;
+    Long length;
+    if (chunked) {
+      body = in.body(new ChunkedDecoder(), -1);
+      length = null;
+    } else if (contentLength > 0) {
+      body = in.body(null, contentLength);
+      length = contentLength;
+    } else {
+      body = EMPTY_BODY;
+      length = 0L;
+    }
+    return new HttpRequest(
+        method,
+        body,
+        length,
+        head.headers(),
+        uri,
+        REMOTE,
+        QueryParams.parse(uri.getQuery()),
+        head.version());
+  }
+
+  /** Frame the response like the NIO server, closing the connection after it. */
+  private static void writeResponse(OutputStream out, boolean headRequest, HttpResponse response)
+      throws IOException {
+    int status = response.status();
+    boolean noBodyStatus = (status >= 100 && status < 200) || status == 204 || status == 304;
+    List<Map.Entry<String, String>> headers = new ArrayList<>(response.headers().size() + 2);
+    for (Map.Entry<String, String> entry : response.headers().entries()) {
+      String name = entry.getKey();
+      if (!name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)
+          && !name.equalsIgnoreCase(HttpHeaders.TRANSFER_ENCODING)
+          && !name.equalsIgnoreCase(HttpHeaders.CONNECTION)) {
+        headers.add(entry);
+      }
+    }
+    Long length = response.length().orElse(null);
+    if (noBodyStatus) {
+      length = 0L;
+    } else if (length != null) {
+      headers.add(Maps.immutableEntry(HttpHeaders.CONTENT_LENGTH, Long.toString(length)));
+    } else if (!headRequest) {
+      headers.add(Maps.immutableEntry(HttpHeaders.TRANSFER_ENCODING, "chunked"));
+    }
+    headers.add(Maps.immutableEntry(HttpHeaders.CONNECTION, "close"));
+
+    out.write(Http1Encoder.responseHead("HTTP/1.1", status, headers));
+    if (headRequest || noBodyStatus) {
+      return;
+    }
+    if (length == null) {
+      writeChunked(response.body(), out);
+    } else {
+      writeFixed(response.body(), out, length);
+    }
+  }
+
+  /** Read the server's response; its body streams from the connection as the caller reads it. */
+  private static HttpResponse receive(boolean headRequest, WireInput in) throws IOException {
+    HttpHead head;
+    long contentLength;
+    try {
+      head = in.readHead(HttpHeadParser.Kind.RESPONSE);
+      contentLength = head.contentLength();
+    } catch (HttpCodecException e) {
+      throw new IOException("Malformed response: " + e.getMessage(), e);
+    }
+    int status = head.status();
+    InputStream body;
+    Long length;
+    if (headRequest || (status >= 100 && status < 200) || status == 204 || status == 304) {
+      in.close();
+      body = EMPTY_BODY;
+      length = 0L;
+    } else if (head.isChunked()) {
+      body = in.body(new ChunkedDecoder(), -1);
+      length = null;
+    } else {
+      //without a length the body runs to the end of the connection
+      body = in.body(null, contentLength);
+      length = contentLength >= 0 ? contentLength : null;
+    }
+    return new HttpResponse(status, body, length, LinkedListMultimap.create(head.headers()));
+  }
+
+  private static void writeFixed(InputStream body, OutputStream out, long length)
+      throws IOException {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    long remaining = length;
+    while (remaining > 0) {
+      int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+      if (read < 0) {
+        throw new EOFException("Body ended " + remaining + " bytes short of its length");
+      }
+      out.write(buffer, 0, read);
+      remaining -= read;
+    }
+  }
+
+  private static void writeChunked(InputStream body, OutputStream out) throws IOException {
+    byte[] buffer = new byte[CHUNK_SIZE];
+    int read;
+    while ((read = body.read(buffer)) >= 0) {
+      if (read > 0) {
+        out.write(Http1Encoder.chunkHeader(read));
+        out.write(buffer, 0, read);
+        out.write(Http1Encoder.CRLF);
+      }
+    }
+    out.write(Http1Encoder.LAST_CHUNK);
+  }
+
+  /** Bytes read from one end of a connection, parsed into a head and then a body. */
+  private static final class WireInput {
+
+    private final InputStream source;
+    private final ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+    private WireInput(InputStream source) {
+      this.source = source;
+      buffer.flip();
+    }
+
+    private HttpHead readHead(HttpHeadParser.Kind kind) throws IOException {
+      HttpHeadParser parser = new HttpHeadParser(kind, MAX_HEAD_SIZE);
+      while (true) {
+        HttpHead head = parser.parse(buffer);
+        if (head != null) {
+          return head;
+        }
+        if (!fill()) {
+          throw new EOFException(
+              parser.inProgress() ? "Connection closed in the middle of a head" : "No head sent");
+        }
+      }
+    }
+
+    private InputStream body(@Nullable ChunkedDecoder decoder, long length) {
+      return new Body(decoder, length);
+    }
+
+    private void close() {
+      try {
+        source.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close connection", e);
+      }
+    }
+
+    /** Read more bytes from the connection, false at its end. */
+    private boolean fill() throws IOException {
+      buffer.compact();
+      int read = source.read(buffer.array(), buffer.position(), buffer.remaining());
+      if (read > 0) {
+        buffer.position(buffer.position() + read);
+      }
+      buffer.flip();
+      return read >= 0;
+    }
+
+    private final class Body extends InputStream {
+
+      @Nullable private final ChunkedDecoder decoder;
+      private long remaining;
+      @Nullable private ByteBuffer data;
+
+      private Body(@Nullable ChunkedDecoder decoder, long length) {
+        this.decoder = decoder;
+        this.remaining = length;
+      }
+
+      @Override
+      public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+          return 0;
+        }
+        if (decoder != null) {
+          return readChunked(decoder, bytes, offset, length);
+        }
+        if (remaining == 0) {
+          return -1;
+        }
+        if (!buffer.hasRemaining() && !fill()) {
+          if (remaining < 0) {
+            return -1;
+          }
+          throw new EOFException("Connection closed " + remaining + " bytes before end of body");
+        }
+        int count = Math.min(buffer.remaining(), length);
+        if (remaining > 0) {
+          count = (int) Math.min(count, remaining);
+          remaining -= count;
+        }
+        buffer.get(bytes, offset, count);
+        return count;
+      }
+
+      private int readChunked(ChunkedDecoder decoder, byte[] bytes, int offset, int length)
+          throws IOException {
+        while (data == null || !data.hasRemaining()) {
+          if (decoder.isDone()) {
+            return -1;
+          }
+          try {
+            data = decoder.decode(buffer);
+          } catch (HttpCodecException e) {
+            throw new IOException("Malformed chunked body: " + e.getMessage(), e);
+          }
+          if (data == null && !decoder.isDone() && !fill()) {
+            throw new EOFException("Connection closed before the last chunk");
+          }
+        }
+        int count = Math.min(length, data.remaining());
+        data.get(bytes, offset, count);
+        return count;
+      }
+
+      @Override
+      public void close() {
+        WireInput.this.close();
+      }
+    }
+  }
+}
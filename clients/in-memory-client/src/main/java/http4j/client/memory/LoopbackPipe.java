@@ -0,0 +1,190 @@
+package http4j.client.memory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One direction of a loopback connection: a bounded ring of bytes with a blocking writer and
+ * reader, which also delays, slows down or cuts the bytes passing through it.
+ */
+final class LoopbackPipe {
+
+  private final byte[] ring;
+  private final long latencyNanos;
+  private final long truncateAfter;
+  private final int readSize;
+  private final long readPauseNanos;
+
+  // guarded by this
+  private int head;
+  private int count;
+  private long written;
+  private long firstWrite;
+  private boolean latencyPaid;
+  private boolean outputClosed;
+  private boolean inputClosed;
+
+  private final InputStream input = new Input();
+  private final OutputStream output = new Output();
+
+  LoopbackPipe(
+      int bufferSize, Duration latency, long truncateAfter, int readSize, Duration readPause) {
+    this.ring = new byte[bufferSize];
+    this.latencyNanos = latency.toNanos();
+    this.truncateAfter = truncateAfter;
+    this.readSize = readSize;
+    this.readPauseNanos = readPause.toNanos();
+  }
+
+  /** The reading end, closing it makes further writes fail like a reset connection. */
+  InputStream input() {
+    return input;
+  }
+
+  /** The writing end, closing it is the end of the stream for the reader. */
+  OutputStream output() {
+    return output;
+  }
+
+  synchronized void closeOutput() {
+    outputClosed = true;
+    notifyAll();
+  }
+
+  synchronized void closeInput() {
+    inputClosed = true;
+    count = 0;
+    notifyAll();
+  }
+
+  private synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (inputClosed) {
+        throw new IOException("Connection reset by peer");
+      }
+      if (outputClosed) {
+        throw new IOException("Stream closed");
+      }
+      if (truncateAfter >= 0 && written >= truncateAfter) {
+        outputClosed = true;
+        notifyAll();
+        throw new IOException("Connection cut after " + written + " bytes");
+      }
+      if (count == ring.length) {
+        await();
+        continue;
+      }
+      int chunk = Math.min(length, ring.length - count);
+      chunk = Math.min(chunk, ring.length - (head + count) % ring.length);
+      if (truncateAfter >= 0) {
+        chunk = (int) Math.min(chunk, truncateAfter - written);
+      }
+      System.arraycopy(bytes, offset, ring, (head + count) % ring.length, chunk);
+      if (written == 0) {
+        firstWrite = System.nanoTime();
+      }
+      count += chunk;
+      written += chunk;
+      offset += chunk;
+      length -= chunk;
+      notifyAll();
+    }
+  }
+
+  private int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    long pause = awaitReadable();
+    if (pause > 0) {
+      try {
+        TimeUnit.NANOSECONDS.sleep(pause);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted reading");
+      }
+    }
+    return take(bytes, offset, length);
+  }
+
+  /** Wait for bytes or the end of the stream, and say how much longer they take to arrive. */
+  private synchronized long awaitReadable() throws IOException {
+    while (count == 0 && !outputClosed && !inputClosed) {
+      await();
+    }
+    if (count == 0) {
+      return 0;
+    }
+    if (!latencyPaid) {
+      latencyPaid = true;
+      return Math.max(readPauseNanos, firstWrite + latencyNanos - System.nanoTime());
+    }
+    return readPauseNanos;
+  }
+
+  private synchronized int take(byte[] bytes, int offset, int length) throws IOException {
+    if (inputClosed) {
+      throw new IOException("Stream closed");
+    }
+    if (count == 0) {
+      return -1;
+    }
+    int chunk = Math.min(Math.min(length, readSize), count);
+    chunk = Math.min(chunk, ring.length - head);
+    System.arraycopy(ring, head, bytes, offset, chunk);
+    head = (head + chunk) % ring.length;
+    count -= chunk;
+    notifyAll();
+    return chunk;
+  }
+
+  private void await() throws IOException {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted waiting on the pipe");
+    }
+  }
+
+  private final class Input extends InputStream {
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      return LoopbackPipe.this.read(bytes, offset, length);
+    }
+
+    @Override
+    public void close() {
+      closeInput();
+    }
+  }
+
+  private final class Output extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      LoopbackPipe.this.write(bytes, offset, length);
+    }
+
+    @Override
+    public void close() {
+      closeOutput();
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package http4j.client.memory;
+
+import com.google.common.base.Preconditions;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Network misbehaviour for a {@link LoopbackClient} to inject into the bytes it moves between
+ * client and server.
+ */
+public final class WireFaults {
+
+  private static final WireFaults NONE = builder().build();
+
+  private final int bufferSize;
+  private final Duration latency;
+  private final long truncateRequestAfter;
+  private final long truncateResponseAfter;
+  private final int requestReadSize;
+  private final Duration requestReadPause;
+  private final int responseReadSize;
+  private final Duration responseReadPause;
+
+  private WireFaults(Builder builder) {
+    this.bufferSize = builder.bufferSize;
+    this.latency = builder.latency;
+    this.truncateRequestAfter = builder.truncateRequestAfter;
+    this.truncateResponseAfter = builder.truncateResponseAfter;
+    this.requestReadSize = builder.requestReadSize;
+    this.requestReadPause = builder.requestReadPause;
+    this.responseReadSize = builder.responseReadSize;
+    this.responseReadPause = builder.responseReadPause;
+  }
+
+  /** A well behaved wire. */
+  public static WireFaults none() {
+    return NONE;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Bytes in flight in each direction before the writer blocks, what socket buffers would hold. */
+  public int bufferSize() {
+    return bufferSize;
+  }
+
+  /** How long the first bytes of every request and response take to arrive. */
+  public Duration latency() {
+    return latency;
+  }
+
+  /** Bytes of the request sent before the connection is cut, negative to send it all. */
+  public long truncateRequestAfter() {
+    return truncateRequestAfter;
+  }
+
+  /** Bytes of the response sent before the connection is cut, negative to send it all. */
+  public long truncateResponseAfter() {
+    return truncateResponseAfter;
+  }
+
+  /** The most request bytes the server gets from one read. */
+  public int requestReadSize() {
+    return requestReadSize;
+  }
+
+  /** The wait before each read of request bytes. */
+  public Duration requestReadPause() {
+    return requestReadPause;
+  }
+
+  /** The most response bytes the client gets from one read. */
+  public int responseReadSize() {
+    return responseReadSize;
+  }
+
+  /** The wait before each read of response bytes. */
+  public Duration responseReadPause() {
+    return responseReadPause;
+  }
+
+  public static class Builder {
+
+    private int bufferSize = 64 * 1024;
+    private Duration latency = Duration.ZERO;
+    private long truncateRequestAfter = -1;
+    private long truncateResponseAfter = -1;
+    private int requestReadSize = Integer.MAX_VALUE;
+    private Duration requestReadPause = Duration.ZERO;
+    private int responseReadSize = Integer.MAX_VALUE;
+    private Duration responseReadPause = Duration.ZERO;
+
+    private Builder() {}
+
+    public Builder bufferSize(int bufferSize) {
+      Preconditions.checkArgument(bufferSize > 0, "bufferSize must be positive");
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    public Builder latency(Duration latency) {
+      Preconditions.checkArgument(!latency.isNegative(), "latency must not be negative");
+      this.latency = latency;
+      return this;
+    }
+
+    /** Cut the connection once this many bytes of the request have been sent. */
+    public Builder truncateRequestAfter(long bytes) {
+      this.truncateRequestAfter = bytes;
+      return this;
+    }
+
+    /** Cut the connection once this many bytes of the response have been sent. */
+    public Builder truncateResponseAfter(long bytes) {
+      this.truncateResponseAfter = bytes;
+      return this;
+    }
+
+    /** A slow client: the server reads at most {@code bytes} at a time, after {@code pause}. */
+    public Builder slowRequest(int bytes, Duration pause) {
+      Preconditions.checkArgument(bytes > 0, "bytes must be positive");
+      this.requestReadSize = bytes;
+      this.requestReadPause = Objects.requireNonNull(pause);
+      return this;
+    }
+
+    /**
+     * A slow network back: the client reads at most {@code bytes} at a time, after {@code pause}.
+     */
+    public Builder slowResponse(int bytes, Duration pause) {
+      Preconditions.checkArgument(bytes > 0, "bytes must be positive");
+      this.responseReadSize = bytes;
+      this.responseReadPause = Objects.requireNonNull(pause);
+      return this;
+    }
+
+    public WireFaults build() {
+      return new WireFaults(this);
+    }
+  }
+}
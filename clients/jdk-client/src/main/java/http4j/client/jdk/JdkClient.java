@@ -1,18 +1,27 @@
 package http4j.client.jdk;
 
+import com.github.kevinsawicki.http.HttpRequest.HttpRequestException;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Multimap;
+import http4j.core.Deadline;
 import http4j.core.HttpHandler;
 import http4j.core.HttpRequest;
 import http4j.core.HttpResponse;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 /**
  * Create a JDK client that uses {@link java.net.HttpURLConnection} A helpful library {@link
  * com.github.kevinsawicki.http.HttpRequest} to help with the translation.
+ *
+ * <p>A request with a {@link Deadline}, its own or the {@link Deadline#current()} one of the
+ * handler making the call, is not sent once the deadline has passed. Otherwise the time left bounds
+ * connecting and each read, and is passed on in the {@value Deadline#HEADER} header so the server
+ * can give up when the caller does.
  */
 public class JdkClient implements HttpHandler {
 
@@ -26,6 +35,20 @@ public class JdkClient implements HttpHandler {
         jdkRequest.header(header.getKey(), header.getValue());
       }
 
+      Optional<Deadline> deadline =
+          request.deadline().isPresent() ? request.deadline() : Deadline.current();
+      if (deadline.isPresent()) {
+        long remaining = deadline.get().remainingMillis();
+        if (remaining <= 0) {
+          throw new SocketTimeoutException("Deadline passed before " + request.uri() + " was sent");
+        }
+        int timeout = (int) Math.min(Integer.MAX_VALUE, remaining);
+        jdkRequest
+            .connectTimeout(timeout)
+            .readTimeout(timeout)
+            .header(Deadline.HEADER, Long.toString(remaining));
+      }
+
       if (request.length().orElse(0L) > 0) {
         jdkRequest.send(request.body());
       }
@@ -39,6 +62,8 @@ public class JdkClient implements HttpHandler {
       return new HttpResponse(jdkRequest.code(), jdkRequest.stream(), length, headers);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
+    } catch (HttpRequestException e) {
+      throw new UncheckedIOException(e.getCause());
     }
   }
 }
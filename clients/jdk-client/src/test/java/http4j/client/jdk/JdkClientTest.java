@@ -1,12 +1,28 @@
 package http4j.client.jdk;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.Deadline;
 import http4j.core.HttpHandler;
 import http4j.core.HttpHandlers;
 import http4j.core.HttpRequest;
 import http4j.core.HttpResponse;
 import http4j.core.HttpServer;
 import http4j.core.Router;
+import http4j.core.trace.InMemorySpanExporter;
+import http4j.core.trace.Sampler;
+import http4j.core.trace.Span;
+import http4j.core.trace.Tracer;
 import http4j.server.sun.SunHttpServerCreator;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
@@ -26,4 +42,102 @@ public class JdkClientTest {
       Assertions.assertThat(response.status()).isEqualTo(200);
     }
   }
+
+  @Test
+  public void testDeadlineIsPropagated() throws Exception {
+    Router router =
+        Router.builder()
+            .get(
+                "/budget",
+                request ->
+                    HttpResponse.status(200)
+                        .body(String.join(",", request.headers().get("x-request-timeout"))))
+            .get(
+                "/slow",
+                request -> {
+                  Uninterruptibles.sleepUninterruptibly(2, TimeUnit.SECONDS);
+                  return HttpResponse.status(200);
+                })
+            .build();
+    try (HttpServer server = new SunHttpServerCreator(0).create(router)) {
+      server.start();
+      String url = String.format("http://localhost:%s", server.getPort());
+      HttpHandler client = new JdkClient();
+
+      //the deadline of the handler making the call is passed on
+      HttpResponse budget =
+          Deadline.after(Duration.ofSeconds(5))
+              .run(() -> client.handle(HttpRequest.get(url + "/budget")));
+      long remaining =
+          Long.parseLong(CharStreams.toString(new InputStreamReader(budget.body(), UTF_8)));
+      Assertions.assertThat(remaining).isBetween(1L, 5000L);
+      HttpResponse none = client.handle(HttpRequest.get(url + "/budget"));
+      Assertions.assertThat(CharStreams.toString(new InputStreamReader(none.body(), UTF_8)))
+          .isEmpty();
+
+      //the client stops waiting when the deadline passes, and does not start after it
+      long start = System.nanoTime();
+      HttpRequest slow =
+          HttpRequest.get(url + "/slow")
+              .copy()
+              .deadline(Deadline.after(Duration.ofMillis(200)))
+              .build();
+      Assertions.assertThatThrownBy(() -> client.handle(slow))
+          .isInstanceOf(UncheckedIOException.class)
+          .hasCauseInstanceOf(SocketTimeoutException.class);
+      Assertions.assertThat(System.nanoTime() - start)
+          .isLessThan(TimeUnit.MILLISECONDS.toNanos(1500));
+      HttpRequest expired =
+          HttpRequest.get(url + "/slow").copy().deadline(Deadline.after(Duration.ZERO)).build();
+      Assertions.assertThatThrownBy(() -> client.handle(expired))
+          .isInstanceOf(UncheckedIOException.class)
+          .hasMessageContaining("Deadline passed");
+    }
+  }
+
+  @Test
+  public void testTraceIsPropagatedAcrossServices() throws Exception {
+    InMemorySpanExporter exporter = new InMemorySpanExporter();
+    try (Tracer tracer = Tracer.builder().exporter(exporter).sampler(Sampler.always()).build()) {
+      HttpHandler client = tracer.client().handle(new JdkClient());
+      AtomicInteger port = new AtomicInteger();
+      Router router =
+          Router.builder()
+              .get(
+                  "/front",
+                  request -> {
+                    HttpResponse stock =
+                        client.handle(
+                            HttpRequest.get(
+                                String.format("http://localhost:%s/back/1", port.get())));
+                    return HttpResponse.status(stock.status()).body(stock.body(), null);
+                  })
+              .get("/back/{id}", request -> HttpResponse.status(200).body("stock"))
+              .build();
+      try (HttpServer server = new SunHttpServerCreator(0).create(tracer.server().handle(router))) {
+        port.set(server.getPort());
+        server.start();
+        HttpResponse response =
+            new JdkClient()
+                .handle(HttpRequest.get(String.format("http://localhost:%s/front", port.get())));
+        Assertions.assertThat(CharStreams.toString(new InputStreamReader(response.body(), UTF_8)))
+            .isEqualTo("stock");
+      }
+      tracer.flush();
+
+      //front -> call to back -> back, all in the same trace
+      List<Span> spans = exporter.spans();
+      Assertions.assertThat(spans).hasSize(3);
+      Span back = spans.get(0);
+      Span call = spans.get(1);
+      Span front = spans.get(2);
+      Assertions.assertThat(front.name()).isEqualTo("GET /front");
+      Assertions.assertThat(front.parentSpanId()).isEmpty();
+      Assertions.assertThat(call.kind()).isEqualTo(Span.Kind.CLIENT);
+      Assertions.assertThat(call.parentSpanId()).contains(front.spanId());
+      Assertions.assertThat(back.name()).isEqualTo("GET /back/{id}");
+      Assertions.assertThat(back.parentSpanId()).contains(call.spanId());
+      Assertions.assertThat(spans).extracting(Span::traceId).containsOnly(front.traceId());
+    }
+  }
 }
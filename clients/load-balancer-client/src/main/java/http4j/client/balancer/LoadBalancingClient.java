@@ -0,0 +1,359 @@
+package http4j.client.balancer;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import http4j.core.HttpHandler;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client {@link HttpHandler} that spreads requests across a set of upstream base URIs. Each
+ * request has its scheme, host and port replaced with the chosen endpoint (and its path prefixed
+ * with the endpoint's path) before being passed to the underlying client, ex. a {@code JdkClient}.
+ *
+ * <p>Endpoints that fail too often, or become too slow, are passively ejected for a while based on
+ * an exponentially weighted moving average (EWMA) of their error rate and latency. The endpoint set
+ * can be swapped at runtime through {@link #endpoints(Collection)}; the request path only ever
+ * reads a volatile snapshot and never locks.
+ */
+public final class LoadBalancingClient implements HttpHandler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LoadBalancingClient.class);
+
+  /** How an endpoint is chosen for each request. */
+  public enum Strategy {
+    /** Pick two random endpoints and send to the one with the lower latency-weighted load. */
+    POWER_OF_TWO_CHOICES,
+    /** Scan every endpoint and send to the one with the least outstanding requests. */
+    LEAST_OUTSTANDING_REQUESTS
+  }
+
+  private final HttpHandler client;
+  private final Strategy strategy;
+  private final double alpha;
+  private final double maxErrorRate;
+  private final long maxLatencyNanos;
+  private final long ejectionNanos;
+  private final int minRequests;
+  private final int maxEjectedPercent;
+  private final Ticker ticker;
+
+  // the current endpoints; replaced wholesale, never mutated
+  private volatile Endpoint[] endpoints;
+
+  private LoadBalancingClient(Builder builder) {
+    this.client = builder.client;
+    this.strategy = builder.strategy;
+    this.alpha = builder.alpha;
+    this.maxErrorRate = builder.maxErrorRate;
+    this.maxLatencyNanos =
+        builder.maxLatency == null ? Long.MAX_VALUE : builder.maxLatency.toNanos();
+    this.ejectionNanos = builder.ejectionTime.toNanos();
+    this.minRequests = builder.minRequests;
+    this.maxEjectedPercent = builder.maxEjectedPercent;
+    this.ticker = builder.ticker;
+    this.endpoints = new Endpoint[0];
+    endpoints(builder.endpoints);
+  }
+
+  public static Builder builder(HttpHandler client) {
+    return new Builder(client);
+  }
+
+  @Override
+  public HttpResponse handle(HttpRequest request) {
+    Endpoint[] current = endpoints;
+    if (current.length == 0) {
+      throw new IllegalStateException("No endpoints available to load balance across.");
+    }
+    long now = ticker.read();
+    Endpoint endpoint =
+        strategy == Strategy.POWER_OF_TWO_CHOICES
+            ? powerOfTwoChoices(current, now)
+            : leastOutstanding(current, now);
+
+    endpoint.outstanding.incrementAndGet();
+    long start = ticker.read();
+    boolean failed = true;
+    try {
+      HttpResponse response = client.handle(rewrite(request, endpoint.uri));
+      failed = response.status() >= 500;
+      return response;
+    } finally {
+      endpoint.outstanding.decrementAndGet();
+      record(endpoint, current, ticker.read() - start, failed);
+    }
+  }
+
+  /** The base URIs currently being balanced across. */
+  public List<URI> endpoints() {
+    return Arrays.stream(endpoints).map(e -> e.uri).collect(ImmutableList.toImmutableList());
+  }
+
+  /**
+   * Replace the set of upstream endpoints. Endpoints that were already present keep their
+   * statistics and ejection state. Requests already in flight finish against the endpoint they were
+   * sent to.
+   */
+  public synchronized void endpoints(Collection<URI> uris) {
+    Map<URI, Endpoint> existing = new HashMap<>();
+    for (Endpoint endpoint : endpoints) {
+      existing.put(endpoint.uri, endpoint);
+    }
+    List<Endpoint> updated = new ArrayList<>(uris.size());
+    for (URI uri : uris) {
+      Endpoint endpoint = existing.get(uri);
+      updated.add(endpoint != null ? endpoint : new Endpoint(uri));
+    }
+    LOG.info("Load balancing across {}", uris);
+    endpoints = updated.toArray(new Endpoint[0]);
+  }
+
+  private Endpoint powerOfTwoChoices(Endpoint[] current, long now) {
+    if (current.length == 1) {
+      return current[0];
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int i = random.nextInt(current.length);
+    // pick a second index distinct from the first
+    int j = random.nextInt(current.length - 1);
+    if (j >= i) {
+      j++;
+    }
+    Endpoint a = current[i];
+    Endpoint b = current[j];
+    boolean aEjected = a.isEjected(now);
+    boolean bEjected = b.isEjected(now);
+    if (aEjected != bEjected) {
+      return aEjected ? b : a;
+    }
+    if (aEjected) {
+      // both random picks are ejected; fall back to a full scan for something healthy
+      return leastOutstanding(current, now);
+    }
+    return a.cost() <= b.cost() ? a : b;
+  }
+
+  private static Endpoint leastOutstanding(Endpoint[] current, long now) {
+    Endpoint best = null;
+    Endpoint bestEjected = null;
+    for (Endpoint endpoint : current) {
+      if (endpoint.isEjected(now)) {
+        if (bestEjected == null || endpoint.ejectedUntil < bestEjected.ejectedUntil) {
+          bestEjected = endpoint;
+        }
+      } else if (best == null
+          || endpoint.outstanding.get() < best.outstanding.get()
+          || (endpoint.outstanding.get() == best.outstanding.get()
+              && endpoint.latencyEwma < best.latencyEwma)) {
+        best = endpoint;
+      }
+    }
+    // every endpoint is ejected, use the one that will be re-admitted first
+    return best != null ? best : bestEjected;
+  }
+
+  /**
+   * Fold the outcome of a request into the endpoint's moving averages and eject it if it is now
+   * unhealthy. The read-modify-write of the averages is not atomic; a lost update under contention
+   * only makes the estimate slightly less precise.
+   */
+  private void record(Endpoint endpoint, Endpoint[] current, long latencyNanos, boolean failed) {
+    long requests = endpoint.requests.incrementAndGet();
+    if (requests == 1) {
+      endpoint.latencyEwma = latencyNanos;
+    } else {
+      endpoint.latencyEwma += alpha * (latencyNanos - endpoint.latencyEwma);
+    }
+    endpoint.errorEwma += alpha * ((failed ? 1.0 : 0.0) - endpoint.errorEwma);
+
+    if (requests < minRequests) {
+      return;
+    }
+    long now = ticker.read();
+    if ((endpoint.errorEwma > maxErrorRate || endpoint.latencyEwma > maxLatencyNanos)
+        && !endpoint.isEjected(now)
+        && canEject(current, now)) {
+      LOG.warn(
+          "Ejecting {} (error rate {}, latency {}ms)",
+          endpoint.uri,
+          endpoint.errorEwma,
+          TimeUnit.NANOSECONDS.toMillis((long) endpoint.latencyEwma));
+      endpoint.eject(now + ejectionNanos);
+    }
+  }
+
+  private boolean canEject(Endpoint[] current, long now) {
+    int ejected = 0;
+    for (Endpoint endpoint : current) {
+      if (endpoint.isEjected(now)) {
+        ejected++;
+      }
+    }
+    return (ejected + 1) * 100 <= current.length * maxEjectedPercent;
+  }
+
+  /** Point the request at the endpoint, keeping its path and query. */
+  private static HttpRequest rewrite(HttpRequest request, URI base) {
+    URI uri = request.uri();
+    StringBuilder target = new StringBuilder();
+    target.append(base.getScheme()).append("://").append(base.getRawAuthority());
+    String basePath = base.getRawPath();
+    if (basePath != null && !basePath.equals("/")) {
+      target.append(
+          basePath.endsWith("/") ? basePath.substring(0, basePath.length() - 1) : basePath);
+    }
+    String path = uri.getRawPath();
+    if (path == null || path.isEmpty()) {
+      target.append('/');
+    } else {
+      target.append(path);
+    }
+    if (uri.getRawQuery() != null) {
+      target.append('?').append(uri.getRawQuery());
+    }
+    return request.copy().uri(URI.create(target.toString())).build();
+  }
+
+  private static final class Endpoint {
+    private final URI uri;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private volatile double latencyEwma;
+    private volatile double errorEwma;
+    private volatile long ejectedUntil;
+    private volatile boolean ejected;
+
+    private Endpoint(URI uri) {
+      this.uri = uri;
+    }
+
+    /** Latency weighted by load; lower is better. */
+    private double cost() {
+      return (latencyEwma + 1) * (outstanding.get() + 1);
+    }
+
+    private boolean isEjected(long now) {
+      if (!ejected) {
+        return false;
+      }
+      if (now - ejectedUntil < 0) {
+        return true;
+      }
+      // the ejection has expired; give the endpoint a fresh start
+      ejected = false;
+      errorEwma = 0;
+      requests.set(0);
+      return false;
+    }
+
+    private void eject(long until) {
+      ejectedUntil = until;
+      ejected = true;
+    }
+  }
+
+  public static class Builder {
+
+    private final HttpHandler client;
+    private final List<URI> endpoints = new ArrayList<>();
+    private Strategy strategy = Strategy.POWER_OF_TWO_CHOICES;
+    private double alpha = 0.3;
+    private double maxErrorRate = 0.5;
+    private Duration maxLatency;
+    private Duration ejectionTime = Duration.ofSeconds(30);
+    private int minRequests = 5;
+    private int maxEjectedPercent = 50;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder(HttpHandler client) {
+      this.client = Objects.requireNonNull(client);
+    }
+
+    public Builder endpoint(URI uri) {
+      this.endpoints.add(Objects.requireNonNull(uri));
+      return this;
+    }
+
+    public Builder endpoint(String uri) {
+      return endpoint(URI.create(uri));
+    }
+
+    public Builder endpoints(Collection<URI> uris) {
+      uris.forEach(this::endpoint);
+      return this;
+    }
+
+    public Builder strategy(Strategy strategy) {
+      this.strategy = Objects.requireNonNull(strategy);
+      return this;
+    }
+
+    /** The smoothing factor of the moving averages; higher reacts faster to recent requests. */
+    public Builder smoothing(double alpha) {
+      Preconditions.checkArgument(alpha > 0 && alpha <= 1, "smoothing must be in (0, 1]");
+      this.alpha = alpha;
+      return this;
+    }
+
+    /** Eject an endpoint once its moving error rate (exceptions and 5xx) goes above this. */
+    public Builder maxErrorRate(double maxErrorRate) {
+      Preconditions.checkArgument(
+          maxErrorRate >= 0 && maxErrorRate <= 1, "maxErrorRate must be in [0, 1]");
+      this.maxErrorRate = maxErrorRate;
+      return this;
+    }
+
+    /** Eject an endpoint once its moving latency goes above this. Disabled by default. */
+    public Builder maxLatency(Duration maxLatency) {
+      this.maxLatency = Objects.requireNonNull(maxLatency);
+      return this;
+    }
+
+    /** How long an ejected endpoint is kept out of rotation. */
+    public Builder ejectionTime(Duration ejectionTime) {
+      this.ejectionTime = Objects.requireNonNull(ejectionTime);
+      return this;
+    }
+
+    /** Number of requests an endpoint must see before it can be ejected. */
+    public Builder minRequests(int minRequests) {
+      this.minRequests = minRequests;
+      return this;
+    }
+
+    /** Upper bound on the share of endpoints that can be ejected at the same time. */
+    public Builder maxEjectedPercent(int maxEjectedPercent) {
+      Preconditions.checkArgument(
+          maxEjectedPercent >= 0 && maxEjectedPercent <= 100,
+          "maxEjectedPercent must be in [0, 100]");
+      this.maxEjectedPercent = maxEjectedPercent;
+      return this;
+    }
+
+    public Builder ticker(Ticker ticker) {
+      this.ticker = Objects.requireNonNull(ticker);
+      return this;
+    }
+
+    public LoadBalancingClient build() {
+      return new LoadBalancingClient(this);
+    }
+  }
+}
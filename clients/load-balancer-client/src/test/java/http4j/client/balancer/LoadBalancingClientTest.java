@@ -0,0 +1,83 @@
+package http4j.client.balancer;
+
+import com.google.common.collect.ConcurrentHashMultiset;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Multiset;
+import http4j.core.HttpHandler;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.net.URI;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class LoadBalancingClientTest {
+
+  @Test
+  public void testSpreadsRequestsAndRewritesUri() {
+    Multiset<String> hosts = ConcurrentHashMultiset.create();
+    HttpHandler upstream =
+        request -> {
+          hosts.add(request.uri().getAuthority());
+          Assertions.assertThat(request.uri().getPath()).isEqualTo("/base/ping");
+          Assertions.assertThat(request.uri().getQuery()).isEqualTo("a=b");
+          return HttpResponse.status(200);
+        };
+
+    LoadBalancingClient client =
+        LoadBalancingClient.builder(upstream)
+            .endpoint("http://a:8080/base")
+            .endpoint("http://b:8080/base/")
+            .build();
+    for (int i = 0; i < 100; i++) {
+      client.handle(HttpRequest.get("/ping?a=b"));
+    }
+
+    Assertions.assertThat(hosts.count("a:8080")).isGreaterThan(0);
+    Assertions.assertThat(hosts.count("b:8080")).isGreaterThan(0);
+    Assertions.assertThat(hosts.size()).isEqualTo(100);
+  }
+
+  @Test
+  public void testEjectsFailingEndpoint() {
+    Multiset<String> hosts = ConcurrentHashMultiset.create();
+    HttpHandler upstream =
+        request -> {
+          hosts.add(request.uri().getHost());
+          return HttpResponse.status(request.uri().getHost().equals("bad") ? 503 : 200);
+        };
+
+    LoadBalancingClient client =
+        LoadBalancingClient.builder(upstream)
+            .endpoint("http://good")
+            .endpoint("http://bad")
+            .minRequests(3)
+            .build();
+    for (int i = 0; i < 200; i++) {
+      client.handle(HttpRequest.get("/ping"));
+    }
+
+    Assertions.assertThat(hosts.count("bad")).isLessThan(10);
+    Assertions.assertThat(hosts.count("good")).isGreaterThan(190);
+  }
+
+  @Test
+  public void testEndpointsCanBeSwapped() {
+    Multiset<String> hosts = ConcurrentHashMultiset.create();
+    LoadBalancingClient client =
+        LoadBalancingClient.builder(
+                request -> {
+                  hosts.add(request.uri().getHost());
+                  return HttpResponse.status(200);
+                })
+            .strategy(LoadBalancingClient.Strategy.LEAST_OUTSTANDING_REQUESTS)
+            .endpoint("http://old")
+            .build();
+    client.handle(HttpRequest.get("/ping"));
+
+    client.endpoints(ImmutableList.of(URI.create("http://new")));
+    client.handle(HttpRequest.get("/ping"));
+
+    Assertions.assertThat(client.endpoints()).containsExactly(URI.create("http://new"));
+    Assertions.assertThat(hosts).containsExactlyInAnyOrder("old", "new");
+  }
+}
@@ -0,0 +1,807 @@
+package http4j.core;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import http4j.core.codec.HttpHead;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A stress and conformance kit any {@link HttpServerCreator} can be run against, so backends are
+ * compared on equal terms. Every scenario starts a fresh server on an ephemeral port, drives it
+ * with raw HTTP/1.1 over sockets, checks every response, and afterwards checks that the server gave
+ * back the threads it started. A failed check throws an {@link AssertionError}.
+ *
+ * <pre class="code">
+ * List&lt;ServerConformance.Result&gt; results =
+ *     ServerConformance.builder(() -&gt; new NioHttpServerCreator(0)).connections(200).build().run();
+ * </pre>
+ *
+ * The defaults are sized for a stress run; unit tests should scale them down.
+ */
+public final class ServerConformance {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ServerConformance.class);
+
+  private final Supplier<? extends HttpServerCreator> creators;
+  private final int connections;
+  private final int requestsPerConnection;
+  private final int clientThreads;
+  private final long largeBodySize;
+  private final int chunkedRequests;
+  private final int slowClients;
+  private final Duration slowDuration;
+  private final Duration maxLatency;
+  private final Duration shutdownTimeout;
+  private final int maxThreadGrowth;
+  private final long maxHeapGrowth;
+  private final Duration timeout;
+
+  private ServerConformance(Builder builder) {
+    this.creators = builder.creators;
+    this.connections = builder.connections;
+    this.requestsPerConnection = builder.requestsPerConnection;
+    this.clientThreads = builder.clientThreads;
+    this.largeBodySize = builder.largeBodySize;
+    this.chunkedRequests = builder.chunkedRequests;
+    this.slowClients = builder.slowClients;
+    this.slowDuration = builder.slowDuration;
+    this.maxLatency = builder.maxLatency;
+    this.shutdownTimeout = builder.shutdownTimeout;
+    this.maxThreadGrowth = builder.maxThreadGrowth;
+    this.maxHeapGrowth = builder.maxHeapGrowth;
+    this.timeout = builder.timeout;
+  }
+
+  /**
+   * @param creators a new creator for every scenario, as some creators bind their port when they
+   *     are constructed and can only create one server
+   */
+  public static Builder builder(Supplier<? extends HttpServerCreator> creators) {
+    return new Builder(creators);
+  }
+
+  /** Run every scenario, one server each. */
+  public List<Result> run() throws Exception {
+    List<Result> results = new ArrayList<>();
+    results.add(keepAlive());
+    results.add(largeBodies());
+    results.add(chunkedRequests());
+    results.add(slowClients());
+    results.add(shutdownUnderLoad());
+    return results;
+  }
+
+  /**
+   * Open all the keep-alive connections at once, then send requests on every one of them from the
+   * client threads. Each response has to carry the id of its own request.
+   */
+  public Result keepAlive() throws Exception {
+    return scenario(
+        "keep-alive",
+        (server, stats) -> {
+          List<WireConnection> open = new ArrayList<>(connections);
+          try {
+            for (int i = 0; i < connections; i++) {
+              open.add(WireConnection.open(server.getPort(), timeout));
+            }
+            List<Callable<Void>> tasks = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+              int index = i;
+              tasks.add(
+                  () -> {
+                    WireConnection connection = open.get(index);
+                    for (int r = 0; r < requestsPerConnection; r++) {
+                      String id = index + "-" + r;
+                      connection = reusable(connection, server, stats);
+                      WireConnection.Response response;
+                      try {
+                        response = connection.get("/echo?id=" + id);
+                      } catch (EOFException e) {
+                        //the server may close an idle connection before it is used, once
+                        connection = reopen(connection, server, stats);
+                        response = connection.get("/echo?id=" + id);
+                      }
+                      expect(response, 200, id);
+                      stats.requests.increment();
+                    }
+                    open.set(index, connection);
+                    return null;
+                  });
+            }
+            runAll(tasks);
+          } finally {
+            open.forEach(WireConnection::close);
+          }
+        });
+  }
+
+  /**
+   * Upload and download a large body, streamed on both sides, checking every byte and that the
+   * server does not hold on to the body afterwards.
+   */
+  public Result largeBodies() throws Exception {
+    return scenario(
+        "large-bodies",
+        (server, stats) -> {
+          long before = usedHeap();
+          WireConnection connection = WireConnection.open(server.getPort(), timeout);
+          try {
+            CRC32 expected = new CRC32();
+            byte[] chunk = new byte[16 * 1024];
+            for (long sent = 0; sent < largeBodySize; sent += chunk.length) {
+              int length = (int) Math.min(chunk.length, largeBodySize - sent);
+              fill(chunk, sent, length);
+              expected.update(chunk, 0, length);
+            }
+            WireConnection.Response upload = connection.postGenerated("/count", largeBodySize);
+            expect(upload, 200, largeBodySize + ":" + Long.toHexString(expected.getValue()));
+            stats.requests.increment();
+            stats.bytes.add(largeBodySize);
+
+            connection = reusable(connection, server, stats);
+            AtomicLong received = new AtomicLong();
+            HttpHead head =
+                connection.get(
+                    "/stream?size=" + largeBodySize,
+                    data -> {
+                      long offset = received.get();
+                      for (int i = data.position(); i < data.limit(); i++) {
+                        if (data.get(i) != pattern(offset++)) {
+                          throw new AssertionError("Download corrupt at byte " + (offset - 1));
+                        }
+                      }
+                      received.set(offset);
+                    });
+            if (head.status() != 200 || received.get() != largeBodySize) {
+              throw new AssertionError(
+                  "Downloaded " + received.get() + " of " + largeBodySize + " bytes, " + head);
+            }
+            stats.requests.increment();
+            stats.bytes.add(largeBodySize);
+          } finally {
+            connection.close();
+          }
+          long retained = usedHeap() - before;
+          stats.note("retained heap " + (retained >> 20) + " MB");
+          if (retained > maxHeapGrowth) {
+            throw new AssertionError(
+                "Server retained " + retained + " bytes of heap after streaming large bodies");
+          }
+        });
+  }
+
+  /** Many requests with chunked bodies of random chunk sizes, back to back on one connection. */
+  public Result chunkedRequests() throws Exception {
+    return scenario(
+        "chunked-requests",
+        (server, stats) -> {
+          Random random = new Random(42);
+          WireConnection connection = WireConnection.open(server.getPort(), timeout);
+          try {
+            for (int i = 0; i < chunkedRequests; i++) {
+              byte[] body = new byte[random.nextInt(64 * 1024)];
+              random.nextBytes(body);
+              CRC32 crc = new CRC32();
+              crc.update(body);
+              connection = reusable(connection, server, stats);
+              expect(
+                  connection.postChunked("/count", body, random),
+                  200,
+                  body.length + ":" + Long.toHexString(crc.getValue()));
+              stats.requests.increment();
+              stats.bytes.add(body.length);
+            }
+          } finally {
+            connection.close();
+          }
+        });
+  }
+
+  /**
+   * Slow-loris clients trickle header lines without ever finishing their request, while well
+   * behaved clients keep connecting. The server may cut the slow ones off, but must keep answering
+   * the others within the latency bound.
+   */
+  public Result slowClients() throws Exception {
+    return scenario(
+        "slow-clients",
+        (server, stats) -> {
+          List<Socket> slow = Collections.synchronizedList(new ArrayList<>());
+          AtomicLong cut = new AtomicLong();
+          ScheduledExecutorService trickle =
+              Executors.newSingleThreadScheduledExecutor(daemon("conformance-trickle-%d"));
+          try {
+            for (int i = 0; i < slowClients; i++) {
+              Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+              socket
+                  .getOutputStream()
+                  .write("GET /echo?id=slow HTTP/1.1\r\nHost: localhost\r\n".getBytes(US_ASCII));
+              slow.add(socket);
+            }
+            long interval = Math.max(10, slowDuration.toMillis() / 20);
+            trickle.scheduleWithFixedDelay(
+                () -> {
+                  synchronized (slow) {
+                    for (Socket socket : slow) {
+                      if (!socket.isClosed()) {
+                        try {
+                          socket.getOutputStream().write("X-Slow: 1\r\n".getBytes(US_ASCII));
+                        } catch (IOException e) {
+                          cut.incrementAndGet();
+                          closeQuietly(socket);
+                        }
+                      }
+                    }
+                  }
+                },
+                interval,
+                interval,
+                TimeUnit.MILLISECONDS);
+
+            long deadline = System.nanoTime() + slowDuration.toNanos();
+            AtomicLong worst = new AtomicLong();
+            List<Callable<Void>> tasks = new ArrayList<>(clientThreads);
+            for (int t = 0; t < clientThreads; t++) {
+              int thread = t;
+              tasks.add(
+                  () -> {
+                    for (int r = 0; System.nanoTime() - deadline < 0; r++) {
+                      String id = thread + "-" + r;
+                      long start = System.nanoTime();
+                      try (WireConnection connection =
+                          WireConnection.open(server.getPort(), timeout)) {
+                        expect(connection.get("/echo?id=" + id), 200, id);
+                      }
+                      long latency = System.nanoTime() - start;
+                      worst.accumulateAndGet(latency, Math::max);
+                      stats.requests.increment();
+                    }
+                    return null;
+                  });
+            }
+            runAll(tasks);
+            stats.note("worst latency " + TimeUnit.NANOSECONDS.toMillis(worst.get()) + " ms");
+            stats.note("cut " + cut.get() + " of " + slowClients + " slow clients");
+            if (worst.get() > maxLatency.toNanos()) {
+              throw new AssertionError(
+                  "A request took "
+                      + TimeUnit.NANOSECONDS.toMillis(worst.get())
+                      + " ms while slow clients were connected");
+            }
+          } finally {
+            trickle.shutdownNow();
+            trickle.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            synchronized (slow) {
+              slow.forEach(ServerConformance::closeQuietly);
+            }
+          }
+        });
+  }
+
+  /**
+   * Shut the server down while the client threads keep it busy. Every answer until then has to be a
+   * correct 200 or a 503, requests in flight have to finish, and nothing may be served after.
+   */
+  public Result shutdownUnderLoad() throws Exception {
+    return scenario(
+        "shutdown-under-load",
+        (server, stats) -> {
+          AtomicBoolean stopping = new AtomicBoolean();
+          LongAdder rejected = new LongAdder();
+          LongAdder disconnected = new LongAdder();
+          ExecutorService clients =
+              Executors.newFixedThreadPool(clientThreads, daemon("conformance-load-%d"));
+          List<Future<Void>> load = new ArrayList<>(clientThreads);
+          try {
+            for (int t = 0; t < clientThreads; t++) {
+              load.add(
+                  clients.submit(
+                      () -> {
+                        WireConnection connection = null;
+                        try {
+                          while (true) {
+                            if (connection == null || !connection.isReusable()) {
+                              if (connection != null) {
+                                connection.close();
+                              }
+                              connection = WireConnection.open(server.getPort(), timeout);
+                            }
+                            WireConnection.Response response = connection.get("/sleep?millis=20");
+                            if (response.status() == 503) {
+                              rejected.increment();
+                            } else {
+                              expect(response, 200, "slept");
+                              stats.requests.increment();
+                            }
+                          }
+                        } catch (IOException e) {
+                          if (!stopping.get()) {
+                            throw e;
+                          }
+                          //the connection was closed, or refused, as the server stopped
+                          disconnected.increment();
+                          return null;
+                        } finally {
+                          if (connection != null) {
+                            connection.close();
+                          }
+                        }
+                      }));
+            }
+            Thread.sleep(Math.min(500, shutdownTimeout.toMillis() / 4));
+            for (Future<Void> future : load) {
+              if (future.isDone()) {
+                //a client that failed before the shutdown
+                future.get();
+              }
+            }
+
+            stopping.set(true);
+            long start = System.nanoTime();
+            int aborted = server.shutdown(shutdownTimeout);
+            long took = System.nanoTime() - start;
+            stats.note("shutdown took " + TimeUnit.NANOSECONDS.toMillis(took) + " ms");
+            stats.note(rejected.sum() + " rejected, " + disconnected.sum() + " disconnected");
+            if (aborted != 0) {
+              throw new AssertionError(aborted + " requests aborted by the shutdown");
+            }
+            if (took > shutdownTimeout.toNanos() + TimeUnit.SECONDS.toNanos(1)) {
+              throw new AssertionError("Shutdown took longer than " + shutdownTimeout);
+            }
+            awaitAll(load);
+            try (WireConnection connection = WireConnection.open(server.getPort(), timeout)) {
+              WireConnection.Response response = connection.get("/echo?id=late");
+              if (response.status() == 200) {
+                throw new AssertionError("A request was served after the shutdown");
+              }
+            } catch (IOException e) {
+              //refused, as expected
+            }
+          } finally {
+            clients.shutdownNow();
+            clients.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+          }
+        });
+  }
+
+  /** The handler every scenario's server runs. */
+  static HttpHandler handler() {
+    return Router.builder()
+        .get(
+            "/echo",
+            request -> HttpResponse.status(200).body(request.params().getOrDefault("id", "")))
+        .post(
+            "/count",
+            request -> {
+              CRC32 crc = new CRC32();
+              byte[] buffer = new byte[16 * 1024];
+              long count = 0;
+              try (InputStream body = request.body()) {
+                int read;
+                while ((read = body.read(buffer)) >= 0) {
+                  crc.update(buffer, 0, read);
+                  count += read;
+                }
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+              return HttpResponse.status(200).body(count + ":" + Long.toHexString(crc.getValue()));
+            })
+        .get(
+            "/stream",
+            request ->
+                HttpResponse.status(200)
+                    .body(new PatternStream(Long.parseLong(request.params().get("size"))), null))
+        .get(
+            "/sleep",
+            request -> {
+              try {
+                Thread.sleep(Long.parseLong(request.params().get("millis")));
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              return HttpResponse.status(200).body("slept");
+            })
+        .build();
+  }
+
+  /** The byte at an offset of every generated body. */
+  static byte pattern(long offset) {
+    return (byte) (offset % 251);
+  }
+
+  static void fill(byte[] bytes, long offset, int length) {
+    for (int i = 0; i < length; i++) {
+      bytes[i] = pattern(offset + i);
+    }
+  }
+
+  private interface Scenario {
+    void run(HttpServer server, Stats stats) throws Exception;
+  }
+
+  private Result scenario(String name, Scenario scenario) throws Exception {
+    Set<Long> threadsBefore = liveThreads().keySet();
+    long elapsed;
+    Stats stats = new Stats();
+    try (HttpServer server = creators.get().create(handler())) {
+      server.start();
+      long start = System.nanoTime();
+      try {
+        scenario.run(server, stats);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        throw cause instanceof AssertionError
+            ? (AssertionError) cause
+            : new AssertionError(name + " failed", cause);
+      } catch (IOException e) {
+        throw new AssertionError(name + " failed", e);
+      }
+      elapsed = System.nanoTime() - start;
+    }
+    int leaked = checkThreads(name, threadsBefore);
+    if (stats.reconnects.sum() > 0) {
+      stats.note(stats.reconnects.sum() + " reconnects");
+    }
+    Result result =
+        new Result(
+            name,
+            stats.requests.sum(),
+            stats.bytes.sum(),
+            Duration.ofNanos(elapsed),
+            leaked,
+            stats.notes);
+    LOG.info("{}", result);
+    return result;
+  }
+
+  /** Wait for the threads the server started to end, failing if too many stay behind. */
+  private int checkThreads(String name, Set<Long> before) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    List<String> remaining;
+    do {
+      remaining =
+          liveThreads()
+              .entrySet()
+              .stream()
+              .filter(entry -> !before.contains(entry.getKey()))
+              .map(Map.Entry::getValue)
+              .collect(Collectors.toList());
+      if (remaining.size() <= maxThreadGrowth) {
+        return remaining.size();
+      }
+      Thread.sleep(50);
+    } while (System.nanoTime() - deadline < 0);
+    throw new AssertionError(
+        name + " left " + remaining.size() + " threads running after close: " + remaining);
+  }
+
+  private static Map<Long, String> liveThreads() {
+    Map<Long, String> threads = new ConcurrentHashMap<>();
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.isAlive()) {
+        threads.put(thread.getId(), thread.getName());
+      }
+    }
+    return threads;
+  }
+
+  private static long usedHeap() throws InterruptedException {
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+      Thread.sleep(20);
+    }
+    return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+  }
+
+  private WireConnection reusable(WireConnection connection, HttpServer server, Stats stats)
+      throws IOException {
+    return connection.isReusable() ? connection : reopen(connection, server, stats);
+  }
+
+  private WireConnection reopen(WireConnection connection, HttpServer server, Stats stats)
+      throws IOException {
+    connection.close();
+    stats.reconnects.increment();
+    return WireConnection.open(server.getPort(), timeout);
+  }
+
+  private void runAll(List<Callable<Void>> tasks) throws Exception {
+    ExecutorService clients =
+        Executors.newFixedThreadPool(clientThreads, daemon("conformance-client-%d"));
+    try {
+      List<Future<Void>> futures = new ArrayList<>(tasks.size());
+      for (Callable<Void> task : tasks) {
+        futures.add(clients.submit(task));
+      }
+      awaitAll(futures);
+    } finally {
+      clients.shutdownNow();
+      clients.awaitTermination(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void awaitAll(List<Future<Void>> futures) throws Exception {
+    long deadline = System.nanoTime() + timeout.toNanos() * 4;
+    for (Future<Void> future : futures) {
+      try {
+        future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+      } catch (TimeoutException e) {
+        throw new AssertionError("Clients did not finish in time", e);
+      }
+    }
+  }
+
+  private static void expect(WireConnection.Response response, int status, String body) {
+    if (response.status() != status || !response.text().equals(body)) {
+      throw new AssertionError(
+          "Expected "
+              + status
+              + " '"
+              + body
+              + "' but got "
+              + response.head
+              + " '"
+              + response.text()
+              + "'");
+    }
+  }
+
+  private static void closeQuietly(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      //already gone
+    }
+  }
+
+  private static ThreadFactory daemon(String nameFormat) {
+    return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+  }
+
+  /** Counters a scenario fills in. */
+  private static final class Stats {
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final List<String> notes = Collections.synchronizedList(new ArrayList<>());
+
+    private void note(String note) {
+      notes.add(note);
+    }
+  }
+
+  /** A body of the given size generated on the fly, so the server streams rather than buffers. */
+  private static final class PatternStream extends InputStream {
+    private final long size;
+    private long offset;
+
+    private PatternStream(long size) {
+      this.size = size;
+    }
+
+    @Override
+    public int read() {
+      return offset < size ? pattern(offset++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int off, int len) {
+      if (offset >= size) {
+        return -1;
+      }
+      int count = (int) Math.min(len, size - offset);
+      for (int i = 0; i < count; i++) {
+        bytes[off + i] = pattern(offset + i);
+      }
+      offset += count;
+      return count;
+    }
+  }
+
+  /** What one scenario did. */
+  public static final class Result {
+    private final String name;
+    private final long requests;
+    private final long bytes;
+    private final Duration elapsed;
+    private final int threadGrowth;
+    private final List<String> notes;
+
+    private Result(
+        String name,
+        long requests,
+        long bytes,
+        Duration elapsed,
+        int threadGrowth,
+        List<String> notes) {
+      this.name = name;
+      this.requests = requests;
+      this.bytes = bytes;
+      this.elapsed = elapsed;
+      this.threadGrowth = threadGrowth;
+      this.notes = new ArrayList<>(notes);
+    }
+
+    public String name() {
+      return name;
+    }
+
+    public long requests() {
+      return requests;
+    }
+
+    /** Body bytes moved, for the scenarios about bodies. */
+    public long bytes() {
+      return bytes;
+    }
+
+    public Duration elapsed() {
+      return elapsed;
+    }
+
+    public double requestsPerSecond() {
+      return requests * 1e9 / Math.max(1, elapsed.toNanos());
+    }
+
+    public double megabytesPerSecond() {
+      return bytes * 1e9 / (1 << 20) / Math.max(1, elapsed.toNanos());
+    }
+
+    /** Threads still alive after the server was closed, within the allowed growth. */
+    public int threadGrowth() {
+      return threadGrowth;
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder out =
+          new StringBuilder(name)
+              .append(": ")
+              .append(requests)
+              .append(" requests in ")
+              .append(elapsed.toMillis())
+              .append(" ms, ")
+              .append(String.format("%.0f req/s", requestsPerSecond()));
+      if (bytes > 0) {
+        out.append(String.format(", %.1f MB/s", megabytesPerSecond()));
+      }
+      for (String note : notes) {
+        out.append(", ").append(note);
+      }
+      return out.toString();
+    }
+  }
+
+  public static class Builder {
+
+    private final Supplier<? extends HttpServerCreator> creators;
+    private int connections = 1000;
+    private int requestsPerConnection = 10;
+    private int clientThreads = 64;
+    private long largeBodySize = 256L * 1024 * 1024;
+    private int chunkedRequests = 200;
+    private int slowClients = 200;
+    private Duration slowDuration = Duration.ofSeconds(5);
+    private Duration maxLatency = Duration.ofSeconds(1);
+    private Duration shutdownTimeout = Duration.ofSeconds(5);
+    private int maxThreadGrowth = 0;
+    private long maxHeapGrowth = 32 * 1024 * 1024;
+    private Duration timeout = Duration.ofSeconds(30);
+
+    private Builder(Supplier<? extends HttpServerCreator> creators) {
+      this.creators = Objects.requireNonNull(creators);
+    }
+
+    /** Keep-alive connections open at the same time. */
+    public Builder connections(int connections) {
+      Preconditions.checkArgument(connections > 0, "connections must be positive");
+      this.connections = connections;
+      return this;
+    }
+
+    public Builder requestsPerConnection(int requestsPerConnection) {
+      Preconditions.checkArgument(requestsPerConnection > 0, "requestsPerConnection must be > 0");
+      this.requestsPerConnection = requestsPerConnection;
+      return this;
+    }
+
+    /** Threads sending requests, shared by all the connections. */
+    public Builder clientThreads(int clientThreads) {
+      Preconditions.checkArgument(clientThreads > 0, "clientThreads must be positive");
+      this.clientThreads = clientThreads;
+      return this;
+    }
+
+    public Builder largeBodySize(long largeBodySize) {
+      Preconditions.checkArgument(largeBodySize > 0, "largeBodySize must be positive");
+      this.largeBodySize = largeBodySize;
+      return this;
+    }
+
+    public Builder chunkedRequests(int chunkedRequests) {
+      Preconditions.checkArgument(chunkedRequests > 0, "chunkedRequests must be positive");
+      this.chunkedRequests = chunkedRequests;
+      return this;
+    }
+
+    /** Slow-loris connections, held for the given duration. */
+    public Builder slowClients(int slowClients, Duration slowDuration) {
+      Preconditions.checkArgument(slowClients >= 0, "slowClients must not be negative");
+      this.slowClients = slowClients;
+      this.slowDuration = Objects.requireNonNull(slowDuration);
+      return this;
+    }
+
+    /** The longest a well behaved request may take while slow clients are connected. */
+    public Builder maxLatency(Duration maxLatency) {
+      this.maxLatency = Objects.requireNonNull(maxLatency);
+      return this;
+    }
+
+    public Builder shutdownTimeout(Duration shutdownTimeout) {
+      this.shutdownTimeout = Objects.requireNonNull(shutdownTimeout);
+      return this;
+    }
+
+    /**
+     * Threads allowed to outlive a closed server, for backends running on a shared pool whose idle
+     * threads only time out later.
+     */
+    public Builder maxThreadGrowth(int maxThreadGrowth) {
+      Preconditions.checkArgument(maxThreadGrowth >= 0, "maxThreadGrowth must not be negative");
+      this.maxThreadGrowth = maxThreadGrowth;
+      return this;
+    }
+
+    /** Heap the server may still hold after the large bodies went through it. */
+    public Builder maxHeapGrowth(long maxHeapGrowth) {
+      this.maxHeapGrowth = maxHeapGrowth;
+      return this;
+    }
+
+    /** Socket timeout for every client read and connect. */
+    public Builder timeout(Duration timeout) {
+      this.timeout = Objects.requireNonNull(timeout);
+      return this;
+    }
+
+    public ServerConformance build() {
+      return new ServerConformance(this);
+    }
+  }
+}
@@ -0,0 +1,257 @@
+package http4j.core;
+
+import com.google.common.collect.Maps;
+import com.google.common.net.HttpHeaders;
+import http4j.core.codec.ChunkedDecoder;
+import http4j.core.codec.Http1Encoder;
+import http4j.core.codec.HttpCodecException;
+import http4j.core.codec.HttpHead;
+import http4j.core.codec.HttpHeadParser;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Nullable;
+
+/**
+ * A keep-alive HTTP/1.1 client connection written straight on a socket with the core codec, so the
+ * conformance kit controls every byte it sends and checks every byte it gets back.
+ */
+final class WireConnection implements AutoCloseable {
+
+  /** Where the body of a response goes. */
+  interface BodySink {
+    void accept(ByteBuffer data) throws IOException;
+  }
+
+  /** A response whose body was collected in memory. */
+  static final class Response {
+    final HttpHead head;
+    final byte[] body;
+
+    private Response(HttpHead head, byte[] body) {
+      this.head = head;
+      this.body = body;
+    }
+
+    int status() {
+      return head.status();
+    }
+
+    String text() {
+      return new String(body, StandardCharsets.UTF_8);
+    }
+  }
+
+  private final Socket socket;
+  private final InputStream in;
+  private final OutputStream out;
+  private final HttpHeadParser parser = new HttpHeadParser(HttpHeadParser.Kind.RESPONSE, 64 * 1024);
+  private final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+  private boolean keepAlive = true;
+
+  private WireConnection(Socket socket) throws IOException {
+    this.socket = socket;
+    this.in = socket.getInputStream();
+    this.out = socket.getOutputStream();
+    buffer.flip();
+  }
+
+  static WireConnection open(int port, Duration timeout) throws IOException {
+    Socket socket = new Socket();
+    try {
+      socket.setTcpNoDelay(true);
+      socket.setSoTimeout((int) timeout.toMillis());
+      socket.connect(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), port), (int) timeout.toMillis());
+      return new WireConnection(socket);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+  }
+
+  /** Whether the server left the connection open after the last response. */
+  boolean isReusable() {
+    return keepAlive && !socket.isClosed();
+  }
+
+  Response get(String target) throws IOException {
+    sendHead("GET", target, 0L);
+    return readResponse();
+  }
+
+  /** GET a body too large to hold, handing it to the sink as it arrives. */
+  HttpHead get(String target, BodySink sink) throws IOException {
+    sendHead("GET", target, 0L);
+    return readResponse(sink);
+  }
+
+  /** POST a generated body of the given size, without holding it in memory. */
+  Response postGenerated(String target, long size) throws IOException {
+    sendHead("POST", target, size);
+    byte[] chunk = new byte[16 * 1024];
+    long sent = 0;
+    while (sent < size) {
+      int length = (int) Math.min(chunk.length, size - sent);
+      ServerConformance.fill(chunk, sent, length);
+      out.write(chunk, 0, length);
+      sent += length;
+    }
+    out.flush();
+    return readResponse();
+  }
+
+  /** POST a body in chunks of random sizes. */
+  Response postChunked(String target, byte[] body, Random random) throws IOException {
+    sendHead("POST", target, null);
+    int offset = 0;
+    while (offset < body.length) {
+      int length = Math.min(body.length - offset, 1 + random.nextInt(8 * 1024));
+      out.write(Http1Encoder.chunkHeader(length));
+      out.write(body, offset, length);
+      out.write(Http1Encoder.CRLF);
+      offset += length;
+    }
+    out.write(Http1Encoder.LAST_CHUNK);
+    out.flush();
+    return readResponse();
+  }
+
+  Response readResponse() throws IOException {
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    HttpHead head =
+        readResponse(
+            data ->
+                body.write(data.array(), data.arrayOffset() + data.position(), data.remaining()));
+    return new Response(head, body.toByteArray());
+  }
+
+  /** Read a response, handing its body to the sink as it arrives. */
+  HttpHead readResponse(BodySink sink) throws IOException {
+    HttpHead head;
+    long length;
+    try {
+      do {
+        head = readHead();
+        //interim responses are followed by the real one
+      } while (head.status() >= 100 && head.status() < 200);
+      length = head.contentLength();
+    } catch (HttpCodecException e) {
+      throw new IOException("Malformed response: " + e.getMessage(), e);
+    }
+    keepAlive = head.isKeepAlive();
+    int status = head.status();
+    if (status == 204 || status == 304) {
+      return head;
+    }
+    if (head.isChunked()) {
+      readChunked(sink);
+    } else if (length >= 0) {
+      readFixed(sink, length);
+    } else {
+      readToEnd(sink);
+      keepAlive = false;
+    }
+    return head;
+  }
+
+  private void sendHead(String method, String target, @Nullable Long length) throws IOException {
+    List<Map.Entry<String, String>> headers = new ArrayList<>(2);
+    headers.add(Maps.immutableEntry(HttpHeaders.HOST, "localhost"));
+    if (length == null) {
+      headers.add(Maps.immutableEntry(HttpHeaders.TRANSFER_ENCODING, "chunked"));
+    } else if (length > 0) {
+      headers.add(Maps.immutableEntry(HttpHeaders.CONTENT_LENGTH, Long.toString(length)));
+    }
+    out.write(Http1Encoder.requestHead(method, target, headers));
+    if (length != null && length == 0) {
+      out.flush();
+    }
+  }
+
+  private HttpHead readHead() throws IOException {
+    while (true) {
+      HttpHead head = parser.parse(buffer);
+      if (head != null) {
+        return head;
+      }
+      if (!fill()) {
+        boolean started = parser.inProgress();
+        parser.reset();
+        throw new EOFException(
+            started ? "Connection closed in the middle of a response" : "Connection closed");
+      }
+    }
+  }
+
+  private void readFixed(BodySink sink, long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      if (!buffer.hasRemaining() && !fill()) {
+        throw new EOFException("Connection closed " + remaining + " bytes before end of body");
+      }
+      ByteBuffer data = buffer.slice();
+      int count = (int) Math.min(data.remaining(), remaining);
+      data.limit(count);
+      buffer.position(buffer.position() + count);
+      remaining -= count;
+      sink.accept(data);
+    }
+  }
+
+  private void readChunked(BodySink sink) throws IOException {
+    ChunkedDecoder decoder = new ChunkedDecoder();
+    while (!decoder.isDone()) {
+      ByteBuffer data;
+      try {
+        data = decoder.decode(buffer);
+      } catch (HttpCodecException e) {
+        throw new IOException("Malformed chunked body: " + e.getMessage(), e);
+      }
+      if (data != null) {
+        sink.accept(data);
+      } else if (!decoder.isDone() && !fill()) {
+        throw new EOFException("Connection closed before the last chunk");
+      }
+    }
+  }
+
+  private void readToEnd(BodySink sink) throws IOException {
+    while (buffer.hasRemaining() || fill()) {
+      ByteBuffer data = buffer.slice();
+      buffer.position(buffer.limit());
+      sink.accept(data);
+    }
+  }
+
+  private boolean fill() throws IOException {
+    buffer.compact();
+    int read = in.read(buffer.array(), buffer.position(), buffer.remaining());
+    if (read > 0) {
+      buffer.position(buffer.position() + read);
+    }
+    buffer.flip();
+    return read >= 0;
+  }
+
+  @Override
+  public void close() {
+    try {
+      socket.close();
+    } catch (IOException e) {
+      //nothing to do, the connection is gone either way
+    }
+  }
+}
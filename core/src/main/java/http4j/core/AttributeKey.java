@@ -0,0 +1,39 @@
+package http4j.core;
+
+import java.util.Objects;
+
+/**
+ * The typed name of a request attribute. Keys are compared by identity, so two filters can never
+ * clash by picking the same name; keep each key in a constant and share that.
+ *
+ * <pre>{@code
+ * public static final AttributeKey<Principal> PRINCIPAL = AttributeKey.of("principal", Principal.class);
+ * }</pre>
+ */
+public final class AttributeKey<T> {
+
+  private final String name;
+  private final Class<T> type;
+
+  private AttributeKey(String name, Class<T> type) {
+    this.name = name;
+    this.type = type;
+  }
+
+  public static <T> AttributeKey<T> of(String name, Class<T> type) {
+    return new AttributeKey<>(Objects.requireNonNull(name), Objects.requireNonNull(type));
+  }
+
+  public String name() {
+    return name;
+  }
+
+  public Class<T> type() {
+    return type;
+  }
+
+  @Override
+  public String toString() {
+    return name;
+  }
+}
@@ -0,0 +1,111 @@
+package http4j.core;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Values that filters hand down to the handler for one request, such as the authenticated principal
+ * or a parsed body. The store is shared by every copy of the request, so adding to it never means
+ * rebuilding the request the way {@link HttpRequest#copy()} does.
+ *
+ * <p>A request only ever has a handful of attributes, so they are kept in a flat array of keys and
+ * values that is searched front to back, and which is only allocated once the first one is set. The
+ * store is not thread-safe: a request is worked on by one thread at a time, and code that hands it
+ * to another thread must not touch the attributes meanwhile.
+ */
+public final class Attributes {
+
+  private static final int INITIAL_CAPACITY = 4;
+
+  //keys at even indexes, each followed by its value
+  @Nullable private Object[] entries;
+  private int size;
+
+  Attributes() {}
+
+  /** The value of the attribute, empty if it is not set. */
+  public <T> Optional<T> get(AttributeKey<T> key) {
+    int index = indexOf(key);
+    return index < 0 ? Optional.empty() : Optional.of(key.type().cast(entries[index + 1]));
+  }
+
+  public boolean contains(AttributeKey<?> key) {
+    return indexOf(key) >= 0;
+  }
+
+  /** Set the attribute, replacing any value it had. */
+  public <T> Attributes set(AttributeKey<T> key, T value) {
+    Objects.requireNonNull(value, "value");
+    int index = indexOf(Objects.requireNonNull(key, "key"));
+    if (index >= 0) {
+      entries[index + 1] = value;
+      return this;
+    }
+    if (entries == null) {
+      entries = new Object[INITIAL_CAPACITY * 2];
+    } else if (size * 2 == entries.length) {
+      entries = Arrays.copyOf(entries, entries.length * 2);
+    }
+    entries[size * 2] = key;
+    entries[size * 2 + 1] = value;
+    size++;
+    return this;
+  }
+
+  /** Unset the attribute, returning the value it had. */
+  public <T> Optional<T> remove(AttributeKey<T> key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return Optional.empty();
+    }
+    T value = key.type().cast(entries[index + 1]);
+    //fill the gap with the last entry
+    int last = --size * 2;
+    entries[index] = entries[last];
+    entries[index + 1] = entries[last + 1];
+    entries[last] = null;
+    entries[last + 1] = null;
+    return Optional.of(value);
+  }
+
+  /** A store of its own with the same attributes. */
+  Attributes copy() {
+    Attributes copy = new Attributes();
+    copy.replaceWith(this);
+    return copy;
+  }
+
+  /** Drop every attribute and take those of the other store instead. */
+  void replaceWith(Attributes other) {
+    entries = other.entries == null ? null : other.entries.clone();
+    size = other.size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  private int indexOf(AttributeKey<?> key) {
+    for (int i = 0; i < size * 2; i += 2) {
+      if (entries[i] == key) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder out = new StringBuilder("{");
+    for (int i = 0; i < size * 2; i += 2) {
+      out.append(i == 0 ? "" : ", ").append(entries[i]).append('=').append(entries[i + 1]);
+    }
+    return out.append('}').toString();
+  }
+}
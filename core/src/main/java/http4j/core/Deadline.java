@@ -0,0 +1,122 @@
+package http4j.core;
+
+import http4j.core.util.HeaderValues;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * The point in time by which a request must be answered, after which the caller has given up and
+ * any work still being done for it is wasted. Deadlines are kept on the monotonic clock, and travel
+ * between processes as the time left in the {@value #HEADER} header, so the clocks of the two sides
+ * never have to agree.
+ *
+ * <p>While a handler runs under {@link HttpFilters#timeout(HttpHandler, Duration)} its deadline is
+ * also {@link #current()} for the thread, so outbound calls made from it can stop waiting once the
+ * caller has.
+ */
+public final class Deadline implements Comparable<Deadline> {
+
+  /** The header carrying the milliseconds the sender is still willing to wait. */
+  public static final String HEADER = "X-Request-Timeout";
+
+  private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+  //further off than any request waits, yet close enough to compare with any other deadline
+  private static final Duration MAX_TIMEOUT = Duration.ofNanos(Long.MAX_VALUE / 4);
+
+  private final long nanos;
+
+  private Deadline(long nanos) {
+    this.nanos = nanos;
+  }
+
+  /** A deadline the given time from now, or about 73 years at most either way. */
+  public static Deadline after(Duration timeout) {
+    Duration bounded = timeout;
+    if (bounded.compareTo(MAX_TIMEOUT) > 0) {
+      bounded = MAX_TIMEOUT;
+    } else if (bounded.compareTo(MAX_TIMEOUT.negated()) < 0) {
+      bounded = MAX_TIMEOUT.negated();
+    }
+    return new Deadline(System.nanoTime() + bounded.toNanos());
+  }
+
+  /**
+   * The deadline the sender of the request asked for in the {@value #HEADER} header, if any. A
+   * value too large to mean anything is taken as the furthest deadline {@link #after} allows.
+   */
+  public static Optional<Deadline> fromHeader(HttpRequest request) {
+    Collection<String> values = request.headers().get(HEADER.toLowerCase());
+    if (values.isEmpty()) {
+      return Optional.empty();
+    }
+    long millis = HeaderValues.parseLength(values.iterator().next());
+    if (millis < 0) {
+      return Optional.empty();
+    }
+    return Optional.of(after(Duration.ofMillis(millis)));
+  }
+
+  /** The deadline of the request the current thread is working on, if it has one. */
+  public static Optional<Deadline> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /** Do the work with this as the {@link #current()} deadline of the thread. */
+  public <T> T run(Supplier<T> work) {
+    Deadline previous = CURRENT.get();
+    CURRENT.set(this);
+    try {
+      return work.get();
+    } finally {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  /** The time left, zero once the deadline has passed. */
+  public Duration remaining() {
+    return Duration.ofNanos(Math.max(0, nanos - System.nanoTime()));
+  }
+
+  /** The time left in whole milliseconds, rounded up so a little time left is not none. */
+  public long remainingMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(
+        Math.max(0, nanos - System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(1) - 1));
+  }
+
+  public boolean isExpired() {
+    return nanos - System.nanoTime() <= 0;
+  }
+
+  /** Whichever of the two comes first. */
+  public Deadline min(Deadline other) {
+    return compareTo(other) <= 0 ? this : other;
+  }
+
+  @Override
+  public int compareTo(Deadline other) {
+    return Long.compare(nanos - other.nanos, 0);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof Deadline && ((Deadline) o).nanos == nanos;
+  }
+
+  @Override
+  public int hashCode() {
+    return Long.hashCode(nanos);
+  }
+
+  @Override
+  public String toString() {
+    return "Deadline{" + remaining().toMillis() + "ms left}";
+  }
+}
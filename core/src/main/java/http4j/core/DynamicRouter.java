@@ -0,0 +1,250 @@
+package http4j.core;
+
+import com.google.common.base.Preconditions;
+import http4j.core.util.UriTemplate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import javax.annotation.Nullable;
+
+/**
+ * A {@link Router} whose routes can be added and removed while it serves requests, e.g. for feature
+ * flagged endpoints or the routes of a tenant.
+ *
+ * <p>Each version of the routes is compiled into an ordinary immutable {@link Router} and published
+ * with a single atomic swap. Requests read the current version once, without locking, and are
+ * handled by it to the end even if a newer one is published meanwhile. Updates compile the new
+ * version on the thread applying them; concurrent updates retry against whichever version won.
+ *
+ * <pre>{@code
+ * DynamicRouter router = DynamicRouter.create(base -> base.get("/health", health));
+ * router.update().get("/beta/search", search).apply();
+ * router.update().remove(HttpMethod.GET, "/beta/search").get("/search", search).apply();
+ * }</pre>
+ */
+public final class DynamicRouter implements HttpHandler {
+
+  private final Consumer<Router.Builder> base;
+  private final AtomicReference<Table> table;
+
+  private DynamicRouter(Consumer<Router.Builder> base) {
+    this.base = base;
+    this.table = new AtomicReference<>(new Table(0, Collections.emptyMap(), compile(base, null)));
+  }
+
+  public static DynamicRouter create() {
+    return create(builder -> {});
+  }
+
+  /**
+   * A router that starts with no dynamic routes.
+   *
+   * @param base configures every version before its dynamic routes are added, with the routes that
+   *     never change, fallback handlers, CORS policies and so on; it is called again for every
+   *     update so it should add the same things each time
+   */
+  public static DynamicRouter create(Consumer<Router.Builder> base) {
+    return new DynamicRouter(Objects.requireNonNull(base));
+  }
+
+  @Override
+  public HttpResponse handle(HttpRequest request) {
+    return table.get().router.handle(request);
+  }
+
+  /** The current version, for looking up routes or building links, see {@link Router#url}. */
+  public Router snapshot() {
+    return table.get().router;
+  }
+
+  /** The number of updates applied so far. */
+  public long version() {
+    return table.get().version;
+  }
+
+  public Optional<UriTemplate> route(HttpRequest request) {
+    return snapshot().route(request);
+  }
+
+  /** Start a set of changes, that take effect all at once when applied. */
+  public Update update() {
+    return new Update();
+  }
+
+  private static Router compile(Consumer<Router.Builder> base, @Nullable Map<Key, Route> routes) {
+    Router.Builder builder = Router.builder();
+    base.accept(builder);
+    if (routes != null) {
+      for (Map.Entry<Key, Route> entry : routes.entrySet()) {
+        Key key = entry.getKey();
+        Route route = entry.getValue();
+        if (route.name != null) {
+          builder.route(route.name, key.method, key.template, route.handler);
+        } else {
+          builder.handler(key.method, key.template, route.handler);
+        }
+      }
+    }
+    return builder.build();
+  }
+
+  /**
+   * Changes to the dynamic routes, applied in the order they were made. Replacing a route is
+   * removing it and adding it again in the same update.
+   */
+  public final class Update {
+
+    private final List<Consumer<Map<Key, Route>>> changes = new ArrayList<>();
+
+    private Update() {}
+
+    public Update handler(HttpMethod method, String template, HttpHandler handler) {
+      return add(method, template, null, handler);
+    }
+
+    /** Add a route with a name, see {@link Router.Builder#route}. */
+    public Update route(String name, HttpMethod method, String template, HttpHandler handler) {
+      return add(method, template, Objects.requireNonNull(name), handler);
+    }
+
+    public Update get(String template, HttpHandler handler) {
+      return handler(HttpMethod.GET, template, handler);
+    }
+
+    public Update post(String template, HttpHandler handler) {
+      return handler(HttpMethod.POST, template, handler);
+    }
+
+    public Update put(String template, HttpHandler handler) {
+      return handler(HttpMethod.PUT, template, handler);
+    }
+
+    public Update delete(String template, HttpHandler handler) {
+      return handler(HttpMethod.DELETE, template, handler);
+    }
+
+    public Update head(String template, HttpHandler handler) {
+      return handler(HttpMethod.HEAD, template, handler);
+    }
+
+    public Update patch(String template, HttpHandler handler) {
+      return handler(HttpMethod.PATCH, template, handler);
+    }
+
+    public Update options(String template, HttpHandler handler) {
+      return handler(HttpMethod.OPTIONS, template, handler);
+    }
+
+    /** Remove a dynamic route; routes added by the base can't be removed. */
+    public Update remove(HttpMethod method, String template) {
+      Key key = new Key(method, template);
+      changes.add(
+          routes -> {
+            if (routes.remove(key) == null) {
+              throw new IllegalArgumentException("There is no route " + key);
+            }
+          });
+      return this;
+    }
+
+    /**
+     * Compile and publish a version with the changes made to the current one.
+     *
+     * @return the new version
+     * @throws IllegalArgumentException if a route that was added already exists, one that was
+     *     removed doesn't or the routes don't build; the current version then stays as it is
+     */
+    public long apply() {
+      while (true) {
+        Table current = table.get();
+        Map<Key, Route> routes = new LinkedHashMap<>(current.routes);
+        for (Consumer<Map<Key, Route>> change : changes) {
+          change.accept(routes);
+        }
+        Table next = new Table(current.version + 1, routes, compile(base, routes));
+        if (table.compareAndSet(current, next)) {
+          return next.version;
+        }
+        //another update won the race, redo the changes on top of it
+      }
+    }
+
+    private Update add(
+        HttpMethod method, String template, @Nullable String name, HttpHandler handler) {
+      Key key = new Key(method, template);
+      Route route = new Route(name, Objects.requireNonNull(handler));
+      changes.add(
+          routes -> {
+            if (routes.putIfAbsent(key, route) != null) {
+              throw new IllegalArgumentException("There already is a route " + key);
+            }
+          });
+      return this;
+    }
+  }
+
+  /** One published version, never changed once built. */
+  private static final class Table {
+
+    private final long version;
+    private final Map<Key, Route> routes;
+    private final Router router;
+
+    private Table(long version, Map<Key, Route> routes, Router router) {
+      this.version = version;
+      this.routes = routes;
+      this.router = router;
+    }
+  }
+
+  private static final class Key {
+
+    private final HttpMethod method;
+    private final String template;
+
+    private Key(HttpMethod method, String template) {
+      Preconditions.checkNotNull(method, "method");
+      this.method = method;
+      this.template = UriTemplate.parse(template).getTemplate();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return method == key.method && template.equals(key.template);
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * method.hashCode() + template.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return method + " " + template;
+    }
+  }
+
+  private static final class Route {
+
+    @Nullable private final String name;
+    private final HttpHandler handler;
+
+    private Route(@Nullable String name, HttpHandler handler) {
+      this.name = name;
+      this.handler = handler;
+    }
+  }
+}
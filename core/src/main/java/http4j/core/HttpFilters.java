@@ -1,11 +1,28 @@
 package http4j.core;
 
+import com.google.common.base.Throwables;
 import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import http4j.core.upload.BodyTooLargeException;
+import http4j.core.upload.SpooledBody;
+import http4j.core.upload.UploadConfig;
+import http4j.core.upload.Uploads;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.zip.GZIPInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +33,9 @@ public final class HttpFilters {
   private static final DateTimeFormatter COMMON_LOG_DATE_FORMAT =
       DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z").withZone(ZoneId.systemDefault());
 
+  //the timestamp of the last access log line, reused by the lines logged in the same second
+  private static volatile LogDate lastLogDate = new LogDate(Long.MIN_VALUE, "");
+
   private static final Logger LOG = LoggerFactory.getLogger(HttpFilters.class);
 
   /** Set this log name in the log4j2.xml if you want to send access logs to a specific appender. */
@@ -35,13 +55,16 @@ public final class HttpFilters {
   public static HttpHandler accessLog(HttpHandler handler) {
     return (request) -> {
       //save the current time request was started
-      Instant now = Instant.now();
+      long started = System.currentTimeMillis() / 1000;
 
       HttpResponse response = handler.handle(request);
+      if (!ACCESS_LOG.isInfoEnabled()) {
+        return response;
+      }
       ACCESS_LOG.info(
           "{} - - [{}] \"{} {}\" {} {} {}",
           request.remote(),
-          COMMON_LOG_DATE_FORMAT.format(now),
+          commonLogDate(started),
           request.method().name(),
           request.uri(),
           request.protocol(),
@@ -52,6 +75,27 @@ public final class HttpFilters {
     };
   }
 
+  private static String commonLogDate(long epochSecond) {
+    LogDate last = lastLogDate;
+    if (last.epochSecond != epochSecond) {
+      last =
+          new LogDate(
+              epochSecond, COMMON_LOG_DATE_FORMAT.format(Instant.ofEpochSecond(epochSecond)));
+      lastLogDate = last;
+    }
+    return last.text;
+  }
+
+  private static final class LogDate {
+    private final long epochSecond;
+    private final String text;
+
+    private LogDate(long epochSecond, String text) {
+      this.epochSecond = epochSecond;
+      this.text = text;
+    }
+  }
+
   public static HttpHandler gzip(HttpHandler handler) {
     return (request) -> {
       HttpResponse response = handler.handle(request);
@@ -64,4 +108,137 @@ public final class HttpFilters {
       }
     };
   }
+
+  /**
+   * Refuse request bodies larger than {@code maxBytes} with a 413. A declared Content-Length is
+   * checked before the handler runs; a chunked body is counted as the handler reads it, and a
+   * handler failing because it read too much is answered with a 413 as well.
+   */
+  public static HttpHandler maxBodySize(HttpHandler handler, long maxBytes) {
+    return (request) -> {
+      HttpRequest limited;
+      try {
+        limited = Uploads.limit(request, maxBytes);
+      } catch (BodyTooLargeException e) {
+        return payloadTooLarge(e);
+      }
+      try {
+        return handler.handle(limited);
+      } catch (RuntimeException e) {
+        if (Uploads.isTooLarge(e)) {
+          return payloadTooLarge(e);
+        }
+        throw e;
+      }
+    };
+  }
+
+  /**
+   * Read the whole request body before the handler runs, in memory up to the configured threshold
+   * and in a temp file beyond it, so the handler gets a body of known length that is already off
+   * the network. Bodies over the configured maximum are answered with a 413.
+   *
+   * <p>The spooled body is only there until the handler returns: it is then closed and its temp
+   * file deleted, so the response must not stream from the request body.
+   */
+  public static HttpHandler spool(HttpHandler handler, UploadConfig config) {
+    return (request) -> {
+      SpooledBody body;
+      try {
+        body = Uploads.spool(request, config);
+      } catch (BodyTooLargeException e) {
+        return payloadTooLarge(e);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      try (SpooledBody spooled = body;
+          InputStream in = spooled.openStream()) {
+        return handler.handle(request.copy().body(in, spooled.length()).build());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    };
+  }
+
+  /**
+   * Answer with a 504 once the request's deadline passes, if the handler has not by then, and
+   * interrupt the handler. The deadline is the earliest of the one already on the request, the one
+   * the sender asked for in the {@value Deadline#HEADER} header, and {@code timeout} from now; a
+   * request that arrives with its deadline already passed gets a 503 without running the handler.
+   *
+   * <p>The handler runs on a shared pool of daemon threads so the calling thread is free to answer
+   * when it is stuck, and with its deadline as {@link Deadline#current()}. A handler that ignores
+   * the interrupt keeps its thread after the 504, so the pool is bounded to 256 threads: once they
+   * are all busy, requests are answered with a 503 straight away instead of piling up more threads
+   * behind a stuck downstream. It gets a copy of the request's attributes, so one that is still
+   * running after the deadline never touches them at the same time as the caller; the attributes it
+   * leaves are copied back if it finishes in time.
+   */
+  public static HttpHandler timeout(HttpHandler handler, Duration timeout) {
+    return timeout(handler, timeout, TimeoutPool.EXECUTOR);
+  }
+
+  /**
+   * Like {@link #timeout(HttpHandler, Duration)}, with the handler running on the executor.
+   * Requests the executor rejects are answered with a 503.
+   */
+  public static HttpHandler timeout(
+      HttpHandler handler, Duration timeout, ExecutorService executor) {
+    return (request) -> {
+      Deadline deadline = Deadline.after(timeout);
+      deadline = request.deadline().map(deadline::min).orElse(deadline);
+      deadline = Deadline.fromHeader(request).map(deadline::min).orElse(deadline);
+      if (deadline.isExpired()) {
+        return HttpResponse.status(503).body("Deadline passed before the request was handled");
+      }
+      Deadline bounded = deadline;
+      Attributes attributes = request.attributes().copy();
+      HttpRequest scoped = request.copy().deadline(bounded).attributes(attributes).build();
+      Future<HttpResponse> response;
+      try {
+        response = executor.submit(() -> bounded.run(() -> handler.handle(scoped)));
+      } catch (RejectedExecutionException e) {
+        LOG.debug("No thread to handle {} {} on", request.method(), request.uri());
+        return HttpResponse.status(503).body("Too many requests being handled");
+      }
+      try {
+        HttpResponse handled = response.get(bounded.remaining().toNanos(), TimeUnit.NANOSECONDS);
+        request.attributes().replaceWith(attributes);
+        return handled;
+      } catch (TimeoutException e) {
+        response.cancel(true);
+        LOG.debug("{} {} did not finish before its deadline", request.method(), request.uri());
+        return HttpResponse.status(504).body("Deadline passed while handling the request");
+      } catch (InterruptedException e) {
+        response.cancel(true);
+        Thread.currentThread().interrupt();
+        return HttpResponse.status(503).body("Interrupted while handling the request");
+      } catch (ExecutionException e) {
+        Throwables.throwIfUnchecked(e.getCause());
+        throw new UncheckedExecutionException(e.getCause());
+      }
+    };
+  }
+
+  private static HttpResponse payloadTooLarge(Exception e) {
+    LOG.debug("Refusing request body: {}", e.getMessage());
+    //the rest of the body is not worth reading just to keep the connection
+    return HttpResponse.status(413).header(HttpHeaders.CONNECTION, "close").body(e.getMessage());
+  }
+
+  /** The threads timed handlers run on, only started when a timeout filter is first used. */
+  private static final class TimeoutPool {
+
+    private static final int MAX_THREADS = 256;
+
+    //handed straight to a thread or rejected, never queued behind stuck handlers
+    private static final ExecutorService EXECUTOR =
+        new ThreadPoolExecutor(
+            0,
+            MAX_THREADS,
+            60,
+            TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            new ThreadFactoryBuilder().setNameFormat("http4j-timeout-%d").setDaemon(true).build());
+  }
 }
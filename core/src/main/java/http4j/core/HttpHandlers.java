@@ -26,4 +26,15 @@ public final class HttpHandlers {
   public static HttpHandler invalidMethod() {
     return responseCode(HttpURLConnection.HTTP_BAD_METHOD);
   }
+
+  /**
+   * Readiness probe handler. Returns status 200 while the server should receive traffic and 503
+   * once it is draining.
+   */
+  public static HttpHandler readiness(Readiness readiness) {
+    return request ->
+        readiness.isReady()
+            ? HttpResponse.status(HttpURLConnection.HTTP_OK).body("ready")
+            : HttpResponse.status(HttpURLConnection.HTTP_UNAVAILABLE).body("not ready");
+  }
 }
@@ -1,12 +1,19 @@
 package http4j.core;
 
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/** The request methods of RFC 7231 and PATCH from RFC 5789. */
 public enum HttpMethod {
   GET,
-  DELETE,
+  HEAD,
   POST,
   PUT,
-  UPDATE,
-  HEAD;
+  DELETE,
+  CONNECT,
+  OPTIONS,
+  TRACE,
+  PATCH;
 
   /**
    * Convert the string ignoring case to a {@link HttpMethod}
@@ -14,11 +21,99 @@ public enum HttpMethod {
    * @throws IllegalArgumentException if one cannot be found
    */
   public static HttpMethod method(String method) {
-    for (HttpMethod m : HttpMethod.values()) {
-      if (m.name().equalsIgnoreCase(method)) {
-        return m;
+    HttpMethod found = candidate(method.length(), method.isEmpty() ? 0 : upper(method.charAt(0)));
+    if (found != null) {
+      String name = found.name();
+      for (int i = 1; i < name.length(); i++) {
+        if (upper(method.charAt(i)) != name.charAt(i)) {
+          found = null;
+          break;
+        }
       }
     }
-    throw new IllegalArgumentException("No HttpMethod can be found for " + method);
+    if (found == null) {
+      throw new IllegalArgumentException("No HttpMethod can be found for " + method);
+    }
+    return found;
+  }
+
+  /**
+   * The method with exactly this name, methods being case-sensitive on the wire.
+   *
+   * @return the method, or null if it is not one of these
+   */
+  @Nullable
+  public static HttpMethod parse(CharSequence token) {
+    int length = token.length();
+    HttpMethod found = candidate(length, length == 0 ? 0 : token.charAt(0));
+    if (found == null) {
+      return null;
+    }
+    String name = found.name();
+    for (int i = 1; i < length; i++) {
+      if (token.charAt(i) != name.charAt(i)) {
+        return null;
+      }
+    }
+    return found;
+  }
+
+  /** The method named by the chars in the range, see {@link #parse(CharSequence)}. */
+  @Nullable
+  public static HttpMethod parse(char[] chars, int offset, int length) {
+    HttpMethod found = candidate(length, length == 0 ? 0 : chars[offset]);
+    if (found == null) {
+      return null;
+    }
+    String name = found.name();
+    for (int i = 1; i < length; i++) {
+      if (chars[offset + i] != name.charAt(i)) {
+        return null;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * The method named by the ASCII bytes in the range of the buffer, read without moving its
+   * position, see {@link #parse(CharSequence)}.
+   */
+  @Nullable
+  public static HttpMethod parse(ByteBuffer bytes, int offset, int length) {
+    HttpMethod found = candidate(length, length == 0 ? 0 : bytes.get(offset));
+    if (found == null) {
+      return null;
+    }
+    String name = found.name();
+    for (int i = 1; i < length; i++) {
+      if (bytes.get(offset + i) != name.charAt(i)) {
+        return null;
+      }
+    }
+    return found;
+  }
+
+  /** Only ASCII letters are folded, masking the case bit of anything else could make a letter. */
+  private static char upper(char c) {
+    return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+  }
+
+  /** No two methods share both length and first letter, so together they pick the only option. */
+  @Nullable
+  private static HttpMethod candidate(int length, int first) {
+    switch (length) {
+      case 3:
+        return first == 'G' ? GET : first == 'P' ? PUT : null;
+      case 4:
+        return first == 'H' ? HEAD : first == 'P' ? POST : null;
+      case 5:
+        return first == 'P' ? PATCH : first == 'T' ? TRACE : null;
+      case 6:
+        return first == 'D' ? DELETE : null;
+      case 7:
+        return first == 'C' ? CONNECT : first == 'O' ? OPTIONS : null;
+      default:
+        return null;
+    }
   }
 }
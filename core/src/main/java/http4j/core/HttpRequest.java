@@ -8,18 +8,18 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.net.InetSocketAddress;
 import java.net.URI;
+import java.time.Duration;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
 
 /**
  * A "copy-on-write" type of HttpRequest. Any modification to the request should go through its copy
- * builder.
+ * builder. The exception are its {@link #attributes()}, which are shared by every copy and are not
+ * thread-safe.
  */
-@Immutable
 public class HttpRequest extends HttpMessage {
 
   private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
@@ -30,6 +30,9 @@ public class HttpRequest extends HttpMessage {
   private final URI uri;
   private final InetSocketAddress remote;
   private final CaseInsensitiveMap<String> params;
+  private final String protocol;
+  @Nullable private final Deadline deadline;
+  private final Attributes attributes;
 
   public HttpRequest(
       HttpMethod method,
@@ -39,6 +42,33 @@ public class HttpRequest extends HttpMessage {
       URI uri,
       InetSocketAddress remote,
       Map<String, String> params) {
+    this(method, body, length, headers, uri, remote, params, "HTTP/1.1");
+  }
+
+  /** @param protocol the protocol version the request arrived with, ex. "HTTP/1.0" or "HTTP/2.0" */
+  public HttpRequest(
+      HttpMethod method,
+      InputStream body,
+      @Nullable Long length,
+      Multimap<String, String> headers,
+      URI uri,
+      InetSocketAddress remote,
+      Map<String, String> params,
+      String protocol) {
+    this(method, body, length, headers, uri, remote, params, protocol, null, new Attributes());
+  }
+
+  private HttpRequest(
+      HttpMethod method,
+      InputStream body,
+      @Nullable Long length,
+      Multimap<String, String> headers,
+      URI uri,
+      InetSocketAddress remote,
+      Map<String, String> params,
+      String protocol,
+      @Nullable Deadline deadline,
+      Attributes attributes) {
     super(headers);
     this.method = method;
     this.body = body;
@@ -46,6 +76,9 @@ public class HttpRequest extends HttpMessage {
     this.uri = uri;
     this.remote = remote;
     this.params = CaseInsensitiveMap.create(params);
+    this.protocol = protocol;
+    this.deadline = deadline;
+    this.attributes = attributes;
   }
 
   public static HttpRequest create(HttpMethod method, String url) {
@@ -85,6 +118,11 @@ public class HttpRequest extends HttpMessage {
     return Optional.ofNullable(length);
   }
 
+  @Override
+  public String protocol() {
+    return protocol;
+  }
+
   /** Get the request URI */
   public URI uri() {
     return uri;
@@ -95,6 +133,29 @@ public class HttpRequest extends HttpMessage {
     return remote;
   }
 
+  /**
+   * When the request must be answered by, set by the server or a {@link HttpFilters#timeout}
+   * filter. Empty if nobody is waiting on a clock.
+   */
+  public Optional<Deadline> deadline() {
+    return Optional.ofNullable(deadline);
+  }
+
+  /**
+   * The values filters attached to this request for the handler. Every copy of the request shares
+   * the same attributes, so setting one needs no copy and is seen by whoever holds the request. A
+   * handler that passes the request on to another thread must not use them until that thread is
+   * done with it, see {@link HttpFilters#timeout(HttpHandler, Duration)}.
+   */
+  public Attributes attributes() {
+    return attributes;
+  }
+
+  /** The value of one attribute, empty if it is not set. */
+  public <T> Optional<T> attribute(AttributeKey<T> key) {
+    return attributes.get(key);
+  }
+
   /**
    * Returns a non-modifiable map of the params for this request. This includes query params and
    * path params.
@@ -118,12 +179,15 @@ public class HttpRequest extends HttpMessage {
   public static class CopyBuilder {
 
     private InputStream body;
-    private final Long length;
+    private Long length;
     private final Multimap<String, String> headers;
-    private final URI uri;
+    private URI uri;
     private final HttpMethod method;
     private final InetSocketAddress remote;
     private final Map<String, String> params;
+    private final String protocol;
+    @Nullable private Deadline deadline;
+    private Attributes attributes;
 
     public CopyBuilder(HttpRequest request) {
       this.body = request.body();
@@ -133,6 +197,9 @@ public class HttpRequest extends HttpMessage {
       this.uri = request.uri();
       this.remote = request.remote();
       this.params = new HashMap<>(request.params());
+      this.protocol = request.protocol();
+      this.deadline = request.deadline;
+      this.attributes = request.attributes;
     }
 
     public CopyBuilder body(InputStream body) {
@@ -140,13 +207,49 @@ public class HttpRequest extends HttpMessage {
       return this;
     }
 
+    /** Replace the body along with its length, null when unknown. */
+    public CopyBuilder body(InputStream body, @Nullable Long length) {
+      this.body = body;
+      this.length = length;
+      return this;
+    }
+
+    public CopyBuilder uri(URI uri) {
+      this.uri = uri;
+      return this;
+    }
+
+    /** Add a header value, keeping any the header already has. */
+    public CopyBuilder header(String key, String value) {
+      this.headers.put(key.toLowerCase(), value);
+      return this;
+    }
+
+    /** Drop every value of a header. */
+    public CopyBuilder removeHeader(String key) {
+      this.headers.removeAll(key.toLowerCase());
+      return this;
+    }
+
     public CopyBuilder param(String key, String value) {
       this.params.put(key, value);
       return this;
     }
 
+    public CopyBuilder deadline(@Nullable Deadline deadline) {
+      this.deadline = deadline;
+      return this;
+    }
+
+    /** Give the copy attributes of its own instead of sharing them. */
+    CopyBuilder attributes(Attributes attributes) {
+      this.attributes = attributes;
+      return this;
+    }
+
     public HttpRequest build() {
-      return new HttpRequest(method, body, length, headers, uri, remote, params);
+      return new HttpRequest(
+          method, body, length, headers, uri, remote, params, protocol, deadline, attributes);
     }
   }
 }
@@ -93,6 +93,7 @@ public final class HttpResponse extends HttpMessage {
 
     public CopyBuilder(HttpResponse response) {
       this.body = response.body;
+      this.length = response.length;
       this.status = response.status;
       this.headers = LinkedListMultimap.create(response.headers());
     }
@@ -1,5 +1,7 @@
 package http4j.core;
 
+import java.time.Duration;
+
 public interface HttpServer extends AutoCloseable {
 
   /**
@@ -11,4 +13,16 @@ public interface HttpServer extends AutoCloseable {
 
   /** start the http server */
   void start();
+
+  /**
+   * Gracefully stop the http server. The server is marked as not ready, stops accepting new
+   * connections and waits up to the timeout for in-flight requests to finish before closing.
+   *
+   * @param timeout how long to wait for in-flight requests
+   * @return the number of requests that were aborted because they did not finish in time
+   */
+  int shutdown(Duration timeout);
+
+  /** The readiness of this server to receive traffic */
+  Readiness readiness();
 }
@@ -0,0 +1,25 @@
+package http4j.core;
+
+/**
+ * Whether a server should be receiving traffic. A server marks itself ready when started and not
+ * ready as soon as it begins shutting down; operators can also flip it manually, ex. to take an
+ * instance out of a load balancer before draining it. Expose it with {@link
+ * HttpHandlers#readiness(Readiness)}.
+ */
+public final class Readiness {
+
+  private volatile boolean ready;
+
+  /** @return {@code true} if the server should be receiving traffic */
+  public boolean isReady() {
+    return ready;
+  }
+
+  public void markReady() {
+    this.ready = true;
+  }
+
+  public void markNotReady() {
+    this.ready = false;
+  }
+}
@@ -0,0 +1,133 @@
+package http4j.core;
+
+import com.google.common.collect.ArrayListMultimap;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * The mutable response passed through the stages of an {@link HttpPipeline}. Unlike {@link
+ * HttpResponse} nothing is copied when it is modified; it is turned into an immutable {@link
+ * HttpResponse} once, after the last stage.
+ */
+@NotThreadSafe
+public final class ResponseContext {
+
+  private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+
+  // keys are kept lower case, the same as HttpMessage does, in a multimap that is cheap to fill
+  private final ArrayListMultimap<String, String> headers = ArrayListMultimap.create(8, 1);
+  private int status = 200;
+  private InputStream body = EMPTY_BODY;
+  @Nullable private Long length = 0L;
+
+  // the response this context was loaded from, as long as nothing has changed it
+  @Nullable private HttpResponse unmodified;
+
+  ResponseContext() {}
+
+  /**
+   * Replace everything in this context with the given response, except for headers that request
+   * stages have set and the response doesn't have.
+   */
+  void load(HttpResponse response) {
+    boolean merged = false;
+    if (!headers.isEmpty()) {
+      headers.keySet().removeAll(response.headers().keySet());
+      merged = !headers.isEmpty();
+    }
+    //the response headers are already lower case
+    for (Map.Entry<String, String> header : response.headers().entries()) {
+      headers.put(header.getKey(), header.getValue());
+    }
+    status = response.status();
+    body = response.body();
+    length = response.length().orElse(null);
+    unmodified = merged ? null : response;
+  }
+
+  /** the http status code to return */
+  public int status() {
+    return status;
+  }
+
+  public ResponseContext status(int status) {
+    this.status = status;
+    unmodified = null;
+    return this;
+  }
+
+  /** The values of a header, empty if it has not been set */
+  public Collection<String> headers(String name) {
+    return headers.get(normalize(name));
+  }
+
+  /** The first value of a header, or null if it has not been set */
+  @Nullable
+  public String header(String name) {
+    Collection<String> values = headers.get(normalize(name));
+    return values.isEmpty() ? null : values.iterator().next();
+  }
+
+  /** Add a value to a header, keeping any values already there */
+  public ResponseContext addHeader(String name, String value) {
+    headers.put(normalize(name), value);
+    unmodified = null;
+    return this;
+  }
+
+  /** Replace all values of a header */
+  public ResponseContext setHeader(String name, String value) {
+    String key = normalize(name);
+    headers.removeAll(key);
+    headers.put(key, value);
+    unmodified = null;
+    return this;
+  }
+
+  public ResponseContext removeHeader(String name) {
+    if (!headers.removeAll(normalize(name)).isEmpty()) {
+      unmodified = null;
+    }
+    return this;
+  }
+
+  public InputStream body() {
+    return body;
+  }
+
+  /** The length of the body, or null if it is unknown and will be sent chunked */
+  @Nullable
+  public Long length() {
+    return length;
+  }
+
+  public ResponseContext body(InputStream body, @Nullable Long length) {
+    this.body = body;
+    this.length = length;
+    unmodified = null;
+    return this;
+  }
+
+  public ResponseContext body(String body) {
+    byte[] rawBody = body.getBytes(StandardCharsets.UTF_8);
+    return body(new ByteArrayInputStream(rawBody), (long) rawBody.length);
+  }
+
+  private static String normalize(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  /** Freeze the context into a response, reusing the loaded response if nothing changed */
+  HttpResponse toResponse() {
+    if (unmodified != null) {
+      return unmodified;
+    }
+    return new HttpResponse(status, body, length, headers);
+  }
+}
@@ -1,18 +1,68 @@
 package http4j.core;
 
+import com.google.common.base.Preconditions;
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
+import com.google.common.net.HttpHeaders;
+import http4j.core.cors.CorsPolicy;
+import http4j.core.negotiation.MediaTypeDispatcher;
 import http4j.core.util.UriTemplate;
+import http4j.core.websocket.WebSocketConfig;
+import http4j.core.websocket.WebSocketHandler;
+import http4j.core.websocket.WebSocketUpgrade;
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import javax.annotation.Nullable;
 
-/** Very simple Router that uses linear lookup using {@link UriTemplate} */
+/**
+ * Very simple Router that uses linear lookup using {@link UriTemplate}. Routes are tried most
+ * specific first, see {@link UriTemplate#precedence()}, so {@code /users/me} wins over {@code
+ * /users/{id}} whichever was added first.
+ *
+ * <p>Other routers can be mounted under a path prefix, and given their own host names. Mounted
+ * routes are copied into the routes of this one with the prefix in front of their templates, so
+ * they are found by the same single lookup; a router for a host is picked by one map lookup on the
+ * {@code Host} header before that.
+ */
 public final class Router implements HttpHandler {
 
-  // Matcher objects keyed by http methods.
-  private final ListMultimap<HttpMethod, HandlerHolder> paths;
+  /**
+   * The template of the route that matched, set on the request before its handler runs. Filters in
+   * front of the router can read it once the handler returns, e.g. to name a trace span.
+   */
+  public static final AttributeKey<UriTemplate> ROUTE = AttributeKey.of("route", UriTemplate.class);
+
+  /**
+   * The prefix the matched route was mounted under, see {@link Builder#mount(String, Router)}. The
+   * path the mounted router would have seen is what follows it in the path of the request.
+   */
+  public static final AttributeKey<String> MOUNT = AttributeKey.of("mount", String.class);
+
+  /**
+   * Where the values of the matched route are in the path. Handlers of typed routes read them from
+   * here, e.g. {@code request.attributes().get(PATH).get().longValue("id")}, which parses the value
+   * in place rather than cutting it out of the path and parsing the copy.
+   */
+  public static final AttributeKey<UriTemplate.Match> PATH =
+      AttributeKey.of("path", UriTemplate.Match.class);
+
+  // Matcher objects for each http method, indexed by its ordinal, most specific first.
+  private final HandlerHolder[][] routes;
+
+  // Templates of the routes that were given a name, for building links to them.
+  private final Map<String, UriTemplate> names;
 
   // Handler called when no match was found and invalid method handler can't be invoked.
   private final HttpHandler fallbackHandler;
@@ -23,59 +73,173 @@ public final class Router implements HttpHandler {
   // If this handler is null the fallbackHandler will be used.
   private final HttpHandler invalidMethodHandler;
 
+  // Routers for other hosts by lower case name, or *.domain for any host below it.
+  private final Map<String, Router> hosts;
+
+  // Mounted routers, longest prefix first, to answer the paths under them that match no route.
+  private final Mount[] mounts;
+
   private Router(
-      ListMultimap<HttpMethod, HandlerHolder> paths,
+      HandlerHolder[][] routes,
+      Map<String, UriTemplate> names,
       HttpHandler fallbackHandler,
-      HttpHandler invalidMethodHandler) {
-    this.paths = paths;
+      HttpHandler invalidMethodHandler,
+      Map<String, Router> hosts,
+      Mount[] mounts) {
+    this.routes = routes;
+    this.names = names;
     this.fallbackHandler = fallbackHandler;
     this.invalidMethodHandler = invalidMethodHandler;
+    this.hosts = hosts;
+    this.mounts = mounts;
   }
 
   @Override
   public HttpResponse handle(HttpRequest request) {
+    return forHost(request).dispatch(request);
+  }
+
+  private HttpResponse dispatch(HttpRequest request) {
 
     final URI uri = request.uri();
     final String pathToMatch = uri.getPath();
 
     //This lookup is done in O(n) versus something like a Trie
-    List<HandlerHolder> potentialPaths = paths.get(request.method());
-    if (potentialPaths == null || potentialPaths.isEmpty()) {
-      return handleNoMatch(request);
+    HandlerHolder matchedPath = find(routes[request.method().ordinal()], pathToMatch);
+    if (matchedPath == null) {
+      return handleNoMatch(request, pathToMatch);
     }
 
-    Optional<HandlerHolder> matchedPathOpt =
-        potentialPaths.stream().filter(path -> path.template.matches(pathToMatch)).findFirst();
-
-    if (!matchedPathOpt.isPresent()) {
-      return handleNoMatch(request);
+    request.attributes().set(ROUTE, matchedPath.template);
+    if (matchedPath.mount != null) {
+      request.attributes().set(MOUNT, matchedPath.mount);
     }
 
-    HandlerHolder matchedPath = matchedPathOpt.get();
+    //the winner is walked once more to keep where its values are; failed candidates allocate nothing
+    UriTemplate.Match path = matchedPath.template.matchValues(pathToMatch);
+    request.attributes().set(PATH, path);
 
-    //hydrate the attribute map with the path parameters
-    Map<String, String> pathParams = matchedPath.template.match(pathToMatch);
-    for (Map.Entry<String, String> param : pathParams.entrySet()) {
-      request = request.param(param.getKey(), param.getValue());
+    //hydrate the params with the path values for handlers that read them as strings
+    List<String> variables = matchedPath.template.getVariables();
+    if (!variables.isEmpty()) {
+      HttpRequest.CopyBuilder copy = request.copy();
+      for (String variable : variables) {
+        copy.param(variable, path.value(variable));
+      }
+      request = copy.build();
     }
 
     return matchedPath.handler.handle(request);
   }
 
+  /**
+   * The template of the route that would handle the request, empty if none matches. Filters in
+   * front of the router use this to tell routes apart, e.g. to rate limit each one separately.
+   */
+  public Optional<UriTemplate> route(HttpRequest request) {
+    Router router = forHost(request);
+    HandlerHolder matched =
+        find(router.routes[request.method().ordinal()], request.uri().getPath());
+    return matched != null ? Optional.of(matched.template) : Optional.empty();
+  }
+
+  /** The template of a named route. */
+  public Optional<UriTemplate> template(String name) {
+    return Optional.ofNullable(names.get(name));
+  }
+
+  /**
+   * Build the path of a named route from the values of its variables, in order.
+   *
+   * @throws IllegalArgumentException if there is no route by that name or the values don't fit
+   */
+  public String url(String name, String... values) {
+    return named(name).expand(values);
+  }
+
+  /**
+   * Build the path of a named route from the values of its variables, by name.
+   *
+   * @throws IllegalArgumentException if there is no route by that name or a value is missing
+   */
+  public String url(String name, Map<String, ?> values) {
+    return named(name).expand(values);
+  }
+
+  private UriTemplate named(String name) {
+    UriTemplate template = names.get(name);
+    if (template == null) {
+      throw new IllegalArgumentException("No route named " + name);
+    }
+    return template;
+  }
+
   /**
    * Handles the case in with a match was not found for the http method but might exist for another
    * http method. For example: POST not matched for a path but at least one match exists for same
    * path.
    */
-  private HttpResponse handleNoMatch(HttpRequest request) {
-    boolean wrongMethodExists =
-        paths.values().stream().anyMatch(path -> path.template.matches(request.uri().getPath()));
-    if (wrongMethodExists) {
-      return invalidMethodHandler.handle(request);
+  private HttpResponse handleNoMatch(HttpRequest request, String pathToMatch) {
+    for (Mount mount : mounts) {
+      if (pathToMatch.startsWith(mount.prefix)
+          && (pathToMatch.length() == mount.prefix.length()
+              || pathToMatch.charAt(mount.prefix.length()) == '/')) {
+        String remaining = pathToMatch.substring(mount.prefix.length());
+        return mount.router.handleNoMatch(request, remaining.isEmpty() ? "/" : remaining);
+      }
+    }
+    for (HandlerHolder[] methodRoutes : routes) {
+      if (find(methodRoutes, pathToMatch) != null) {
+        return invalidMethodHandler.handle(request);
+      }
     }
     return fallbackHandler.handle(request);
   }
 
+  /** The router for the host of the request, this one if no other was given it. */
+  private Router forHost(HttpRequest request) {
+    if (hosts.isEmpty()) {
+      return this;
+    }
+    String host = host(request);
+    if (host == null) {
+      return this;
+    }
+    Router router = hosts.get(host);
+    //then the wildcards of the parent domains, nearest first
+    for (int dot = host.indexOf('.');
+        router == null && dot >= 0;
+        dot = host.indexOf('.', dot + 1)) {
+      router = hosts.get("*" + host.substring(dot));
+    }
+    return router != null ? router : this;
+  }
+
+  /** The lower case host name of the request, without the port. */
+  @Nullable
+  private static String host(HttpRequest request) {
+    Collection<String> values = request.headers().get(HttpHeaders.HOST);
+    String host = values.isEmpty() ? request.uri().getHost() : values.iterator().next();
+    if (host == null) {
+      return null;
+    }
+    int colon = host.lastIndexOf(':');
+    if (colon >= 0 && colon > host.lastIndexOf(']')) {
+      host = host.substring(0, colon);
+    }
+    return host.trim().toLowerCase(Locale.ROOT);
+  }
+
+  @Nullable
+  private static HandlerHolder find(HandlerHolder[] candidates, String pathToMatch) {
+    for (HandlerHolder candidate : candidates) {
+      if (candidate.template.matches(pathToMatch)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
   public static Builder builder() {
     return new Builder();
   }
@@ -85,6 +249,13 @@ public final class Router implements HttpHandler {
     private ListMultimap<HttpMethod, HandlerHolder> paths = ArrayListMultimap.create();
     private HttpHandler fallbackHandler = HttpHandlers.notFound();
     private HttpHandler invalidMethodHandler = HttpHandlers.invalidMethod();
+    private Map<String, UriTemplate> names = new HashMap<>();
+    @Nullable private CorsPolicy cors;
+    private Map<String, CorsPolicy> corsByTemplate = new HashMap<>();
+    private Map<HttpMethod, Map<String, MediaTypeDispatcher.Builder>> negotiated =
+        new EnumMap<>(HttpMethod.class);
+    private Map<String, Router> mounted = new LinkedHashMap<>();
+    private Map<String, Router> hosts = new LinkedHashMap<>();
 
     public Builder() {}
 
@@ -103,10 +274,46 @@ public final class Router implements HttpHandler {
       return this;
     }
 
+    /**
+     * Add a route with a name, so links to it can be built with {@link Router#url(String,
+     * String...)} instead of repeating the template.
+     *
+     * @throws IllegalArgumentException if the name is already taken
+     */
+    public Builder route(String name, HttpMethod method, String template, HttpHandler handler) {
+      UriTemplate parsed = UriTemplate.parse(template);
+      if (names.putIfAbsent(name, parsed) != null) {
+        throw new IllegalArgumentException("There already is a route named " + name);
+      }
+      this.paths.put(method, new HandlerHolder(parsed, handler));
+      return this;
+    }
+
+    /**
+     * Add a route that serves one media type. Routes on the same method and template that serve
+     * different media types are picked between by the {@code Accept} header of the request, see
+     * {@link MediaTypeDispatcher}; don't also add a route without one for them.
+     *
+     * @throws IllegalArgumentException if the media type is not valid or already served there
+     */
+    public Builder handler(
+        HttpMethod method, String template, String produces, HttpHandler handler) {
+      negotiated
+          .computeIfAbsent(method, m -> new LinkedHashMap<>())
+          .computeIfAbsent(
+              UriTemplate.parse(template).getTemplate(), t -> MediaTypeDispatcher.builder())
+          .on(produces, handler);
+      return this;
+    }
+
     public Builder get(String template, HttpHandler handler) {
       return handler(HttpMethod.GET, template, handler);
     }
 
+    public Builder get(String template, String produces, HttpHandler handler) {
+      return handler(HttpMethod.GET, template, produces, handler);
+    }
+
     public Builder post(String template, HttpHandler handler) {
       return handler(HttpMethod.POST, template, handler);
     }
@@ -123,18 +330,253 @@ public final class Router implements HttpHandler {
       return handler(HttpMethod.HEAD, template, handler);
     }
 
+    public Builder patch(String template, HttpHandler handler) {
+      return handler(HttpMethod.PATCH, template, handler);
+    }
+
+    public Builder options(String template, HttpHandler handler) {
+      return handler(HttpMethod.OPTIONS, template, handler);
+    }
+
+    /**
+     * Accept WebSocket upgrades on the template. Requests that are not a valid handshake get a 400,
+     * or a 426 for the wrong protocol version.
+     */
+    public Builder websocket(String template, WebSocketHandler handler) {
+      return websocket(template, handler, WebSocketConfig.defaults());
+    }
+
+    public Builder websocket(String template, WebSocketHandler handler, WebSocketConfig config) {
+      return get(template, request -> WebSocketUpgrade.response(request, handler, config));
+    }
+
+    /**
+     * Apply the CORS policy to every route without one of its own. Preflights are answered by the
+     * policy, also for routes without an {@code OPTIONS} handler, and only allow the methods the
+     * route has; see {@link CorsPolicy}.
+     */
+    public Builder cors(CorsPolicy policy) {
+      this.cors = Objects.requireNonNull(policy);
+      return this;
+    }
+
+    /**
+     * Apply the CORS policy to the routes of one template, whichever method they are for.
+     *
+     * @throws IllegalArgumentException at build time if there is no route with the template
+     */
+    public Builder cors(String template, CorsPolicy policy) {
+      this.corsByTemplate.put(
+          UriTemplate.parse(template).getTemplate(), Objects.requireNonNull(policy));
+      return this;
+    }
+
+    /**
+     * Serve the routes of another router under a path prefix, e.g. its {@code /users/{id}} as
+     * {@code /api/v1/users/{id}}. Paths under the prefix that match none of its routes are answered
+     * by its fallback and invalid method handlers. CORS policies of this router don't apply to the
+     * mounted routes, give the mounted router its own.
+     *
+     * @param prefix a path without variables, such as {@code /api/v1}
+     * @throws IllegalArgumentException if the prefix is not such a path or already mounted, or the
+     *     router has routers for other hosts
+     */
+    public Builder mount(String prefix, Router router) {
+      Preconditions.checkArgument(
+          prefix.startsWith("/")
+              && !prefix.endsWith("/")
+              && UriTemplate.parse(prefix).getVariables().isEmpty(),
+          "Not a path to mount under: %s",
+          prefix);
+      Preconditions.checkArgument(
+          router.hosts.isEmpty(), "Can't mount a router with other hosts under %s", prefix);
+      if (mounted.putIfAbsent(prefix, router) != null) {
+        throw new IllegalArgumentException("There already is a router mounted under " + prefix);
+      }
+      return this;
+    }
+
+    /**
+     * Serve requests for the host with another router instead of this one, whatever their port.
+     * Requests for hosts without a router of their own are served by this one. Links to its named
+     * routes are built with that router.
+     *
+     * @param host a host name, or {@code *.example.com} for any host below {@code example.com}
+     * @throws IllegalArgumentException if the host already has a router, or the router has routers
+     *     for other hosts itself
+     */
+    public Builder host(String host, Router router) {
+      Preconditions.checkArgument(
+          router.hosts.isEmpty(), "Can't serve %s with a router with other hosts", host);
+      if (hosts.putIfAbsent(host.toLowerCase(Locale.ROOT), router) != null) {
+        throw new IllegalArgumentException("There already is a router for " + host);
+      }
+      return this;
+    }
+
     public Router build() {
-      return new Router(paths, fallbackHandler, invalidMethodHandler);
+      ListMultimap<HttpMethod, HandlerHolder> routed = withMounted(withCors(withNegotiated()));
+      HandlerHolder[][] routes = new HandlerHolder[HttpMethod.values().length][];
+      for (HttpMethod method : HttpMethod.values()) {
+        List<HandlerHolder> methodRoutes = new ArrayList<>(routed.get(method));
+        //stable, so routes that are just as specific keep the order they were added in
+        methodRoutes.sort(
+            Comparator.comparing(holder -> holder.template, UriTemplate.precedence()));
+        routes[method.ordinal()] = methodRoutes.toArray(new HandlerHolder[0]);
+      }
+      Mount[] mounts =
+          mounted
+              .entrySet()
+              .stream()
+              .map(entry -> new Mount(entry.getKey(), entry.getValue()))
+              .sorted(Comparator.comparing((Mount mount) -> mount.prefix.length()).reversed())
+              .toArray(Mount[]::new);
+      return new Router(
+          routes,
+          withMountedNames(),
+          fallbackHandler,
+          invalidMethodHandler,
+          new HashMap<>(hosts),
+          mounts);
+    }
+
+    /** The routes with those of the mounted routers, their templates behind the prefix. */
+    private ListMultimap<HttpMethod, HandlerHolder> withMounted(
+        ListMultimap<HttpMethod, HandlerHolder> routes) {
+      if (mounted.isEmpty()) {
+        return routes;
+      }
+      ListMultimap<HttpMethod, HandlerHolder> result = ArrayListMultimap.create(routes);
+      for (Map.Entry<String, Router> mount : mounted.entrySet()) {
+        String prefix = mount.getKey();
+        for (HttpMethod method : HttpMethod.values()) {
+          for (HandlerHolder holder : mount.getValue().routes[method.ordinal()]) {
+            result.put(
+                method,
+                new HandlerHolder(
+                    prefixed(prefix, holder.template),
+                    holder.handler,
+                    holder.mount != null ? prefix + holder.mount : prefix));
+          }
+        }
+      }
+      return result;
+    }
+
+    private Map<String, UriTemplate> withMountedNames() {
+      Map<String, UriTemplate> result = new HashMap<>(names);
+      for (Map.Entry<String, Router> mount : mounted.entrySet()) {
+        for (Map.Entry<String, UriTemplate> name : mount.getValue().names.entrySet()) {
+          if (result.putIfAbsent(name.getKey(), prefixed(mount.getKey(), name.getValue()))
+              != null) {
+            throw new IllegalArgumentException("There already is a route named " + name.getKey());
+          }
+        }
+      }
+      return result;
+    }
+
+    private static UriTemplate prefixed(String prefix, UriTemplate template) {
+      String path = template.getTemplate();
+      if (path.equals("/") || path.isEmpty()) {
+        return UriTemplate.parse(prefix);
+      }
+      return UriTemplate.parse(path.startsWith("/") ? prefix + path : prefix + "/" + path);
+    }
+
+    /** The routes with a dispatcher for each template whose routes serve media types. */
+    private ListMultimap<HttpMethod, HandlerHolder> withNegotiated() {
+      if (negotiated.isEmpty()) {
+        return paths;
+      }
+      ListMultimap<HttpMethod, HandlerHolder> result = ArrayListMultimap.create(paths);
+      for (Map.Entry<HttpMethod, Map<String, MediaTypeDispatcher.Builder>> method :
+          negotiated.entrySet()) {
+        for (Map.Entry<String, MediaTypeDispatcher.Builder> route : method.getValue().entrySet()) {
+          result.put(
+              method.getKey(),
+              new HandlerHolder(UriTemplate.parse(route.getKey()), route.getValue().build()));
+        }
+      }
+      return result;
+    }
+
+    /**
+     * The routes with their CORS policy applied. The headers of each template are computed once
+     * here, and templates without an {@code OPTIONS} route get one for their preflights.
+     */
+    private ListMultimap<HttpMethod, HandlerHolder> withCors(
+        ListMultimap<HttpMethod, HandlerHolder> routes) {
+      if (cors == null && corsByTemplate.isEmpty()) {
+        return routes;
+      }
+      Map<String, UriTemplate> templates = new LinkedHashMap<>();
+      Map<String, Set<HttpMethod>> methods = new HashMap<>();
+      for (Map.Entry<HttpMethod, HandlerHolder> route : routes.entries()) {
+        String template = route.getValue().template.getTemplate();
+        templates.putIfAbsent(template, route.getValue().template);
+        methods
+            .computeIfAbsent(template, t -> EnumSet.noneOf(HttpMethod.class))
+            .add(route.getKey());
+      }
+      for (String template : corsByTemplate.keySet()) {
+        if (!templates.containsKey(template)) {
+          throw new IllegalArgumentException("There is no route for the CORS template " + template);
+        }
+      }
+
+      Map<String, HttpFilter> filters = new LinkedHashMap<>();
+      for (String template : templates.keySet()) {
+        CorsPolicy policy = corsByTemplate.getOrDefault(template, cors);
+        if (policy != null) {
+          filters.put(template, policy.forMethods(methods.get(template)));
+        }
+      }
+      ListMultimap<HttpMethod, HandlerHolder> result = ArrayListMultimap.create();
+      for (Map.Entry<HttpMethod, HandlerHolder> route : routes.entries()) {
+        HandlerHolder holder = route.getValue();
+        HttpFilter filter = filters.get(holder.template.getTemplate());
+        result.put(
+            route.getKey(),
+            filter == null
+                ? holder
+                : new HandlerHolder(holder.template, filter.handle(holder.handler)));
+      }
+      for (Map.Entry<String, HttpFilter> filter : filters.entrySet()) {
+        if (!methods.get(filter.getKey()).contains(HttpMethod.OPTIONS)) {
+          //answer what would otherwise have been a 405
+          HttpHandler preflight = filter.getValue().handle(invalidMethodHandler);
+          result.put(
+              HttpMethod.OPTIONS, new HandlerHolder(templates.get(filter.getKey()), preflight));
+        }
+      }
+      return result;
     }
   }
 
   private static final class HandlerHolder {
     private final UriTemplate template;
     private final HttpHandler handler;
+    @Nullable private final String mount;
 
     private HandlerHolder(UriTemplate template, HttpHandler handler) {
+      this(template, handler, null);
+    }
+
+    private HandlerHolder(UriTemplate template, HttpHandler handler, @Nullable String mount) {
       this.template = template;
       this.handler = handler;
+      this.mount = mount;
+    }
+  }
+
+  private static final class Mount {
+    private final String prefix;
+    private final Router router;
+
+    private Mount(String prefix, Router router) {
+      this.prefix = prefix;
+      this.router = router;
     }
   }
 }
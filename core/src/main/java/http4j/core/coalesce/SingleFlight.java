@@ -0,0 +1,291 @@
+package http4j.core.coalesce;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import http4j.core.HttpFilter;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collapses identical concurrent {@code GET} and {@code HEAD} requests into one call of the
+ * handler. The first request for a key runs the handler and reads the response body into memory;
+ * every request for the same key that arrives meanwhile waits for it and gets its own copy of the
+ * response, with a body stream of its own.
+ *
+ * <p>The {@code Authorization} and {@code Cookie} headers are always part of the default key, so
+ * requests of different users are never collapsed. Responses that set a cookie or are marked {@code
+ * Cache-Control: private} or {@code no-store} are not shared whatever the key.
+ *
+ * <p>When the handler throws, every waiter fails with the same cause, wrapped in an {@link
+ * UncheckedExecutionException}. A waiter that gives up after the timeout is answered with a 504.
+ * Responses too large to buffer, or event streams, are not shared either: the waiters then call the
+ * handler themselves.
+ *
+ * <pre>{@code
+ * HttpHandler handler =
+ *     SingleFlight.builder().varyBy("Accept").build().handle(router);
+ * }</pre>
+ */
+public final class SingleFlight implements HttpFilter {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SingleFlight.class);
+
+  //completes the flight of a response the waiters have to fetch themselves
+  private static final Shared NOT_SHARED = new Shared(0, ImmutableListMultimap.of(), new byte[0]);
+
+  //part of every default key, whatever the headers it varies by
+  private static final String[] CREDENTIALS = {"authorization", "cookie"};
+
+  private final Function<HttpRequest, ?> key;
+  private final long timeoutNanos;
+  private final int maxBodySize;
+
+  private final ConcurrentHashMap<Object, CompletableFuture<Shared>> flights =
+      new ConcurrentHashMap<>();
+  private final LongAdder coalesced = new LongAdder();
+
+  private SingleFlight(Builder builder) {
+    this.key =
+        builder.key != null
+            ? builder.key
+            : byRequest(
+                Stream.concat(Arrays.stream(CREDENTIALS), Arrays.stream(builder.varyBy))
+                    .distinct()
+                    .toArray(String[]::new));
+    this.timeoutNanos = builder.timeout.toNanos();
+    this.maxBodySize = builder.maxBodySize;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Key requests by method, URI and the values of the given headers. */
+  private static Function<HttpRequest, String> byRequest(String[] headers) {
+    return request -> {
+      StringBuilder key = new StringBuilder();
+      key.append(request.method().name()).append(' ').append(request.uri());
+      for (String header : headers) {
+        key.append('\n').append(header).append(':');
+        for (String value : request.headers().get(header)) {
+          key.append(value).append(',');
+        }
+      }
+      return key.toString();
+    };
+  }
+
+  @Override
+  public HttpHandler handle(HttpHandler handler) {
+    return request -> {
+      if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+        return handler.handle(request);
+      }
+      Object name = key.apply(request);
+      if (name == null) {
+        return handler.handle(request);
+      }
+      CompletableFuture<Shared> flight = new CompletableFuture<>();
+      CompletableFuture<Shared> leader = flights.putIfAbsent(name, flight);
+      if (leader != null) {
+        coalesced.increment();
+        return await(leader, handler, request);
+      }
+      try {
+        return lead(flight, handler, request);
+      } finally {
+        flights.remove(name, flight);
+      }
+    };
+  }
+
+  /** The number of requests that were answered from another request's response so far. */
+  public long coalescedRequests() {
+    return coalesced.sum();
+  }
+
+  /** The number of keys with a request running the handler right now. */
+  public int inFlight() {
+    return flights.size();
+  }
+
+  private HttpResponse lead(
+      CompletableFuture<Shared> flight, HttpHandler handler, HttpRequest request) {
+    HttpResponse response;
+    try {
+      response = handler.handle(request);
+    } catch (RuntimeException | Error e) {
+      flight.completeExceptionally(e);
+      throw e;
+    }
+    if (!isShareable(response)) {
+      flight.complete(NOT_SHARED);
+      return response;
+    }
+    byte[] body;
+    try {
+      //one byte more than allowed, to tell a body that just fits from one that is too large
+      body = ByteStreams.toByteArray(ByteStreams.limit(response.body(), maxBodySize + 1L));
+    } catch (IOException e) {
+      flight.completeExceptionally(e);
+      Closeables.closeQuietly(response.body());
+      throw new UncheckedIOException(e);
+    }
+    if (body.length > maxBodySize) {
+      flight.complete(NOT_SHARED);
+      //hand the leader what was read so far followed by the rest
+      InputStream rest = new SequenceInputStream(new ByteArrayInputStream(body), response.body());
+      return response.body(rest, response.length().orElse(null));
+    }
+    //all of it is in memory now, every request gets a copy instead
+    Closeables.closeQuietly(response.body());
+    Shared shared = new Shared(response.status(), response.headers(), body);
+    flight.complete(shared);
+    return shared.response();
+  }
+
+  private HttpResponse await(
+      CompletableFuture<Shared> leader, HttpHandler handler, HttpRequest request) {
+    Shared shared;
+    try {
+      shared = leader.get(timeoutNanos, TimeUnit.NANOSECONDS);
+    } catch (TimeoutException e) {
+      LOG.debug("Gave up waiting for the response to {} {}", request.method(), request.uri());
+      return HttpResponse.status(504).body("Timed out waiting for an identical request");
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return HttpResponse.status(503).body("Interrupted");
+    } catch (ExecutionException e) {
+      throw new UncheckedExecutionException(e.getCause());
+    }
+    return shared == NOT_SHARED ? handler.handle(request) : shared.response();
+  }
+
+  private boolean isShareable(HttpResponse response) {
+    Long length = response.length().orElse(null);
+    if (length != null && length > maxBodySize) {
+      return false;
+    }
+    //an event stream never ends, so it can't be read up front
+    Collection<String> type = response.headers().get(HttpHeaders.CONTENT_TYPE.toLowerCase());
+    if (!type.isEmpty() && type.iterator().next().toLowerCase().startsWith("text/event-stream")) {
+      return false;
+    }
+    return !isPrivate(response);
+  }
+
+  /** Whether the response is meant for the one client that asked for it. */
+  private static boolean isPrivate(HttpResponse response) {
+    Multimap<String, String> headers = response.headers();
+    if (headers.containsKey(HttpHeaders.SET_COOKIE.toLowerCase())) {
+      return true;
+    }
+    for (String value : headers.get(HttpHeaders.CACHE_CONTROL.toLowerCase())) {
+      for (String directive : value.split(",")) {
+        int equals = directive.indexOf('=');
+        String name = (equals < 0 ? directive : directive.substring(0, equals)).trim();
+        if (name.equalsIgnoreCase("private") || name.equalsIgnoreCase("no-store")) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /** A response read into memory, that any number of requests can get a copy of. */
+  private static final class Shared {
+
+    private final int status;
+    private final ImmutableListMultimap<String, String> headers;
+    private final byte[] body;
+
+    private Shared(int status, Multimap<String, String> headers, byte[] body) {
+      this.status = status;
+      this.headers = ImmutableListMultimap.copyOf(headers);
+      this.body = body;
+    }
+
+    private HttpResponse response() {
+      return new HttpResponse(
+          status,
+          new ByteArrayInputStream(body),
+          (long) body.length,
+          LinkedListMultimap.create(headers));
+    }
+  }
+
+  public static class Builder {
+
+    @Nullable private Function<HttpRequest, ?> key;
+    private String[] varyBy = new String[0];
+    private Duration timeout = Duration.ofSeconds(30);
+    private int maxBodySize = 1024 * 1024;
+
+    private Builder() {}
+
+    /**
+     * Headers whose values are part of the key besides the method, URI, {@code Authorization} and
+     * {@code Cookie}, e.g. those a response varies by. Ignored when a custom key is set.
+     */
+    public Builder varyBy(String... headers) {
+      this.varyBy =
+          Arrays.stream(headers).map(header -> header.toLowerCase()).toArray(String[]::new);
+      return this;
+    }
+
+    /**
+     * What makes requests identical, instead of the method, URI and headers. Null keys run alone.
+     * Unlike the default key, it is up to this one to keep the requests of different users apart.
+     */
+    public Builder key(Function<HttpRequest, ?> key) {
+      this.key = Objects.requireNonNull(key);
+      return this;
+    }
+
+    /** How long a request waits for an identical one before it is answered with a 504. */
+    public Builder timeout(Duration timeout) {
+      Preconditions.checkArgument(!timeout.isNegative(), "timeout must be >= 0");
+      this.timeout = timeout;
+      return this;
+    }
+
+    /** The largest response body shared, larger responses are fetched by every request. */
+    public Builder maxBodySize(int maxBodySize) {
+      Preconditions.checkArgument(maxBodySize >= 0, "maxBodySize must be >= 0");
+      this.maxBodySize = maxBodySize;
+      return this;
+    }
+
+    public SingleFlight build() {
+      return new SingleFlight(this);
+    }
+  }
+}
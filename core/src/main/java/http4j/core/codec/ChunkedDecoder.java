@@ -0,0 +1,124 @@
+package http4j.core.codec;
+
+import java.nio.ByteBuffer;
+import javax.annotation.Nullable;
+
+/**
+ * Incremental decoder for a chunked transfer-coded body (RFC 7230 4.1). Chunk extensions and
+ * trailers are read and discarded.
+ *
+ * <pre class="code">
+ * ByteBuffer data;
+ * while ((data = decoder.decode(in)) != null) {
+ *   consume(data);
+ * }
+ * if (decoder.isDone()) ...
+ * </pre>
+ */
+public final class ChunkedDecoder {
+
+  private static final int MAX_LINE = 8 * 1024;
+
+  private enum State {
+    SIZE,
+    EXTENSION,
+    DATA,
+    DATA_END,
+    TRAILER,
+    DONE
+  }
+
+  private State state = State.SIZE;
+  private long remaining;
+  private int digits;
+  private int lineLength;
+
+  /**
+   * Decode the next piece of body data from the buffer.
+   *
+   * @param in the encoded bytes, in read mode
+   * @return a view of the next decoded bytes, sharing content with {@code in}; {@code null} if
+   *     {@code in} has no more data to offer or the body is complete
+   * @throws HttpCodecException if the encoding is malformed
+   */
+  @Nullable
+  public ByteBuffer decode(ByteBuffer in) {
+    while (in.hasRemaining() && state != State.DONE) {
+      switch (state) {
+        case SIZE:
+          readSize(in.get());
+          break;
+        case EXTENSION:
+          if (in.get() == '\n') {
+            endSizeLine();
+          } else if (++lineLength > MAX_LINE) {
+            throw new HttpCodecException(400, "Chunk extension too long");
+          }
+          break;
+        case DATA:
+          int length = (int) Math.min(remaining, in.remaining());
+          ByteBuffer data = in.slice();
+          data.limit(length);
+          in.position(in.position() + length);
+          remaining -= length;
+          if (remaining == 0) {
+            state = State.DATA_END;
+          }
+          return data;
+        case DATA_END:
+          byte b = in.get();
+          if (b == '\n') {
+            state = State.SIZE;
+          } else if (b != '\r') {
+            throw new HttpCodecException(400, "Missing CRLF after chunk data");
+          }
+          break;
+        case TRAILER:
+          byte t = in.get();
+          if (t == '\n') {
+            if (lineLength == 0) {
+              state = State.DONE;
+            }
+            lineLength = 0;
+          } else if (t != '\r' && ++lineLength > MAX_LINE) {
+            throw new HttpCodecException(400, "Trailer too long");
+          }
+          break;
+        default:
+          throw new AssertionError(state);
+      }
+    }
+    return null;
+  }
+
+  /** Whether the last chunk and trailers have been read. */
+  public boolean isDone() {
+    return state == State.DONE;
+  }
+
+  private void readSize(byte b) {
+    int digit = Character.digit(b, 16);
+    if (digit >= 0) {
+      if (++digits > 15) {
+        throw new HttpCodecException(400, "Chunk size too large");
+      }
+      remaining = remaining * 16 + digit;
+    } else if (b == ';' || b == ' ' || b == '\t') {
+      state = State.EXTENSION;
+      lineLength = 0;
+    } else if (b == '\n') {
+      endSizeLine();
+    } else if (b != '\r') {
+      throw new HttpCodecException(400, "Invalid chunk size");
+    }
+  }
+
+  private void endSizeLine() {
+    if (digits == 0) {
+      throw new HttpCodecException(400, "Missing chunk size");
+    }
+    digits = 0;
+    lineLength = 0;
+    state = remaining == 0 ? State.TRAILER : State.DATA;
+  }
+}
@@ -0,0 +1,152 @@
+package http4j.core.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/** Encodes HTTP/1.1 heads and chunk framing to bytes. */
+public final class Http1Encoder {
+
+  /** The last-chunk with no trailers that ends a chunked body. */
+  public static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  /** The line ending that follows the data of every chunk. */
+  public static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Http1Encoder() {}
+
+  /** Encode a response status line and headers, including the blank line that ends the head. */
+  public static byte[] responseHead(
+      String version, int status, Iterable<Map.Entry<String, String>> headers) {
+    StringBuilder head = new StringBuilder(256);
+    head.append(version).append(' ').append(status).append(' ').append(reasonPhrase(status));
+    return finish(head, headers);
+  }
+
+  /** Encode a request line and headers, including the blank line that ends the head. */
+  public static byte[] requestHead(
+      String method, String target, Iterable<Map.Entry<String, String>> headers) {
+    StringBuilder head = new StringBuilder(256);
+    head.append(method).append(' ').append(target).append(" HTTP/1.1");
+    return finish(head, headers);
+  }
+
+  /** The size line that precedes a chunk of the given length. */
+  public static byte[] chunkHeader(int length) {
+    byte[] digits = new byte[10];
+    int position = digits.length;
+    digits[--position] = '\n';
+    digits[--position] = '\r';
+    int value = length;
+    do {
+      digits[--position] = (byte) HEX[value & 0xF];
+      value >>>= 4;
+    } while (value != 0);
+    byte[] header = new byte[digits.length - position];
+    System.arraycopy(digits, position, header, 0, header.length);
+    return header;
+  }
+
+  /** The standard reason phrase for a status code, or an empty string when unknown. */
+  public static String reasonPhrase(int status) {
+    switch (status) {
+      case 100:
+        return "Continue";
+      case 101:
+        return "Switching Protocols";
+      case 200:
+        return "OK";
+      case 201:
+        return "Created";
+      case 202:
+        return "Accepted";
+      case 204:
+        return "No Content";
+      case 206:
+        return "Partial Content";
+      case 301:
+        return "Moved Permanently";
+      case 302:
+        return "Found";
+      case 303:
+        return "See Other";
+      case 304:
+        return "Not Modified";
+      case 307:
+        return "Temporary Redirect";
+      case 308:
+        return "Permanent Redirect";
+      case 400:
+        return "Bad Request";
+      case 401:
+        return "Unauthorized";
+      case 403:
+        return "Forbidden";
+      case 404:
+        return "Not Found";
+      case 405:
+        return "Method Not Allowed";
+      case 406:
+        return "Not Acceptable";
+      case 408:
+        return "Request Timeout";
+      case 409:
+        return "Conflict";
+      case 411:
+        return "Length Required";
+      case 413:
+        return "Payload Too Large";
+      case 414:
+        return "URI Too Long";
+      case 415:
+        return "Unsupported Media Type";
+      case 429:
+        return "Too Many Requests";
+      case 431:
+        return "Request Header Fields Too Large";
+      case 500:
+        return "Internal Server Error";
+      case 501:
+        return "Not Implemented";
+      case 502:
+        return "Bad Gateway";
+      case 503:
+        return "Service Unavailable";
+      case 504:
+        return "Gateway Timeout";
+      case 505:
+        return "HTTP Version Not Supported";
+      default:
+        return "";
+    }
+  }
+
+  private static byte[] finish(StringBuilder head, Iterable<Map.Entry<String, String>> headers) {
+    head.append("\r\n");
+    for (Map.Entry<String, String> header : headers) {
+      String name = header.getKey();
+      String value = header.getValue();
+      checkHeader(name, value);
+      head.append(name).append(": ").append(value).append("\r\n");
+    }
+    head.append("\r\n");
+    return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  /** Refuse to write anything that would let a header value start a new header or message. */
+  private static void checkHeader(String name, String value) {
+    for (int i = 0; i < name.length(); i++) {
+      char c = name.charAt(i);
+      if (c <= ' ' || c == ':' || c >= 0x7F) {
+        throw new IllegalArgumentException("Invalid header name " + name);
+      }
+    }
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '\r' || c == '\n') {
+        throw new IllegalArgumentException("Line break in value of header " + name);
+      }
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package http4j.core.codec;
+
+/**
+ * Thrown when bytes read off the wire are not valid HTTP/1.1. Carries the status code a server
+ * should answer with before closing the connection.
+ */
+public final class HttpCodecException extends RuntimeException {
+
+  private final int status;
+
+  public HttpCodecException(int status, String message) {
+    super(message);
+    this.status = status;
+  }
+
+  /** The http status code that best describes the problem, ex. 400 or 431 */
+  public int status() {
+    return status;
+  }
+}
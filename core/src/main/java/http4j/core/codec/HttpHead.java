@@ -0,0 +1,164 @@
+package http4j.core.codec;
+
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.net.HttpHeaders;
+import http4j.core.util.HeaderValues;
+import java.util.Map;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * The start line and headers of an HTTP/1.x message, as parsed by {@link HttpHeadParser}. Requests
+ * have a method, target and version; responses have a version, status and reason.
+ */
+@Immutable
+public final class HttpHead {
+
+  @Nullable private final String method;
+  @Nullable private final String target;
+  private final String version;
+  private final int status;
+  @Nullable private final String reason;
+  private final ListMultimap<String, String> headers;
+
+  private HttpHead(
+      @Nullable String method,
+      @Nullable String target,
+      String version,
+      int status,
+      @Nullable String reason,
+      ListMultimap<String, String> headers) {
+    this.method = method;
+    this.target = target;
+    this.version = version;
+    this.status = status;
+    this.reason = reason;
+    this.headers = headers;
+  }
+
+  static HttpHead request(
+      String method, String target, String version, ListMultimap<String, String> headers) {
+    return new HttpHead(method, target, version, -1, null, headers);
+  }
+
+  static HttpHead response(
+      String version, int status, String reason, ListMultimap<String, String> headers) {
+    return new HttpHead(null, null, version, status, reason, headers);
+  }
+
+  /** The request method exactly as sent, ex. "GET". {@code null} for responses. */
+  @Nullable
+  public String method() {
+    return method;
+  }
+
+  /** The request target, ex. "/echo/hi?a=b". {@code null} for responses. */
+  @Nullable
+  public String target() {
+    return target;
+  }
+
+  /** The protocol version, ex. "HTTP/1.1" */
+  public String version() {
+    return version;
+  }
+
+  /** The response status code. -1 for requests. */
+  public int status() {
+    return status;
+  }
+
+  /** The response reason phrase. {@code null} for requests. */
+  @Nullable
+  public String reason() {
+    return reason;
+  }
+
+  /** The headers in the order they were received, with their original case. */
+  public ListMultimap<String, String> headers() {
+    return Multimaps.unmodifiableListMultimap(headers);
+  }
+
+  /** The first value of the header ignoring case, or {@code null} if absent. */
+  @Nullable
+  public String header(String name) {
+    for (Map.Entry<String, String> entry : headers.entries()) {
+      if (entry.getKey().equalsIgnoreCase(name)) {
+        return entry.getValue();
+      }
+    }
+    return null;
+  }
+
+  /** Whether the message is HTTP/1.0 (or older) rather than HTTP/1.1. */
+  public boolean isHttp10() {
+    return !"HTTP/1.1".equals(version);
+  }
+
+  /** Whether the body uses chunked transfer encoding. */
+  public boolean isChunked() {
+    String encoding = header(HttpHeaders.TRANSFER_ENCODING);
+    return encoding != null && encoding.toLowerCase().trim().endsWith("chunked");
+  }
+
+  /**
+   * The declared content length.
+   *
+   * @return the length, or -1 if there is no Content-Length header
+   * @throws HttpCodecException if the header is not a valid length, or is repeated with different
+   *     values
+   */
+  public long contentLength() {
+    long length = -1;
+    for (Map.Entry<String, String> entry : headers.entries()) {
+      if (entry.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)) {
+        long value = parseLength(entry.getValue());
+        if (length != -1 && length != value) {
+          throw new HttpCodecException(400, "Conflicting Content-Length headers");
+        }
+        length = value;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Whether the connection can be reused after this message. HTTP/1.1 defaults to keep-alive,
+   * HTTP/1.0 has to ask for it.
+   */
+  public boolean isKeepAlive() {
+    String connection = header(HttpHeaders.CONNECTION);
+    if (connection != null) {
+      String value = connection.toLowerCase();
+      if (value.contains("close")) {
+        return false;
+      }
+      if (value.contains("keep-alive")) {
+        return true;
+      }
+    }
+    return !isHttp10();
+  }
+
+  /** Whether the client is waiting for a {@code 100 Continue} before sending its body. */
+  public boolean expectsContinue() {
+    String expect = header(HttpHeaders.EXPECT);
+    return expect != null && expect.equalsIgnoreCase("100-continue");
+  }
+
+  private static long parseLength(String value) {
+    long length = HeaderValues.parseLength(value);
+    if (length < 0) {
+      throw new HttpCodecException(400, "Invalid Content-Length " + value);
+    }
+    return length;
+  }
+
+  @Override
+  public String toString() {
+    return method != null
+        ? method + " " + target + " " + version
+        : version + " " + status + " " + reason;
+  }
+}
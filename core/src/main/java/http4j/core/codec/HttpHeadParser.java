@@ -0,0 +1,173 @@
+package http4j.core.codec;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import http4j.core.HttpMethod;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.annotation.Nullable;
+
+/**
+ * Incremental parser for the start line and headers of an HTTP/1.x message. Bytes can arrive in any
+ * number of pieces; {@link #parse(ByteBuffer)} consumes what it is given and returns the head once
+ * the blank line ending it has been seen, leaving any following body bytes in the buffer.
+ *
+ * <p>A parser is not thread safe and is meant to be reused for every message on a connection.
+ */
+public final class HttpHeadParser {
+
+  /** Which kind of start line to expect. */
+  public enum Kind {
+    REQUEST,
+    RESPONSE
+  }
+
+  private final Kind kind;
+  private final int maxHeadSize;
+
+  private char[] line = new char[128];
+  private int lineLength;
+  private int headSize;
+
+  @Nullable private String[] startLine;
+  @Nullable private ListMultimap<String, String> headers;
+
+  public HttpHeadParser(Kind kind, int maxHeadSize) {
+    this.kind = kind;
+    this.maxHeadSize = maxHeadSize;
+  }
+
+  /**
+   * Consume bytes from the buffer until a complete head has been read or the buffer is empty.
+   *
+   * @param in the bytes to read, in read mode
+   * @return the head once complete; {@code null} if more bytes are needed
+   * @throws HttpCodecException if the bytes are not a valid HTTP/1.x head or it is too large
+   */
+  @Nullable
+  public HttpHead parse(ByteBuffer in) {
+    while (in.hasRemaining()) {
+      byte b = in.get();
+      if (++headSize > maxHeadSize) {
+        throw new HttpCodecException(
+            kind == Kind.REQUEST ? 431 : 502, "Head larger than " + maxHeadSize + " bytes");
+      }
+      if (b != '\n') {
+        if (lineLength == line.length) {
+          line = Arrays.copyOf(line, line.length * 2);
+        }
+        line[lineLength++] = (char) (b & 0xFF);
+        continue;
+      }
+
+      int length = lineLength;
+      if (length > 0 && line[length - 1] == '\r') {
+        length--;
+      }
+      lineLength = 0;
+      if (startLine == null) {
+        //RFC 7230 3.5: ignore at least one empty line before the request-line
+        if (length > 0) {
+          startLine = parseStartLine(new String(line, 0, length));
+          headers = LinkedListMultimap.create();
+        } else {
+          headSize = 0;
+        }
+      } else if (length == 0) {
+        HttpHead head = build();
+        reset();
+        return head;
+      } else {
+        parseHeader(length);
+      }
+    }
+    return null;
+  }
+
+  /** Whether part of a head has been read but not yet completed. */
+  public boolean inProgress() {
+    return headSize > 0;
+  }
+
+  /** Discard any partially parsed head. */
+  public void reset() {
+    lineLength = 0;
+    headSize = 0;
+    startLine = null;
+    headers = null;
+  }
+
+  private String[] parseStartLine(String value) {
+    int first = value.indexOf(' ');
+    int second = first < 0 ? -1 : value.indexOf(' ', first + 1);
+    if (kind == Kind.REQUEST) {
+      if (first <= 0 || second <= first + 1 || value.indexOf(' ', second + 1) >= 0) {
+        throw new HttpCodecException(400, "Malformed request line");
+      }
+      String version = value.substring(second + 1);
+      checkVersion(version);
+      //known methods are shared constants, read from the chars the line was built from
+      HttpMethod known = HttpMethod.parse(line, 0, first);
+      String method = known != null ? known.name() : value.substring(0, first);
+      return new String[] {method, value.substring(first + 1, second), version};
+    }
+    if (first <= 0) {
+      throw new HttpCodecException(502, "Malformed status line");
+    }
+    String version = value.substring(0, first);
+    checkVersion(version);
+    String status = second < 0 ? value.substring(first + 1) : value.substring(first + 1, second);
+    String reason = second < 0 ? "" : value.substring(second + 1);
+    return new String[] {version, status, reason};
+  }
+
+  private void checkVersion(String version) {
+    if (!version.startsWith("HTTP/1.")) {
+      throw new HttpCodecException(
+          kind == Kind.REQUEST ? 505 : 502, "Unsupported version " + version);
+    }
+  }
+
+  private void parseHeader(int length) {
+    if (line[0] == ' ' || line[0] == '\t') {
+      //obsolete line folding, RFC 7230 3.2.4 allows rejecting it
+      throw new HttpCodecException(400, "Folded header lines are not supported");
+    }
+    int colon = -1;
+    for (int i = 0; i < length; i++) {
+      char c = line[i];
+      if (c == ':') {
+        colon = i;
+        break;
+      }
+      if (c == ' ' || c == '\t') {
+        throw new HttpCodecException(400, "Whitespace in header name");
+      }
+    }
+    if (colon <= 0) {
+      throw new HttpCodecException(400, "Malformed header line");
+    }
+    int start = colon + 1;
+    int end = length;
+    while (start < end && (line[start] == ' ' || line[start] == '\t')) {
+      start++;
+    }
+    while (end > start && (line[end - 1] == ' ' || line[end - 1] == '\t')) {
+      end--;
+    }
+    headers.put(new String(line, 0, colon), new String(line, start, end - start));
+  }
+
+  private HttpHead build() {
+    if (kind == Kind.REQUEST) {
+      return HttpHead.request(startLine[0], startLine[1], startLine[2], headers);
+    }
+    int status;
+    try {
+      status = Integer.parseInt(startLine[1]);
+    } catch (NumberFormatException e) {
+      throw new HttpCodecException(502, "Malformed status " + startLine[1]);
+    }
+    return HttpHead.response(startLine[0], status, startLine[2], headers);
+  }
+}
@@ -0,0 +1,140 @@
+package http4j.core.codec.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Decodes HPACK header blocks, RFC 7541. One decoder belongs to one connection and must see every
+ * header block in the order it arrived, since blocks update its dynamic table.
+ */
+public final class HpackDecoder {
+
+  private final HpackTable table;
+  private final int maxTableSize;
+  private final int maxHeaderListSize;
+
+  /**
+   * @param maxTableSize the dynamic table size this side advertised, {@link
+   *     Http2#DEFAULT_HEADER_TABLE_SIZE} unless changed in SETTINGS
+   * @param maxHeaderListSize the most header bytes accepted in one block, counted as in
+   *     SETTINGS_MAX_HEADER_LIST_SIZE
+   */
+  public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+    this.table = new HpackTable(maxTableSize);
+    this.maxTableSize = maxTableSize;
+    this.maxHeaderListSize = maxHeaderListSize;
+  }
+
+  /**
+   * Decode a complete header block, passing each header to the sink in order.
+   *
+   * @throws Http2Exception with COMPRESSION_ERROR if the block is malformed, after which the
+   *     connection can not be used, or with ENHANCE_YOUR_CALM if the headers are too large
+   */
+  public void decode(ByteBuffer block, BiConsumer<String, String> sink) {
+    int listSize = 0;
+    boolean headersSeen = false;
+    while (block.hasRemaining()) {
+      int first = block.get(block.position()) & 0xFF;
+      String name;
+      String value;
+      if ((first & 0x80) != 0) {
+        //indexed header field
+        String[] field = table.get(readInt(block, 7));
+        name = field[0];
+        value = field[1];
+      } else if ((first & 0x40) != 0) {
+        //literal with incremental indexing
+        name = readName(block, 6);
+        value = readString(block);
+        table.add(name, value);
+      } else if ((first & 0x20) != 0) {
+        //dynamic table size update, only allowed before the first header
+        if (headersSeen) {
+          throw Http2Exception.compression("Table size update after a header");
+        }
+        int size = readInt(block, 5);
+        if (size > maxTableSize) {
+          throw Http2Exception.compression("Table size update over the advertised maximum");
+        }
+        table.resize(size);
+        continue;
+      } else {
+        //literal without indexing, or never indexed
+        name = readName(block, 4);
+        value = readString(block);
+      }
+      headersSeen = true;
+      listSize += name.length() + value.length() + 32;
+      if (listSize > maxHeaderListSize) {
+        throw Http2Exception.connection(Http2.ENHANCE_YOUR_CALM, "Header list too large");
+      }
+      sink.accept(name, value);
+    }
+  }
+
+  private String readName(ByteBuffer block, int prefix) {
+    int index = readInt(block, prefix);
+    return index == 0 ? readString(block) : table.get(index)[0];
+  }
+
+  private static String readString(ByteBuffer block) {
+    if (!block.hasRemaining()) {
+      throw Http2Exception.compression("Truncated header block");
+    }
+    boolean huffman = (block.get(block.position()) & 0x80) != 0;
+    int length = readInt(block, 7);
+    if (length > block.remaining()) {
+      throw Http2Exception.compression("Truncated header block");
+    }
+    if (huffman) {
+      return new String(Huffman.decode(block, length), StandardCharsets.ISO_8859_1);
+    }
+    String value;
+    if (block.hasArray()) {
+      value =
+          new String(
+              block.array(),
+              block.arrayOffset() + block.position(),
+              length,
+              StandardCharsets.ISO_8859_1);
+      block.position(block.position() + length);
+    } else {
+      byte[] raw = new byte[length];
+      block.get(raw);
+      value = new String(raw, StandardCharsets.ISO_8859_1);
+    }
+    return value;
+  }
+
+  /** An integer with an N-bit prefix, RFC 7541 5.1 */
+  static int readInt(ByteBuffer block, int prefix) {
+    if (!block.hasRemaining()) {
+      throw Http2Exception.compression("Truncated header block");
+    }
+    int max = (1 << prefix) - 1;
+    int value = block.get() & max;
+    if (value < max) {
+      return value;
+    }
+    int shift = 0;
+    while (true) {
+      if (!block.hasRemaining()) {
+        throw Http2Exception.compression("Truncated integer");
+      }
+      int b = block.get() & 0xFF;
+      if (shift > 28 || (shift == 28 && (b & 0x7F) > 7)) {
+        throw Http2Exception.compression("Integer overflow");
+      }
+      value += (b & 0x7F) << shift;
+      if (value < 0) {
+        throw Http2Exception.compression("Integer overflow");
+      }
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+}
@@ -0,0 +1,70 @@
+package http4j.core.codec.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Encodes HPACK header blocks using only the static table. Nothing is ever added to the dynamic
+ * table, so the encoder keeps no state and can be used by many streams at once, and the peer's
+ * table size setting never matters.
+ */
+public final class HpackEncoder {
+
+  private HpackEncoder() {}
+
+  /** Encode the headers, in order, as one header block. */
+  public static byte[] encode(Iterable<? extends Map.Entry<String, String>> headers) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(128);
+    for (Map.Entry<String, String> header : headers) {
+      encode(header.getKey(), header.getValue(), out);
+    }
+    return out.toByteArray();
+  }
+
+  /** Append one header. The name must already be lower case. */
+  public static void encode(String name, String value, ByteArrayOutputStream out) {
+    Integer index = HpackTable.STATIC_FIELDS.get(name + '\0' + value);
+    if (index != null) {
+      writeInt(out, 0x80, 7, index);
+      return;
+    }
+    //literal without indexing, RFC 7541 6.2.2
+    Integer nameIndex = HpackTable.STATIC_NAMES.get(name);
+    if (nameIndex != null) {
+      writeInt(out, 0x00, 4, nameIndex);
+    } else {
+      writeInt(out, 0x00, 4, 0);
+      writeString(out, name);
+    }
+    writeString(out, value);
+  }
+
+  private static void writeString(ByteArrayOutputStream out, String value) {
+    byte[] raw = value.getBytes(StandardCharsets.ISO_8859_1);
+    int huffmanLength = Huffman.encodedLength(raw);
+    if (huffmanLength < raw.length) {
+      writeInt(out, 0x80, 7, huffmanLength);
+      Huffman.encode(raw, out);
+    } else {
+      writeInt(out, 0x00, 7, raw.length);
+      out.write(raw, 0, raw.length);
+    }
+  }
+
+  /** An integer with an N-bit prefix, RFC 7541 5.1 */
+  static void writeInt(ByteArrayOutputStream out, int flags, int prefix, int value) {
+    int max = (1 << prefix) - 1;
+    if (value < max) {
+      out.write(flags | value);
+      return;
+    }
+    out.write(flags | max);
+    value -= max;
+    while (value >= 0x80) {
+      out.write((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+}
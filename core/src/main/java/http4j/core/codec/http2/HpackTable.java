@@ -0,0 +1,166 @@
+package http4j.core.codec.http2;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.HashMap;
+import java.util.Map;
+
+/** The HPACK static table shared by every connection, and the per-connection dynamic table. */
+final class HpackTable {
+
+  /** 1-based, as in RFC 7541 Appendix A */
+  static final String[][] STATIC = {
+    {"", ""},
+    {":authority", ""},
+    {":method", "GET"},
+    {":method", "POST"},
+    {":path", "/"},
+    {":path", "/index.html"},
+    {":scheme", "http"},
+    {":scheme", "https"},
+    {":status", "200"},
+    {":status", "204"},
+    {":status", "206"},
+    {":status", "304"},
+    {":status", "400"},
+    {":status", "404"},
+    {":status", "500"},
+    {"accept-charset", ""},
+    {"accept-encoding", "gzip, deflate"},
+    {"accept-language", ""},
+    {"accept-ranges", ""},
+    {"accept", ""},
+    {"access-control-allow-origin", ""},
+    {"age", ""},
+    {"allow", ""},
+    {"authorization", ""},
+    {"cache-control", ""},
+    {"content-disposition", ""},
+    {"content-encoding", ""},
+    {"content-language", ""},
+    {"content-length", ""},
+    {"content-location", ""},
+    {"content-range", ""},
+    {"content-type", ""},
+    {"cookie", ""},
+    {"date", ""},
+    {"etag", ""},
+    {"expect", ""},
+    {"expires", ""},
+    {"from", ""},
+    {"host", ""},
+    {"if-match", ""},
+    {"if-modified-since", ""},
+    {"if-none-match", ""},
+    {"if-range", ""},
+    {"if-unmodified-since", ""},
+    {"last-modified", ""},
+    {"link", ""},
+    {"location", ""},
+    {"max-forwards", ""},
+    {"proxy-authenticate", ""},
+    {"proxy-authorization", ""},
+    {"range", ""},
+    {"referer", ""},
+    {"refresh", ""},
+    {"retry-after", ""},
+    {"server", ""},
+    {"set-cookie", ""},
+    {"strict-transport-security", ""},
+    {"transfer-encoding", ""},
+    {"user-agent", ""},
+    {"vary", ""},
+    {"via", ""},
+    {"www-authenticate", ""}
+  };
+
+  static final int STATIC_LENGTH = STATIC.length - 1;
+
+  // the lowest static index for a name, and for a name and value pair
+  static final Map<String, Integer> STATIC_NAMES;
+  static final Map<String, Integer> STATIC_FIELDS;
+
+  static {
+    Map<String, Integer> names = new HashMap<>();
+    Map<String, Integer> fields = new HashMap<>();
+    for (int i = STATIC_LENGTH; i > 0; i--) {
+      names.put(STATIC[i][0], i);
+      if (!STATIC[i][1].isEmpty()) {
+        fields.put(STATIC[i][0] + '\0' + STATIC[i][1], i);
+      }
+    }
+    STATIC_NAMES = ImmutableMap.copyOf(names);
+    STATIC_FIELDS = ImmutableMap.copyOf(fields);
+  }
+
+  // every entry costs its name and value plus 32 octets, RFC 7541 4.1
+  private static final int ENTRY_OVERHEAD = 32;
+
+  // a ring of entries, the newest at head - 1
+  private String[][] ring = new String[16][];
+  private int head;
+  private int count;
+  private int size;
+  private int maxSize;
+
+  HpackTable(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** The header at an index into the static table followed by the dynamic table. */
+  String[] get(int index) {
+    if (index <= 0) {
+      throw Http2Exception.compression("Invalid header index " + index);
+    }
+    if (index <= STATIC_LENGTH) {
+      return STATIC[index];
+    }
+    int dynamicIndex = index - STATIC_LENGTH - 1;
+    if (dynamicIndex >= count) {
+      throw Http2Exception.compression("Header index out of range " + index);
+    }
+    return ring[(head - 1 - dynamicIndex) & (ring.length - 1)];
+  }
+
+  void add(String name, String value) {
+    int entrySize = entrySize(name, value);
+    evict(maxSize - entrySize);
+    if (entrySize > maxSize) {
+      //an entry larger than the table just empties it
+      return;
+    }
+    if (count == ring.length) {
+      grow();
+    }
+    ring[head] = new String[] {name, value};
+    head = (head + 1) & (ring.length - 1);
+    count++;
+    size += entrySize;
+  }
+
+  void resize(int maxSize) {
+    this.maxSize = maxSize;
+    evict(maxSize);
+  }
+
+  private void evict(int target) {
+    while (size > target && count > 0) {
+      int oldest = (head - count) & (ring.length - 1);
+      size -= entrySize(ring[oldest][0], ring[oldest][1]);
+      ring[oldest] = null;
+      count--;
+    }
+  }
+
+  private void grow() {
+    String[][] larger = new String[ring.length * 2][];
+    for (int i = 0; i < count; i++) {
+      larger[i] = ring[(head - count + i) & (ring.length - 1)];
+    }
+    ring = larger;
+    head = count;
+  }
+
+  private static int entrySize(String name, String value) {
+    return name.length() + value.length() + ENTRY_OVERHEAD;
+  }
+}
@@ -0,0 +1,131 @@
+package http4j.core.codec.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** Constants and frame encoding for HTTP/2, RFC 7540. */
+public final class Http2 {
+
+  /** What a client sends first on a prior knowledge or upgraded connection */
+  public static final byte[] PREFACE =
+      "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  public static final int FRAME_HEADER_LENGTH = 9;
+
+  // frame types
+  public static final int DATA = 0x0;
+  public static final int HEADERS = 0x1;
+  public static final int PRIORITY = 0x2;
+  public static final int RST_STREAM = 0x3;
+  public static final int SETTINGS = 0x4;
+  public static final int PUSH_PROMISE = 0x5;
+  public static final int PING = 0x6;
+  public static final int GOAWAY = 0x7;
+  public static final int WINDOW_UPDATE = 0x8;
+  public static final int CONTINUATION = 0x9;
+
+  // frame flags
+  public static final int FLAG_END_STREAM = 0x1;
+  public static final int FLAG_ACK = 0x1;
+  public static final int FLAG_END_HEADERS = 0x4;
+  public static final int FLAG_PADDED = 0x8;
+  public static final int FLAG_PRIORITY = 0x20;
+
+  // settings
+  public static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+  public static final int SETTINGS_ENABLE_PUSH = 0x2;
+  public static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+  public static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+  public static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+  public static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+  // error codes
+  public static final int NO_ERROR = 0x0;
+  public static final int PROTOCOL_ERROR = 0x1;
+  public static final int INTERNAL_ERROR = 0x2;
+  public static final int FLOW_CONTROL_ERROR = 0x3;
+  public static final int SETTINGS_TIMEOUT = 0x4;
+  public static final int STREAM_CLOSED = 0x5;
+  public static final int FRAME_SIZE_ERROR = 0x6;
+  public static final int REFUSED_STREAM = 0x7;
+  public static final int CANCEL = 0x8;
+  public static final int COMPRESSION_ERROR = 0x9;
+  public static final int ENHANCE_YOUR_CALM = 0xb;
+
+  // defaults every connection starts with
+  public static final int DEFAULT_WINDOW_SIZE = 65535;
+  public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+  public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+  public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+  public static final int MAX_FRAME_SIZE_LIMIT = 16777215;
+
+  private Http2() {}
+
+  /** A frame with the given payload, header included, ready to be written. */
+  public static ByteBuffer frame(int type, int flags, int streamId, ByteBuffer payload) {
+    ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_LENGTH + payload.remaining());
+    writeHeader(frame, payload.remaining(), type, flags, streamId);
+    frame.put(payload.duplicate());
+    frame.flip();
+    return frame;
+  }
+
+  /** Just the 9 byte frame header, for payloads that are written separately. */
+  public static ByteBuffer frameHeader(int length, int type, int flags, int streamId) {
+    ByteBuffer header = ByteBuffer.allocate(FRAME_HEADER_LENGTH);
+    writeHeader(header, length, type, flags, streamId);
+    header.flip();
+    return header;
+  }
+
+  private static void writeHeader(ByteBuffer out, int length, int type, int flags, int streamId) {
+    out.put((byte) (length >>> 16));
+    out.put((byte) (length >>> 8));
+    out.put((byte) length);
+    out.put((byte) type);
+    out.put((byte) flags);
+    out.putInt(streamId & 0x7FFFFFFF);
+  }
+
+  public static ByteBuffer settings(int... idValuePairs) {
+    ByteBuffer payload = ByteBuffer.allocate(idValuePairs.length / 2 * 6);
+    for (int i = 0; i + 1 < idValuePairs.length; i += 2) {
+      payload.putShort((short) idValuePairs[i]);
+      payload.putInt(idValuePairs[i + 1]);
+    }
+    payload.flip();
+    return frame(SETTINGS, 0, 0, payload);
+  }
+
+  public static ByteBuffer settingsAck() {
+    return frameHeader(0, SETTINGS, FLAG_ACK, 0);
+  }
+
+  public static ByteBuffer windowUpdate(int streamId, int increment) {
+    ByteBuffer payload = ByteBuffer.allocate(4);
+    payload.putInt(increment);
+    payload.flip();
+    return frame(WINDOW_UPDATE, 0, streamId, payload);
+  }
+
+  public static ByteBuffer rstStream(int streamId, int errorCode) {
+    ByteBuffer payload = ByteBuffer.allocate(4);
+    payload.putInt(errorCode);
+    payload.flip();
+    return frame(RST_STREAM, 0, streamId, payload);
+  }
+
+  public static ByteBuffer goAway(int lastStreamId, int errorCode, String debug) {
+    byte[] data = debug.getBytes(StandardCharsets.UTF_8);
+    ByteBuffer payload = ByteBuffer.allocate(8 + data.length);
+    payload.putInt(lastStreamId);
+    payload.putInt(errorCode);
+    payload.put(data);
+    payload.flip();
+    return frame(GOAWAY, 0, 0, payload);
+  }
+
+  public static ByteBuffer pingAck(ByteBuffer opaque) {
+    return frame(PING, FLAG_ACK, 0, opaque);
+  }
+}
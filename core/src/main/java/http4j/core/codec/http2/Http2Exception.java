@@ -0,0 +1,43 @@
+package http4j.core.codec.http2;
+
+/**
+ * Thrown when a peer breaks the HTTP/2 protocol. A stream id of 0 means the whole connection is
+ * broken and has to be closed with a GOAWAY, otherwise only that stream is reset.
+ */
+public final class Http2Exception extends RuntimeException {
+
+  private final int errorCode;
+  private final int streamId;
+
+  public Http2Exception(int errorCode, int streamId, String message) {
+    super(message);
+    this.errorCode = errorCode;
+    this.streamId = streamId;
+  }
+
+  public static Http2Exception connection(int errorCode, String message) {
+    return new Http2Exception(errorCode, 0, message);
+  }
+
+  public static Http2Exception stream(int errorCode, int streamId, String message) {
+    return new Http2Exception(errorCode, streamId, message);
+  }
+
+  static Http2Exception compression(String message) {
+    return connection(Http2.COMPRESSION_ERROR, message);
+  }
+
+  /** One of the error codes in {@link Http2}, ex. {@link Http2#PROTOCOL_ERROR} */
+  public int errorCode() {
+    return errorCode;
+  }
+
+  /** The stream to reset, or 0 if the connection has to be closed */
+  public int streamId() {
+    return streamId;
+  }
+
+  public boolean isConnectionError() {
+    return streamId == 0;
+  }
+}
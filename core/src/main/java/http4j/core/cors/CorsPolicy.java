@@ -0,0 +1,343 @@
+package http4j.core.cors;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Sets;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpFilter;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import javax.annotation.Nullable;
+
+/**
+ * Which cross-origin requests browsers may make, following the CORS protocol. Preflight requests
+ * are answered by the policy itself, the handler is never called for them; other requests from an
+ * allowed origin have the {@code Access-Control-*} headers added to their response.
+ *
+ * <p>Everything that does not depend on the request, like the allowed methods and headers, is
+ * joined into header values once when the policy is applied to a route, so a preflight only copies
+ * them. Origins are looked up in a hash set: exact ones directly, and those of a wildcard pattern
+ * such as {@code https://*.example.com} by each parent domain of the origin in turn.
+ *
+ * <p>Usually given to {@link http4j.core.Router.Builder#cors(CorsPolicy)}, which also answers
+ * preflights for routes that have no {@code OPTIONS} handler and only lists the methods a route
+ * has.
+ *
+ * <pre>{@code
+ * CorsPolicy policy =
+ *     CorsPolicy.builder()
+ *         .allowOrigins("https://app.example.com", "https://*.example.org")
+ *         .allowMethods(HttpMethod.GET, HttpMethod.PUT)
+ *         .allowHeaders("Authorization", "Content-Type")
+ *         .maxAge(Duration.ofHours(1))
+ *         .build();
+ * }</pre>
+ */
+public final class CorsPolicy implements HttpFilter {
+
+  //what a simple cross-origin request may use without being allowed explicitly
+  private static final Set<HttpMethod> SIMPLE_METHODS =
+      Sets.immutableEnumSet(HttpMethod.GET, HttpMethod.HEAD, HttpMethod.POST);
+
+  private final boolean anyOrigin;
+  private final ImmutableSet<String> origins;
+  private final ImmutableSet<String> wildcards;
+  @Nullable private final Set<HttpMethod> methods;
+  private final boolean anyHeader;
+  private final ImmutableSet<String> headers;
+  private final String allowHeaders;
+  private final String exposeHeaders;
+  private final boolean credentials;
+  @Nullable private final Duration maxAge;
+
+  private CorsPolicy(Builder builder) {
+    this.anyOrigin = builder.anyOrigin;
+    this.origins = ImmutableSet.copyOf(builder.origins);
+    this.wildcards = ImmutableSet.copyOf(builder.wildcards);
+    this.methods = builder.methods.isEmpty() ? null : Sets.immutableEnumSet(builder.methods);
+    this.anyHeader = builder.anyHeader;
+    this.headers = ImmutableSet.copyOf(builder.headers);
+    this.allowHeaders = Joiner.on(", ").join(builder.headerNames);
+    this.exposeHeaders = Joiner.on(", ").join(builder.exposed);
+    this.credentials = builder.credentials;
+    this.maxAge = builder.maxAge;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Apply the policy to any request, allowing the methods it lists or just the simple ones. */
+  @Override
+  public HttpHandler handle(HttpHandler handler) {
+    return forMethods(methods != null ? methods : SIMPLE_METHODS).handle(handler);
+  }
+
+  /**
+   * Apply the policy to a route that has handlers for the given methods. Preflights only allow
+   * those of them the policy lists, or all of them if it lists none.
+   */
+  public HttpFilter forMethods(Set<HttpMethod> routed) {
+    Set<HttpMethod> allowed = EnumSet.noneOf(HttpMethod.class);
+    for (HttpMethod method : routed) {
+      if (method != HttpMethod.OPTIONS && (methods == null || methods.contains(method))) {
+        allowed.add(method);
+      }
+    }
+    return new Route(this, allowed);
+  }
+
+  /** Whether requests from the origin are allowed, e.g. {@code https://app.example.com}. */
+  public boolean allowsOrigin(String origin) {
+    if (anyOrigin) {
+      return true;
+    }
+    String normalized = origin.toLowerCase(Locale.ROOT);
+    if (origins.contains(normalized)) {
+      return true;
+    }
+    if (wildcards.isEmpty()) {
+      return false;
+    }
+    int host = normalized.indexOf("://");
+    if (host < 0) {
+      return false;
+    }
+    host += 3;
+    //https://a.b.example.com is looked up as https://*.b.example.com then https://*.example.com
+    String scheme = normalized.substring(0, host) + '*';
+    for (int dot = normalized.indexOf('.', host + 1);
+        dot > 0;
+        dot = normalized.indexOf('.', dot + 1)) {
+      if (wildcards.contains(scheme + normalized.substring(dot))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The policy applied to one route, with its response headers computed up front. */
+  private static final class Route implements HttpFilter {
+
+    private static final String PREFLIGHT_VARY =
+        "Origin, Access-Control-Request-Method, Access-Control-Request-Headers";
+
+    private final CorsPolicy policy;
+    private final Set<HttpMethod> allowed;
+    private final ImmutableListMultimap<String, String> preflightHeaders;
+    private final ImmutableListMultimap<String, String> responseHeaders;
+
+    private Route(CorsPolicy policy, Set<HttpMethod> allowed) {
+      this.policy = policy;
+      this.allowed = Sets.immutableEnumSet(allowed);
+
+      ImmutableListMultimap.Builder<String, String> preflight = ImmutableListMultimap.builder();
+      preflight.put(HttpHeaders.ACCESS_CONTROL_ALLOW_METHODS, Joiner.on(", ").join(allowed));
+      if (!policy.anyHeader && !policy.allowHeaders.isEmpty()) {
+        preflight.put(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, policy.allowHeaders);
+      }
+      if (policy.maxAge != null) {
+        preflight.put(
+            HttpHeaders.ACCESS_CONTROL_MAX_AGE, Long.toString(policy.maxAge.getSeconds()));
+      }
+      if (policy.credentials) {
+        preflight.put(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+      }
+      preflight.put(HttpHeaders.VARY, PREFLIGHT_VARY);
+      this.preflightHeaders = preflight.build();
+
+      ImmutableListMultimap.Builder<String, String> response = ImmutableListMultimap.builder();
+      if (policy.credentials) {
+        response.put(HttpHeaders.ACCESS_CONTROL_ALLOW_CREDENTIALS, "true");
+      }
+      if (!policy.exposeHeaders.isEmpty()) {
+        response.put(HttpHeaders.ACCESS_CONTROL_EXPOSE_HEADERS, policy.exposeHeaders);
+      }
+      if (!policy.anyOrigin) {
+        response.put(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+      }
+      this.responseHeaders = response.build();
+    }
+
+    @Override
+    public HttpHandler handle(HttpHandler handler) {
+      return request -> {
+        String origin = first(request, HttpHeaders.ORIGIN);
+        if (origin == null) {
+          return handler.handle(request);
+        }
+        String requestedMethod = first(request, HttpHeaders.ACCESS_CONTROL_REQUEST_METHOD);
+        if (request.method() == HttpMethod.OPTIONS && requestedMethod != null) {
+          return preflight(request, origin, requestedMethod);
+        }
+        HttpResponse response = handler.handle(request);
+        if (!policy.allowsOrigin(origin)) {
+          //a cache must not hand this response to an origin that would be allowed
+          return policy.anyOrigin
+              ? response
+              : response.header(HttpHeaders.VARY, HttpHeaders.ORIGIN);
+        }
+        HttpResponse.CopyBuilder copy =
+            response.copy().header(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, allowOrigin(origin));
+        responseHeaders.forEach(copy::header);
+        return copy.build();
+      };
+    }
+
+    private HttpResponse preflight(HttpRequest request, String origin, String requestedMethod) {
+      HttpMethod method = HttpMethod.parse(requestedMethod.trim());
+      if (!policy.allowsOrigin(origin)
+          || method == null
+          || !allowed.contains(method)
+          || !allowsHeaders(request)) {
+        return HttpResponse.status(403)
+            .header(HttpHeaders.VARY, PREFLIGHT_VARY)
+            .body("CORS request not allowed");
+      }
+      LinkedListMultimap<String, String> headers = LinkedListMultimap.create(preflightHeaders);
+      headers.put(HttpHeaders.ACCESS_CONTROL_ALLOW_ORIGIN, allowOrigin(origin));
+      if (policy.anyHeader) {
+        String requested = first(request, HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS);
+        if (requested != null) {
+          headers.put(HttpHeaders.ACCESS_CONTROL_ALLOW_HEADERS, requested);
+        }
+      }
+      return new HttpResponse(204, new ByteArrayInputStream(new byte[0]), 0L, headers);
+    }
+
+    private boolean allowsHeaders(HttpRequest request) {
+      if (policy.anyHeader) {
+        return true;
+      }
+      for (String values : request.headers().get(HttpHeaders.ACCESS_CONTROL_REQUEST_HEADERS)) {
+        for (String header : values.split(",")) {
+          String name = header.trim().toLowerCase(Locale.ROOT);
+          if (!name.isEmpty() && !policy.headers.contains(name)) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    private String allowOrigin(String origin) {
+      return policy.anyOrigin ? "*" : origin;
+    }
+
+    @Nullable
+    private static String first(HttpRequest request, String header) {
+      Collection<String> values = request.headers().get(header);
+      return values.isEmpty() ? null : values.iterator().next();
+    }
+  }
+
+  public static class Builder {
+
+    private boolean anyOrigin;
+    private final Set<String> origins = new HashSet<>();
+    private final Set<String> wildcards = new HashSet<>();
+    private final Set<HttpMethod> methods = EnumSet.noneOf(HttpMethod.class);
+    private boolean anyHeader;
+    private final Set<String> headers = new HashSet<>();
+    private final Set<String> headerNames = new LinkedHashSet<>();
+    private final Set<String> exposed = new LinkedHashSet<>();
+    private boolean credentials;
+    @Nullable private Duration maxAge;
+
+    private Builder() {}
+
+    /**
+     * Origins requests may come from: exact ones like {@code https://app.example.com}, patterns for
+     * every subdomain like {@code https://*.example.com}, or {@code *} for any origin.
+     *
+     * @throws IllegalArgumentException if an origin is none of these
+     */
+    public Builder allowOrigins(String... origins) {
+      for (String origin : origins) {
+        String normalized = origin.trim().toLowerCase(Locale.ROOT);
+        int host = normalized.indexOf("://");
+        if (normalized.equals("*")) {
+          anyOrigin = true;
+        } else if (host > 0 && normalized.startsWith("*.", host + 3)) {
+          Preconditions.checkArgument(
+              normalized.indexOf('*', host + 4) < 0, "Only a leading wildcard is supported");
+          wildcards.add(normalized);
+        } else if (host > 0 || normalized.equals("null")) {
+          Preconditions.checkArgument(normalized.indexOf('*') < 0, "Invalid origin %s", origin);
+          this.origins.add(normalized);
+        } else {
+          throw new IllegalArgumentException("Invalid origin " + origin);
+        }
+      }
+      return this;
+    }
+
+    /** Methods allowed besides those of simple requests. By default all those of the route. */
+    public Builder allowMethods(HttpMethod... methods) {
+      for (HttpMethod method : methods) {
+        this.methods.add(method);
+      }
+      return this;
+    }
+
+    /** Request headers the browser may send, or {@code *} for any. */
+    public Builder allowHeaders(String... headers) {
+      for (String header : headers) {
+        String name = header.trim();
+        if (name.equals("*")) {
+          anyHeader = true;
+        } else {
+          this.headers.add(name.toLowerCase(Locale.ROOT));
+          this.headerNames.add(name);
+        }
+      }
+      return this;
+    }
+
+    /** Response headers scripts may read, besides the simple ones. */
+    public Builder exposeHeaders(String... headers) {
+      for (String header : headers) {
+        exposed.add(header.trim());
+      }
+      return this;
+    }
+
+    /** Whether requests may carry cookies and credentials. */
+    public Builder allowCredentials(boolean credentials) {
+      this.credentials = credentials;
+      return this;
+    }
+
+    /** How long browsers may cache the answer to a preflight. */
+    public Builder maxAge(Duration maxAge) {
+      Preconditions.checkArgument(!maxAge.isNegative(), "maxAge must be >= 0");
+      this.maxAge = maxAge;
+      return this;
+    }
+
+    /**
+     * @throws IllegalStateException if no origin is allowed, or credentials are allowed for any
+     *     origin, which browsers refuse
+     */
+    public CorsPolicy build() {
+      Preconditions.checkState(
+          anyOrigin || !origins.isEmpty() || !wildcards.isEmpty(), "allowOrigins must be set");
+      Preconditions.checkState(
+          !(anyOrigin && credentials), "credentials can't be allowed for any origin");
+      return new CorsPolicy(this);
+    }
+  }
+}
@@ -0,0 +1,379 @@
+package http4j.core.negotiation;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.annotation.Nullable;
+
+/**
+ * What a client accepts according to its {@code Accept}, {@code Accept-Encoding} or {@code
+ * Accept-Language} header, with the q-values of RFC 7231. The quality of a candidate is that of the
+ * most specific range it matches: {@code text/html} before {@code text/*} before {@code *}{@code
+ * /*}, {@code en-US} before {@code en}.
+ *
+ * <p>Clients send the same few header values over and over, so parsed headers are kept in a small
+ * cache keyed by the raw value. Once it is full, values not seen before are parsed every time
+ * rather than pushing out the ones that are.
+ *
+ * <pre>{@code
+ * Optional<String> type = Accept.mediaTypes(request).best("application/json", "text/csv");
+ * }</pre>
+ *
+ * @see MediaTypeDispatcher
+ */
+public final class Accept {
+
+  private static final int CACHE_SIZE = 256;
+  private static final int MAX_QUALITY = 1000;
+
+  private enum Kind {
+    MEDIA_TYPE(HttpHeaders.ACCEPT),
+    ENCODING(HttpHeaders.ACCEPT_ENCODING),
+    LANGUAGE(HttpHeaders.ACCEPT_LANGUAGE);
+
+    private final String header;
+    private final Accept any;
+    private final ConcurrentHashMap<String, Accept> parsed = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Range> candidates = new ConcurrentHashMap<>();
+
+    Kind(String header) {
+      this.header = header.toLowerCase(Locale.ROOT);
+      this.any = new Accept(this, null, null);
+    }
+
+    private Accept accept(@Nullable String value) {
+      if (value == null || (this != ENCODING && value.trim().isEmpty())) {
+        return any;
+      }
+      Accept accept = parsed.get(value);
+      if (accept == null) {
+        accept = new Accept(this, value, parse(this, value));
+        if (parsed.size() < CACHE_SIZE) {
+          parsed.putIfAbsent(value, accept);
+        }
+      }
+      return accept;
+    }
+
+    private Range candidate(String value) {
+      Range range = candidates.get(value);
+      if (range == null) {
+        range = Accept.candidate(this, value);
+        if (candidates.size() < CACHE_SIZE) {
+          candidates.putIfAbsent(value, range);
+        }
+      }
+      return range;
+    }
+  }
+
+  private final Kind kind;
+  @Nullable private final String value;
+  //null when the header is absent and anything is acceptable
+  @Nullable private final Range[] ranges;
+
+  private Accept(Kind kind, @Nullable String value, @Nullable Range[] ranges) {
+    this.kind = kind;
+    this.value = value;
+    this.ranges = ranges;
+  }
+
+  /** The media types the request accepts, anything if it has no {@code Accept} header. */
+  public static Accept mediaTypes(HttpRequest request) {
+    return Kind.MEDIA_TYPE.accept(header(request, Kind.MEDIA_TYPE));
+  }
+
+  public static Accept mediaTypes(@Nullable String header) {
+    return Kind.MEDIA_TYPE.accept(header);
+  }
+
+  /**
+   * The content codings the request accepts, anything if it has no {@code Accept-Encoding} header.
+   * {@code identity} is accepted unless it is refused explicitly.
+   */
+  public static Accept encodings(HttpRequest request) {
+    return Kind.ENCODING.accept(header(request, Kind.ENCODING));
+  }
+
+  public static Accept encodings(@Nullable String header) {
+    return Kind.ENCODING.accept(header);
+  }
+
+  /** The languages the request accepts, anything if it has no {@code Accept-Language} header. */
+  public static Accept languages(HttpRequest request) {
+    return Kind.LANGUAGE.accept(header(request, Kind.LANGUAGE));
+  }
+
+  public static Accept languages(@Nullable String header) {
+    return Kind.LANGUAGE.accept(header);
+  }
+
+  /** How much the candidate is wanted, from 0 for not at all to 1. */
+  public double quality(String candidate) {
+    return quality(kind.candidate(candidate)) / (double) MAX_QUALITY;
+  }
+
+  public boolean accepts(String candidate) {
+    return quality(kind.candidate(candidate)) > 0;
+  }
+
+  /**
+   * The candidate wanted most, the first of them on a tie, so list them in the order the server
+   * prefers.
+   *
+   * @return empty if none of them is acceptable
+   */
+  public Optional<String> best(String... candidates) {
+    return best(Arrays.asList(candidates));
+  }
+
+  public Optional<String> best(Collection<String> candidates) {
+    String best = null;
+    int bestQuality = 0;
+    for (String candidate : candidates) {
+      int quality = quality(kind.candidate(candidate));
+      if (quality > bestQuality) {
+        best = candidate;
+        bestQuality = quality;
+      }
+    }
+    return Optional.ofNullable(best);
+  }
+
+  @Override
+  public String toString() {
+    return kind.header + ": " + (value != null ? value : "*");
+  }
+
+  /** A media type parsed up front, for a dispatcher that checks it for every request. */
+  static Range mediaType(String mediaType) {
+    return Kind.MEDIA_TYPE.candidate(mediaType);
+  }
+
+  /** The quality in thousandths, of the most specific range matching the candidate. */
+  int quality(Range candidate) {
+    if (ranges == null) {
+      return MAX_QUALITY;
+    }
+    int quality = 0;
+    int specificity = -1;
+    for (Range range : ranges) {
+      int matched = range.match(kind, candidate);
+      if (matched > specificity) {
+        specificity = matched;
+        quality = range.quality;
+      }
+    }
+    if (specificity < 0 && kind == Kind.ENCODING && candidate.type.equals("identity")) {
+      return MAX_QUALITY;
+    }
+    return quality;
+  }
+
+  @Nullable
+  private static String header(HttpRequest request, Kind kind) {
+    Collection<String> values = request.headers().get(kind.header);
+    if (values.isEmpty()) {
+      return null;
+    }
+    return values.size() == 1 ? values.iterator().next() : Joiner.on(", ").join(values);
+  }
+
+  private static Range[] parse(Kind kind, String header) {
+    List<Range> ranges = new ArrayList<>();
+    for (String element : split(header, ',')) {
+      Range range = parseRange(kind, element, true);
+      if (range != null) {
+        ranges.add(range);
+      }
+    }
+    return ranges.toArray(new Range[0]);
+  }
+
+  private static Range candidate(Kind kind, String value) {
+    Range range = parseRange(kind, value, false);
+    if (range == null || range.type.equals("*") || "*".equals(range.subtype)) {
+      throw new IllegalArgumentException("Not a valid candidate: " + value);
+    }
+    return range;
+  }
+
+  /** One element of the header, null if it is malformed and should be ignored. */
+  @Nullable
+  private static Range parseRange(Kind kind, String element, boolean withQuality) {
+    List<String> parts = split(element, ';');
+    if (parts.isEmpty() || parts.get(0).isEmpty()) {
+      return null;
+    }
+    String name = parts.get(0).toLowerCase(Locale.ROOT);
+    String type = name;
+    String subtype = null;
+    if (kind == Kind.MEDIA_TYPE) {
+      int slash = name.indexOf('/');
+      if (slash <= 0 || slash == name.length() - 1) {
+        return null;
+      }
+      type = name.substring(0, slash);
+      subtype = name.substring(slash + 1);
+      if (type.equals("*") && !subtype.equals("*")) {
+        return null;
+      }
+    }
+    int quality = MAX_QUALITY;
+    Map<String, String> params = new LinkedHashMap<>();
+    for (int i = 1; i < parts.size(); i++) {
+      String param = parts.get(i);
+      int equals = param.indexOf('=');
+      if (equals <= 0) {
+        return null;
+      }
+      String key = param.substring(0, equals).trim().toLowerCase(Locale.ROOT);
+      String paramValue = unquote(param.substring(equals + 1).trim());
+      if (withQuality && key.equals("q")) {
+        quality = parseQuality(paramValue);
+        if (quality < 0) {
+          return null;
+        }
+        //what follows the weight are accept extensions, not media type parameters
+        break;
+      }
+      if (kind == Kind.MEDIA_TYPE) {
+        params.putIfAbsent(key, paramValue);
+      }
+    }
+    return new Range(type, subtype, ImmutableMap.copyOf(params), quality);
+  }
+
+  /** A qvalue in thousandths: 0, 1 or a fraction with up to three digits; -1 if invalid. */
+  private static int parseQuality(String value) {
+    if (value.isEmpty()
+        || value.length() > 5
+        || (value.charAt(0) != '0' && value.charAt(0) != '1')) {
+      return -1;
+    }
+    int quality = (value.charAt(0) - '0') * MAX_QUALITY;
+    if (value.length() > 1) {
+      if (value.charAt(1) != '.') {
+        return -1;
+      }
+      int scale = 100;
+      for (int i = 2; i < value.length(); i++) {
+        char c = value.charAt(i);
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+        quality += (c - '0') * scale;
+        scale /= 10;
+      }
+    }
+    return quality <= MAX_QUALITY ? quality : -1;
+  }
+
+  /** Split on the separator outside of quoted strings, trimming each part. */
+  private static List<String> split(String value, char separator) {
+    List<String> parts = new ArrayList<>(4);
+    boolean quoted = false;
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+      } else if (c == '\\' && quoted) {
+        i++;
+      } else if (c == separator && !quoted) {
+        add(parts, value.substring(start, i));
+        start = i + 1;
+      }
+    }
+    add(parts, value.substring(start));
+    return parts;
+  }
+
+  private static void add(List<String> parts, String part) {
+    String trimmed = part.trim();
+    if (!trimmed.isEmpty() || !parts.isEmpty()) {
+      parts.add(trimmed);
+    }
+  }
+
+  private static String unquote(String value) {
+    if (value.length() < 2 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+      return value;
+    }
+    StringBuilder out = new StringBuilder(value.length());
+    for (int i = 1; i < value.length() - 1; i++) {
+      char c = value.charAt(i);
+      if (c == '\\' && i + 1 < value.length() - 1) {
+        c = value.charAt(++i);
+      }
+      out.append(c);
+    }
+    return out.toString();
+  }
+
+  /** A range of the header, or a candidate to match against them. */
+  static final class Range {
+
+    private final String type;
+    @Nullable private final String subtype;
+    private final ImmutableMap<String, String> params;
+    private final int quality;
+
+    private Range(
+        String type, @Nullable String subtype, ImmutableMap<String, String> params, int quality) {
+      this.type = type;
+      this.subtype = subtype;
+      this.params = params;
+      this.quality = quality;
+    }
+
+    /** How specifically this range matches the candidate, -1 if it doesn't. */
+    private int match(Kind kind, Range candidate) {
+      if (type.equals("*")) {
+        return 0;
+      }
+      switch (kind) {
+        case MEDIA_TYPE:
+          if (!type.equals(candidate.type)) {
+            return -1;
+          }
+          if ("*".equals(subtype)) {
+            return 1;
+          }
+          if (!subtype.equals(candidate.subtype)) {
+            return -1;
+          }
+          for (Map.Entry<String, String> param : params.entrySet()) {
+            if (!param.getValue().equalsIgnoreCase(candidate.params.get(param.getKey()))) {
+              return -1;
+            }
+          }
+          return 2 + params.size();
+        case LANGUAGE:
+          //basic filtering of RFC 4647, en matches en and en-us
+          if (candidate.type.equals(type)
+              || (candidate.type.startsWith(type) && candidate.type.charAt(type.length()) == '-')) {
+            return type.length();
+          }
+          return -1;
+        default:
+          return type.equals(candidate.type) ? 1 : -1;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return subtype != null ? type + '/' + subtype : type;
+    }
+  }
+}
@@ -0,0 +1,131 @@
+package http4j.core.negotiation;
+
+import com.google.common.base.Joiner;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpHandler;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Hands each request to the handler of the media type its {@code Accept} header wants most, the
+ * first one added on a tie. Requests that accept none of them get a 406. Responses get a {@code
+ * Vary: Accept}, and the chosen media type as their {@code Content-Type} unless the handler set
+ * one.
+ *
+ * <p>The media types are parsed once, when built, and the {@code Accept} header comes from the
+ * cache of {@link Accept}, so choosing a handler parses nothing for a header seen before. Routes
+ * added with a media type, see {@link http4j.core.Router.Builder#get(String, String, HttpHandler)},
+ * are dispatched by one of these.
+ *
+ * <pre>{@code
+ * HttpHandler report =
+ *     MediaTypeDispatcher.builder()
+ *         .on("application/json", json)
+ *         .on("text/csv", csv)
+ *         .build();
+ * }</pre>
+ */
+public final class MediaTypeDispatcher implements HttpHandler {
+
+  private final String[] names;
+  private final Accept.Range[] types;
+  private final HttpHandler[] handlers;
+  private final HttpHandler notAcceptable;
+
+  private MediaTypeDispatcher(Builder builder) {
+    int size = builder.handlers.size();
+    this.names = new String[size];
+    this.types = new Accept.Range[size];
+    this.handlers = new HttpHandler[size];
+    int i = 0;
+    for (Map.Entry<String, HttpHandler> entry : builder.handlers.entrySet()) {
+      names[i] = entry.getKey();
+      types[i] = Accept.mediaType(entry.getKey());
+      handlers[i] = entry.getValue();
+      i++;
+    }
+    this.notAcceptable =
+        builder.notAcceptable != null
+            ? builder.notAcceptable
+            : request ->
+                HttpResponse.status(406)
+                    .body("Not Acceptable, available: " + Joiner.on(", ").join(names));
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Override
+  public HttpResponse handle(HttpRequest request) {
+    Accept accept = Accept.mediaTypes(request);
+    int best = -1;
+    int bestQuality = 0;
+    for (int i = 0; i < types.length; i++) {
+      int quality = accept.quality(types[i]);
+      if (quality > bestQuality) {
+        best = i;
+        bestQuality = quality;
+      }
+    }
+    if (best < 0) {
+      return notAcceptable.handle(request).header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    }
+    HttpResponse response = handlers[best].handle(request);
+    HttpResponse.CopyBuilder copy = response.copy().header(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+    if (!response.headers().containsKey(HttpHeaders.CONTENT_TYPE)) {
+      copy.header(HttpHeaders.CONTENT_TYPE, names[best]);
+    }
+    return copy.build();
+  }
+
+  /** The media types served, in the order they were added. */
+  public List<String> mediaTypes() {
+    List<String> mediaTypes = new ArrayList<>(names.length);
+    for (String name : names) {
+      mediaTypes.add(name);
+    }
+    return mediaTypes;
+  }
+
+  public static class Builder {
+
+    private final Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+    private HttpHandler notAcceptable;
+
+    private Builder() {}
+
+    /**
+     * Serve the media type, e.g. {@code application/json}, with the handler.
+     *
+     * @throws IllegalArgumentException if the media type is a range like {@code text/*}, is not
+     *     valid or was already added
+     */
+    public Builder on(String mediaType, HttpHandler handler) {
+      Accept.mediaType(mediaType);
+      if (handlers.putIfAbsent(mediaType, Objects.requireNonNull(handler)) != null) {
+        throw new IllegalArgumentException("There already is a handler for " + mediaType);
+      }
+      return this;
+    }
+
+    /** Answer requests that accept none of the media types, instead of a plain 406. */
+    public Builder notAcceptable(HttpHandler handler) {
+      this.notAcceptable = Objects.requireNonNull(handler);
+      return this;
+    }
+
+    /** @throws IllegalStateException if no media type was added */
+    public MediaTypeDispatcher build() {
+      if (handlers.isEmpty()) {
+        throw new IllegalStateException("At least one media type must be added");
+      }
+      return new MediaTypeDispatcher(this);
+    }
+  }
+}
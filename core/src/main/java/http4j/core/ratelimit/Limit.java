@@ -0,0 +1,176 @@
+package http4j.core.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * The state of one rate limited key, packed into a single long that is only ever changed with a
+ * compare-and-set, so concurrent requests for the same key never block each other.
+ */
+abstract class Limit {
+
+  private static final AtomicLongFieldUpdater<Limit> STATE =
+      AtomicLongFieldUpdater.newUpdater(Limit.class, "state");
+
+  private volatile long state;
+
+  Limit(long initial) {
+    this.state = initial;
+  }
+
+  /**
+   * Take one permit.
+   *
+   * @return the permits left if one was taken, otherwise minus the nanoseconds until one might be
+   */
+  abstract long acquire(long now);
+
+  /** Nanoseconds until the limit is back to its full allowance. */
+  abstract long resetNanos(long now);
+
+  /** Whether the limit is back to its full allowance, so forgetting it changes nothing. */
+  abstract boolean isIdle(long now);
+
+  final long state() {
+    return state;
+  }
+
+  final boolean update(long expected, long next) {
+    return STATE.compareAndSet(this, expected, next);
+  }
+
+  /**
+   * A token bucket kept as its theoretical arrival time (GCRA): the instant the bucket will be full
+   * again. A request fits if that is no more than a full bucket's worth of refill away, and pushes
+   * it back by the refill time of one token.
+   */
+  static final class TokenBucket extends Limit {
+
+    private final long interval;
+    private final long capacity;
+
+    TokenBucket(long interval, long burst) {
+      super(Long.MIN_VALUE);
+      this.interval = interval;
+      this.capacity = interval * burst;
+    }
+
+    @Override
+    long acquire(long now) {
+      while (true) {
+        long full = state();
+        long next = Math.max(full, now) + interval;
+        long debt = next - now;
+        if (debt > capacity) {
+          return -(debt - capacity);
+        }
+        if (update(full, next)) {
+          return (capacity - debt) / interval;
+        }
+      }
+    }
+
+    @Override
+    long resetNanos(long now) {
+      return Math.max(0, state() - now);
+    }
+
+    @Override
+    boolean isIdle(long now) {
+      return state() <= now;
+    }
+  }
+
+  /**
+   * A sliding window estimated from the counts of the current and previous fixed windows, the
+   * previous one weighted by how much of it the sliding window still covers. Both counts share the
+   * long, 20 bits each, while the number of the window they are for is kept in full next to it, so
+   * a key left alone for however long never mistakes its old counts for current ones. Moving on to
+   * the next window takes a lock, once per window, and counting within it doesn't.
+   */
+  static final class SlidingWindow extends Limit {
+
+    static final long MAX_COUNT = (1 << 20) - 1;
+
+    private final long limit;
+    private final long period;
+    private final long origin;
+
+    //only ever raised, under the lock and after the counts have been rolled over to it
+    private volatile long window;
+
+    SlidingWindow(long limit, long period, long origin) {
+      super(0);
+      this.limit = limit;
+      this.period = period;
+      this.origin = origin;
+    }
+
+    @Override
+    long acquire(long now) {
+      long elapsed = Math.max(0, now - origin);
+      long into = elapsed % period;
+      double weight = (double) (period - into) / period;
+      if (window < elapsed / period) {
+        roll(elapsed / period);
+      }
+      //a request that raced a roll to the next window is counted in that one
+      while (true) {
+        long counts = state();
+        long previous = counts >>> 20;
+        long count = counts & MAX_COUNT;
+        double used = previous * weight + count;
+        if (used + 1 > limit) {
+          return -Math.max(1, retryNanos(previous, count, into));
+        }
+        if (update(counts, counts + 1)) {
+          return Math.max(0, (long) (limit - used - 1));
+        }
+      }
+    }
+
+    private synchronized void roll(long to) {
+      long from = window;
+      if (from >= to) {
+        return;
+      }
+      while (true) {
+        long counts = state();
+        //the current window becomes the previous one, unless more than one window has gone by
+        long rolled = from == to - 1 ? (counts & MAX_COUNT) << 20 : 0;
+        if (update(counts, rolled)) {
+          break;
+        }
+      }
+      window = to;
+    }
+
+    /** How long until the estimate drops low enough for one more request. */
+    private long retryNanos(long previous, long count, long into) {
+      if (count + 1 > limit) {
+        //not before this window is over, and then until enough of it has slid out of view
+        double share = 1 - (double) (limit - 1) / count;
+        return period - into + (long) Math.ceil(period * share);
+      }
+      //previous * (period - at) / period + count + 1 <= limit
+      double at = period - (double) (limit - 1 - count) * period / previous;
+      return (long) Math.ceil(at - into);
+    }
+
+    @Override
+    long resetNanos(long now) {
+      return period - Math.max(0, now - origin) % period;
+    }
+
+    @Override
+    boolean isIdle(long now) {
+      long current = Math.max(0, now - origin) / period;
+      //counts first, so if a roll happens in between they are the older, fuller ones
+      long counts = state();
+      long stored = window;
+      if (stored >= current) {
+        return counts == 0;
+      }
+      return stored < current - 1 || (counts & MAX_COUNT) == 0;
+    }
+  }
+}
@@ -0,0 +1,284 @@
+package http4j.core.ratelimit;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Ticker;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpFilter;
+import http4j.core.HttpHandler;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+
+/**
+ * Throttles requests per key, e.g. per client address, per API key header or per route, answering
+ * those over the limit with a 429 and a {@code Retry-After}. Allowed responses carry the {@code
+ * RateLimit-Limit}, {@code RateLimit-Remaining} and {@code RateLimit-Reset} headers.
+ *
+ * <p>Each key has a token bucket, or a sliding window when asked for, held in one long that is
+ * updated with a compare-and-set, so requests never wait on a lock other than once per period for a
+ * sliding window to move on. At most {@code maxKeys} keys are tracked: when the map is full, keys
+ * whose allowance has fully come back are forgotten, which loses nothing, and if that is not enough
+ * new keys share a single limit until there is room. The map is swept for such keys at most once
+ * per period, so a full map of busy keys doesn't cost every new key a pass over all of them.
+ *
+ * <pre>{@code
+ * HttpHandler handler =
+ *     RateLimiter.builder()
+ *         .limit(100, Duration.ofSeconds(1))
+ *         .burst(20)
+ *         .key(RateLimiter.byHeader("X-Api-Key"))
+ *         .build()
+ *         .handle(router);
+ * }</pre>
+ */
+public final class RateLimiter implements HttpFilter {
+
+  private final Function<HttpRequest, ?> key;
+  private final Supplier<Limit> limits;
+  private final long maxKeys;
+  private final boolean rateLimitHeaders;
+  private final Ticker ticker;
+  private final String limitHeader;
+
+  private final ConcurrentHashMap<Object, Limit> keys = new ConcurrentHashMap<>();
+  private final AtomicBoolean sweeping = new AtomicBoolean();
+  private final long sweepInterval;
+  private volatile long nextSweep;
+  private final Limit overflow;
+
+  private RateLimiter(Builder builder) {
+    this.key = builder.key;
+    this.maxKeys = builder.maxKeys;
+    this.rateLimitHeaders = builder.rateLimitHeaders;
+    this.ticker = builder.ticker;
+    long period = builder.period.toNanos();
+    this.sweepInterval = period;
+    this.nextSweep = ticker.read();
+    if (builder.slidingWindow) {
+      long origin = ticker.read();
+      long permits = builder.permits;
+      this.limits = () -> new Limit.SlidingWindow(permits, period, origin);
+      this.limitHeader = Long.toString(permits);
+    } else {
+      long interval = Math.max(1, period / builder.permits);
+      long burst = builder.burst > 0 ? builder.burst : builder.permits;
+      this.limits = () -> new Limit.TokenBucket(interval, burst);
+      this.limitHeader = Long.toString(burst);
+    }
+    this.overflow = limits.get();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Key requests by the address of the client, requests without one are not limited. The address
+   * itself is the key rather than its text, so nothing is formatted per request.
+   */
+  public static Function<HttpRequest, Object> byRemoteAddress() {
+    return request -> {
+      InetSocketAddress remote = request.remote();
+      if (remote == null) {
+        return null;
+      }
+      return remote.getAddress() != null ? remote.getAddress() : remote.getHostString();
+    };
+  }
+
+  /** Key requests by the value of a header, requests without it are not limited. */
+  public static Function<HttpRequest, String> byHeader(String name) {
+    String lowerCase = name.toLowerCase();
+    return request -> {
+      Collection<String> values = request.headers().get(lowerCase);
+      return values.isEmpty() ? null : values.iterator().next();
+    };
+  }
+
+  /**
+   * Key requests by the route of the router that will handle them, so each route has its own limit.
+   * Requests no route matches are not limited.
+   */
+  public static Function<HttpRequest, String> byRoute(Router router) {
+    return request ->
+        router
+            .route(request)
+            .map(template -> request.method().name() + ' ' + template.getTemplate())
+            .orElse(null);
+  }
+
+  @Override
+  public HttpHandler handle(HttpHandler handler) {
+    return request -> {
+      Object name = key.apply(request);
+      if (name == null) {
+        return handler.handle(request);
+      }
+      long now = ticker.read();
+      Limit limit = limitFor(name, now);
+      long remaining = limit.acquire(now);
+      if (remaining < 0) {
+        return tooManyRequests(-remaining, limit.resetNanos(now));
+      }
+      HttpResponse response = handler.handle(request);
+      if (!rateLimitHeaders) {
+        return response;
+      }
+      return response
+          .copy()
+          .header("RateLimit-Limit", limitHeader)
+          .header("RateLimit-Remaining", Long.toString(remaining))
+          .header("RateLimit-Reset", Long.toString(seconds(limit.resetNanos(now))))
+          .build();
+    };
+  }
+
+  /** Take a permit for the key, outside of any request. */
+  public boolean tryAcquire(Object name) {
+    long now = ticker.read();
+    return limitFor(Objects.requireNonNull(name), now).acquire(now) >= 0;
+  }
+
+  /** The number of keys currently tracked. */
+  public int trackedKeys() {
+    return keys.size();
+  }
+
+  private Limit limitFor(Object name, long now) {
+    Limit limit = keys.get(name);
+    if (limit != null) {
+      return limit;
+    }
+    if (keys.size() >= maxKeys) {
+      sweep(now);
+      if (keys.size() >= maxKeys) {
+        return overflow;
+      }
+    }
+    return keys.computeIfAbsent(name, ignored -> limits.get());
+  }
+
+  /**
+   * Forget the keys that are back to their full allowance, one sweep at a time and at most once per
+   * period, so a map full of keys in use costs a pass per period rather than one per new key.
+   */
+  private void sweep(long now) {
+    if (now - nextSweep < 0 || !sweeping.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      keys.values().removeIf(limit -> limit.isIdle(now));
+      nextSweep = now + sweepInterval;
+    } finally {
+      sweeping.set(false);
+    }
+  }
+
+  private HttpResponse tooManyRequests(long retryNanos, long resetNanos) {
+    return HttpResponse.status(429)
+        .copy()
+        .header(HttpHeaders.RETRY_AFTER, Long.toString(seconds(retryNanos)))
+        .header("RateLimit-Limit", limitHeader)
+        .header("RateLimit-Remaining", "0")
+        .header("RateLimit-Reset", Long.toString(seconds(Math.max(retryNanos, resetNanos))))
+        .body("Too Many Requests")
+        .build();
+  }
+
+  /** Whole seconds, rounded up so a client waiting that long is never early. */
+  private static long seconds(long nanos) {
+    return (nanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1);
+  }
+
+  public static class Builder {
+
+    private long permits;
+    @Nullable private Duration period;
+    private long burst;
+    private boolean slidingWindow;
+    private Function<HttpRequest, ?> key = byRemoteAddress();
+    private long maxKeys = 100_000;
+    private boolean rateLimitHeaders = true;
+    private Ticker ticker = Ticker.systemTicker();
+
+    private Builder() {}
+
+    /** Allow {@code permits} requests per {@code period} for each key. Required. */
+    public Builder limit(long permits, Duration period) {
+      Preconditions.checkArgument(permits > 0, "permits must be > 0");
+      Preconditions.checkArgument(!period.isNegative() && !period.isZero(), "period must be > 0");
+      this.permits = permits;
+      this.period = period;
+      return this;
+    }
+
+    /**
+     * How many requests may come at once after a quiet spell, the permits per period if not set.
+     * Only applies to the token bucket.
+     */
+    public Builder burst(long burst) {
+      Preconditions.checkArgument(burst > 0, "burst must be > 0");
+      this.burst = burst;
+      return this;
+    }
+
+    /**
+     * Count requests over a sliding window of one period instead of refilling a token bucket. No
+     * burst is allowed beyond the permits per period.
+     */
+    public Builder slidingWindow() {
+      this.slidingWindow = true;
+      return this;
+    }
+
+    /** What requests are limited by, the client address if not set. A null key is not limited. */
+    public Builder key(Function<HttpRequest, ?> key) {
+      this.key = Objects.requireNonNull(key);
+      return this;
+    }
+
+    /** The most keys tracked at once. */
+    public Builder maxKeys(long maxKeys) {
+      Preconditions.checkArgument(maxKeys > 0, "maxKeys must be > 0");
+      this.maxKeys = maxKeys;
+      return this;
+    }
+
+    /** Whether allowed responses carry the RateLimit headers, true if not set. */
+    public Builder rateLimitHeaders(boolean rateLimitHeaders) {
+      this.rateLimitHeaders = rateLimitHeaders;
+      return this;
+    }
+
+    public Builder ticker(Ticker ticker) {
+      this.ticker = Objects.requireNonNull(ticker);
+      return this;
+    }
+
+    /**
+     * @throws IllegalStateException if no limit was set, or the limit does not fit the sliding
+     *     window's counters
+     */
+    public RateLimiter build() {
+      Preconditions.checkState(period != null, "limit must be set");
+      Preconditions.checkState(
+          !slidingWindow || permits <= Limit.SlidingWindow.MAX_COUNT,
+          "a sliding window allows at most %s permits per period",
+          Limit.SlidingWindow.MAX_COUNT);
+      Preconditions.checkState(
+          Math.max(burst, permits) <= Long.MAX_VALUE / 4 / Math.max(1, period.toNanos() / permits),
+          "burst too large for the period");
+      return new RateLimiter(this);
+    }
+  }
+}
@@ -0,0 +1,428 @@
+package http4j.core.sse;
+
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpResponse;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived {@code text/event-stream} response. The handler returns {@link #response()} straight
+ * away and keeps the stream, then sends events to it from any thread until it, or the client,
+ * closes it.
+ *
+ * <pre>{@code
+ * EventStream events = EventStream.builder().heartbeat(Duration.ofSeconds(15)).build();
+ * subscribers.add(events);
+ * events.onClose(() -> subscribers.remove(events));
+ * return events.response();
+ * }</pre>
+ *
+ * <p>Servers that can write without blocking {@link #subscribe(Subscriber)} to the stream and have
+ * events pushed to them, so an idle subscriber costs no thread. Any other server simply reads the
+ * response body, which blocks between events and should be flushed whenever it would block.
+ *
+ * <p>Either way at most {@link Builder#maxBuffered(int)} bytes are held for a client. A client that
+ * falls further behind than that is disconnected rather than letting the server run out of memory,
+ * and {@link #send} returns false from then on.
+ */
+public final class EventStream implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(EventStream.class);
+
+  private static final byte[] HEARTBEAT = ServerSentEvent.comment("");
+
+  /** Where a non-blocking server wants the stream's bytes to go. */
+  public interface Subscriber {
+
+    /**
+     * Queue bytes to be written to the client, without blocking.
+     *
+     * @return the number of bytes queued for the client but not yet written, including these
+     * @throws IOException if the client has gone away
+     */
+    long write(byte[] bytes) throws IOException;
+
+    /** The stream was closed normally; finish the response once everything is written. */
+    void end();
+
+    /** The client fell too far behind; drop the connection. */
+    void abort();
+  }
+
+  private final long heartbeatNanos;
+  private final int maxBuffered;
+  private final Body body = new Body();
+  private final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
+
+  @GuardedBy("this")
+  private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  private long buffered;
+
+  @GuardedBy("this")
+  private long lastWriteNanos = System.nanoTime();
+
+  @GuardedBy("this")
+  @Nullable
+  private Subscriber subscriber;
+
+  @GuardedBy("this")
+  private boolean bodyRead;
+
+  @GuardedBy("this")
+  private boolean closed;
+
+  @GuardedBy("this")
+  private boolean overflowed;
+
+  private EventStream(Builder builder) {
+    this.heartbeatNanos = builder.heartbeat.toNanos();
+    this.maxBuffered = builder.maxBuffered;
+    if (builder.retry != null) {
+      byte[] retry =
+          ("retry: " + builder.retry.toMillis() + "\n\n").getBytes(StandardCharsets.UTF_8);
+      pending.add(retry);
+      buffered = retry.length;
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** The stream with the default heartbeat and buffer. */
+  public static EventStream create() {
+    return builder().build();
+  }
+
+  /**
+   * The event stream a response body belongs to, if it is one. Used by servers to find streams they
+   * can subscribe to instead of reading.
+   */
+  public static Optional<EventStream> of(InputStream body) {
+    return body instanceof Body ? Optional.of(((Body) body).stream()) : Optional.empty();
+  }
+
+  /** A 200 response streaming the events, to be returned by the handler. */
+  public HttpResponse response() {
+    return HttpResponse.status(200)
+        .header(HttpHeaders.CONTENT_TYPE, "text/event-stream; charset=utf-8")
+        .header(HttpHeaders.CACHE_CONTROL, "no-cache")
+        //keeps nginx and friends from holding events back
+        .header("X-Accel-Buffering", "no")
+        .body(body, null);
+  }
+
+  /**
+   * Send an event. Never blocks.
+   *
+   * @return false if the stream has been closed, by either side, and the event was dropped
+   */
+  public boolean send(ServerSentEvent event) {
+    return enqueue(event.encode());
+  }
+
+  /** Send an unnamed event with the given data. */
+  public boolean send(String data) {
+    return send(ServerSentEvent.of(data));
+  }
+
+  /** Send a comment, which clients ignore. */
+  public boolean comment(String text) {
+    return enqueue(ServerSentEvent.comment(text));
+  }
+
+  public synchronized boolean isOpen() {
+    return !closed;
+  }
+
+  /**
+   * Run the listener once the stream is closed, by the handler, the client going away or falling
+   * too far behind. Runs straight away if it already is.
+   */
+  public void onClose(Runnable listener) {
+    closeListeners.add(Objects.requireNonNull(listener));
+    if (!isOpen() && closeListeners.remove(listener)) {
+      listener.run();
+    }
+  }
+
+  /** End the stream. Events already sent are still delivered. */
+  @Override
+  public void close() {
+    Subscriber target;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+      target = subscriber;
+    }
+    if (target != null) {
+      target.end();
+    }
+    runCloseListeners();
+  }
+
+  /**
+   * Have everything sent from now on pushed to the subscriber, starting with anything sent before.
+   * For servers; a stream can only be consumed once, either this way or by reading its body.
+   */
+  public void subscribe(Subscriber subscriber) {
+    Objects.requireNonNull(subscriber);
+    boolean ended;
+    boolean aborted;
+    synchronized (this) {
+      if (this.subscriber != null || bodyRead) {
+        throw new IllegalStateException("Event stream is already being consumed");
+      }
+      this.subscriber = subscriber;
+      aborted = overflowed;
+      ended = closed && !overflowed;
+      if (!aborted) {
+        byte[] next;
+        try {
+          while ((next = pending.poll()) != null) {
+            subscriber.write(next);
+          }
+        } catch (IOException e) {
+          LOG.debug("Subscriber went away", e);
+          aborted = true;
+        }
+      }
+      pending.clear();
+      buffered = 0;
+      lastWriteNanos = System.nanoTime();
+    }
+    if (aborted) {
+      subscriber.abort();
+      closeQuietly();
+    } else if (ended) {
+      subscriber.end();
+    }
+  }
+
+  /**
+   * Send a heartbeat if nothing has been written for a while. Called periodically by servers that
+   * subscribed to the stream; readers of the body get heartbeats without it.
+   */
+  public void tick(long nowNanos) {
+    synchronized (this) {
+      if (closed || subscriber == null || nowNanos - lastWriteNanos < heartbeatNanos) {
+        return;
+      }
+    }
+    enqueue(HEARTBEAT);
+  }
+
+  private boolean enqueue(byte[] bytes) {
+    boolean tooSlow;
+    Subscriber target;
+    synchronized (this) {
+      if (closed) {
+        return false;
+      }
+      lastWriteNanos = System.nanoTime();
+      target = subscriber;
+      if (target == null) {
+        tooSlow = buffered + bytes.length > maxBuffered;
+        if (!tooSlow) {
+          pending.add(bytes);
+          buffered += bytes.length;
+          notifyAll();
+          return true;
+        }
+      } else {
+        //still under the lock, so concurrent senders keep their events whole and in order
+        try {
+          tooSlow = target.write(bytes) > maxBuffered;
+        } catch (IOException e) {
+          LOG.debug("Event stream client went away", e);
+          tooSlow = false;
+          target = null;
+        }
+        if (!tooSlow && target != null) {
+          return true;
+        }
+      }
+      overflowed = tooSlow;
+      closed = true;
+      pending.clear();
+      buffered = 0;
+      notifyAll();
+    }
+    if (tooSlow) {
+      LOG.info("Disconnecting an event stream client more than {} bytes behind", maxBuffered);
+      if (target != null) {
+        target.abort();
+      }
+    }
+    runCloseListeners();
+    return false;
+  }
+
+  private void closeQuietly() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      notifyAll();
+    }
+    runCloseListeners();
+  }
+
+  private void runCloseListeners() {
+    for (Runnable listener : closeListeners) {
+      if (closeListeners.remove(listener)) {
+        try {
+          listener.run();
+        } catch (RuntimeException e) {
+          LOG.warn("Event stream close listener failed", e);
+        }
+      }
+    }
+  }
+
+  /** The stream as a response body, for servers that read it. */
+  private final class Body extends InputStream {
+
+    @GuardedBy("EventStream.this")
+    @Nullable
+    private byte[] current;
+
+    @GuardedBy("EventStream.this")
+    private int position;
+
+    private EventStream stream() {
+      return EventStream.this;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      int read = read(one, 0, 1);
+      return read < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      synchronized (EventStream.this) {
+        if (subscriber != null) {
+          throw new IllegalStateException("Event stream is already being pushed to a subscriber");
+        }
+        bodyRead = true;
+        while (current == null) {
+          current = pending.poll();
+          position = 0;
+          if (current != null) {
+            break;
+          }
+          if (overflowed) {
+            throw new IOException("Client fell too far behind the event stream");
+          }
+          if (closed) {
+            return -1;
+          }
+          long waitNanos = lastWriteNanos + heartbeatNanos - System.nanoTime();
+          if (waitNanos <= 0) {
+            lastWriteNanos = System.nanoTime();
+            current = HEARTBEAT;
+            break;
+          }
+          try {
+            TimeUnit.NANOSECONDS.timedWait(EventStream.this, waitNanos);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for events");
+          }
+        }
+        int read = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, read);
+        position += read;
+        if (current != HEARTBEAT) {
+          buffered -= read;
+        }
+        if (position == current.length) {
+          current = null;
+        }
+        return read;
+      }
+    }
+
+    /** Bytes that can be read without waiting, so servers know when to flush. */
+    @Override
+    public int available() {
+      synchronized (EventStream.this) {
+        //buffered already counts what is left of the current event, but not of a heartbeat
+        long available = buffered;
+        if (current == HEARTBEAT) {
+          available += current.length - position;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, available);
+      }
+    }
+
+    /** The server is done with the response, ex. because the client went away. */
+    @Override
+    public void close() {
+      closeQuietly();
+    }
+  }
+
+  public static class Builder {
+
+    private Duration heartbeat = Duration.ofSeconds(15);
+    private int maxBuffered = 256 * 1024;
+    @Nullable private Duration retry;
+
+    private Builder() {}
+
+    /** How long the stream may go without an event before a comment is sent to keep it alive */
+    public Builder heartbeat(Duration heartbeat) {
+      if (heartbeat.isZero() || heartbeat.isNegative()) {
+        throw new IllegalArgumentException("Heartbeat must be positive: " + heartbeat);
+      }
+      this.heartbeat = heartbeat;
+      return this;
+    }
+
+    /** The most bytes held for a slow client before it is disconnected */
+    public Builder maxBuffered(int maxBuffered) {
+      if (maxBuffered <= 0) {
+        throw new IllegalArgumentException("maxBuffered must be positive: " + maxBuffered);
+      }
+      this.maxBuffered = maxBuffered;
+      return this;
+    }
+
+    /** Tell browsers how long to wait before reconnecting, sent first on the stream */
+    public Builder retry(Duration retry) {
+      this.retry = Objects.requireNonNull(retry);
+      return this;
+    }
+
+    public EventStream build() {
+      return new EventStream(this);
+    }
+  }
+}
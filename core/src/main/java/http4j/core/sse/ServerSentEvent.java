@@ -0,0 +1,132 @@
+package http4j.core.sse;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Splitter;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * A single event in a {@code text/event-stream}, as defined by the HTML spec. Data with line breaks
+ * is sent as several {@code data:} lines and joined again by the browser.
+ */
+public final class ServerSentEvent {
+
+  private static final Pattern LINE_BREAK = Pattern.compile("\r\n|\r|\n");
+  private static final CharMatcher NEWLINES = CharMatcher.anyOf("\r\n");
+
+  @Nullable private final String id;
+  @Nullable private final String event;
+  private final String data;
+  @Nullable private final Duration retry;
+
+  private ServerSentEvent(Builder builder) {
+    this.id = builder.id;
+    this.event = builder.event;
+    this.data = builder.data;
+    this.retry = builder.retry;
+  }
+
+  /** An unnamed event carrying only data. */
+  public static ServerSentEvent of(String data) {
+    return builder().data(data).build();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  @Nullable
+  public String id() {
+    return id;
+  }
+
+  @Nullable
+  public String event() {
+    return event;
+  }
+
+  public String data() {
+    return data;
+  }
+
+  @Nullable
+  public Duration retry() {
+    return retry;
+  }
+
+  /** The event in wire format, ending with the blank line that dispatches it. */
+  public byte[] encode() {
+    StringBuilder out = new StringBuilder(data.length() + 16);
+    if (id != null) {
+      out.append("id: ").append(id).append('\n');
+    }
+    if (event != null) {
+      out.append("event: ").append(event).append('\n');
+    }
+    if (retry != null) {
+      out.append("retry: ").append(retry.toMillis()).append('\n');
+    }
+    for (String line : Splitter.on(LINE_BREAK).split(data)) {
+      out.append("data: ").append(line).append('\n');
+    }
+    out.append('\n');
+    return out.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /** A comment line, ignored by clients but enough to keep a connection from looking idle. */
+  static byte[] comment(String text) {
+    StringBuilder out = new StringBuilder(text.length() + 4);
+    for (String line : Splitter.on(LINE_BREAK).split(text)) {
+      out.append(':').append(line).append('\n');
+    }
+    out.append('\n');
+    return out.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  public static class Builder {
+
+    @Nullable private String id;
+    @Nullable private String event;
+    private String data = "";
+    @Nullable private Duration retry;
+
+    private Builder() {}
+
+    /** Sent back by a reconnecting browser in Last-Event-ID */
+    public Builder id(String id) {
+      this.id = singleLine(id);
+      return this;
+    }
+
+    /** The event name, the browser dispatches unnamed events as "message" */
+    public Builder event(String event) {
+      this.event = singleLine(event);
+      return this;
+    }
+
+    public Builder data(String data) {
+      this.data = Objects.requireNonNull(data);
+      return this;
+    }
+
+    /** How long the browser should wait before reconnecting */
+    public Builder retry(Duration retry) {
+      this.retry = Objects.requireNonNull(retry);
+      return this;
+    }
+
+    public ServerSentEvent build() {
+      return new ServerSentEvent(this);
+    }
+
+    private static String singleLine(String value) {
+      if (NEWLINES.matchesAnyOf(value)) {
+        throw new IllegalArgumentException("Line breaks are not allowed: " + value);
+      }
+      return value;
+    }
+  }
+}
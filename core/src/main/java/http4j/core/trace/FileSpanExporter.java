@@ -0,0 +1,35 @@
+package http4j.core.trace;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/** Appends spans to a local file, one JSON object per line, see {@link Span#toJson()}. */
+public final class FileSpanExporter implements SpanExporter {
+
+  private final BufferedWriter out;
+
+  public FileSpanExporter(Path file) throws IOException {
+    this.out =
+        Files.newBufferedWriter(
+            file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+  }
+
+  @Override
+  public void export(List<Span> spans) throws IOException {
+    for (Span span : spans) {
+      out.write(span.toJson());
+      out.newLine();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,25 @@
+package http4j.core.trace;
+
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Keeps the exported spans in a list, for tests. */
+public final class InMemorySpanExporter implements SpanExporter {
+
+  private final List<Span> spans = new ArrayList<>();
+
+  @Override
+  public synchronized void export(List<Span> batch) {
+    spans.addAll(batch);
+  }
+
+  /** The spans exported so far, oldest first. */
+  public synchronized List<Span> spans() {
+    return ImmutableList.copyOf(spans);
+  }
+
+  public synchronized void clear() {
+    spans.clear();
+  }
+}
@@ -0,0 +1,65 @@
+package http4j.core.trace;
+
+import com.google.common.base.Preconditions;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+
+/**
+ * Decides whether a trace is recorded. The decision is made once, where the trace starts, and
+ * travels with it in the {@code traceparent} flags; see {@link #parentBased(Sampler)}.
+ */
+@FunctionalInterface
+public interface Sampler {
+
+  /**
+   * @param parent the context the request came with, null for the first span of a trace
+   * @return whether to record the span
+   */
+  boolean sample(@Nullable TraceContext parent);
+
+  static Sampler always() {
+    return parent -> true;
+  }
+
+  static Sampler never() {
+    return parent -> false;
+  }
+
+  /** Record about the given share of traces. */
+  static Sampler ratio(double ratio) {
+    Preconditions.checkArgument(ratio >= 0 && ratio <= 1, "ratio must be between 0 and 1");
+    return parent -> ThreadLocalRandom.current().nextDouble() < ratio;
+  }
+
+  /**
+   * Record at most about {@code perSecond} traces a second, however busy the server is. Saying no
+   * costs one read of a shared counter.
+   */
+  static Sampler rateLimited(double perSecond) {
+    Preconditions.checkArgument(perSecond > 0, "perSecond must be > 0");
+    long interval = (long) (TimeUnit.SECONDS.toNanos(1) / perSecond);
+    //allow a second's worth at once, like a token bucket of that size
+    long capacity = Math.max(interval, TimeUnit.SECONDS.toNanos(1));
+    AtomicLong full = new AtomicLong(Long.MIN_VALUE);
+    return parent -> {
+      long now = System.nanoTime();
+      while (true) {
+        long current = full.get();
+        long next = Math.max(current, now) + interval;
+        if (next - now > capacity) {
+          return false;
+        }
+        if (full.compareAndSet(current, next)) {
+          return true;
+        }
+      }
+    };
+  }
+
+  /** Follow the decision of the caller, and ask {@code root} for traces that start here. */
+  static Sampler parentBased(Sampler root) {
+    return parent -> parent != null ? parent.isSampled() : root.sample(null);
+  }
+}
@@ -0,0 +1,147 @@
+package http4j.core.trace;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/** A finished span: one request handled by a server, or sent by a client, and how it went. */
+public final class Span {
+
+  /** Which side of the request the span was recorded on. */
+  public enum Kind {
+    SERVER,
+    CLIENT
+  }
+
+  private final String traceId;
+  private final String spanId;
+  @Nullable private final String parentSpanId;
+  private final String name;
+  private final Kind kind;
+  private final long startEpochMicros;
+  private final long durationNanos;
+  private final int status;
+  @Nullable private final String error;
+  private final ImmutableMap<String, String> attributes;
+
+  Span(
+      TraceContext context,
+      @Nullable String parentSpanId,
+      String name,
+      Kind kind,
+      long startEpochMicros,
+      long durationNanos,
+      int status,
+      @Nullable String error,
+      ImmutableMap<String, String> attributes) {
+    this.traceId = context.traceId();
+    this.spanId = context.spanId();
+    this.parentSpanId = parentSpanId;
+    this.name = name;
+    this.kind = kind;
+    this.startEpochMicros = startEpochMicros;
+    this.durationNanos = durationNanos;
+    this.status = status;
+    this.error = error;
+    this.attributes = attributes;
+  }
+
+  public String traceId() {
+    return traceId;
+  }
+
+  public String spanId() {
+    return spanId;
+  }
+
+  /** The span this one was called from, empty for the first span of a trace. */
+  public Optional<String> parentSpanId() {
+    return Optional.ofNullable(parentSpanId);
+  }
+
+  /** The method, and for a server span the route template when a {@code Router} matched one. */
+  public String name() {
+    return name;
+  }
+
+  public Kind kind() {
+    return kind;
+  }
+
+  public long startEpochMicros() {
+    return startEpochMicros;
+  }
+
+  /** How long the handler took to return, or the client to get the response head. */
+  public long durationNanos() {
+    return durationNanos;
+  }
+
+  /** The response status, 0 if there was no response because of an error. */
+  public int status() {
+    return status;
+  }
+
+  /** The exception that ended the span, if it failed. */
+  public Optional<String> error() {
+    return Optional.ofNullable(error);
+  }
+
+  /** Details such as {@code http.method}, {@code http.route} and {@code http.url}. */
+  public Map<String, String> attributes() {
+    return attributes;
+  }
+
+  /** The span as a single line of JSON. */
+  public String toJson() {
+    StringBuilder json = new StringBuilder(256).append('{');
+    field(json, "traceId", traceId).append(',');
+    field(json, "spanId", spanId).append(',');
+    if (parentSpanId != null) {
+      field(json, "parentSpanId", parentSpanId).append(',');
+    }
+    field(json, "name", name).append(',');
+    field(json, "kind", kind.name()).append(',');
+    json.append("\"startEpochMicros\":").append(startEpochMicros).append(',');
+    json.append("\"durationNanos\":").append(durationNanos).append(',');
+    json.append("\"status\":").append(status).append(',');
+    if (error != null) {
+      field(json, "error", error).append(',');
+    }
+    json.append("\"attributes\":{");
+    boolean first = true;
+    for (Map.Entry<String, String> attribute : attributes.entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+      field(json, attribute.getKey(), attribute.getValue());
+      first = false;
+    }
+    return json.append("}}").toString();
+  }
+
+  private static StringBuilder field(StringBuilder json, String name, String value) {
+    return quote(quote(json, name).append(':'), value);
+  }
+
+  private static StringBuilder quote(StringBuilder json, String value) {
+    json.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format("\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+    return json.append('"');
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+}
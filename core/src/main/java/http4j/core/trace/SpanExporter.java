@@ -0,0 +1,16 @@
+package http4j.core.trace;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where finished spans go, e.g. a file or a collector. Spans are handed over in batches from a
+ * single background thread, so an exporter needs no locking of its own.
+ */
+public interface SpanExporter {
+
+  void export(List<Span> spans) throws IOException;
+
+  /** Called once the tracer is closed and the last spans were exported. */
+  default void close() throws IOException {}
+}
@@ -0,0 +1,166 @@
+package http4j.core.trace;
+
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.annotation.Nullable;
+
+/**
+ * Where a request sits in a distributed trace: the trace it belongs to, the span it was sent from
+ * and whether the trace is being recorded, as carried by the W3C {@code traceparent} and {@code
+ * tracestate} headers.
+ */
+public final class TraceContext {
+
+  public static final String TRACEPARENT = "traceparent";
+  public static final String TRACESTATE = "tracestate";
+
+  private static final int TRACEPARENT_LENGTH = 55;
+
+  private final long traceIdHigh;
+  private final long traceIdLow;
+  private final long spanId;
+  private final boolean sampled;
+  @Nullable private final String traceState;
+
+  private TraceContext(
+      long traceIdHigh,
+      long traceIdLow,
+      long spanId,
+      boolean sampled,
+      @Nullable String traceState) {
+    this.traceIdHigh = traceIdHigh;
+    this.traceIdLow = traceIdLow;
+    this.spanId = spanId;
+    this.sampled = sampled;
+    this.traceState = traceState;
+  }
+
+  /** The first span of a new trace. */
+  public static TraceContext root(boolean sampled) {
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    long low;
+    do {
+      low = random.nextLong();
+    } while (low == 0);
+    return new TraceContext(random.nextLong(), low, newSpanId(), sampled, null);
+  }
+
+  /**
+   * Read the headers of an incoming request.
+   *
+   * @return empty if there is no {@code traceparent} or it is malformed, in which case the request
+   *     starts a new trace
+   */
+  public static Optional<TraceContext> parse(
+      @Nullable String traceparent, @Nullable String tracestate) {
+    if (traceparent == null) {
+      return Optional.empty();
+    }
+    String value = traceparent.trim();
+    //later versions may append fields, but must keep these ones where they are
+    if (value.length() < TRACEPARENT_LENGTH
+        || (value.length() > TRACEPARENT_LENGTH && value.charAt(TRACEPARENT_LENGTH) != '-')
+        || value.charAt(2) != '-'
+        || value.charAt(35) != '-'
+        || value.charAt(52) != '-') {
+      return Optional.empty();
+    }
+    if (!isHex(value, 0, 2)
+        || !isHex(value, 3, 35)
+        || !isHex(value, 36, 52)
+        || !isHex(value, 53, 55)) {
+      return Optional.empty();
+    }
+    long version = parseHex(value, 0, 2);
+    if (version == 0xff || (version == 0 && value.length() != TRACEPARENT_LENGTH)) {
+      return Optional.empty();
+    }
+    long high = parseHex(value, 3, 19);
+    long low = parseHex(value, 19, 35);
+    long span = parseHex(value, 36, 52);
+    long flags = parseHex(value, 53, 55);
+    if ((high == 0 && low == 0) || span == 0) {
+      return Optional.empty();
+    }
+    String state = tracestate == null || tracestate.trim().isEmpty() ? null : tracestate.trim();
+    return Optional.of(new TraceContext(high, low, span, (flags & 1) != 0, state));
+  }
+
+  /** A span in the same trace whose parent is this one. */
+  public TraceContext child() {
+    return new TraceContext(traceIdHigh, traceIdLow, newSpanId(), sampled, traceState);
+  }
+
+  /** The same position in the trace, with the sampling decision made here. */
+  public TraceContext withSampled(boolean sampled) {
+    return sampled == this.sampled
+        ? this
+        : new TraceContext(traceIdHigh, traceIdLow, spanId, sampled, traceState);
+  }
+
+  /** The 32 hex digit trace id. */
+  public String traceId() {
+    return hex(traceIdHigh) + hex(traceIdLow);
+  }
+
+  /** The 16 hex digit id of the span. */
+  public String spanId() {
+    return hex(spanId);
+  }
+
+  /** Whether the trace is being recorded. */
+  public boolean isSampled() {
+    return sampled;
+  }
+
+  /** The vendor specific {@code tracestate}, passed on untouched. */
+  public Optional<String> traceState() {
+    return Optional.ofNullable(traceState);
+  }
+
+  /** The {@code traceparent} header naming this span as the parent. */
+  public String traceparent() {
+    return "00-" + traceId() + '-' + spanId() + (sampled ? "-01" : "-00");
+  }
+
+  @Override
+  public String toString() {
+    return traceparent();
+  }
+
+  private static long newSpanId() {
+    long id;
+    do {
+      id = ThreadLocalRandom.current().nextLong();
+    } while (id == 0);
+    return id;
+  }
+
+  static String hex(long value) {
+    char[] out = new char[16];
+    for (int i = 15; i >= 0; i--) {
+      out[i] = Character.forDigit((int) (value & 0xF), 16);
+      value >>>= 4;
+    }
+    return new String(out);
+  }
+
+  /** The value of the hex digits from start to end, at most 16 of them, already checked. */
+  private static long parseHex(String value, int start, int end) {
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      result = (result << 4) | Character.digit(value.charAt(i), 16);
+    }
+    return result;
+  }
+
+  private static boolean isHex(String value, int start, int end) {
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (!(c >= '0' && c <= '9') && !(c >= 'a' && c <= 'f')) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,337 @@
+package http4j.core.trace;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import http4j.core.AttributeKey;
+import http4j.core.HttpFilter;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import http4j.core.util.UriTemplate;
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records requests as spans of a distributed trace, following the W3C Trace Context headers.
+ *
+ * <p>The {@link #server()} filter continues the trace a request arrived with, or starts one, and
+ * records how the handler went: the route template when a {@link Router} matched one, the status
+ * and the time taken. The {@link #client()} filter goes around a client, e.g. {@code JdkClient},
+ * and passes the trace on to the next service, as a child of the request being handled on the same
+ * thread.
+ *
+ * <p>Whether a trace is recorded is decided once where it starts, see {@link Sampler}. A request
+ * that is not recorded only has its context passed along, no span is built for it. Finished spans
+ * are queued in a bounded buffer and handed to the {@link SpanExporter} in batches by a background
+ * thread; when the exporter can't keep up, spans are dropped rather than slowing requests down.
+ *
+ * <pre>{@code
+ * Tracer tracer = Tracer.builder().exporter(new FileSpanExporter(path)).build();
+ * HttpHandler handler = tracer.server().handle(router);
+ * HttpHandler client = tracer.client().handle(new JdkClient());
+ * }</pre>
+ */
+public final class Tracer implements Closeable {
+
+  /** The trace context of the request, set by the server filter. */
+  public static final AttributeKey<TraceContext> CONTEXT =
+      AttributeKey.of("trace-context", TraceContext.class);
+
+  private static final Logger LOG = LoggerFactory.getLogger(Tracer.class);
+  private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+  //how long the export thread waits for spans before looking whether it was closed
+  private static final long POLL_MILLIS = 100;
+
+  private final SpanExporter exporter;
+  private final Sampler sampler;
+  private final int batchSize;
+
+  private final BlockingQueue<Span> buffer;
+  private final LongAdder dropped = new LongAdder();
+  private final Object exportLock = new Object();
+  private final Thread exportThread;
+  private volatile boolean closed;
+
+  private Tracer(Builder builder) {
+    this.exporter = builder.exporter;
+    this.sampler = builder.sampler;
+    this.batchSize = builder.batchSize;
+    this.buffer = new ArrayBlockingQueue<>(builder.bufferSize);
+    this.exportThread = new Thread(this::exportLoop, "http4j-trace-export");
+    exportThread.setDaemon(true);
+    exportThread.start();
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** The trace context of the request the current thread is handling, if it is traced. */
+  public static Optional<TraceContext> current() {
+    return Optional.ofNullable(CURRENT.get());
+  }
+
+  /** The filter for the server side, around the router or whatever handles the requests. */
+  public HttpFilter server() {
+    return handler ->
+        request -> {
+          TraceContext parent =
+              TraceContext.parse(
+                      first(request, TraceContext.TRACEPARENT),
+                      first(request, TraceContext.TRACESTATE))
+                  .orElse(null);
+          if (!sampler.sample(parent)) {
+            //pass the caller's span on untouched, there is none of ours to point at
+            TraceContext context =
+                parent != null ? parent.withSampled(false) : TraceContext.root(false);
+            request.attributes().set(CONTEXT, context);
+            return within(context, () -> handler.handle(request));
+          }
+          TraceContext context =
+              parent != null ? parent.child().withSampled(true) : TraceContext.root(true);
+          request.attributes().set(CONTEXT, context);
+          long startMicros = epochMicros();
+          long start = System.nanoTime();
+          HttpResponse response = null;
+          Throwable error = null;
+          try {
+            response = within(context, () -> handler.handle(request));
+            return response;
+          } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+          } finally {
+            UriTemplate route = request.attribute(Router.ROUTE).orElse(null);
+            ImmutableMap.Builder<String, String> attributes =
+                ImmutableMap.<String, String>builder()
+                    .put("http.method", request.method().name())
+                    .put("http.target", request.uri().getRawPath());
+            if (route != null) {
+              attributes.put("http.route", route.getTemplate());
+            }
+            String name =
+                route != null
+                    ? request.method().name() + ' ' + route.getTemplate()
+                    : request.method().name();
+            record(
+                new Span(
+                    context,
+                    parent != null ? parent.spanId() : null,
+                    name,
+                    Span.Kind.SERVER,
+                    startMicros,
+                    System.nanoTime() - start,
+                    response != null ? response.status() : 0,
+                    error != null ? error.toString() : null,
+                    attributes.build()));
+          }
+        };
+  }
+
+  /**
+   * The filter for the client side. The outgoing request gets the {@code traceparent} of a new
+   * child span of the request being handled, or of a new trace if there is none.
+   */
+  public HttpFilter client() {
+    return handler ->
+        request -> {
+          TraceContext parent = request.attribute(CONTEXT).orElseGet(CURRENT::get);
+          boolean sampled = parent != null ? parent.isSampled() : sampler.sample(null);
+          if (!sampled) {
+            TraceContext context = parent != null ? parent : TraceContext.root(false);
+            return handler.handle(inject(request, context));
+          }
+          TraceContext context = parent != null ? parent.child() : TraceContext.root(true);
+          long startMicros = epochMicros();
+          long start = System.nanoTime();
+          HttpResponse response = null;
+          Throwable error = null;
+          try {
+            response = handler.handle(inject(request, context));
+            return response;
+          } catch (RuntimeException | Error e) {
+            error = e;
+            throw e;
+          } finally {
+            record(
+                new Span(
+                    context,
+                    parent != null ? parent.spanId() : null,
+                    request.method().name(),
+                    Span.Kind.CLIENT,
+                    startMicros,
+                    System.nanoTime() - start,
+                    response != null ? response.status() : 0,
+                    error != null ? error.toString() : null,
+                    ImmutableMap.of(
+                        "http.method",
+                        request.method().name(),
+                        "http.url",
+                        request.uri().toString())));
+          }
+        };
+  }
+
+  /** Spans that were thrown away because the buffer was full. */
+  public long droppedSpans() {
+    return dropped.sum();
+  }
+
+  /** Export every span finished so far, on the calling thread. */
+  public void flush() {
+    synchronized (exportLock) {
+      List<Span> batch = new ArrayList<>(batchSize);
+      while (buffer.drainTo(batch, batchSize) > 0) {
+        export(batch);
+        batch.clear();
+      }
+    }
+  }
+
+  /** Stop the export thread, export what is left and close the exporter. */
+  @Override
+  public void close() throws IOException {
+    //not interrupted, that would break exporters writing to an interruptible channel mid-batch
+    closed = true;
+    try {
+      exportThread.join(TimeUnit.SECONDS.toMillis(5));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    flush();
+    exporter.close();
+  }
+
+  private void record(Span span) {
+    if (!buffer.offer(span)) {
+      dropped.increment();
+    }
+  }
+
+  private void exportLoop() {
+    List<Span> batch = new ArrayList<>(batchSize);
+    while (!closed) {
+      try {
+        Span first = buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        synchronized (exportLock) {
+          batch.add(first);
+          buffer.drainTo(batch, batchSize - 1);
+          export(batch);
+        }
+        batch.clear();
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void export(List<Span> batch) {
+    try {
+      exporter.export(ImmutableList.copyOf(batch));
+    } catch (IOException | RuntimeException e) {
+      LOG.warn("Failed to export {} spans", batch.size(), e);
+    }
+  }
+
+  private static HttpRequest inject(HttpRequest request, TraceContext context) {
+    HttpRequest.CopyBuilder copy =
+        request
+            .copy()
+            .removeHeader(TraceContext.TRACEPARENT)
+            .header(TraceContext.TRACEPARENT, context.traceparent());
+    if (context.traceState().isPresent()) {
+      copy.removeHeader(TraceContext.TRACESTATE)
+          .header(TraceContext.TRACESTATE, context.traceState().get());
+    }
+    return copy.build();
+  }
+
+  private static <T> T within(TraceContext context, Supplier<T> work) {
+    TraceContext previous = CURRENT.get();
+    CURRENT.set(context);
+    try {
+      return work.get();
+    } finally {
+      if (previous != null) {
+        CURRENT.set(previous);
+      } else {
+        CURRENT.remove();
+      }
+    }
+  }
+
+  @Nullable
+  private static String first(HttpRequest request, String header) {
+    Collection<String> values = request.headers().get(header);
+    return values.isEmpty() ? null : values.iterator().next();
+  }
+
+  private static long epochMicros() {
+    return ChronoUnit.MICROS.between(Instant.EPOCH, Instant.now());
+  }
+
+  public static class Builder {
+
+    @Nullable private SpanExporter exporter;
+    private Sampler sampler = Sampler.parentBased(Sampler.rateLimited(10));
+    private int bufferSize = 2048;
+    private int batchSize = 256;
+
+    private Builder() {}
+
+    /** Where finished spans go. Required. */
+    public Builder exporter(SpanExporter exporter) {
+      this.exporter = Objects.requireNonNull(exporter);
+      return this;
+    }
+
+    /**
+     * Which traces are recorded, by default those the caller records plus up to 10 a second that
+     * start here.
+     */
+    public Builder sampler(Sampler sampler) {
+      this.sampler = Objects.requireNonNull(sampler);
+      return this;
+    }
+
+    /** How many finished spans may wait for the exporter before new ones are dropped. */
+    public Builder bufferSize(int bufferSize) {
+      Preconditions.checkArgument(bufferSize > 0, "bufferSize must be > 0");
+      this.bufferSize = bufferSize;
+      return this;
+    }
+
+    /** The most spans handed to the exporter at once. */
+    public Builder batchSize(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "batchSize must be > 0");
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /** @throws IllegalStateException if no exporter was set */
+    public Tracer build() {
+      Preconditions.checkState(exporter != null, "exporter must be set");
+      return new Tracer(this);
+    }
+  }
+}
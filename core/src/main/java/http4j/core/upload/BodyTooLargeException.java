@@ -0,0 +1,21 @@
+package http4j.core.upload;
+
+import java.io.IOException;
+
+/** Thrown while reading a request body that turns out to be larger than allowed. */
+public final class BodyTooLargeException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final long limit;
+
+  public BodyTooLargeException(long limit) {
+    super("Request body larger than " + limit + " bytes");
+    this.limit = limit;
+  }
+
+  /** The most bytes the body was allowed to have. */
+  public long limit() {
+    return limit;
+  }
+}
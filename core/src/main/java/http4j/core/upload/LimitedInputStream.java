@@ -0,0 +1,79 @@
+package http4j.core.upload;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Counts the bytes read through it and fails with a {@link BodyTooLargeException} as soon as there
+ * are more than the limit, however the underlying body is framed.
+ */
+final class LimitedInputStream extends FilterInputStream {
+
+  private final long limit;
+  private long remaining;
+
+  LimitedInputStream(InputStream in, long limit) {
+    super(in);
+    this.limit = limit;
+    this.remaining = limit;
+  }
+
+  @Override
+  public int read() throws IOException {
+    checkRemaining();
+    int b = in.read();
+    if (b >= 0 && --remaining < 0) {
+      throw new BodyTooLargeException(limit);
+    }
+    return b;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    checkRemaining();
+    //ask for one more than allowed so the excess shows up right away
+    int read = in.read(bytes, offset, (int) Math.min(length, allowance()));
+    if (read > 0) {
+      remaining -= read;
+      if (remaining < 0) {
+        throw new BodyTooLargeException(limit);
+      }
+    }
+    return read;
+  }
+
+  @Override
+  public long skip(long n) throws IOException {
+    checkRemaining();
+    long skipped = in.skip(Math.min(n, allowance()));
+    remaining -= skipped;
+    if (remaining < 0) {
+      throw new BodyTooLargeException(limit);
+    }
+    return skipped;
+  }
+
+  private long allowance() {
+    return remaining == Long.MAX_VALUE ? remaining : remaining + 1;
+  }
+
+  private void checkRemaining() throws BodyTooLargeException {
+    if (remaining < 0) {
+      throw new BodyTooLargeException(limit);
+    }
+  }
+
+  @Override
+  public boolean markSupported() {
+    return false;
+  }
+
+  @Override
+  public synchronized void mark(int readlimit) {}
+
+  @Override
+  public synchronized void reset() throws IOException {
+    throw new IOException("mark/reset not supported");
+  }
+}
@@ -0,0 +1,337 @@
+package http4j.core.upload;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.net.HttpHeaders;
+import com.google.common.net.MediaType;
+import http4j.core.HttpRequest;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/**
+ * Streaming parser for a {@code multipart/form-data} body (RFC 7578). Parts are handed out one at a
+ * time and their bodies are read straight off the request, so a part is never held in memory; only
+ * a buffer a little longer than the boundary is.
+ *
+ * <pre class="code">
+ * try (Multipart multipart = Multipart.of(request)) {
+ *   Multipart.Part part;
+ *   while ((part = multipart.next()) != null) {
+ *     Files.copy(part.body(), target.resolve(part.name()));
+ *   }
+ * }
+ * </pre>
+ */
+public final class Multipart implements Closeable {
+
+  private static final int MAX_HEAD_SIZE = 16 * 1024;
+  private static final byte[] CRLF = {'\r', '\n'};
+
+  private final InputStream in;
+  private final byte[] delimiter;
+  private final byte[] buffer;
+  private int head;
+  private int tail;
+
+  //the body being read, all parts before it have been consumed
+  @Nullable private PartBody current;
+  private boolean started;
+  private boolean finished;
+
+  private Multipart(InputStream in, String boundary) {
+    this.in = in;
+    this.delimiter = ("\r\n--" + boundary).getBytes(StandardCharsets.ISO_8859_1);
+    this.buffer = new byte[Math.max(8 * 1024, delimiter.length * 4)];
+    //the first delimiter has no line break in front of it, so pretend there was one
+    System.arraycopy(CRLF, 0, buffer, 0, CRLF.length);
+    this.tail = CRLF.length;
+  }
+
+  /**
+   * Parse the body of a {@code multipart/form-data} request.
+   *
+   * @throws IllegalArgumentException if the request is not multipart or has no boundary
+   */
+  public static Multipart of(HttpRequest request) {
+    Collection<String> contentType = request.headers().get(HttpHeaders.CONTENT_TYPE);
+    if (contentType.isEmpty()) {
+      throw new IllegalArgumentException("Request has no Content-Type");
+    }
+    MediaType type = MediaType.parse(contentType.iterator().next());
+    if (!type.type().equals("multipart")) {
+      throw new IllegalArgumentException("Not a multipart request: " + type);
+    }
+    Collection<String> boundary = type.parameters().get("boundary");
+    if (boundary.isEmpty()) {
+      throw new IllegalArgumentException("Multipart request has no boundary");
+    }
+    return of(request.body(), boundary.iterator().next());
+  }
+
+  /** Parse a multipart body delimited by the given boundary. */
+  public static Multipart of(InputStream body, String boundary) {
+    if (boundary.isEmpty() || boundary.length() > 70) {
+      throw new IllegalArgumentException("Invalid multipart boundary " + boundary);
+    }
+    return new Multipart(Objects.requireNonNull(body), boundary);
+  }
+
+  /**
+   * Move on to the next part, skipping whatever is left of the current one.
+   *
+   * @return the next part, or null after the last one
+   * @throws IOException if the body is malformed or ends early
+   */
+  @Nullable
+  public Part next() throws IOException {
+    if (finished) {
+      return null;
+    }
+    //the preamble before the first delimiter is read and dropped like the rest of a part
+    PartBody skipped = current != null ? current : new PartBody();
+    byte[] discard = new byte[1024];
+    while (skipped.read(discard, 0, discard.length) >= 0) {
+      //skip
+    }
+    started = true;
+
+    //at a delimiter, which is either the close delimiter or followed by the part's head
+    head += delimiter.length;
+    if (!ensure(2)) {
+      throw new EOFException("Multipart body ended after a boundary");
+    }
+    if (buffer[head] == '-' && buffer[head + 1] == '-') {
+      finished = true;
+      current = null;
+      return null;
+    }
+    skipLine();
+    ListMultimap<String, String> headers = readHeaders();
+    current = new PartBody();
+    return new Part(headers, current);
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  /** Skip the transport padding after a delimiter up to and including its line break. */
+  private void skipLine() throws IOException {
+    int scanned = 0;
+    while (true) {
+      if (!ensure(1)) {
+        throw new EOFException("Multipart body ended after a boundary");
+      }
+      byte b = buffer[head++];
+      if (b == '\n') {
+        return;
+      }
+      if ((b != '\r' && b != ' ' && b != '\t') || ++scanned > 256) {
+        throw new IOException("Malformed multipart boundary line");
+      }
+    }
+  }
+
+  private ListMultimap<String, String> readHeaders() throws IOException {
+    ListMultimap<String, String> headers = LinkedListMultimap.create();
+    StringBuilder line = new StringBuilder();
+    int size = 0;
+    while (true) {
+      if (!ensure(1)) {
+        throw new EOFException("Multipart body ended in the middle of a part's headers");
+      }
+      char c = (char) (buffer[head++] & 0xFF);
+      if (++size > MAX_HEAD_SIZE) {
+        throw new IOException("Part headers larger than " + MAX_HEAD_SIZE + " bytes");
+      }
+      if (c != '\n') {
+        line.append(c);
+        continue;
+      }
+      int length = line.length();
+      if (length > 0 && line.charAt(length - 1) == '\r') {
+        line.setLength(--length);
+      }
+      if (length == 0) {
+        return headers;
+      }
+      int colon = line.indexOf(":");
+      if (colon <= 0) {
+        throw new IOException("Malformed part header " + line);
+      }
+      headers.put(line.substring(0, colon).trim().toLowerCase(), line.substring(colon + 1).trim());
+      line.setLength(0);
+    }
+  }
+
+  /**
+   * Make at least {@code count} bytes available from {@code head}, reading more if needed.
+   *
+   * @return false if the body ended first
+   */
+  private boolean ensure(int count) throws IOException {
+    while (tail - head < count) {
+      if (head > 0) {
+        System.arraycopy(buffer, head, buffer, 0, tail - head);
+        tail -= head;
+        head = 0;
+      }
+      int read = in.read(buffer, tail, buffer.length - tail);
+      if (read < 0) {
+        return false;
+      }
+      tail += read;
+    }
+    return true;
+  }
+
+  /** Where the next delimiter starts in the buffered bytes, or -1. */
+  private int findDelimiter() {
+    int last = tail - delimiter.length;
+    outer:
+    for (int i = head; i <= last; i++) {
+      for (int j = 0; j < delimiter.length; j++) {
+        if (buffer[i + j] != delimiter[j]) {
+          continue outer;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  /** The body of one part, which ends where the next delimiter starts. */
+  private final class PartBody extends InputStream {
+
+    private boolean done;
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (done || current != this && started) {
+        return -1;
+      }
+      if (length == 0) {
+        return 0;
+      }
+      while (true) {
+        int found = findDelimiter();
+        //bytes that cannot be the start of a delimiter are safe to hand out
+        int available = found >= 0 ? found - head : tail - head - (delimiter.length - 1);
+        if (available > 0) {
+          int count = Math.min(length, available);
+          System.arraycopy(buffer, head, bytes, offset, count);
+          head += count;
+          return count;
+        }
+        if (found >= 0) {
+          done = true;
+          return -1;
+        }
+        if (!ensure(tail - head + 1)) {
+          throw new EOFException("Multipart body ended without its closing boundary");
+        }
+      }
+    }
+  }
+
+  /** One part of the body: its headers, and its content as a stream valid until the next part. */
+  public static final class Part {
+
+    private final ListMultimap<String, String> headers;
+    private final InputStream body;
+
+    private Part(ListMultimap<String, String> headers, InputStream body) {
+      this.headers = headers;
+      this.body = body;
+    }
+
+    /** The part's headers, with lower-cased names. */
+    public ListMultimap<String, String> headers() {
+      return Multimaps.unmodifiableListMultimap(headers);
+    }
+
+    /** The form field name from the Content-Disposition header, or an empty string. */
+    public String name() {
+      return disposition("name").orElse("");
+    }
+
+    /** The file name sent with the part, present for file uploads. */
+    public Optional<String> filename() {
+      return disposition("filename");
+    }
+
+    /** The part's Content-Type, text/plain if it did not say. */
+    public String contentType() {
+      String type = first(HttpHeaders.CONTENT_TYPE.toLowerCase());
+      return type != null ? type : "text/plain";
+    }
+
+    /** The content, read straight from the request. Moving to the next part ends it. */
+    public InputStream body() {
+      return body;
+    }
+
+    @Nullable
+    private String first(String name) {
+      return headers.get(name).isEmpty() ? null : headers.get(name).get(0);
+    }
+
+    private Optional<String> disposition(String parameter) {
+      String value = first(HttpHeaders.CONTENT_DISPOSITION.toLowerCase());
+      if (value == null) {
+        return Optional.empty();
+      }
+      //form-data; name="field"; filename="a;b.txt"
+      int i = value.indexOf(';');
+      while (i >= 0 && i < value.length()) {
+        int start = i + 1;
+        while (start < value.length() && value.charAt(start) == ' ') {
+          start++;
+        }
+        int equals = value.indexOf('=', start);
+        if (equals < 0) {
+          return Optional.empty();
+        }
+        String key = value.substring(start, equals).trim();
+        String parsed;
+        int end;
+        if (equals + 1 < value.length() && value.charAt(equals + 1) == '"') {
+          StringBuilder quoted = new StringBuilder();
+          end = equals + 2;
+          while (end < value.length() && value.charAt(end) != '"') {
+            char c = value.charAt(end++);
+            if (c == '\\' && end < value.length()) {
+              c = value.charAt(end++);
+            }
+            quoted.append(c);
+          }
+          parsed = quoted.toString();
+          end = value.indexOf(';', end);
+        } else {
+          end = value.indexOf(';', equals);
+          parsed = value.substring(equals + 1, end < 0 ? value.length() : end).trim();
+        }
+        if (key.equalsIgnoreCase(parameter)) {
+          return Optional.of(parsed);
+        }
+        i = end;
+      }
+      return Optional.empty();
+    }
+  }
+}
@@ -0,0 +1,128 @@
+package http4j.core.upload;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Optional;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A request body read to the end, held in memory when small and in a temp file otherwise, so it can
+ * be read as many times as needed without the heap ever holding a large upload. Closing it deletes
+ * the file.
+ */
+public final class SpooledBody implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SpooledBody.class);
+
+  @Nullable private final byte[] bytes;
+  @Nullable private final Path file;
+  private final long length;
+
+  private SpooledBody(@Nullable byte[] bytes, @Nullable Path file, long length) {
+    this.bytes = bytes;
+    this.file = file;
+    this.length = length;
+  }
+
+  /**
+   * Read the whole body, spooling it to a file once it outgrows the memory threshold.
+   *
+   * @throws BodyTooLargeException if the body is larger than the configured maximum
+   */
+  public static SpooledBody spool(InputStream body, UploadConfig config) throws IOException {
+    InputStream in = new LimitedInputStream(body, config.maxBodySize());
+    int threshold = config.memoryThreshold();
+    byte[] buffer = new byte[(int) Math.min(threshold + 1L, 8 * 1024)];
+    int filled = 0;
+    int read;
+    while ((read = in.read(buffer, filled, buffer.length - filled)) >= 0) {
+      filled += read;
+      if (filled > threshold) {
+        return toFile(in, buffer, filled, config);
+      }
+      if (filled == buffer.length) {
+        buffer = Arrays.copyOf(buffer, (int) Math.min(threshold + 1L, buffer.length * 2L));
+      }
+    }
+    return new SpooledBody(Arrays.copyOf(buffer, filled), null, filled);
+  }
+
+  private static SpooledBody toFile(
+      InputStream in, byte[] head, int headLength, UploadConfig config) throws IOException {
+    Path file =
+        config.spoolDirectory().isPresent()
+            ? Files.createTempFile(config.spoolDirectory().get(), "http4j-upload-", ".tmp")
+            : Files.createTempFile("http4j-upload-", ".tmp");
+    try (OutputStream out = Files.newOutputStream(file)) {
+      out.write(head, 0, headLength);
+      long length = headLength;
+      byte[] buffer = new byte[8 * 1024];
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, read);
+        length += read;
+      }
+      return new SpooledBody(null, file, length);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+  }
+
+  /** The size of the body in bytes. */
+  public long length() {
+    return length;
+  }
+
+  public boolean isInMemory() {
+    return bytes != null;
+  }
+
+  /** The file the body was spooled to, empty if it is held in memory. */
+  public Optional<Path> file() {
+    return Optional.ofNullable(file);
+  }
+
+  /** A new stream over the whole body. */
+  public InputStream openStream() throws IOException {
+    return bytes != null ? new ByteArrayInputStream(bytes) : Files.newInputStream(file);
+  }
+
+  /**
+   * The whole body as a read-only buffer; a spooled body is memory-mapped rather than read into the
+   * heap.
+   */
+  public ByteBuffer map() throws IOException {
+    if (bytes != null) {
+      return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+    if (length > Integer.MAX_VALUE) {
+      throw new IOException("Body of " + length + " bytes is too large to map");
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (file != null) {
+      try {
+        Files.deleteIfExists(file);
+      } catch (IOException e) {
+        LOG.warn("Failed to delete spooled body {}", file, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,76 @@
+package http4j.core.upload;
+
+import com.google.common.base.Preconditions;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Optional;
+import javax.annotation.Nullable;
+
+/** Limits for request bodies and where bodies too large for the heap are kept. */
+public final class UploadConfig {
+
+  private static final UploadConfig DEFAULTS = builder().build();
+
+  private final long maxBodySize;
+  private final int memoryThreshold;
+  @Nullable private final Path spoolDirectory;
+
+  private UploadConfig(Builder builder) {
+    this.maxBodySize = builder.maxBodySize;
+    this.memoryThreshold = builder.memoryThreshold;
+    this.spoolDirectory = builder.spoolDirectory;
+  }
+
+  public static UploadConfig defaults() {
+    return DEFAULTS;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** The largest body accepted, larger ones are answered with a 413. */
+  public long maxBodySize() {
+    return maxBodySize;
+  }
+
+  /** Bodies up to this size are held in memory, larger ones are spooled to a temp file. */
+  public int memoryThreshold() {
+    return memoryThreshold;
+  }
+
+  /** Where spooled bodies go, the system temp directory if not set. */
+  public Optional<Path> spoolDirectory() {
+    return Optional.ofNullable(spoolDirectory);
+  }
+
+  public static class Builder {
+
+    private long maxBodySize = 10 * 1024 * 1024;
+    private int memoryThreshold = 64 * 1024;
+    @Nullable private Path spoolDirectory;
+
+    private Builder() {}
+
+    public Builder maxBodySize(long maxBodySize) {
+      Preconditions.checkArgument(maxBodySize >= 0, "maxBodySize must be >= 0");
+      this.maxBodySize = maxBodySize;
+      return this;
+    }
+
+    public Builder memoryThreshold(int memoryThreshold) {
+      Preconditions.checkArgument(memoryThreshold >= 0, "memoryThreshold must be >= 0");
+      this.memoryThreshold = memoryThreshold;
+      return this;
+    }
+
+    public Builder spoolDirectory(Path spoolDirectory) {
+      this.spoolDirectory = Objects.requireNonNull(spoolDirectory);
+      return this;
+    }
+
+    public UploadConfig build() {
+      return new UploadConfig(this);
+    }
+  }
+}
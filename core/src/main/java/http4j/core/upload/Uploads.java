@@ -0,0 +1,47 @@
+package http4j.core.upload;
+
+import http4j.core.HttpRequest;
+import java.io.IOException;
+
+/** Helpers for reading request bodies within limits. See also {@code HttpFilters}. */
+public final class Uploads {
+
+  private Uploads() {}
+
+  /**
+   * The request with its body limited to {@code maxBytes}. Reading past the limit throws a {@link
+   * BodyTooLargeException}, whether the body has a Content-Length or is chunked.
+   *
+   * @throws BodyTooLargeException right away if the declared length is already too large
+   */
+  public static HttpRequest limit(HttpRequest request, long maxBytes) throws BodyTooLargeException {
+    Long length = request.length().orElse(null);
+    if (length != null && length > maxBytes) {
+      throw new BodyTooLargeException(maxBytes);
+    }
+    return request.copy().body(new LimitedInputStream(request.body(), maxBytes), length).build();
+  }
+
+  /**
+   * Read the whole body of the request, in memory or spooled to a file depending on its size.
+   *
+   * @throws BodyTooLargeException if the body is larger than the configured maximum
+   */
+  public static SpooledBody spool(HttpRequest request, UploadConfig config) throws IOException {
+    Long length = request.length().orElse(null);
+    if (length != null && length > config.maxBodySize()) {
+      throw new BodyTooLargeException(config.maxBodySize());
+    }
+    return SpooledBody.spool(request.body(), config);
+  }
+
+  /** Whether the error, or one of its causes, is a body over its limit. */
+  public static boolean isTooLarge(Throwable error) {
+    for (Throwable t = error; t != null; t = t.getCause()) {
+      if (t instanceof BodyTooLargeException) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -10,9 +10,8 @@ public final class CaseInsensitiveMap<V> extends ForwardingMap<String, V> {
 
   private final Map<String, V> delegate;
 
-  private CaseInsensitiveMap(Map<String, V> delegate) {
-    this.delegate = delegate;
-    this.delegate.putAll(delegate); //copy the values
+  private CaseInsensitiveMap(Map<String, V> values) {
+    this.delegate = Maps.newHashMap(values); //copy the values
   }
 
   public static <V> CaseInsensitiveMap<V> create() {
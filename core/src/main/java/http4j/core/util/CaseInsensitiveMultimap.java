@@ -14,7 +14,10 @@ public final class CaseInsensitiveMultimap<V> extends ForwardingMultimap<String,
 
   private CaseInsensitiveMultimap(Multimap<String, V> delegate) {
     this.delegate = LinkedHashMultimap.create();
-    this.delegate.putAll(delegate); //copy the values
+    //copy the values, normalizing the keys so lookups find them
+    for (Map.Entry<String, V> entry : delegate.entries()) {
+      this.delegate.put(normalize(entry.getKey()), entry.getValue());
+    }
   }
 
   public static <V> CaseInsensitiveMultimap<V> create() {
@@ -0,0 +1,43 @@
+package http4j.core.util;
+
+/** Parsing of header values that are read for every request, without allocating. */
+public final class HeaderValues {
+
+  //more digits than this could overflow a long, and no body is that large anyway
+  private static final int MAX_DIGITS = 18;
+
+  private HeaderValues() {}
+
+  /**
+   * Parse a {@code Content-Length}, or any other value that is a non-negative decimal number, as in
+   * RFC 7230: digits only, with optional whitespace around them.
+   *
+   * @return the number, or -1 if the value is not one
+   */
+  public static long parseLength(CharSequence value) {
+    int start = 0;
+    int end = value.length();
+    while (start < end && isWhitespace(value.charAt(start))) {
+      start++;
+    }
+    while (end > start && isWhitespace(value.charAt(end - 1))) {
+      end--;
+    }
+    if (start == end || end - start > MAX_DIGITS) {
+      return -1;
+    }
+    long result = 0;
+    for (int i = start; i < end; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t';
+  }
+}
@@ -0,0 +1,209 @@
+package http4j.core.util;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HTTP dates in the IMF-fixdate format of RFC 7231, {@code Sun, 06 Nov 1994 08:49:37 GMT}, as used
+ * by the {@code Date}, {@code Last-Modified}, {@code If-Modified-Since} and {@code Expires}
+ * headers. Dates are whole seconds since the epoch.
+ *
+ * <p>The current date is formatted once a second by a single background thread, so a server adding
+ * a {@code Date} header to every response only reads a field. Formatting and parsing work on the
+ * digits directly instead of going through {@code java.time}, and parsing allocates nothing.
+ */
+public final class HttpDates {
+
+  /** What {@link #parse(CharSequence)} returns for a value that is not an IMF-fixdate. */
+  public static final long INVALID = Long.MIN_VALUE;
+
+  private static final int LENGTH = 29;
+  private static final String[] DAYS = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
+  private static final String[] MONTHS = {
+    "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+  };
+
+  //the range of a four digit year, 0000-01-01T00:00:00Z to 9999-12-31T23:59:59Z
+  private static final long MIN_SECOND = -62167219200L;
+  private static final long MAX_SECOND = 253402300799L;
+
+  private HttpDates() {}
+
+  /** The current date, at most a second old. */
+  public static String now() {
+    return Clock.current;
+  }
+
+  /**
+   * Format seconds since the epoch.
+   *
+   * @throws IllegalArgumentException if the year doesn't have four digits
+   */
+  public static String format(long epochSecond) {
+    if (epochSecond < MIN_SECOND || epochSecond > MAX_SECOND) {
+      throw new IllegalArgumentException("Not a four digit year: " + epochSecond);
+    }
+    long days = Math.floorDiv(epochSecond, 86400);
+    int seconds = (int) Math.floorMod(epochSecond, 86400);
+
+    //civil from days, see http://howardhinnant.github.io/date_algorithms.html
+    long z = days + 719468;
+    long era = Math.floorDiv(z, 146097);
+    int dayOfEra = (int) (z - era * 146097);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int shiftedMonth = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+    int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+    int year = (int) (yearOfEra + era * 400) + (month <= 2 ? 1 : 0);
+
+    char[] out = new char[LENGTH];
+    //1970-01-01 was a Thursday
+    DAYS[(int) Math.floorMod(days + 4, 7)].getChars(0, 3, out, 0);
+    out[3] = ',';
+    out[4] = ' ';
+    digits(out, 5, day, 2);
+    out[7] = ' ';
+    MONTHS[month - 1].getChars(0, 3, out, 8);
+    out[11] = ' ';
+    digits(out, 12, year, 4);
+    out[16] = ' ';
+    digits(out, 17, seconds / 3600, 2);
+    out[19] = ':';
+    digits(out, 20, seconds / 60 % 60, 2);
+    out[22] = ':';
+    digits(out, 23, seconds % 60, 2);
+    " GMT".getChars(0, 4, out, 25);
+    return new String(out);
+  }
+
+  /**
+   * Parse an IMF-fixdate. The obsolete RFC 850 and asctime formats are not accepted, and neither is
+   * a day name that doesn't match the date.
+   *
+   * @return the seconds since the epoch, or {@link #INVALID}
+   */
+  public static long parse(CharSequence value) {
+    if (value.length() != LENGTH
+        || value.charAt(3) != ','
+        || value.charAt(4) != ' '
+        || value.charAt(7) != ' '
+        || value.charAt(11) != ' '
+        || value.charAt(16) != ' '
+        || value.charAt(19) != ':'
+        || value.charAt(22) != ':'
+        || value.charAt(25) != ' '
+        || value.charAt(26) != 'G'
+        || value.charAt(27) != 'M'
+        || value.charAt(28) != 'T') {
+      return INVALID;
+    }
+    int day = digits(value, 5, 2);
+    int month = indexOf(MONTHS, value, 8) + 1;
+    int year = digits(value, 12, 4);
+    int hour = digits(value, 17, 2);
+    int minute = digits(value, 20, 2);
+    int second = digits(value, 23, 2);
+    if (day < 1
+        || month < 1
+        || year < 0
+        || day > daysInMonth(year, month)
+        || hour < 0
+        || hour > 23
+        || minute < 0
+        || minute > 59
+        || second < 0
+        || second > 60) {
+      return INVALID;
+    }
+
+    //days from civil, the inverse of the above
+    int shiftedYear = month <= 2 ? year - 1 : year;
+    int era = Math.floorDiv(shiftedYear, 400);
+    int yearOfEra = shiftedYear - era * 400;
+    int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    long days = era * 146097L + dayOfEra - 719468;
+    if (indexOf(DAYS, value, 0) != Math.floorMod(days + 4, 7)) {
+      return INVALID;
+    }
+    return days * 86400 + hour * 3600 + minute * 60 + second;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /** The index of the three letter name at the offset, -1 if it is none of them. */
+  private static int indexOf(String[] names, CharSequence value, int offset) {
+    for (int i = 0; i < names.length; i++) {
+      String name = names[i];
+      if (value.charAt(offset) == name.charAt(0)
+          && value.charAt(offset + 1) == name.charAt(1)
+          && value.charAt(offset + 2) == name.charAt(2)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** The value of the decimal digits at the offset, -1 if one of them isn't a digit. */
+  private static int digits(CharSequence value, int offset, int count) {
+    int result = 0;
+    for (int i = offset; i < offset + count; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  private static void digits(char[] out, int offset, int value, int count) {
+    for (int i = offset + count - 1; i >= offset; i--) {
+      out[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+  }
+
+  /** The formatted current date, started on first use. */
+  private static final class Clock {
+
+    private static volatile String current = format(System.currentTimeMillis() / 1000);
+
+    private static final ScheduledExecutorService TIMER =
+        Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("http4j-date").setDaemon(true).build());
+
+    static {
+      schedule();
+    }
+
+    //ticks just after each second starts, rescheduled every time so it never drifts
+    private static void schedule() {
+      long millis = System.currentTimeMillis();
+      TIMER.schedule(Clock::tick, 1000 - millis % 1000, TimeUnit.MILLISECONDS);
+    }
+
+    private static void tick() {
+      try {
+        current = format(System.currentTimeMillis() / 1000);
+      } finally {
+        schedule();
+      }
+    }
+  }
+}
@@ -0,0 +1,41 @@
+package http4j.core.util;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Nullable;
+
+/** Minimal parser for the (already decoded) query component of a URI. */
+public final class QueryParams {
+
+  private QueryParams() {}
+
+  /**
+   * Parse a query such as {@code a=1&b=2} into a map. A key without a value maps to the empty
+   * string and the first occurrence of a repeated key wins.
+   */
+  public static Map<String, String> parse(@Nullable String query) {
+    if (query == null || query.isEmpty()) {
+      return Collections.emptyMap();
+    }
+    Map<String, String> params = new HashMap<>();
+    int start = 0;
+    while (start <= query.length()) {
+      int end = query.indexOf('&', start);
+      if (end < 0) {
+        end = query.length();
+      }
+      if (end > start) {
+        int equals = query.indexOf('=', start);
+        if (equals < 0 || equals > end) {
+          params.putIfAbsent(query.substring(start, end).trim(), "");
+        } else {
+          params.putIfAbsent(
+              query.substring(start, equals).trim(), query.substring(equals + 1, end).trim());
+        }
+      }
+      start = end + 1;
+    }
+    return params;
+  }
+}
@@ -1,41 +1,100 @@
 package http4j.core.util;
 
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Splitter;
+import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.UUID;
 import javax.annotation.Nullable;
 
 /**
  * Very minimal URI path template parser. A URI template is a URI-like String that contains
  * variables enclosed by braces ({@code {}}) which can be expanded to produce an actual URI.
+ *
+ * <p>A variable takes a whole path segment and may be constrained to a type, ex. {@code
+ * /users/{id:int}}. The types are {@code int}, {@code long}, {@code uuid} and {@code *}, which
+ * takes the rest of the path, slashes and all, and so can only be the last segment. Paths are
+ * matched segment by segment in place; nothing is allocated unless the values are asked for, and
+ * {@link #matchValues(String)} reads typed values straight out of the path without a substring.
  */
 public final class UriTemplate {
 
+  /** Most specific first: literal segments, then typed variables, then any value, then the rest. */
+  private static final Comparator<UriTemplate> PRECEDENCE = UriTemplate::comparePrecedence;
+
+  private static final Escaper SEGMENT_ESCAPER = UrlEscapers.urlPathSegmentEscaper();
+
   /** the original template */
   private final String template;
 
-  /** The pattern to match against */
-  private final Pattern pattern;
+  /** The segments between slashes, without the leading and trailing slash */
+  private final Segment[] segments;
+
+  private final boolean leadingSlash;
+  private final boolean trailingSlash;
 
   /** The variables parsed from the template that were enclosed by braces. */
   private final List<String> variables;
 
-  private UriTemplate(String template, Pattern pattern, List<String> variables) {
+  /**
+   * The expansion plan: the escaped text around the variables, one more than there are variables,
+   * and the type of each variable, which decides how its value is escaped.
+   */
+  private final String[] literals;
+
+  private final Type[] slots;
+
+  private UriTemplate(
+      String template,
+      Segment[] segments,
+      boolean leadingSlash,
+      boolean trailingSlash,
+      List<String> variables) {
     this.template = template;
-    this.pattern = pattern;
+    this.segments = segments;
+    this.leadingSlash = leadingSlash;
+    this.trailingSlash = trailingSlash;
     this.variables = variables;
+    this.literals = new String[variables.size() + 1];
+    this.slots = new Type[variables.size()];
+
+    StringBuilder literal = new StringBuilder(template.length());
+    if (leadingSlash) {
+      literal.append('/');
+    }
+    int slot = 0;
+    for (int i = 0; i < segments.length; i++) {
+      if (i > 0) {
+        literal.append('/');
+      }
+      Segment segment = segments[i];
+      if (segment.type == null) {
+        literal.append(SEGMENT_ESCAPER.escape(segment.literal));
+      } else {
+        literals[slot] = literal.toString();
+        slots[slot++] = segment.type;
+        literal.setLength(0);
+      }
+    }
+    if (trailingSlash) {
+      literal.append('/');
+    }
+    literals[slot] = literal.toString();
   }
 
-  /** Create a UriTemplate ex. "/echo/{message}" */
+  /**
+   * Create a UriTemplate ex. "/echo/{message}" or "/files/{id:uuid}/{path:*}"
+   *
+   * @throws IllegalArgumentException if a variable has an unknown type, doesn't take a whole
+   *     segment, or a {@code *} variable is not the last segment
+   */
   public static UriTemplate parse(String template) {
     List<String> variables = new ArrayList<>();
 
@@ -45,70 +104,126 @@ public final class UriTemplate {
             .trimResults()
             .splitToList(template);
 
-    List<String> regexParts = new ArrayList<>();
-    for (String part : templateParts) {
+    Segment[] segments = new Segment[templateParts.size()];
+    for (int i = 0; i < segments.length; i++) {
+      String part = templateParts.get(i);
       if (isVariable(part)) {
         String variable = parseVariable(part);
+        Type type = Type.ANY;
+        int colon = variable.indexOf(':');
+        if (colon >= 0) {
+          type = Type.of(variable.substring(colon + 1).trim(), template);
+          variable = variable.substring(0, colon).trim();
+        }
+        if (variable.isEmpty()) {
+          throw new IllegalArgumentException("Unnamed variable in " + template);
+        }
         variables.add(variable);
-        regexParts.add("(.*)");
+        segments[i] = new Segment(null, type);
+      } else if (part.indexOf('{') >= 0 || part.indexOf('}') >= 0) {
+        throw new IllegalArgumentException(
+            "Variables must take a whole path segment: " + part + " in " + template);
       } else {
-        regexParts.add(part);
+        segments[i] = new Segment(part, null);
       }
     }
-
-    String regex = Joiner.on("/").join(regexParts);
-
-    if (template.startsWith("/")) {
-      regex = "/" + regex;
+    for (int i = 0; i < segments.length - 1; i++) {
+      if (segments[i].type == Type.REST) {
+        throw new IllegalArgumentException(
+            "Only the last segment can be a * variable: " + template);
+      }
     }
+    boolean endsWithRest = segments.length > 0 && segments[segments.length - 1].type == Type.REST;
 
-    if (template.endsWith("/")) {
-      regex += "/";
-    }
+    return new UriTemplate(
+        template,
+        segments,
+        template.startsWith("/"),
+        segments.length > 0 && template.endsWith("/") && !endsWithRest,
+        variables);
+  }
 
-    return new UriTemplate(template, Pattern.compile(regex), variables);
+  /**
+   * Orders templates so that the first to match a path is the most specific one, ex. {@code
+   * /users/me} before {@code /users/{id:int}} before {@code /users/{name}}. Segments are compared
+   * from the left: a literal beats a typed variable, which beats an untyped one, which beats a
+   * {@code *}. Templates that tie keep their order under a stable sort.
+   */
+  public static Comparator<UriTemplate> precedence() {
+    return PRECEDENCE;
   }
 
   /**
-   * Replace the variables in the template with the provided values.
+   * Replace the variables in the template with the provided values, in order. Each value is escaped
+   * as a path segment, so a slash in a value is kept as part of it, except in a {@code *} variable.
    *
    * @param values The values to replace in the template
    * @return The replaced template
    * @throws IllegalArgumentException if incorrect number of values provided
    */
   public String expand(String... values) {
-    if (values.length != variables.size()) {
+    return expandTo(new StringBuilder(template.length() + 16 * values.length), values).toString();
+  }
+
+  /**
+   * Replace the variables with the values of the same name.
+   *
+   * @throws IllegalArgumentException if a variable has no value
+   */
+  public String expand(Map<String, ?> values) {
+    return expandTo(new StringBuilder(template.length() + 16 * slots.length), values).toString();
+  }
+
+  /**
+   * Append the expanded template to the builder, for callers rendering many links into one buffer.
+   *
+   * @return the builder
+   * @throws IllegalArgumentException if incorrect number of values provided
+   */
+  public StringBuilder expandTo(StringBuilder out, String... values) {
+    if (values.length != slots.length) {
       throw new IllegalArgumentException("Incorrect amount of values given to expand.");
     }
+    out.append(literals[0]);
+    for (int i = 0; i < slots.length; i++) {
+      appendValue(out, slots[i], values[i]);
+      out.append(literals[i + 1]);
+    }
+    return out;
+  }
 
-    int counter = 0;
-    List<String> templateParts =
-        Splitter.on("/")
-            .omitEmptyStrings() //important to omit empty strings if template starts with /
-            .trimResults()
-            .splitToList(template);
-
-    List<String> expandedParts = new ArrayList<>();
-    for (String part : templateParts) {
-      if (isVariable(part)) {
-        expandedParts.add(values[counter]);
-        counter += 1;
-      } else {
-        expandedParts.add(part);
+  /**
+   * Append the template expanded with the values of the same name to the builder.
+   *
+   * @return the builder
+   * @throws IllegalArgumentException if a variable has no value
+   */
+  public StringBuilder expandTo(StringBuilder out, Map<String, ?> values) {
+    out.append(literals[0]);
+    for (int i = 0; i < slots.length; i++) {
+      Object value = values.get(variables.get(i));
+      if (value == null) {
+        throw new IllegalArgumentException(
+            "No value for " + variables.get(i) + " to expand " + template);
       }
+      appendValue(out, slots[i], value.toString());
+      out.append(literals[i + 1]);
     }
+    return out;
+  }
 
-    String expanded = Joiner.on("/").join(expandedParts);
-
-    if (template.startsWith("/")) {
-      expanded = "/" + expanded;
+  private static void appendValue(StringBuilder out, Type type, String value) {
+    if (type != Type.REST) {
+      out.append(SEGMENT_ESCAPER.escape(value));
+      return;
     }
-
-    if (template.endsWith("/")) {
-      expanded += "/";
+    //the rest of a path keeps its slashes, only what is between them is escaped
+    int start = 0;
+    for (int slash = value.indexOf('/'); slash >= 0; slash = value.indexOf('/', start)) {
+      out.append(SEGMENT_ESCAPER.escape(value.substring(start, slash))).append('/');
+      start = slash + 1;
     }
-
-    return UrlEscapers.urlFragmentEscaper().escape(expanded);
+    out.append(SEGMENT_ESCAPER.escape(start == 0 ? value : value.substring(start)));
   }
 
   private static String parseVariable(String value) {
@@ -123,10 +238,6 @@ public final class UriTemplate {
     return template;
   }
 
-  public Pattern getPattern() {
-    return pattern;
-  }
-
   public List<String> getVariables() {
     return Collections.unmodifiableList(variables);
   }
@@ -138,8 +249,8 @@ public final class UriTemplate {
    * <p>Example:
    *
    * <pre class="code">
-   * UriTemplate template = new UriTemplate("http://example.com/hotels/{hotel}/bookings/{booking}");
-   * System.out.println(template.match("http://example.com/hotels/1/bookings/42"));
+   * UriTemplate template = UriTemplate.parse("/hotels/{hotel}/bookings/{booking:int}");
+   * System.out.println(template.match("/hotels/1/bookings/42"));
    * </pre>
    *
    * will print:
@@ -151,20 +262,29 @@ public final class UriTemplate {
    * </blockquote>
    *
    * @param uri the URI to match to
-   * @return a map of variable values
+   * @return a map of variable values, empty if the whole URI doesn't match
    */
   public Map<String, String> match(String uri) {
-    Preconditions.checkNotNull(uri);
-    Map<String, String> result = new HashMap<>(variables.size());
-    Matcher matcher = pattern.matcher(uri);
-    if (matcher.find()) {
-      for (int i = 1; i <= matcher.groupCount(); i++) {
-        String name = this.variables.get(i - 1);
-        String value = matcher.group(i);
-        result.put(name, value);
-      }
-    }
-    return result;
+    Match match = matchValues(uri);
+    return match != null ? match.values() : Collections.emptyMap();
+  }
+
+  /**
+   * Match the path and keep where each variable's value is in it, so a value is only cut out or
+   * parsed when it is asked for.
+   *
+   * <pre>{@code
+   * UriTemplate.Match match = UriTemplate.parse("/users/{id:int}").matchValues("/users/42");
+   * int id = match.intValue("id");
+   * }</pre>
+   *
+   * @return the match, or null if the whole path doesn't match
+   */
+  @Nullable
+  public Match matchValues(String path) {
+    Preconditions.checkNotNull(path);
+    int[] bounds = new int[variables.size() * 2];
+    return walk(path, bounds) ? new Match(path, bounds) : null;
   }
 
   /**
@@ -177,7 +297,65 @@ public final class UriTemplate {
     if (uri == null) {
       return false;
     }
-    return pattern.matcher(uri).matches();
+    return walk(uri, null);
+  }
+
+  /**
+   * Match the whole path against the segments.
+   *
+   * @param bounds where to put the start and end of each variable's value, or null
+   */
+  private boolean walk(String path, @Nullable int[] bounds) {
+    int length = path.length();
+    int position = 0;
+    if (leadingSlash) {
+      if (length == 0 || path.charAt(0) != '/') {
+        return false;
+      }
+      position = 1;
+    }
+    int variable = 0;
+    for (int i = 0; i < segments.length; i++) {
+      Segment segment = segments[i];
+      if (i > 0) {
+        if (position < length && path.charAt(position) == '/') {
+          position++;
+        } else if (segment.type != Type.REST || position != length) {
+          return false;
+        }
+      }
+      int end = segment.type == Type.REST ? length : path.indexOf('/', position);
+      if (end < 0) {
+        end = length;
+      }
+      if (!segment.matches(path, position, end)) {
+        return false;
+      }
+      if (segment.type != null) {
+        if (bounds != null) {
+          bounds[2 * variable] = position;
+          bounds[2 * variable + 1] = end;
+        }
+        variable++;
+      }
+      position = end;
+    }
+    if (trailingSlash) {
+      return position == length - 1 && path.charAt(position) == '/';
+    }
+    return position == length;
+  }
+
+  private static int comparePrecedence(UriTemplate first, UriTemplate second) {
+    int shared = Math.min(first.segments.length, second.segments.length);
+    for (int i = 0; i < shared; i++) {
+      int compared = Integer.compare(first.segments[i].rank(), second.segments[i].rank());
+      if (compared != 0) {
+        return compared;
+      }
+    }
+    //a longer template only overlaps a shorter one that ends in a * variable
+    return Integer.compare(second.segments.length, first.segments.length);
   }
 
   @Override
@@ -197,4 +375,219 @@ public final class UriTemplate {
   public int hashCode() {
     return Objects.hash(template);
   }
+
+  /** Where the values of the variables are in a matched path. */
+  public final class Match {
+
+    private final String path;
+    private final int[] bounds;
+
+    private Match(String path, int[] bounds) {
+      this.path = path;
+      this.bounds = bounds;
+    }
+
+    public UriTemplate template() {
+      return UriTemplate.this;
+    }
+
+    /** The value of the variable as it occurred in the path. */
+    public String value(String name) {
+      int index = indexOf(name);
+      return path.substring(bounds[2 * index], bounds[2 * index + 1]);
+    }
+
+    /** @throws NumberFormatException if the value is not an int */
+    public int intValue(String name) {
+      return (int) parseInteger(name, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /** @throws NumberFormatException if the value is not a long */
+    public long longValue(String name) {
+      return parseInteger(name, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /** @throws IllegalArgumentException if the value is not a UUID in its 36 character form */
+    public UUID uuidValue(String name) {
+      int index = indexOf(name);
+      int start = bounds[2 * index];
+      if (!Type.UUID.matches(path, start, bounds[2 * index + 1])) {
+        throw new IllegalArgumentException("Not a UUID: " + value(name));
+      }
+      long most = 0;
+      long least = 0;
+      int digits = 0;
+      for (int i = start; i < start + 36; i++) {
+        char c = path.charAt(i);
+        if (c == '-') {
+          continue;
+        }
+        long digit = Character.digit(c, 16);
+        if (digits++ < 16) {
+          most = most << 4 | digit;
+        } else {
+          least = least << 4 | digit;
+        }
+      }
+      return new UUID(most, least);
+    }
+
+    /** Every value by the name of its variable. */
+    public Map<String, String> values() {
+      Map<String, String> values = new HashMap<>(variables.size() * 2);
+      for (int i = 0; i < variables.size(); i++) {
+        values.put(variables.get(i), path.substring(bounds[2 * i], bounds[2 * i + 1]));
+      }
+      return values;
+    }
+
+    private long parseInteger(String name, long min, long max) {
+      int index = indexOf(name);
+      int start = bounds[2 * index];
+      int end = bounds[2 * index + 1];
+      if (!Type.isInteger(path, start, end, min, max)) {
+        throw new NumberFormatException("Not a number in range: " + value(name));
+      }
+      boolean negative = path.charAt(start) == '-';
+      //accumulated negatively, so the minimum fits too
+      long result = 0;
+      for (int i = negative ? start + 1 : start; i < end; i++) {
+        result = result * 10 - (path.charAt(i) - '0');
+      }
+      return negative ? result : -result;
+    }
+
+    private int indexOf(String name) {
+      int index = variables.indexOf(name);
+      if (index < 0) {
+        throw new IllegalArgumentException("No variable " + name + " in " + template);
+      }
+      return index;
+    }
+
+    @Override
+    public String toString() {
+      return values().toString();
+    }
+  }
+
+  /** A literal segment, or a variable of some type */
+  private static final class Segment {
+    @Nullable private final String literal;
+    @Nullable private final Type type;
+
+    private Segment(@Nullable String literal, @Nullable Type type) {
+      this.literal = literal;
+      this.type = type;
+    }
+
+    private boolean matches(String path, int start, int end) {
+      if (type == null) {
+        return end - start == literal.length() && path.startsWith(literal, start);
+      }
+      return type.matches(path, start, end);
+    }
+
+    /** Lower is more specific */
+    private int rank() {
+      return type == null ? 0 : type.rank;
+    }
+  }
+
+  private enum Type {
+    INT(1) {
+      @Override
+      boolean matches(String path, int start, int end) {
+        return isInteger(path, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+      }
+    },
+    LONG(1) {
+      @Override
+      boolean matches(String path, int start, int end) {
+        return isInteger(path, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+      }
+    },
+    UUID(1) {
+      @Override
+      boolean matches(String path, int start, int end) {
+        if (end - start != 36) {
+          return false;
+        }
+        for (int i = 0; i < 36; i++) {
+          char c = path.charAt(start + i);
+          boolean valid =
+              i == 8 || i == 13 || i == 18 || i == 23
+                  ? c == '-'
+                  : (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+          if (!valid) {
+            return false;
+          }
+        }
+        return true;
+      }
+    },
+    ANY(2) {
+      @Override
+      boolean matches(String path, int start, int end) {
+        return end > start;
+      }
+    },
+    REST(3) {
+      @Override
+      boolean matches(String path, int start, int end) {
+        return true;
+      }
+    };
+
+    private final int rank;
+
+    Type(int rank) {
+      this.rank = rank;
+    }
+
+    abstract boolean matches(String path, int start, int end);
+
+    static Type of(String name, String template) {
+      switch (name) {
+        case "int":
+          return INT;
+        case "long":
+          return LONG;
+        case "uuid":
+          return UUID;
+        case "*":
+          return REST;
+        default:
+          throw new IllegalArgumentException("Unknown variable type " + name + " in " + template);
+      }
+    }
+
+    /** A decimal number between min and max, checked without parsing it out of the path */
+    private static boolean isInteger(String path, int start, int end, long min, long max) {
+      int i = start;
+      boolean negative = i < end && path.charAt(i) == '-';
+      if (negative) {
+        i++;
+      }
+      if (i == end) {
+        return false;
+      }
+      //accumulated negatively, like Long.parseLong, so the minimum fits too
+      long limit = negative ? min : -max;
+      long multiplyMin = limit / 10;
+      long result = 0;
+      for (; i < end; i++) {
+        int digit = path.charAt(i) - '0';
+        if (digit < 0 || digit > 9 || result < multiplyMin) {
+          return false;
+        }
+        result *= 10;
+        if (result < limit + digit) {
+          return false;
+        }
+        result -= digit;
+      }
+      return true;
+    }
+  }
 }
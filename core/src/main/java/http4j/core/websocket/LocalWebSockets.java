@@ -0,0 +1,260 @@
+package http4j.core.websocket;
+
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.net.HttpHeaders;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * WebSockets to an {@link HttpHandler} without a network, for tests and in-process wiring. The
+ * handshake goes through the handler like any request and the two ends then exchange real frames,
+ * masking, fragmentation, limits and closing handshake included, through in-memory pipes.
+ */
+public final class LocalWebSockets {
+
+  private static final Logger LOG = LoggerFactory.getLogger(LocalWebSockets.class);
+
+  private static final Executor DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("local-websocket-%d")
+              .setDaemon(true)
+              .setUncaughtExceptionHandler(
+                  (t, e) -> LOG.error("Uncaught exception for {}", t.getName(), e))
+              .build());
+
+  // bytes in a pipe before awaitWritable blocks, about what a socket buffer would hold
+  private static final long HIGH_WATER_MARK = 64 * 1024;
+
+  // queued after the last bytes of an end that should be closed once they are read
+  private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+  private LocalWebSockets() {}
+
+  /** Open a WebSocket to the given path with the default limits. */
+  public static WebSocket connect(HttpHandler server, String uri, WebSocketHandler client)
+      throws IOException {
+    return connect(server, HttpRequest.get(uri), client, WebSocketConfig.defaults());
+  }
+
+  /**
+   * Send the opening handshake to the server and, if it accepts, connect the client handler to the
+   * server's.
+   *
+   * @param request the GET request to upgrade, handshake headers are added to it
+   * @throws IOException if the server did not accept the upgrade
+   */
+  public static WebSocket connect(
+      HttpHandler server, HttpRequest request, WebSocketHandler client, WebSocketConfig config)
+      throws IOException {
+    Objects.requireNonNull(client);
+    byte[] nonce = new byte[16];
+    ThreadLocalRandom.current().nextBytes(nonce);
+    String key = Base64.getEncoder().encodeToString(nonce);
+
+    Multimap<String, String> headers = LinkedListMultimap.create(request.headers());
+    headers.put(HttpHeaders.UPGRADE, "websocket");
+    headers.put(HttpHeaders.CONNECTION, "Upgrade");
+    headers.put("Sec-WebSocket-Version", "13");
+    headers.put("Sec-WebSocket-Key", key);
+    HttpRequest handshake =
+        new HttpRequest(
+            HttpMethod.GET,
+            request.body(),
+            0L,
+            headers,
+            request.uri(),
+            request.remote(),
+            request.params(),
+            request.protocol());
+
+    HttpResponse response = server.handle(handshake);
+    Optional<WebSocketUpgrade> upgrade = WebSocketUpgrade.of(response);
+    if (!upgrade.isPresent()) {
+      throw new IOException("WebSocket handshake rejected with status " + response.status());
+    }
+    if (!response.headers().get("Sec-WebSocket-Accept").contains(WebSocketUpgrade.accept(key))) {
+      throw new IOException("WebSocket handshake answered with the wrong Sec-WebSocket-Accept");
+    }
+
+    AtomicBoolean closed = new AtomicBoolean();
+    End serverEnd = new End(closed);
+    End clientEnd = new End(closed);
+    serverEnd.peer = clientEnd;
+    clientEnd.peer = serverEnd;
+    WebSocketEngine serverEngine =
+        WebSocketEngine.server(upgrade.get(), serverEnd, DEFAULT_EXECUTOR);
+    WebSocketEngine clientEngine =
+        WebSocketEngine.client(handshake, client, config, clientEnd, DEFAULT_EXECUTOR);
+    serverEnd.attach(serverEngine);
+    clientEnd.attach(clientEngine);
+    serverEngine.start();
+    clientEngine.start();
+    return clientEngine;
+  }
+
+  /**
+   * One end of the connection: the transport its engine writes through, and the bytes written to it
+   * by the other end, handed to its engine on the executor the way a selector loop would.
+   */
+  private static final class End implements WebSocketEngine.Transport {
+
+    private final AtomicBoolean closed;
+    private final Queue<ByteBuffer> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    private volatile boolean suspended;
+    private End peer;
+    private WebSocketEngine engine;
+
+    // only touched while delivering, which is serialized by work
+    private ByteBuffer readBuffer;
+
+    private End(AtomicBoolean closed) {
+      this.closed = closed;
+    }
+
+    private void attach(WebSocketEngine engine) {
+      this.engine = engine;
+      this.readBuffer = ByteBuffer.allocate(engine.minReadBuffer());
+    }
+
+    @Override
+    public long write(ByteBuffer... buffers) throws IOException {
+      if (closed.get()) {
+        throw new IOException("WebSocket closed");
+      }
+      return peer.receive(buffers);
+    }
+
+    @Override
+    public void awaitWritable() throws IOException {
+      peer.awaitDrained();
+    }
+
+    @Override
+    public void suspendReads() {
+      suspended = true;
+    }
+
+    @Override
+    public void resumeReads() {
+      suspended = false;
+      schedule();
+    }
+
+    @Override
+    public void closeAfterWrite() {
+      peer.incoming.add(CLOSE);
+      peer.schedule();
+    }
+
+    @Override
+    public void close() {
+      if (closed.compareAndSet(false, true)) {
+        for (End end : new End[] {this, peer}) {
+          synchronized (end) {
+            end.notifyAll();
+          }
+          end.engine.onTransportClosed();
+        }
+      }
+    }
+
+    private long receive(ByteBuffer[] buffers) {
+      long total = 0;
+      for (ByteBuffer buffer : buffers) {
+        total = pending.addAndGet(buffer.remaining());
+        incoming.add(buffer);
+      }
+      schedule();
+      return total;
+    }
+
+    private synchronized void awaitDrained() throws IOException {
+      while (pending.get() > HIGH_WATER_MARK && !closed.get()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting to write");
+        }
+      }
+      if (closed.get()) {
+        throw new IOException("WebSocket closed");
+      }
+    }
+
+    private void schedule() {
+      if (work.getAndIncrement() == 0) {
+        DEFAULT_EXECUTOR.execute(this::deliver);
+      }
+    }
+
+    private void deliver() {
+      int missed = 1;
+      do {
+        try {
+          deliverAvailable();
+        } catch (RuntimeException e) {
+          LOG.error("Failed delivering WebSocket frames", e);
+          close();
+        }
+        missed = work.addAndGet(-missed);
+      } while (missed != 0);
+    }
+
+    private void deliverAvailable() {
+      while (!closed.get() && !suspended) {
+        ByteBuffer next = incoming.peek();
+        if (next != null && next != CLOSE) {
+          int length = Math.min(readBuffer.remaining(), next.remaining());
+          ByteBuffer part = next.duplicate();
+          part.limit(part.position() + length);
+          readBuffer.put(part);
+          next.position(next.position() + length);
+          if (!next.hasRemaining()) {
+            incoming.poll();
+          }
+          if (pending.addAndGet(-length) <= HIGH_WATER_MARK) {
+            synchronized (this) {
+              notifyAll();
+            }
+          }
+        }
+        readBuffer.flip();
+        int before = readBuffer.remaining();
+        engine.onRead(readBuffer);
+        boolean consumed = readBuffer.remaining() < before;
+        readBuffer.compact();
+        if (next == CLOSE && !suspended) {
+          close();
+          return;
+        }
+        if (!consumed && (next == null || !readBuffer.hasRemaining())) {
+          return;
+        }
+      }
+    }
+  }
+}
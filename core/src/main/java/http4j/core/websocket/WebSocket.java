@@ -0,0 +1,67 @@
+package http4j.core.websocket;
+
+import http4j.core.HttpRequest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One side of an open WebSocket connection, RFC 6455. Sending never blocks: messages are queued for
+ * the connection and written as the peer reads them. Producers that can outpace the peer call
+ * {@link #awaitWritable()} between messages; if more than {@link WebSocketConfig#maxBuffered()}
+ * bytes pile up anyway the connection is dropped.
+ *
+ * <p>All methods may be called from any thread.
+ */
+public interface WebSocket {
+
+  /** Close codes from RFC 6455 7.4.1 */
+  int NORMAL_CLOSURE = 1000;
+
+  int GOING_AWAY = 1001;
+  int PROTOCOL_ERROR = 1002;
+  int UNSUPPORTED_DATA = 1003;
+  int NO_STATUS = 1005;
+  int ABNORMAL_CLOSURE = 1006;
+  int INVALID_PAYLOAD = 1007;
+  int POLICY_VIOLATION = 1008;
+  int MESSAGE_TOO_BIG = 1009;
+  int INTERNAL_ERROR = 1011;
+
+  /** The request that opened the connection, including any path parameters. */
+  HttpRequest request();
+
+  /**
+   * Send a text message.
+   *
+   * @return false if the connection is closing or closed and the message was dropped
+   */
+  boolean sendText(String text);
+
+  /**
+   * Send a binary message, from the buffer's position to its limit. The buffer must not be changed
+   * afterwards, since it may be written from as it is.
+   *
+   * @return false if the connection is closing or closed and the message was dropped
+   */
+  boolean sendBinary(ByteBuffer data);
+
+  /** Send a ping of at most 125 bytes; the peer answers with a pong. */
+  boolean ping(ByteBuffer data);
+
+  /** Start the closing handshake. The handler's onClose runs once the peer has answered. */
+  void close(int code, String reason);
+
+  default void close() {
+    close(NORMAL_CLOSURE, "");
+  }
+
+  /** Whether messages can still be sent. */
+  boolean isOpen();
+
+  /**
+   * Block until the bytes queued for the peer fall under the connection's high water mark.
+   *
+   * @throws IOException if the connection is closed while waiting
+   */
+  void awaitWritable() throws IOException;
+}
@@ -0,0 +1,130 @@
+package http4j.core.websocket;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/** Limits for WebSocket connections. */
+public final class WebSocketConfig {
+
+  private static final WebSocketConfig DEFAULTS = builder().build();
+
+  private final int maxFrameSize;
+  private final int maxMessageSize;
+  private final long maxBuffered;
+  private final int maxQueuedMessages;
+  private final Duration closeTimeout;
+  @Nullable private final Executor executor;
+
+  private WebSocketConfig(Builder builder) {
+    this.maxFrameSize = builder.maxFrameSize;
+    this.maxMessageSize = builder.maxMessageSize;
+    this.maxBuffered = builder.maxBuffered;
+    this.maxQueuedMessages = builder.maxQueuedMessages;
+    this.closeTimeout = builder.closeTimeout;
+    this.executor = builder.executor;
+  }
+
+  public static WebSocketConfig defaults() {
+    return DEFAULTS;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * The largest frame payload accepted, and the size larger outgoing messages are split at. A peer
+   * sending larger frames is disconnected with {@link WebSocket#MESSAGE_TOO_BIG}; since the whole
+   * frame is buffered, this also sizes the read buffer of the connection.
+   */
+  public int maxFrameSize() {
+    return maxFrameSize;
+  }
+
+  /** The largest message accepted once its fragments are put together. */
+  public int maxMessageSize() {
+    return maxMessageSize;
+  }
+
+  /** Bytes that may be queued for a slow peer before the connection is dropped. */
+  public long maxBuffered() {
+    return maxBuffered;
+  }
+
+  /** Received messages waiting for the handler before reading from the peer is paused. */
+  public int maxQueuedMessages() {
+    return maxQueuedMessages;
+  }
+
+  /** How long to wait for the peer to answer a close frame before dropping the connection. */
+  public Duration closeTimeout() {
+    return closeTimeout;
+  }
+
+  /** Where the handler callbacks run, the server's worker executor if not set. */
+  public Optional<Executor> executor() {
+    return Optional.ofNullable(executor);
+  }
+
+  public static class Builder {
+
+    private int maxFrameSize = 64 * 1024;
+    private int maxMessageSize = 1024 * 1024;
+    private long maxBuffered = 1024 * 1024;
+    private int maxQueuedMessages = 16;
+    private Duration closeTimeout = Duration.ofSeconds(5);
+    @Nullable private Executor executor;
+
+    private Builder() {}
+
+    public Builder maxFrameSize(int maxFrameSize) {
+      if (maxFrameSize < 125) {
+        throw new IllegalArgumentException("maxFrameSize must be at least 125: " + maxFrameSize);
+      }
+      this.maxFrameSize = maxFrameSize;
+      return this;
+    }
+
+    public Builder maxMessageSize(int maxMessageSize) {
+      if (maxMessageSize <= 0) {
+        throw new IllegalArgumentException("maxMessageSize must be positive: " + maxMessageSize);
+      }
+      this.maxMessageSize = maxMessageSize;
+      return this;
+    }
+
+    public Builder maxBuffered(long maxBuffered) {
+      if (maxBuffered <= 0) {
+        throw new IllegalArgumentException("maxBuffered must be positive: " + maxBuffered);
+      }
+      this.maxBuffered = maxBuffered;
+      return this;
+    }
+
+    public Builder maxQueuedMessages(int maxQueuedMessages) {
+      if (maxQueuedMessages <= 0) {
+        throw new IllegalArgumentException(
+            "maxQueuedMessages must be positive: " + maxQueuedMessages);
+      }
+      this.maxQueuedMessages = maxQueuedMessages;
+      return this;
+    }
+
+    public Builder closeTimeout(Duration closeTimeout) {
+      this.closeTimeout = Objects.requireNonNull(closeTimeout);
+      return this;
+    }
+
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor);
+      return this;
+    }
+
+    public WebSocketConfig build() {
+      return new WebSocketConfig(this);
+    }
+  }
+}
@@ -0,0 +1,562 @@
+package http4j.core.websocket;
+
+import http4j.core.HttpRequest;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.concurrent.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The WebSocket protocol over any byte transport, without blocking on it. Servers hand it the bytes
+ * they read through {@link #onRead(ByteBuffer)} and give it a {@link Transport} to write to; it
+ * decodes frames in place in the read buffer, reassembles fragmented messages, answers pings and
+ * the closing handshake, and runs the {@link WebSocketHandler} on an executor one event at a time.
+ *
+ * <p>When the handler falls {@link WebSocketConfig#maxQueuedMessages()} messages behind, reads are
+ * suspended until it catches up, so a fast peer is slowed down by TCP rather than by memory.
+ */
+public final class WebSocketEngine implements WebSocket {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WebSocketEngine.class);
+
+  private static final int NO_MESSAGE = -1;
+
+  /** Where the engine's frames go, ex. a non-blocking connection's write queue. */
+  public interface Transport {
+
+    /**
+     * Queue bytes for the peer, in order, without blocking.
+     *
+     * @return the number of bytes queued but not yet written, including these
+     * @throws IOException if the connection is closed
+     */
+    long write(ByteBuffer... buffers) throws IOException;
+
+    /** Block until the bytes queued fall under the transport's high water mark. */
+    void awaitWritable() throws IOException;
+
+    /** Stop handing the engine bytes. Only called from within {@link #onRead(ByteBuffer)}. */
+    void suspendReads();
+
+    /**
+     * Carry on handing the engine bytes, including any left unread. May be called from any thread.
+     */
+    void resumeReads();
+
+    /** Close the connection once everything queued has been written. */
+    void closeAfterWrite();
+
+    /** Close the connection straight away. */
+    void close();
+  }
+
+  private final HttpRequest request;
+  private final WebSocketHandler handler;
+  private final WebSocketConfig config;
+  private final Transport transport;
+  private final Executor executor;
+  private final boolean client;
+
+  // events for the handler, run one at a time on the executor
+  private final Queue<Runnable> events = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final AtomicInteger queuedMessages = new AtomicInteger();
+  private final AtomicBoolean readsSuspended = new AtomicBoolean();
+  private final AtomicBoolean finished = new AtomicBoolean();
+
+  // only touched by the thread calling onRead
+  private final CharsetDecoder utf8 =
+      StandardCharsets.UTF_8
+          .newDecoder()
+          .onMalformedInput(CodingErrorAction.REPORT)
+          .onUnmappableCharacter(CodingErrorAction.REPORT);
+  private int messageOpcode = NO_MESSAGE;
+  private byte[] message = new byte[0];
+  private int messageLength;
+  private boolean inputDone;
+
+  private final Object writeLock = new Object();
+
+  @GuardedBy("writeLock")
+  private boolean closeSent;
+
+  private volatile long closeDeadline;
+
+  private WebSocketEngine(
+      HttpRequest request,
+      WebSocketHandler handler,
+      WebSocketConfig config,
+      Transport transport,
+      Executor executor,
+      boolean client) {
+    this.request = request;
+    this.handler = handler;
+    this.config = config;
+    this.transport = transport;
+    this.executor = config.executor().orElse(executor);
+    this.client = client;
+  }
+
+  /**
+   * The server end of an accepted upgrade.
+   *
+   * @param executor where to run the handler unless the upgrade's config names an executor
+   */
+  public static WebSocketEngine server(
+      WebSocketUpgrade upgrade, Transport transport, Executor executor) {
+    return new WebSocketEngine(
+        upgrade.request(), upgrade.handler(), upgrade.config(), transport, executor, false);
+  }
+
+  /** The client end of a connection, which masks what it sends. */
+  public static WebSocketEngine client(
+      HttpRequest request,
+      WebSocketHandler handler,
+      WebSocketConfig config,
+      Transport transport,
+      Executor executor) {
+    return new WebSocketEngine(request, handler, config, transport, executor, true);
+  }
+
+  /** The smallest read buffer able to hold any frame the engine accepts. */
+  public int minReadBuffer() {
+    return config.maxFrameSize() + WebSocketFrames.MAX_HEADER;
+  }
+
+  /** Tell the handler the connection is open. Call before the first {@link #onRead}. */
+  public void start() {
+    dispatch(() -> handler.onOpen(this), false);
+  }
+
+  /**
+   * Consume the whole frames in the buffer. What is left is the start of a frame, to be offered
+   * again with more bytes after it; the buffer must be at least {@link #minReadBuffer()} long for
+   * that to always work out. Called by one thread at a time.
+   *
+   * @param in the bytes read, in read mode. Masked payloads are unmasked in place.
+   */
+  public void onRead(ByteBuffer in) {
+    while (!inputDone && !readsSuspended.get()) {
+      if (!readFrame(in)) {
+        return;
+      }
+    }
+    if (inputDone) {
+      //nothing after a close frame or a protocol error counts
+      in.position(in.limit());
+    }
+  }
+
+  /** The connection is gone. Tells the handler, if it was not closed cleanly before. */
+  public void onTransportClosed() {
+    synchronized (writeLock) {
+      closeSent = true;
+    }
+    finish(ABNORMAL_CLOSURE, "");
+  }
+
+  /** Drop the connection if the peer has not answered a close frame in time. */
+  public void tick(long nowNanos) {
+    long deadline = closeDeadline;
+    if (deadline != 0 && !finished.get() && nowNanos - deadline > 0) {
+      LOG.debug("No close frame from {} in time, dropping the connection", request.remote());
+      transport.close();
+    }
+  }
+
+  @Override
+  public HttpRequest request() {
+    return request;
+  }
+
+  @Override
+  public boolean sendText(String text) {
+    return send(WebSocketFrames.TEXT, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  @Override
+  public boolean sendBinary(ByteBuffer data) {
+    return send(WebSocketFrames.BINARY, data.duplicate());
+  }
+
+  @Override
+  public boolean ping(ByteBuffer data) {
+    if (data.remaining() > WebSocketFrames.MAX_CONTROL_PAYLOAD) {
+      throw new IllegalArgumentException("Ping payload longer than 125 bytes");
+    }
+    synchronized (writeLock) {
+      return !closeSent && writeFrame(true, WebSocketFrames.PING, data.duplicate());
+    }
+  }
+
+  @Override
+  public void close(int code, String reason) {
+    ByteBuffer payload = closePayload(code, reason);
+    synchronized (writeLock) {
+      if (closeSent) {
+        return;
+      }
+      closeSent = true;
+      closeDeadline = System.nanoTime() + config.closeTimeout().toNanos();
+      writeFrame(true, WebSocketFrames.CLOSE, payload);
+    }
+  }
+
+  @Override
+  public boolean isOpen() {
+    synchronized (writeLock) {
+      return !closeSent;
+    }
+  }
+
+  @Override
+  public void awaitWritable() throws IOException {
+    if (!isOpen()) {
+      throw new IOException("WebSocket closed");
+    }
+    transport.awaitWritable();
+  }
+
+  /** Send a message, split into frames of at most maxFrameSize. */
+  private boolean send(int opcode, ByteBuffer data) {
+    int maxFrameSize = config.maxFrameSize();
+    synchronized (writeLock) {
+      if (closeSent) {
+        return false;
+      }
+      int frameOpcode = opcode;
+      do {
+        ByteBuffer fragment = data.duplicate();
+        int length = Math.min(maxFrameSize, data.remaining());
+        fragment.limit(fragment.position() + length);
+        data.position(data.position() + length);
+        if (!writeFrame(!data.hasRemaining(), frameOpcode, fragment)) {
+          return false;
+        }
+        frameOpcode = WebSocketFrames.CONTINUATION;
+      } while (data.hasRemaining());
+      return true;
+    }
+  }
+
+  @GuardedBy("writeLock")
+  private boolean writeFrame(boolean fin, int opcode, ByteBuffer payload) {
+    int length = payload.remaining();
+    long pending;
+    try {
+      if (client) {
+        //masked payloads are copied, the caller's buffer stays as it was
+        int mask = ThreadLocalRandom.current().nextInt();
+        ByteBuffer frame = ByteBuffer.allocate(WebSocketFrames.headerLength(length, true) + length);
+        WebSocketFrames.putHeader(frame, fin, opcode, length, true, mask);
+        int payloadStart = frame.position();
+        frame.put(payload);
+        frame.position(payloadStart);
+        WebSocketFrames.mask(frame, mask);
+        frame.position(0);
+        pending = transport.write(frame);
+      } else if (length <= 512) {
+        ByteBuffer frame =
+            ByteBuffer.allocate(WebSocketFrames.headerLength(length, false) + length);
+        WebSocketFrames.putHeader(frame, fin, opcode, length, false, 0);
+        frame.put(payload);
+        frame.flip();
+        pending = transport.write(frame);
+      } else {
+        //large payloads go out as they are, behind their own header
+        ByteBuffer header = ByteBuffer.allocate(WebSocketFrames.headerLength(length, false));
+        WebSocketFrames.putHeader(header, fin, opcode, length, false, 0);
+        header.flip();
+        pending = transport.write(header, payload);
+      }
+    } catch (IOException e) {
+      LOG.debug("WebSocket to {} is gone", request.remote(), e);
+      closeSent = true;
+      return false;
+    }
+    if (pending > config.maxBuffered()) {
+      LOG.info(
+          "Dropping WebSocket to {}, more than {} bytes behind",
+          request.remote(),
+          config.maxBuffered());
+      closeSent = true;
+      transport.close();
+      return false;
+    }
+    return true;
+  }
+
+  /** @return false if the buffer does not hold a whole frame yet */
+  private boolean readFrame(ByteBuffer in) {
+    if (in.remaining() < 2) {
+      return false;
+    }
+    int start = in.position();
+    int first = in.get(start) & 0xFF;
+    int second = in.get(start + 1) & 0xFF;
+    boolean fin = (first & WebSocketFrames.FIN) != 0;
+    int opcode = first & 0x0F;
+    boolean masked = (second & WebSocketFrames.MASKED) != 0;
+    int shortLength = second & 0x7F;
+    int headerLength = 2 + (shortLength == 126 ? 2 : shortLength == 127 ? 8 : 0) + (masked ? 4 : 0);
+    if (in.remaining() < headerLength) {
+      return false;
+    }
+    long length =
+        shortLength == 126
+            ? in.getShort(start + 2) & 0xFFFF
+            : shortLength == 127 ? in.getLong(start + 2) : shortLength;
+
+    if ((first & WebSocketFrames.RSV) != 0) {
+      return fail(PROTOCOL_ERROR, "Reserved bits set without an extension");
+    }
+    if (masked == client) {
+      return fail(PROTOCOL_ERROR, client ? "Masked frame from server" : "Unmasked frame");
+    }
+    if (WebSocketFrames.isControl(opcode)) {
+      if (!fin || length > WebSocketFrames.MAX_CONTROL_PAYLOAD) {
+        return fail(PROTOCOL_ERROR, "Fragmented or oversized control frame");
+      }
+    } else if (length < 0 || length > config.maxFrameSize()) {
+      return fail(MESSAGE_TOO_BIG, "Frame larger than " + config.maxFrameSize());
+    }
+    if (in.remaining() - headerLength < length) {
+      return false;
+    }
+
+    ByteBuffer payload = in.duplicate();
+    payload.position(start + headerLength).limit(start + headerLength + (int) length);
+    in.position(payload.limit());
+    if (masked) {
+      WebSocketFrames.mask(payload, in.getInt(start + headerLength - 4));
+    }
+    onFrame(fin, opcode, payload);
+    return true;
+  }
+
+  private void onFrame(boolean fin, int opcode, ByteBuffer payload) {
+    switch (opcode) {
+      case WebSocketFrames.TEXT:
+      case WebSocketFrames.BINARY:
+        if (messageOpcode != NO_MESSAGE) {
+          fail(PROTOCOL_ERROR, "New message before the last one was finished");
+          return;
+        }
+        messageOpcode = opcode;
+        append(fin, payload);
+        return;
+      case WebSocketFrames.CONTINUATION:
+        if (messageOpcode == NO_MESSAGE) {
+          fail(PROTOCOL_ERROR, "Continuation without a message");
+          return;
+        }
+        append(fin, payload);
+        return;
+      case WebSocketFrames.PING:
+        synchronized (writeLock) {
+          if (!closeSent) {
+            writeFrame(true, WebSocketFrames.PONG, payload);
+          }
+        }
+        return;
+      case WebSocketFrames.PONG:
+        ByteBuffer pong = copy(payload);
+        dispatch(() -> handler.onPong(this, pong), false);
+        return;
+      case WebSocketFrames.CLOSE:
+        onCloseFrame(payload);
+        return;
+      default:
+        fail(PROTOCOL_ERROR, "Unknown opcode " + opcode);
+    }
+  }
+
+  private void append(boolean fin, ByteBuffer payload) {
+    int length = payload.remaining();
+    if (length > config.maxMessageSize() - messageLength) {
+      fail(MESSAGE_TOO_BIG, "Message larger than " + config.maxMessageSize());
+      return;
+    }
+    if (fin && messageLength == 0) {
+      //the common case of an unfragmented message is decoded straight from the read buffer
+      deliver(payload);
+      return;
+    }
+    if (messageLength + length > message.length) {
+      message = Arrays.copyOf(message, Math.max(messageLength + length, message.length * 2));
+    }
+    payload.get(message, messageLength, length);
+    messageLength += length;
+    if (fin) {
+      deliver(ByteBuffer.wrap(message, 0, messageLength));
+    }
+  }
+
+  private void deliver(ByteBuffer data) {
+    int opcode = messageOpcode;
+    messageOpcode = NO_MESSAGE;
+    messageLength = 0;
+    if (message.length > config.maxFrameSize()) {
+      //don't hold on to the buffer of one large message
+      message = new byte[0];
+    }
+    if (opcode == WebSocketFrames.TEXT) {
+      String text;
+      try {
+        text = utf8.decode(data).toString();
+      } catch (CharacterCodingException e) {
+        fail(INVALID_PAYLOAD, "Text message is not UTF-8");
+        return;
+      }
+      dispatch(() -> handler.onText(this, text), true);
+    } else {
+      ByteBuffer binary = copy(data);
+      dispatch(() -> handler.onBinary(this, binary), true);
+    }
+  }
+
+  private void onCloseFrame(ByteBuffer payload) {
+    int code = NO_STATUS;
+    String reason = "";
+    if (payload.remaining() == 1) {
+      fail(PROTOCOL_ERROR, "Close frame with a one byte payload");
+      return;
+    }
+    if (payload.remaining() >= 2) {
+      code = payload.getShort() & 0xFFFF;
+      if (!isValidCode(code)) {
+        fail(PROTOCOL_ERROR, "Invalid close code " + code);
+        return;
+      }
+      try {
+        reason = utf8.decode(payload).toString();
+      } catch (CharacterCodingException e) {
+        fail(INVALID_PAYLOAD, "Close reason is not UTF-8");
+        return;
+      }
+    }
+    inputDone = true;
+    //echo the code back unless we started the closing handshake
+    close(code == NO_STATUS ? NORMAL_CLOSURE : code, "");
+    transport.closeAfterWrite();
+    finish(code, reason);
+  }
+
+  /** Fail the connection, RFC 6455 7.1.7: a last close frame, then close it. */
+  private boolean fail(int code, String reason) {
+    LOG.debug("Failing WebSocket to {}: {}", request.remote(), reason);
+    inputDone = true;
+    close(code, reason);
+    transport.closeAfterWrite();
+    finish(code, reason);
+    return false;
+  }
+
+  private void finish(int code, String reason) {
+    if (finished.compareAndSet(false, true)) {
+      dispatch(() -> handler.onClose(this, code, reason), false);
+    }
+  }
+
+  /** Queue an event for the handler, suspending reads when it has too many messages queued. */
+  private void dispatch(Runnable event, boolean countsAsMessage) {
+    if (countsAsMessage) {
+      events.add(
+          () -> {
+            try {
+              event.run();
+            } finally {
+              messageHandled();
+            }
+          });
+      if (queuedMessages.incrementAndGet() >= config.maxQueuedMessages()) {
+        readsSuspended.set(true);
+        transport.suspendReads();
+        //the handler may have caught up in the meantime, and would not know to resume
+        if (queuedMessages.get() < config.maxQueuedMessages()
+            && readsSuspended.compareAndSet(true, false)) {
+          transport.resumeReads();
+        }
+      }
+    } else {
+      events.add(event);
+    }
+    scheduleEvents();
+  }
+
+  private void messageHandled() {
+    if (queuedMessages.decrementAndGet() < config.maxQueuedMessages()
+        && readsSuspended.compareAndSet(true, false)) {
+      transport.resumeReads();
+    }
+  }
+
+  private void scheduleEvents() {
+    if (draining.compareAndSet(false, true)) {
+      try {
+        executor.execute(this::runEvents);
+      } catch (RejectedExecutionException e) {
+        LOG.warn("Could not dispatch WebSocket events for {}", request.remote(), e);
+        draining.set(false);
+        transport.close();
+      }
+    }
+  }
+
+  private void runEvents() {
+    Runnable event;
+    while ((event = events.poll()) != null) {
+      try {
+        event.run();
+      } catch (Throwable t) {
+        LOG.error("WebSocket handler failed", t);
+        try {
+          handler.onError(this, t);
+        } catch (Throwable again) {
+          LOG.error("WebSocket error handler failed", again);
+        }
+        close(INTERNAL_ERROR, "");
+      }
+    }
+    draining.set(false);
+    //an event may have been queued after the poll came up empty
+    if (!events.isEmpty()) {
+      scheduleEvents();
+    }
+  }
+
+  private static ByteBuffer closePayload(int code, String reason) {
+    byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+    if (reasonBytes.length > WebSocketFrames.MAX_CONTROL_PAYLOAD - 2) {
+      throw new IllegalArgumentException("Close reason longer than 123 bytes: " + reason);
+    }
+    ByteBuffer payload = ByteBuffer.allocate(2 + reasonBytes.length);
+    payload.putShort((short) code).put(reasonBytes).flip();
+    return payload;
+  }
+
+  private static boolean isValidCode(int code) {
+    return (code >= 1000 && code <= 1003)
+        || (code >= 1007 && code <= 1011)
+        || (code >= 3000 && code <= 4999);
+  }
+
+  private static ByteBuffer copy(ByteBuffer data) {
+    ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+    copy.put(data).flip();
+    return copy;
+  }
+}
@@ -0,0 +1,74 @@
+package http4j.core.websocket;
+
+import java.nio.ByteBuffer;
+
+/** Frame layout from RFC 6455 5.2. */
+final class WebSocketFrames {
+
+  static final int CONTINUATION = 0x0;
+  static final int TEXT = 0x1;
+  static final int BINARY = 0x2;
+  static final int CLOSE = 0x8;
+  static final int PING = 0x9;
+  static final int PONG = 0xA;
+
+  static final int FIN = 0x80;
+  static final int RSV = 0x70;
+  static final int MASKED = 0x80;
+
+  /** Control frames carry at most this much, and are never fragmented. */
+  static final int MAX_CONTROL_PAYLOAD = 125;
+
+  /** The longest frame header: two bytes, an eight byte length and the mask. */
+  static final int MAX_HEADER = 14;
+
+  private WebSocketFrames() {}
+
+  static boolean isControl(int opcode) {
+    return (opcode & 0x8) != 0;
+  }
+
+  static int headerLength(int payloadLength, boolean masked) {
+    int length = payloadLength <= 125 ? 2 : payloadLength <= 0xFFFF ? 4 : 10;
+    return masked ? length + 4 : length;
+  }
+
+  /** Write a frame header, followed by the mask key if masked is set. */
+  static void putHeader(
+      ByteBuffer out, boolean fin, int opcode, int payloadLength, boolean masked, int mask) {
+    out.put((byte) ((fin ? FIN : 0) | opcode));
+    int maskBit = masked ? MASKED : 0;
+    if (payloadLength <= 125) {
+      out.put((byte) (maskBit | payloadLength));
+    } else if (payloadLength <= 0xFFFF) {
+      out.put((byte) (maskBit | 126));
+      out.putShort((short) payloadLength);
+    } else {
+      out.put((byte) (maskBit | 127));
+      out.putLong(payloadLength);
+    }
+    if (masked) {
+      out.putInt(mask);
+    }
+  }
+
+  /**
+   * XOR the bytes between the buffer's position and limit with the mask key, in place and without
+   * moving the position. Eight bytes at a time where it can, since masking every byte of every
+   * message is the hot loop of the protocol.
+   */
+  static void mask(ByteBuffer buffer, int mask) {
+    int start = buffer.position();
+    int end = buffer.limit();
+    long wide = (mask & 0xFFFFFFFFL) | ((long) mask << 32);
+    int i = start;
+    for (; end - i >= 8; i += 8) {
+      buffer.putLong(i, buffer.getLong(i) ^ wide);
+    }
+    for (; i < end; i++) {
+      //the eight byte steps keep the key lined up, so this restarts at its first byte
+      int shift = 24 - ((i - start) & 3) * 8;
+      buffer.put(i, (byte) (buffer.get(i) ^ (mask >>> shift)));
+    }
+  }
+}
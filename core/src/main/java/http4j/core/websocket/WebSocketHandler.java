@@ -0,0 +1,33 @@
+package http4j.core.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callbacks for the events of one WebSocket connection. They run on an executor, never on the
+ * thread reading from the socket, and never concurrently for the same connection, so a handler can
+ * keep per connection state without locking. Only implement the ones you need.
+ */
+public interface WebSocketHandler {
+
+  /** The handshake is done and messages can be sent. */
+  default void onOpen(WebSocket socket) {}
+
+  /** A whole text message, reassembled if it was fragmented. */
+  default void onText(WebSocket socket, String text) {}
+
+  /** A whole binary message, reassembled if it was fragmented. The buffer is the handler's own. */
+  default void onBinary(WebSocket socket, ByteBuffer data) {}
+
+  default void onPong(WebSocket socket, ByteBuffer data) {}
+
+  /**
+   * The connection is closed, always called exactly once at the end.
+   *
+   * @param code the close code, {@link WebSocket#ABNORMAL_CLOSURE} if the connection was lost
+   *     without a closing handshake
+   */
+  default void onClose(WebSocket socket, int code, String reason) {}
+
+  /** One of the other callbacks threw. The connection is closed with an internal error after. */
+  default void onError(WebSocket socket, Throwable error) {}
+}
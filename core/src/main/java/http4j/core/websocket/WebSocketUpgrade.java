@@ -0,0 +1,146 @@
+package http4j.core.websocket;
+
+import com.google.common.base.Splitter;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Accepts the opening handshake of a WebSocket, RFC 6455 4.2. A handler returns {@link
+ * #response(HttpRequest, WebSocketHandler)}; a server able to take over the connection finds the
+ * upgrade again through {@link #of(HttpResponse)}, writes the 101 and starts talking frames.
+ * Servers that can't answer 501 instead.
+ *
+ * <pre>{@code
+ * Router.builder().websocket("/chat/{room}", new ChatHandler()).build();
+ * }</pre>
+ */
+public final class WebSocketUpgrade {
+
+  private static final String GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+  private static final String VERSION = "13";
+  private static final String SEC_WEBSOCKET_KEY = "Sec-WebSocket-Key";
+  private static final String SEC_WEBSOCKET_ACCEPT = "Sec-WebSocket-Accept";
+  private static final String SEC_WEBSOCKET_VERSION = "Sec-WebSocket-Version";
+  private static final Splitter TOKENS = Splitter.on(',').trimResults().omitEmptyStrings();
+
+  private final HttpRequest request;
+  private final WebSocketHandler handler;
+  private final WebSocketConfig config;
+
+  private WebSocketUpgrade(HttpRequest request, WebSocketHandler handler, WebSocketConfig config) {
+    this.request = request;
+    this.handler = handler;
+    this.config = config;
+  }
+
+  /** Accept the handshake with the default limits. */
+  public static HttpResponse response(HttpRequest request, WebSocketHandler handler) {
+    return response(request, handler, WebSocketConfig.defaults());
+  }
+
+  /**
+   * Accept the handshake if the request is a valid one: 101 with the upgrade attached, or 400, or
+   * 426 for a version other than 13.
+   */
+  public static HttpResponse response(
+      HttpRequest request, WebSocketHandler handler, WebSocketConfig config) {
+    Objects.requireNonNull(handler);
+    Objects.requireNonNull(config);
+    if (request.method() != HttpMethod.GET
+        || !hasToken(request, HttpHeaders.UPGRADE, "websocket")
+        || !hasToken(request, HttpHeaders.CONNECTION, "upgrade")) {
+      return HttpResponse.status(400).body("Expected a WebSocket upgrade");
+    }
+    if (!request.headers().get(SEC_WEBSOCKET_VERSION).contains(VERSION)) {
+      return HttpResponse.status(426).header(SEC_WEBSOCKET_VERSION, VERSION);
+    }
+    String key = first(request, SEC_WEBSOCKET_KEY);
+    if (key == null || !isKey(key)) {
+      return HttpResponse.status(400).body("Invalid Sec-WebSocket-Key");
+    }
+    return HttpResponse.status(101)
+        .header(HttpHeaders.UPGRADE, "websocket")
+        .header(HttpHeaders.CONNECTION, "Upgrade")
+        .header(SEC_WEBSOCKET_ACCEPT, accept(key))
+        .body(new Marker(new WebSocketUpgrade(request, handler, config)), 0L);
+  }
+
+  /** The upgrade a response accepts, if it is a WebSocket handshake. */
+  public static Optional<WebSocketUpgrade> of(HttpResponse response) {
+    InputStream body = response.body();
+    return response.status() == 101 && body instanceof Marker
+        ? Optional.of(((Marker) body).upgrade)
+        : Optional.empty();
+  }
+
+  /** The value of Sec-WebSocket-Accept answering the given Sec-WebSocket-Key. */
+  public static String accept(String key) {
+    try {
+      MessageDigest sha1 = MessageDigest.getInstance("SHA-1");
+      byte[] digest = sha1.digest((key + GUID).getBytes(StandardCharsets.US_ASCII));
+      return Base64.getEncoder().encodeToString(digest);
+    } catch (NoSuchAlgorithmException e) {
+      //every JRE has to provide SHA-1
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public HttpRequest request() {
+    return request;
+  }
+
+  public WebSocketHandler handler() {
+    return handler;
+  }
+
+  public WebSocketConfig config() {
+    return config;
+  }
+
+  private static boolean hasToken(HttpRequest request, String header, String token) {
+    for (String value : request.headers().get(header)) {
+      for (String candidate : TOKENS.split(value)) {
+        if (candidate.equalsIgnoreCase(token)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private static String first(HttpRequest request, String header) {
+    return request.headers().get(header).stream().findFirst().map(String::trim).orElse(null);
+  }
+
+  private static boolean isKey(String key) {
+    try {
+      return Base64.getDecoder().decode(key).length == 16;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /** An empty body carrying the upgrade through filters to the server. */
+  private static final class Marker extends InputStream {
+
+    private final WebSocketUpgrade upgrade;
+
+    private Marker(WebSocketUpgrade upgrade) {
+      this.upgrade = upgrade;
+    }
+
+    @Override
+    public int read() {
+      return -1;
+    }
+  }
+}
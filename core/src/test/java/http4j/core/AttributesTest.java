@@ -0,0 +1,96 @@
+package http4j.core;
+
+import http4j.core.util.UriTemplate;
+import java.util.ArrayList;
+import java.util.List;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class AttributesTest {
+
+  private static final AttributeKey<String> PRINCIPAL = AttributeKey.of("principal", String.class);
+  private static final AttributeKey<Integer> ROLES = AttributeKey.of("roles", Integer.class);
+
+  @Test
+  public void testFiltersAttachValuesWithoutCopyingTheRequest() {
+    Router router =
+        Router.builder()
+            .get(
+                "/users/{id}",
+                request ->
+                    HttpResponse.status(200)
+                        .body(
+                            request.attribute(PRINCIPAL).orElse("nobody")
+                                + " "
+                                + request.attribute(ROLES).orElse(0)
+                                + " "
+                                + request.params().get("id")))
+            .build();
+    HttpHandler handler =
+        HttpPipeline.builder()
+            .onRequest(
+                (request, response) -> {
+                  request.attributes().set(PRINCIPAL, "alice").set(ROLES, 2);
+                  return request;
+                })
+            .build(router);
+    Assertions.assertThat(RouterTest.get(handler, "/users/7")).isEqualTo("alice 2 7");
+  }
+
+  @Test
+  public void testCopiesShareTheAttributes() {
+    HttpRequest original = HttpRequest.get("http://localhost/users/7");
+    original.attributes().set(PRINCIPAL, "alice").set(ROLES, 2);
+    HttpRequest copy = original.copy().param("extra", "1").build();
+    Assertions.assertThat(copy.attributes()).isSameAs(original.attributes());
+    copy.attributes().set(ROLES, 3);
+    Assertions.assertThat(original.attribute(ROLES)).contains(3);
+    Assertions.assertThat(original.attributes().remove(PRINCIPAL)).contains("alice");
+    Assertions.assertThat(copy.attribute(PRINCIPAL)).isEmpty();
+    Assertions.assertThat(copy.attributes().size()).isEqualTo(1);
+  }
+
+  @Test
+  public void testRouterSetsTheRouteItMatched() {
+    List<HttpRequest> seen = new ArrayList<>();
+    Router router =
+        Router.builder()
+            .get(
+                "/users/{id}",
+                request -> {
+                  seen.add(request);
+                  return HttpResponse.status(200);
+                })
+            .build();
+    HttpRequest request = HttpRequest.get("http://localhost/users/7");
+    router.handle(request);
+    Assertions.assertThat(request.attribute(Router.ROUTE).map(UriTemplate::getTemplate))
+        .contains("/users/{id}");
+    Assertions.assertThat(seen.get(0).attribute(Router.ROUTE))
+        .isEqualTo(request.attribute(Router.ROUTE));
+  }
+
+  @Test
+  public void testKeysAreToldApartByIdentity() {
+    HttpRequest request = HttpRequest.get("http://localhost/");
+    request.attributes().set(PRINCIPAL, "alice");
+    AttributeKey<String> other = AttributeKey.of("principal", String.class);
+    Assertions.assertThat(request.attributes().contains(other)).isFalse();
+  }
+
+  @Test
+  public void testManyValues() {
+    Attributes many = HttpRequest.get("http://localhost/").attributes();
+    Assertions.assertThat(many.isEmpty()).isTrue();
+    List<AttributeKey<Integer>> keys = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      keys.add(AttributeKey.of("key" + i, Integer.class));
+      many.set(keys.get(i), i);
+    }
+    Assertions.assertThat(many.remove(keys.get(0))).contains(0);
+    for (int i = 1; i < 10; i++) {
+      Assertions.assertThat(many.get(keys.get(i))).contains(i);
+    }
+    Assertions.assertThat(many.size()).isEqualTo(9);
+  }
+}
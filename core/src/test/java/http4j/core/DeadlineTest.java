@@ -0,0 +1,30 @@
+package http4j.core;
+
+import java.time.Duration;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class DeadlineTest {
+
+  @Test
+  public void testHugeTimeoutsSaturate() {
+    Deadline far = Deadline.after(Duration.ofSeconds(Long.MAX_VALUE));
+    Assertions.assertThat(far.isExpired()).isFalse();
+    Assertions.assertThat(far.compareTo(Deadline.after(Duration.ofDays(365)))).isPositive();
+    Deadline past = Deadline.after(Duration.ofSeconds(Long.MIN_VALUE));
+    Assertions.assertThat(past.isExpired()).isTrue();
+    Assertions.assertThat(past.compareTo(far)).isNegative();
+  }
+
+  @Test
+  public void testHugeHeaderValueIsTheFurthestDeadline() {
+    HttpRequest request =
+        HttpRequest.get("http://localhost/")
+            .copy()
+            .header(Deadline.HEADER, "99999999999999")
+            .build();
+    Deadline deadline = Deadline.fromHeader(request).get();
+    Assertions.assertThat(deadline.isExpired()).isFalse();
+    Assertions.assertThat(deadline.compareTo(Deadline.after(Duration.ofDays(365)))).isPositive();
+  }
+}
@@ -0,0 +1,141 @@
+package http4j.core;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class DynamicRouterTest {
+
+  private final DynamicRouter router =
+      DynamicRouter.create(base -> base.get("/health", request -> HttpResponse.status(204)));
+
+  @Test
+  public void testStartsWithTheBaseRoutes() {
+    Assertions.assertThat(status("/health")).isEqualTo(204);
+    Assertions.assertThat(status("/beta")).isEqualTo(404);
+    Assertions.assertThat(router.version()).isZero();
+  }
+
+  @Test
+  public void testAddedRoutesAreServedOnceApplied() {
+    DynamicRouter.Update update = router.update().get("/beta", HttpHandlers.pong());
+    Assertions.assertThat(status("/beta")).isEqualTo(404);
+    Assertions.assertThat(update.apply()).isEqualTo(1);
+    Assertions.assertThat(status("/beta")).isEqualTo(200);
+    Assertions.assertThat(status("/health")).isEqualTo(204);
+  }
+
+  @Test
+  public void testShortcutsAddRoutesForTheirMethod() {
+    router
+        .update()
+        .head("/beta", request -> HttpResponse.status(204))
+        .patch("/beta", request -> HttpResponse.status(202))
+        .options("/beta", request -> HttpResponse.status(200))
+        .apply();
+    Assertions.assertThat(status(HttpMethod.HEAD, "/beta")).isEqualTo(204);
+    Assertions.assertThat(status(HttpMethod.PATCH, "/beta")).isEqualTo(202);
+    Assertions.assertThat(status(HttpMethod.OPTIONS, "/beta")).isEqualTo(200);
+    router.update().remove(HttpMethod.PATCH, "/beta").apply();
+    Assertions.assertThat(status(HttpMethod.PATCH, "/beta")).isEqualTo(405);
+  }
+
+  @Test
+  public void testNamedRoutesComeAndGo() {
+    router.update().route("item", HttpMethod.GET, "/items/{id}", HttpHandlers.pong()).apply();
+    Assertions.assertThat(router.snapshot().url("item", "7")).isEqualTo("/items/7");
+    router.update().remove(HttpMethod.GET, "/items/{id}").apply();
+    Assertions.assertThat(router.snapshot().template("item")).isEmpty();
+  }
+
+  @Test
+  public void testRequestInFlightFinishesOnTheVersionItStartedWith() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    router
+        .update()
+        .get(
+            "/slow/{id}",
+            request -> {
+              entered.countDown();
+              Uninterruptibles.awaitUninterruptibly(release);
+              return HttpResponse.status(200);
+            })
+        .apply();
+    ExecutorService threads = Executors.newSingleThreadExecutor();
+    try {
+      Future<HttpResponse> slow =
+          threads.submit(() -> router.handle(HttpRequest.get("http://localhost/slow/7")));
+      entered.await();
+      router.update().remove(HttpMethod.GET, "/slow/{id}").apply();
+      release.countDown();
+      Assertions.assertThat(slow.get().status()).isEqualTo(200);
+    } finally {
+      threads.shutdown();
+    }
+    Assertions.assertThat(status("/slow/7")).isEqualTo(404);
+  }
+
+  @Test
+  public void testFailedUpdatePublishesNothing() {
+    router.update().get("/beta", HttpHandlers.pong()).apply();
+    Assertions.assertThatThrownBy(
+            () ->
+                router
+                    .update()
+                    .get("/gamma", HttpHandlers.pong())
+                    .remove(HttpMethod.GET, "/missing")
+                    .apply())
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> router.update().get("/beta", HttpHandlers.pong()).apply())
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThat(router.version()).isEqualTo(1);
+    Assertions.assertThat(status("/gamma")).isEqualTo(404);
+  }
+
+  @Test
+  public void testReplacingIsRemovingAndAddingInOneUpdate() {
+    router.update().get("/beta", HttpHandlers.pong()).apply();
+    router
+        .update()
+        .remove(HttpMethod.GET, "/beta")
+        .get("/beta", request -> HttpResponse.status(202))
+        .apply();
+    Assertions.assertThat(status("/beta")).isEqualTo(202);
+  }
+
+  @Test
+  public void testConcurrentUpdatesAreAllKept() throws Exception {
+    ExecutorService writers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Long>> updates = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        String path = "/tenant/" + i;
+        updates.add(writers.submit(() -> router.update().get(path, HttpHandlers.pong()).apply()));
+      }
+      for (Future<Long> update : updates) {
+        update.get();
+      }
+    } finally {
+      writers.shutdown();
+    }
+    Assertions.assertThat(router.version()).isEqualTo(40);
+    for (int i = 0; i < 40; i++) {
+      Assertions.assertThat(status("/tenant/" + i)).isEqualTo(200);
+    }
+  }
+
+  private int status(String path) {
+    return status(HttpMethod.GET, path);
+  }
+
+  private int status(HttpMethod method, String path) {
+    return router.handle(HttpRequest.create(method, "http://localhost" + path)).status();
+  }
+}
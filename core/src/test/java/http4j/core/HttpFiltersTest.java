@@ -0,0 +1,205 @@
+package http4j.core;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.upload.UploadConfig;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class HttpFiltersTest {
+
+  @Test
+  public void testSpooledBodyIsClosedAndDeletedOnceTheHandlerReturns() throws Exception {
+    Path spool = Files.createTempDirectory("http4j-spool-test");
+    try {
+      List<InputStream> bodies = new ArrayList<>();
+      HttpHandler handler =
+          HttpFilters.spool(
+              request -> {
+                bodies.add(request.body());
+                return HttpResponse.status(200).body(request.length().get() + " spooled");
+              },
+              UploadConfig.builder().memoryThreshold(50).spoolDirectory(spool).build());
+      HttpRequest upload =
+          HttpRequest.create(HttpMethod.POST, "http://localhost/upload")
+              .copy()
+              .body(new ByteArrayInputStream(new byte[1000]), null)
+              .build();
+      Assertions.assertThat(RouterTest.body(handler.handle(upload))).isEqualTo("1000 spooled");
+      try (Stream<Path> files = Files.list(spool)) {
+        Assertions.assertThat(files.count()).isZero();
+      }
+      Assertions.assertThatThrownBy(() -> bodies.get(0).read()).isInstanceOf(IOException.class);
+    } finally {
+      Files.deleteIfExists(spool);
+    }
+  }
+
+  @Test
+  public void testTimeoutRunsHandlerWithTheDeadlineOfTheRequest() {
+    HttpHandler handler =
+        HttpFilters.timeout(
+            request ->
+                HttpResponse.status(request.deadline().equals(Deadline.current()) ? 200 : 500),
+            Duration.ofSeconds(10));
+    Assertions.assertThat(handler.handle(HttpRequest.get("http://localhost/fast")).status())
+        .isEqualTo(200);
+    Assertions.assertThat(Deadline.current()).isEmpty();
+  }
+
+  @Test
+  public void testTimeoutInterruptsStuckHandlerAndAnswersAtTheDeadline() throws Exception {
+    CountDownLatch interrupted = new CountDownLatch(1);
+    HttpHandler handler =
+        HttpFilters.timeout(
+            request -> {
+              try {
+                Thread.sleep(TimeUnit.SECONDS.toMillis(30));
+              } catch (InterruptedException e) {
+                interrupted.countDown();
+              }
+              return HttpResponse.status(200);
+            },
+            Duration.ofMillis(200));
+    long start = System.nanoTime();
+    Assertions.assertThat(handler.handle(HttpRequest.get("http://localhost/slow")).status())
+        .isEqualTo(504);
+    Assertions.assertThat(interrupted.await(10, TimeUnit.SECONDS)).isTrue();
+    Assertions.assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  public void testTimeoutTakesLessTimeIfTheSenderAsks() {
+    HttpRequest impatient =
+        new HttpRequest(
+            HttpMethod.GET,
+            new ByteArrayInputStream(new byte[0]),
+            0L,
+            LinkedListMultimap.create(ImmutableMultimap.of("x-request-timeout", "2000")),
+            URI.create("http://localhost/slow"),
+            null,
+            Collections.emptyMap());
+    HttpHandler handler =
+        HttpFilters.timeout(
+            request -> {
+              Assertions.assertThat(request.deadline().get().remaining())
+                  .isLessThanOrEqualTo(Duration.ofSeconds(2));
+              return HttpResponse.status(200);
+            },
+            Duration.ofMinutes(1));
+    Assertions.assertThat(handler.handle(impatient).status()).isEqualTo(200);
+  }
+
+  @Test
+  public void testTimeoutCapsHugeTimeoutsTheSenderAsksFor() {
+    HttpHandler handler =
+        HttpFilters.timeout(
+            request -> {
+              Assertions.assertThat(request.deadline().get().remaining())
+                  .isLessThanOrEqualTo(Duration.ofMinutes(1));
+              return HttpResponse.status(200);
+            },
+            Duration.ofMinutes(1));
+    HttpRequest patient =
+        HttpRequest.get("http://localhost/slow")
+            .copy()
+            .header(Deadline.HEADER, "999999999999999999")
+            .build();
+    Assertions.assertThat(handler.handle(patient).status()).isEqualTo(200);
+  }
+
+  @Test
+  public void testTimeoutRefusesRequestsThatRanOutOfTime() {
+    HttpHandler handler = HttpFilters.timeout(HttpHandlers.pong(), Duration.ofMinutes(1));
+    HttpRequest late =
+        HttpRequest.get("http://localhost/fast")
+            .copy()
+            .deadline(Deadline.after(Duration.ZERO))
+            .build();
+    Assertions.assertThat(handler.handle(late).status()).isEqualTo(503);
+  }
+
+  @Test
+  public void testTimeoutHandsAttributesBackOnlyIfTheHandlerFinishesInTime() throws Exception {
+    AttributeKey<String> user = AttributeKey.of("user", String.class);
+    HttpHandler fast =
+        HttpFilters.timeout(
+            request -> {
+              request.attributes().set(user, "bob");
+              return HttpResponse.status(200);
+            },
+            Duration.ofSeconds(10));
+    HttpRequest request = HttpRequest.get("http://localhost/fast");
+    Assertions.assertThat(fast.handle(request).status()).isEqualTo(200);
+    Assertions.assertThat(request.attribute(user)).contains("bob");
+
+    CountDownLatch set = new CountDownLatch(1);
+    HttpHandler slow =
+        HttpFilters.timeout(
+            late -> {
+              Uninterruptibles.sleepUninterruptibly(200, TimeUnit.MILLISECONDS);
+              late.attributes().set(user, "eve");
+              set.countDown();
+              return HttpResponse.status(200);
+            },
+            Duration.ofMillis(50));
+    Assertions.assertThat(slow.handle(request).status()).isEqualTo(504);
+    Assertions.assertThat(set.await(10, TimeUnit.SECONDS)).isTrue();
+    Assertions.assertThat(request.attribute(user)).contains("bob");
+  }
+
+  @Test
+  public void testTimeoutAnswers503WhenNoThreadIsFree() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    ExecutorService one =
+        new ThreadPoolExecutor(0, 1, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
+    try {
+      HttpHandler handler =
+          HttpFilters.timeout(
+              request -> {
+                Uninterruptibles.awaitUninterruptibly(release);
+                return HttpResponse.status(200);
+              },
+              Duration.ofMillis(50),
+              one);
+      //the stuck handler ignores the interrupt and keeps the only thread
+      Assertions.assertThat(handler.handle(HttpRequest.get("http://localhost/a")).status())
+          .isEqualTo(504);
+      Assertions.assertThat(handler.handle(HttpRequest.get("http://localhost/b")).status())
+          .isEqualTo(503);
+    } finally {
+      release.countDown();
+      one.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testTimeoutRethrowsFailuresAsTheyWereThrown() {
+    HttpHandler handler =
+        HttpFilters.timeout(
+            request -> {
+              throw new IllegalStateException("broken");
+            },
+            Duration.ofMinutes(1));
+    Assertions.assertThatThrownBy(() -> handler.handle(HttpRequest.get("http://localhost/fail")))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("broken");
+  }
+}
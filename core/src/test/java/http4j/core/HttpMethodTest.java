@@ -0,0 +1,56 @@
+package http4j.core;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+
+import java.nio.ByteBuffer;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class HttpMethodTest {
+
+  @Test
+  public void testMethodIgnoresCase() {
+    for (HttpMethod method : HttpMethod.values()) {
+      Assertions.assertThat(HttpMethod.method(method.name().toLowerCase())).isEqualTo(method);
+    }
+    Assertions.assertThat(HttpMethod.method("pAtCh")).isEqualTo(HttpMethod.PATCH);
+  }
+
+  @Test
+  public void testMethodOnlyFoldsAsciiLetters() {
+    //U+0154 and U+00C7 are 'T' and 'G' with bits other than the ASCII case bit set
+    for (String method :
+        new String[] {"GE\u0154", "\u00C7ET", "PU\u0154", "GET\u0000", "G\u0005T"}) {
+      Assertions.assertThatThrownBy(() -> HttpMethod.method(method))
+          .isInstanceOf(IllegalArgumentException.class);
+    }
+    Assertions.assertThatThrownBy(() -> HttpMethod.method(""))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testParseIsCaseSensitive() {
+    Assertions.assertThat(HttpMethod.parse("OPTIONS")).isEqualTo(HttpMethod.OPTIONS);
+    Assertions.assertThat(HttpMethod.parse("get")).isNull();
+    Assertions.assertThat(HttpMethod.parse("GE\u0154")).isNull();
+    Assertions.assertThat(HttpMethod.parse("GET".toCharArray(), 0, 3)).isEqualTo(HttpMethod.GET);
+    Assertions.assertThat(HttpMethod.parse("xGETx".toCharArray(), 1, 3)).isEqualTo(HttpMethod.GET);
+    Assertions.assertThat(HttpMethod.parse("\u00C7ET".toCharArray(), 0, 3)).isNull();
+  }
+
+  @Test
+  public void testParseOfBytes() {
+    ByteBuffer bytes = ByteBuffer.wrap("xDELETE /".getBytes(ISO_8859_1));
+    Assertions.assertThat(HttpMethod.parse(bytes, 1, 6)).isEqualTo(HttpMethod.DELETE);
+    Assertions.assertThat(bytes.position()).isEqualTo(0);
+  }
+
+  @Test
+  public void testParseOfBytesRejectsHighBytes() {
+    //each is a method name with the top bit of one byte set
+    for (String method : new String[] {"\u00C7ET", "G\u00C5T", "PU\u00D4", "\u00C4ELETE"}) {
+      ByteBuffer bytes = ByteBuffer.wrap(method.getBytes(ISO_8859_1));
+      Assertions.assertThat(HttpMethod.parse(bytes, 0, bytes.remaining())).isNull();
+    }
+  }
+}
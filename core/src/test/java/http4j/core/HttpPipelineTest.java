@@ -0,0 +1,55 @@
+package http4j.core;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class HttpPipelineTest {
+
+  private static final HttpHandler HANDLER =
+      request -> HttpResponse.status(200).header("X-Handler", "1").body("ok");
+
+  private static final HttpPipeline.RequestStage TAG =
+      (request, response) -> {
+        response.setHeader("X-Request-Id", "abc");
+        response.setHeader("X-Handler", "stage");
+        return request;
+      };
+
+  @Test
+  public void testHeadersOfRequestStagesAreKeptWithoutResponseStages() {
+    HttpResponse response = HttpPipeline.builder().onRequest(TAG).build(HANDLER).handle(request());
+    Assertions.assertThat(response.headers().get("x-request-id")).containsExactly("abc");
+    Assertions.assertThat(response.headers().get("x-handler")).containsExactly("1");
+    Assertions.assertThat(RouterTest.body(response)).isEqualTo("ok");
+  }
+
+  @Test
+  public void testHeadersOfRequestStagesAreSeenByResponseStages() {
+    HttpResponse response =
+        HttpPipeline.builder()
+            .onRequest(TAG)
+            .onResponse(
+                (request, context) ->
+                    context.setHeader("X-Seen", String.valueOf(context.header("X-Request-Id"))))
+            .build(HANDLER)
+            .handle(request());
+    Assertions.assertThat(response.headers().get("x-seen")).containsExactly("abc");
+    Assertions.assertThat(response.headers().get("x-request-id")).containsExactly("abc");
+    Assertions.assertThat(response.headers().get("x-handler")).containsExactly("1");
+  }
+
+  @Test
+  public void testUnchangedResponseIsPassedThrough() {
+    HttpResponse handled = HttpResponse.status(204);
+    HttpHandler handler =
+        HttpPipeline.builder()
+            .onRequest((request, response) -> request)
+            .onResponse((request, response) -> {})
+            .build(request -> handled);
+    Assertions.assertThat(handler.handle(request())).isSameAs(handled);
+  }
+
+  private static HttpRequest request() {
+    return HttpRequest.get("http://localhost/");
+  }
+}
@@ -0,0 +1,270 @@
+package http4j.core;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.CharStreams;
+import http4j.core.util.UriTemplate;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class RouterTest {
+
+  private static final HttpHandler ECHO_PARAMS =
+      request -> HttpResponse.status(200).body(request.params().toString());
+
+  private final Router typed =
+      Router.builder()
+          .get("/users/{name}", request -> HttpResponse.status(200).body("name"))
+          .get("/users/{id:int}", ECHO_PARAMS)
+          .get("/users/me", request -> HttpResponse.status(200).body("me"))
+          .get("/files/{id:uuid}/{path:*}", ECHO_PARAMS)
+          .get("/a/b", request -> HttpResponse.status(200).body("a/b"))
+          .build();
+
+  private final Router named =
+      Router.builder()
+          .route(
+              "file",
+              HttpMethod.GET,
+              "/users/{id:int}/files/{path:*}",
+              request -> HttpResponse.status(200).body(request.params().get("path")))
+          .route("search", HttpMethod.GET, "/search/{term}/", HttpHandlers.pong())
+          .build();
+
+  @Test
+  public void testStaticBeatsTypedBeatsUntyped() {
+    Assertions.assertThat(get(typed, "/users/me")).isEqualTo("me");
+    Assertions.assertThat(get(typed, "/users/42")).isEqualTo("{id=42}");
+    Assertions.assertThat(get(typed, "/users/bob")).isEqualTo("name");
+  }
+
+  @Test
+  public void testIntVariablesOnlyMatchInts() {
+    Assertions.assertThat(get(typed, "/users/2147483648")).isEqualTo("name");
+    Assertions.assertThat(get(typed, "/users/-2147483648")).isEqualTo("{id=-2147483648}");
+  }
+
+  @Test
+  public void testVariablesNeverSpanSegmentsOrAreEmpty() {
+    Assertions.assertThat(get(typed, "/users/bob/extra")).isEqualTo("404");
+    Assertions.assertThat(get(typed, "/users/")).isEqualTo("404");
+  }
+
+  @Test
+  public void testRestVariableTakesTheRemainingPath() {
+    Assertions.assertThat(get(typed, "/files/123e4567-e89b-12d3-a456-426614174000/docs/a.txt"))
+        .contains("id=123e4567-e89b-12d3-a456-426614174000", "path=docs/a.txt");
+    Assertions.assertThat(get(typed, "/files/not-a-uuid/a.txt")).isEqualTo("404");
+  }
+
+  @Test
+  public void testHandlersReadTypedValuesOfTheMatchedPath() {
+    Router router =
+        Router.builder()
+            .get(
+                "/users/{id:long}/files/{file:uuid}",
+                request -> {
+                  UriTemplate.Match path = request.attributes().get(Router.PATH).get();
+                  return HttpResponse.status(200)
+                      .body(path.longValue("id") + 1 + " " + path.uuidValue("file"));
+                })
+            .build();
+    Assertions.assertThat(get(router, "/users/41/files/123e4567-e89b-12d3-a456-426614174000"))
+        .isEqualTo("42 123e4567-e89b-12d3-a456-426614174000");
+  }
+
+  @Test
+  public void testWholePathMustMatch() {
+    Assertions.assertThat(get(typed, "/a/b")).isEqualTo("a/b");
+    Assertions.assertThat(get(typed, "/x/a/b")).isEqualTo("404");
+    Assertions.assertThat(get(typed, "/a/b/c")).isEqualTo("404");
+  }
+
+  @Test
+  public void testUrlEscapesValuesAndRoutesBack() {
+    String url = named.url("file", "42", "my docs/a.txt");
+    Assertions.assertThat(url).isEqualTo("/users/42/files/my%20docs/a.txt");
+    Assertions.assertThat(get(named, url)).isEqualTo("my docs/a.txt");
+  }
+
+  @Test
+  public void testUrlByVariableName() {
+    Assertions.assertThat(named.url("search", ImmutableMap.of("term", "a/b c")))
+        .isEqualTo("/search/a%2Fb%20c/");
+    Assertions.assertThatThrownBy(() -> named.url("search", ImmutableMap.of()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testUrlOfUnknownRouteFails() {
+    Assertions.assertThatThrownBy(() -> named.url("missing"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThat(named.template("missing")).isEmpty();
+  }
+
+  @Test
+  public void testDuplicateRouteNameFails() {
+    Assertions.assertThatThrownBy(
+            () ->
+                Router.builder()
+                    .route("a", HttpMethod.GET, "/a", HttpHandlers.pong())
+                    .route("a", HttpMethod.GET, "/b", HttpHandlers.pong()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testMountedRoutesAreServedUnderThePrefix() {
+    Router router = Router.builder().mount("/api/v1", users()).build();
+    Assertions.assertThat(get(router, "/api/v1/users/7")).isEqualTo("/api/v1 7");
+    Assertions.assertThat(get(router, "/api/v1")).isEqualTo("index");
+    Assertions.assertThat(get(router, "/users/7")).isEqualTo("404");
+    Assertions.assertThat(
+            router
+                .route(HttpRequest.get("http://localhost/api/v1/users/7"))
+                .map(UriTemplate::getTemplate))
+        .contains("/api/v1/users/{id}");
+  }
+
+  @Test
+  public void testMountedRoutersNest() {
+    Router v2 = Router.builder().mount("/v2", users()).build();
+    Router router = Router.builder().mount("/api", v2).build();
+    Assertions.assertThat(get(router, "/api/v2/users/7")).isEqualTo("/api/v2 7");
+    Assertions.assertThat(fallback(router, "/api/v2/other")).isEqualTo("no such user route");
+  }
+
+  @Test
+  public void testRoutesOfTheRouterItselfStillWin() {
+    Router router =
+        Router.builder()
+            .get("/api/v1/users/me", request -> HttpResponse.status(200).body("me"))
+            .mount("/api/v1", users())
+            .build();
+    Assertions.assertThat(get(router, "/api/v1/users/me")).isEqualTo("me");
+  }
+
+  @Test
+  public void testUnmatchedPathsUnderThePrefixAreAnsweredByTheMountedRouter() {
+    Router router = Router.builder().mount("/api/v1", users()).build();
+    Assertions.assertThat(fallback(router, "/api/v1/nothing")).isEqualTo("no such user route");
+    Assertions.assertThat(
+            router
+                .handle(HttpRequest.create(HttpMethod.POST, "http://localhost/api/v1/users/7"))
+                .status())
+        .isEqualTo(405);
+    //a prefix only covers whole segments
+    Assertions.assertThat(fallback(router, "/api/v10")).isEmpty();
+  }
+
+  @Test
+  public void testNamedRoutesAreMountedWithThePrefix() {
+    Router router = Router.builder().mount("/api/v1", users()).build();
+    Assertions.assertThat(router.url("user", "7")).isEqualTo("/api/v1/users/7");
+    Assertions.assertThatThrownBy(
+            () -> Router.builder().mount("/a", users()).mount("/b", users()).build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testPrefixMustBeAPlainPath() {
+    Assertions.assertThatThrownBy(() -> Router.builder().mount("/api/{version}", users()))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> Router.builder().mount("/api/", users()))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(
+            () -> Router.builder().mount("/api", users()).mount("/api", users()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testHostsAreServedByTheirOwnRouter() {
+    Router router = hosted();
+    Assertions.assertThat(getFrom(router, "admin.example.com", "/")).isEqualTo("admin");
+    Assertions.assertThat(getFrom(router, "admin.example.com", "/users/me")).isEqualTo("404");
+    Assertions.assertThat(getFrom(router, "example.com", "/users/me")).isEqualTo("me");
+  }
+
+  @Test
+  public void testHostsIgnorePortAndCase() {
+    Router router = hosted();
+    Assertions.assertThat(getFrom(router, "Admin.Example.com:8443", "/")).isEqualTo("admin");
+    Assertions.assertThat(getFrom(router, "[::1]:8080", "/users/me")).isEqualTo("me");
+  }
+
+  @Test
+  public void testWildcardHostsCoverTheDomainsBelow() {
+    Router router = hosted();
+    Assertions.assertThat(getFrom(router, "a.tenants.example.com", "/")).isEqualTo("tenant");
+    Assertions.assertThat(getFrom(router, "b.c.tenants.example.com", "/")).isEqualTo("tenant");
+    Assertions.assertThat(getFrom(router, "tenants.example.com", "/users/me")).isEqualTo("me");
+  }
+
+  @Test
+  public void testRoutersWithHostsCantBeMountedOrHosted() {
+    Assertions.assertThatThrownBy(() -> Router.builder().mount("/a", hosted()))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> Router.builder().host("a.com", hosted()))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static Router users() {
+    return Router.builder()
+        .route(
+            "user",
+            HttpMethod.GET,
+            "/users/{id}",
+            request ->
+                HttpResponse.status(200)
+                    .body(
+                        request.attribute(Router.MOUNT).orElse("")
+                            + " "
+                            + request.params().get("id")))
+        .get("/", request -> HttpResponse.status(200).body("index"))
+        .fallbackHandler(request -> HttpResponse.status(404).body("no such user route"))
+        .build();
+  }
+
+  /** The body of a 404. */
+  private static String fallback(Router router, String path) {
+    HttpResponse response = router.handle(HttpRequest.get("http://localhost" + path));
+    Assertions.assertThat(response.status()).isEqualTo(404);
+    return body(response);
+  }
+
+  private static Router hosted() {
+    return Router.builder()
+        .get("/users/me", request -> HttpResponse.status(200).body("me"))
+        .host(
+            "admin.example.com",
+            Router.builder().get("/", request -> HttpResponse.status(200).body("admin")).build())
+        .host(
+            "*.tenants.example.com",
+            Router.builder().get("/", request -> HttpResponse.status(200).body("tenant")).build())
+        .build();
+  }
+
+  private static String getFrom(Router router, String host, String path) {
+    return get(request -> router.handle(request.copy().header("Host", host).build()), path);
+  }
+
+  /** The body of a 200, or the status of anything else. */
+  static String get(HttpHandler handler, String path) {
+    HttpResponse response = handler.handle(HttpRequest.get("http://localhost" + path));
+    if (response.status() != 200) {
+      return Integer.toString(response.status());
+    }
+    return body(response);
+  }
+
+  static String body(HttpResponse response) {
+    try {
+      return CharStreams.toString(new InputStreamReader(response.body(), UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,230 @@
+package http4j.core.coalesce;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.HttpHandler;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.assertj.core.api.Assertions;
+import org.junit.After;
+import org.junit.Test;
+
+public class SingleFlightTest {
+
+  private final AtomicInteger calls = new AtomicInteger();
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final HttpHandler slow =
+      request -> {
+        calls.incrementAndGet();
+        Uninterruptibles.awaitUninterruptibly(release);
+        String path = request.uri().getPath();
+        String body = path.equals("/large") ? Strings.repeat("x", 2048) : "hot " + path;
+        return HttpResponse.status(200).header("x-served", "once").body(body);
+      };
+  private final ExecutorService callers = Executors.newCachedThreadPool();
+
+  @After
+  public void tearDown() {
+    release.countDown();
+    callers.shutdownNow();
+  }
+
+  @Test
+  public void testOneCallAnswersAllWaitersWithBodiesOfTheirOwn() throws Exception {
+    SingleFlight singleFlight = SingleFlight.builder().build();
+    HttpHandler handler = singleFlight.handle(slow);
+    List<Future<HttpResponse>> responses = new ArrayList<>();
+    for (int i = 0; i < 10; i++) {
+      responses.add(callers.submit(() -> handler.handle(HttpRequest.get("http://localhost/key"))));
+    }
+    await(() -> singleFlight.coalescedRequests() == 9);
+    release.countDown();
+    for (Future<HttpResponse> response : responses) {
+      HttpResponse shared = response.get(10, TimeUnit.SECONDS);
+      Assertions.assertThat(shared.headers().get("x-served")).containsExactly("once");
+      Assertions.assertThat(read(shared)).isEqualTo("hot /key");
+    }
+    Assertions.assertThat(calls.get()).isEqualTo(1);
+    Assertions.assertThat(singleFlight.inFlight()).isZero();
+  }
+
+  @Test
+  public void testOtherMethodsAndVariedHeadersAreNotShared() {
+    release.countDown();
+    HttpHandler handler = SingleFlight.builder().varyBy("Accept").build().handle(slow);
+    Assertions.assertThat(
+            handler.handle(HttpRequest.create(HttpMethod.POST, "http://localhost/key")).status())
+        .isEqualTo(200);
+    HttpRequest json =
+        HttpRequest.get("http://localhost/key").copy().header("Accept", "application/json").build();
+    Assertions.assertThat(read(handler.handle(json))).isEqualTo("hot /key");
+    Assertions.assertThat(calls.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void testRequestsOfDifferentUsersAreNotCollapsed() throws Exception {
+    SingleFlight singleFlight = SingleFlight.builder().build();
+    HttpHandler handler = singleFlight.handle(slow);
+    List<Future<HttpResponse>> responses = new ArrayList<>();
+    String[][] credentials = {
+      {"Authorization", "Bearer a"},
+      {"Authorization", "Bearer b"},
+      {"Cookie", "session=a"},
+      {"Cookie", "session=b"}
+    };
+    for (String[] credential : credentials) {
+      HttpRequest request =
+          HttpRequest.get("http://localhost/key")
+              .copy()
+              .header(credential[0], credential[1])
+              .build();
+      responses.add(callers.submit(() -> handler.handle(request)));
+    }
+    await(() -> singleFlight.inFlight() == credentials.length);
+    release.countDown();
+    for (Future<HttpResponse> response : responses) {
+      Assertions.assertThat(response.get(10, TimeUnit.SECONDS).status()).isEqualTo(200);
+    }
+    Assertions.assertThat(calls.get()).isEqualTo(credentials.length);
+    Assertions.assertThat(singleFlight.coalescedRequests()).isZero();
+  }
+
+  @Test
+  public void testPrivateResponsesAreNotShared() throws Exception {
+    String[][] headers = {
+      {"Set-Cookie", "session=a"},
+      {"Cache-Control", "max-age=60, Private"},
+      {"Cache-Control", "no-store"},
+      {"Cache-Control", "private=\"x-user\""}
+    };
+    for (String[] header : headers) {
+      SingleFlight singleFlight = SingleFlight.builder().build();
+      AtomicInteger fetched = new AtomicInteger();
+      CountDownLatch respond = new CountDownLatch(1);
+      HttpHandler handler =
+          singleFlight.handle(
+              request -> {
+                fetched.incrementAndGet();
+                Uninterruptibles.awaitUninterruptibly(respond);
+                return HttpResponse.status(200).header(header[0], header[1]).body("mine");
+              });
+      Future<HttpResponse> leader =
+          callers.submit(() -> handler.handle(HttpRequest.get("http://localhost/me")));
+      await(() -> singleFlight.inFlight() == 1);
+      Future<HttpResponse> waiter =
+          callers.submit(() -> handler.handle(HttpRequest.get("http://localhost/me")));
+      await(() -> singleFlight.coalescedRequests() == 1);
+      respond.countDown();
+      Assertions.assertThat(read(leader.get(10, TimeUnit.SECONDS))).isEqualTo("mine");
+      Assertions.assertThat(read(waiter.get(10, TimeUnit.SECONDS))).isEqualTo("mine");
+      Assertions.assertThat(fetched.get()).as(header[1]).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void testLeadersBodyIsClosedOnceBuffered() {
+    AtomicBoolean closed = new AtomicBoolean();
+    InputStream body =
+        new ByteArrayInputStream("hot".getBytes(UTF_8)) {
+          @Override
+          public void close() {
+            closed.set(true);
+          }
+        };
+    HttpResponse response =
+        SingleFlight.builder()
+            .build()
+            .handle(request -> HttpResponse.status(200).body(body, 3L))
+            .handle(HttpRequest.get("http://localhost/key"));
+    Assertions.assertThat(closed.get()).isTrue();
+    Assertions.assertThat(read(response)).isEqualTo("hot");
+  }
+
+  @Test
+  public void testLargeBodiesAreNotShared() throws Exception {
+    HttpHandler handler = SingleFlight.builder().maxBodySize(1024).build().handle(slow);
+    List<Future<HttpResponse>> large = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      large.add(callers.submit(() -> handler.handle(HttpRequest.get("http://localhost/large"))));
+    }
+    release.countDown();
+    for (Future<HttpResponse> response : large) {
+      Assertions.assertThat(read(response.get(10, TimeUnit.SECONDS))).hasSize(2048);
+    }
+    Assertions.assertThat(calls.get()).isBetween(1, 3);
+  }
+
+  @Test
+  public void testFailureReachesEveryWaiter() throws Exception {
+    SingleFlight singleFlight = SingleFlight.builder().build();
+    CountDownLatch failNow = new CountDownLatch(1);
+    HttpHandler failing =
+        singleFlight.handle(
+            request -> {
+              Uninterruptibles.awaitUninterruptibly(failNow);
+              throw new IllegalStateException("backend down");
+            });
+    Future<HttpResponse> leader =
+        callers.submit(() -> failing.handle(HttpRequest.get("http://localhost/fail")));
+    await(() -> singleFlight.inFlight() == 1);
+    Future<HttpResponse> waiter =
+        callers.submit(() -> failing.handle(HttpRequest.get("http://localhost/fail")));
+    await(() -> singleFlight.coalescedRequests() == 1);
+    failNow.countDown();
+    Assertions.assertThatThrownBy(() -> leader.get(10, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(IllegalStateException.class);
+    Assertions.assertThatThrownBy(() -> waiter.get(10, TimeUnit.SECONDS))
+        .hasCauseInstanceOf(UncheckedExecutionException.class)
+        .hasStackTraceContaining("backend down");
+  }
+
+  @Test
+  public void testWaiterThatRunsOutOfTimeGets504() throws Exception {
+    SingleFlight impatient = SingleFlight.builder().timeout(Duration.ofMillis(50)).build();
+    HttpHandler handler = impatient.handle(slow);
+    Future<HttpResponse> leader =
+        callers.submit(() -> handler.handle(HttpRequest.get("http://localhost/key")));
+    await(() -> impatient.inFlight() == 1);
+    Assertions.assertThat(handler.handle(HttpRequest.get("http://localhost/key")).status())
+        .isEqualTo(504);
+    release.countDown();
+    Assertions.assertThat(leader.get(10, TimeUnit.SECONDS).status()).isEqualTo(200);
+  }
+
+  static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (!condition.getAsBoolean()) {
+      Assertions.assertThat(System.nanoTime()).isLessThan(deadline);
+      Thread.sleep(5);
+    }
+  }
+
+  static String read(HttpResponse response) {
+    try {
+      return CharStreams.toString(new InputStreamReader(response.body(), UTF_8));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package http4j.core.cors;
+
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class CorsPolicyTest {
+
+  private final AtomicInteger called = new AtomicInteger();
+  private final CorsPolicy policy =
+      CorsPolicy.builder()
+          .allowOrigins("https://app.example.com", "https://*.example.org")
+          .allowMethods(HttpMethod.GET, HttpMethod.PUT, HttpMethod.DELETE)
+          .allowHeaders("Authorization", "Content-Type")
+          .exposeHeaders("X-Total")
+          .allowCredentials(true)
+          .maxAge(Duration.ofMinutes(10))
+          .build();
+  private final Router router =
+      Router.builder()
+          .cors(policy)
+          .cors("/public", CorsPolicy.builder().allowOrigins("*").allowHeaders("*").build())
+          .get(
+              "/users/{id}",
+              request -> {
+                called.incrementAndGet();
+                return HttpResponse.status(200).body("user");
+              })
+          .put("/users/{id}", request -> HttpResponse.status(204))
+          .post("/users/{id}", request -> HttpResponse.status(204))
+          .get("/public", request -> HttpResponse.status(200))
+          .build();
+
+  @Test
+  public void testPreflightIsAnsweredWithoutCallingTheHandler() {
+    HttpResponse allowed = router.handle(preflight("https://app.example.com", "PUT"));
+    Assertions.assertThat(allowed.status()).isEqualTo(204);
+    Assertions.assertThat(allowed.headers().get("access-control-allow-origin"))
+        .containsExactly("https://app.example.com");
+    //only the methods the route has
+    Assertions.assertThat(allowed.headers().get("access-control-allow-methods"))
+        .containsExactly("GET, PUT");
+    Assertions.assertThat(allowed.headers().get("access-control-allow-headers"))
+        .containsExactly("Authorization, Content-Type");
+    Assertions.assertThat(allowed.headers().get("access-control-max-age")).containsExactly("600");
+    Assertions.assertThat(allowed.headers().get("access-control-allow-credentials"))
+        .containsExactly("true");
+    Assertions.assertThat(called).hasValue(0);
+  }
+
+  @Test
+  public void testWildcardOriginsMatchSubdomainsOnly() {
+    Assertions.assertThat(router.handle(preflight("https://api.eu.example.org", "GET")).status())
+        .isEqualTo(204);
+    Assertions.assertThat(router.handle(preflight("https://example.org", "GET")).status())
+        .isEqualTo(403);
+  }
+
+  @Test
+  public void testDisallowedPreflightsFail() {
+    HttpResponse foreign = router.handle(preflight("https://evil.com", "GET"));
+    Assertions.assertThat(foreign.status()).isEqualTo(403);
+    Assertions.assertThat(foreign.headers().get("vary"))
+        .containsExactly("Origin, Access-Control-Request-Method, Access-Control-Request-Headers");
+    //a method the policy doesn't list, and one the route doesn't have
+    Assertions.assertThat(router.handle(preflight("https://app.example.com", "DELETE")).status())
+        .isEqualTo(403);
+    Assertions.assertThat(router.handle(preflight("https://app.example.com", "POST")).status())
+        .isEqualTo(403);
+    HttpRequest extraHeader =
+        preflight("https://app.example.com", "GET")
+            .copy()
+            .removeHeader("Access-Control-Request-Headers")
+            .header("Access-Control-Request-Headers", "x-debug")
+            .build();
+    Assertions.assertThat(router.handle(extraHeader).status()).isEqualTo(403);
+  }
+
+  @Test
+  public void testPlainOptionsIsStillNotAllowed() {
+    Assertions.assertThat(
+            router
+                .handle(HttpRequest.create(HttpMethod.OPTIONS, "http://localhost/users/7"))
+                .status())
+        .isEqualTo(405);
+  }
+
+  @Test
+  public void testActualRequestsGetHeadersOnlyForAllowedOrigins() {
+    HttpResponse actual = router.handle(get("https://app.example.com"));
+    Assertions.assertThat(actual.headers().get("access-control-allow-origin"))
+        .containsExactly("https://app.example.com");
+    Assertions.assertThat(actual.headers().get("access-control-expose-headers"))
+        .containsExactly("X-Total");
+    Assertions.assertThat(actual.headers().get("vary")).containsExactly("Origin");
+    HttpResponse foreign = router.handle(get("https://evil.com"));
+    Assertions.assertThat(foreign.status()).isEqualTo(200);
+    Assertions.assertThat(foreign.headers().containsKey("access-control-allow-origin")).isFalse();
+    Assertions.assertThat(foreign.headers().get("vary")).containsExactly("Origin");
+    Assertions.assertThat(called).hasValue(2);
+  }
+
+  @Test
+  public void testResponsesVaryOnOriginOnlyWhenTheOriginDecidesThem() {
+    Assertions.assertThat(router.handle(get("https://evil.com")).headers().get("vary"))
+        .containsExactly("Origin");
+    HttpResponse open =
+        router.handle(
+            HttpRequest.get("http://localhost/public")
+                .copy()
+                .header("Origin", "https://anyone.net")
+                .build());
+    Assertions.assertThat(open.headers().get("access-control-allow-origin")).containsExactly("*");
+    Assertions.assertThat(open.headers().containsKey("vary")).isFalse();
+    Assertions.assertThat(
+            router
+                .handle(HttpRequest.get("http://localhost/users/7"))
+                .headers()
+                .containsKey("vary"))
+        .isFalse();
+  }
+
+  @Test
+  public void testPolicyOfTheRouteWinsOverTheDefault() {
+    HttpResponse open =
+        router.handle(
+            HttpRequest.create(HttpMethod.OPTIONS, "http://localhost/public")
+                .copy()
+                .header("Origin", "https://anyone.net")
+                .header("Access-Control-Request-Method", "GET")
+                .header("Access-Control-Request-Headers", "x-debug")
+                .build());
+    Assertions.assertThat(open.status()).isEqualTo(204);
+    Assertions.assertThat(open.headers().get("access-control-allow-origin")).containsExactly("*");
+    Assertions.assertThat(open.headers().get("access-control-allow-headers"))
+        .containsExactly("x-debug");
+  }
+
+  @Test
+  public void testInvalidPoliciesFail() {
+    Assertions.assertThatThrownBy(
+            () -> CorsPolicy.builder().allowOrigins("*").allowCredentials(true).build())
+        .isInstanceOf(IllegalStateException.class);
+    Assertions.assertThatThrownBy(() -> CorsPolicy.builder().allowOrigins("example.com"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> Router.builder().cors("/missing", policy).build())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static HttpRequest preflight(String origin, String method) {
+    return HttpRequest.create(HttpMethod.OPTIONS, "http://localhost/users/7")
+        .copy()
+        .header("Origin", origin)
+        .header("Access-Control-Request-Method", method)
+        .header("Access-Control-Request-Headers", "content-type, authorization")
+        .build();
+  }
+
+  private static HttpRequest get(String origin) {
+    return HttpRequest.get("http://localhost/users/7").copy().header("Origin", origin).build();
+  }
+}
@@ -0,0 +1,81 @@
+package http4j.core.negotiation;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class AcceptTest {
+
+  @Test
+  public void testMostSpecificRangeDecides() {
+    Accept accept =
+        Accept.mediaTypes("text/*;q=0.3, text/html;q=0.7, text/html;level=1, */*;q=0.5");
+    Assertions.assertThat(accept.quality("text/html;level=1")).isEqualTo(1.0);
+    Assertions.assertThat(accept.quality("text/html")).isEqualTo(0.7);
+    Assertions.assertThat(accept.quality("text/plain")).isEqualTo(0.3);
+    Assertions.assertThat(accept.quality("image/jpeg")).isEqualTo(0.5);
+    Assertions.assertThat(accept.best("text/plain", "image/png")).contains("image/png");
+  }
+
+  @Test
+  public void testTiesGoToTheOrderOfTheServer() {
+    Assertions.assertThat(
+            Accept.mediaTypes("application/json, text/csv").best("text/csv", "application/json"))
+        .contains("text/csv");
+  }
+
+  @Test
+  public void testZeroQualityRefuses() {
+    Assertions.assertThat(Accept.mediaTypes("application/json;q=0").best("application/json"))
+        .isEmpty();
+  }
+
+  @Test
+  public void testAbsentHeaderAcceptsAnything() {
+    Assertions.assertThat(Accept.mediaTypes((String) null).accepts("anything/else")).isTrue();
+  }
+
+  @Test
+  public void testMalformedRangesAndWeightsAreIgnored() {
+    Assertions.assertThat(
+            Accept.mediaTypes("nonsense, */json, text/csv;q=2, application/json;q=0.9")
+                .best("text/csv", "application/json"))
+        .contains("application/json");
+  }
+
+  @Test
+  public void testParsedHeadersAreCached() {
+    Assertions.assertThat(Accept.mediaTypes("text/html, application/json"))
+        .isSameAs(Accept.mediaTypes("text/html, application/json"));
+  }
+
+  @Test
+  public void testInvalidCandidatesFail() {
+    Assertions.assertThatThrownBy(() -> Accept.mediaTypes("text/html").accepts("text/*"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> Accept.mediaTypes("text/html").accepts("html"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testEncodings() {
+    Accept encodings = Accept.encodings("gzip;q=1.0, br;q=0.8, *;q=0.1");
+    Assertions.assertThat(encodings.best("br", "deflate", "gzip")).contains("gzip");
+    Assertions.assertThat(encodings.quality("deflate")).isEqualTo(0.1);
+  }
+
+  @Test
+  public void testIdentityIsAcceptedUnlessRefused() {
+    Assertions.assertThat(Accept.encodings("gzip").accepts("identity")).isTrue();
+    Assertions.assertThat(Accept.encodings("gzip, identity;q=0").accepts("identity")).isFalse();
+    Assertions.assertThat(Accept.encodings("*;q=0").accepts("identity")).isFalse();
+    Assertions.assertThat(Accept.encodings("").best("gzip", "identity")).contains("identity");
+  }
+
+  @Test
+  public void testLanguagesMatchByPrefix() {
+    Accept languages = Accept.languages("da, en-gb;q=0.8, en;q=0.7");
+    Assertions.assertThat(languages.best("en-US", "en-GB", "fr")).contains("en-GB");
+    Assertions.assertThat(languages.quality("en-US")).isEqualTo(0.7);
+    Assertions.assertThat(languages.accepts("english")).isFalse();
+  }
+}
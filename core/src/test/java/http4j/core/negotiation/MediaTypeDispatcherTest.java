@@ -0,0 +1,75 @@
+package http4j.core.negotiation;
+
+import http4j.core.HttpHandlers;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import http4j.core.util.UriTemplate;
+import javax.annotation.Nullable;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class MediaTypeDispatcherTest {
+
+  private final Router router =
+      Router.builder()
+          .get("/report", "application/json", request -> HttpResponse.status(200).body("{}"))
+          .get(
+              "/report",
+              "text/csv",
+              request ->
+                  HttpResponse.status(200)
+                      .header("Content-Type", "text/csv; charset=utf-8")
+                      .body("a,b"))
+          .get("/other", request -> HttpResponse.status(204))
+          .build();
+
+  @Test
+  public void testFirstTypeServesRequestsWithoutAccept() {
+    HttpResponse json = report(null);
+    Assertions.assertThat(json.headers().get("content-type")).containsExactly("application/json");
+    Assertions.assertThat(json.headers().get("vary")).containsExactly("Accept");
+  }
+
+  @Test
+  public void testTypeWantedMostIsServed() {
+    Assertions.assertThat(report("text/csv, application/json;q=0.5").headers().get("content-type"))
+        .containsExactly("text/csv; charset=utf-8");
+    Assertions.assertThat(report("text/*").headers().get("content-type"))
+        .containsExactly("text/csv; charset=utf-8");
+  }
+
+  @Test
+  public void testNothingAcceptableIs406() {
+    HttpResponse none = report("image/png");
+    Assertions.assertThat(none.status()).isEqualTo(406);
+    Assertions.assertThat(none.headers().get("vary")).containsExactly("Accept");
+  }
+
+  @Test
+  public void testNegotiatedRoutesAreRoutes() {
+    Assertions.assertThat(
+            router.route(HttpRequest.get("http://localhost/report")).map(UriTemplate::getTemplate))
+        .contains("/report");
+  }
+
+  @Test
+  public void testOnlyConcreteDistinctTypesCanBeServed() {
+    Assertions.assertThatThrownBy(() -> Router.builder().get("/a", "text/*", HttpHandlers.pong()))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(
+            () ->
+                Router.builder()
+                    .get("/a", "text/csv", HttpHandlers.pong())
+                    .get("/a", "text/csv", HttpHandlers.pong()))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> MediaTypeDispatcher.builder().build())
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  private HttpResponse report(@Nullable String accept) {
+    HttpRequest request = HttpRequest.get("http://localhost/report");
+    return router.handle(
+        accept == null ? request : request.copy().header("Accept", accept).build());
+  }
+}
@@ -0,0 +1,203 @@
+package http4j.core.ratelimit;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import http4j.core.HttpHandler;
+import http4j.core.HttpHandlers;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class RateLimiterTest {
+
+  private final AtomicLong nanos = new AtomicLong();
+  private final Ticker ticker =
+      new Ticker() {
+        @Override
+        public long read() {
+          return nanos.get();
+        }
+      };
+  private final Router router =
+      Router.builder().get("/a", HttpHandlers.pong()).get("/b/{id}", HttpHandlers.pong()).build();
+
+  @Test
+  public void testTokenBucketPerClient() {
+    //a bucket of two refilled at two per second, for each client
+    HttpHandler buckets =
+        RateLimiter.builder()
+            .limit(2, Duration.ofSeconds(1))
+            .key(RateLimiter.byHeader("X-Client"))
+            .ticker(ticker)
+            .build()
+            .handle(router);
+    HttpResponse first = buckets.handle(client("a"));
+    Assertions.assertThat(first.status()).isEqualTo(200);
+    Assertions.assertThat(first.headers().get("ratelimit-limit")).containsExactly("2");
+    Assertions.assertThat(first.headers().get("ratelimit-remaining")).containsExactly("1");
+    Assertions.assertThat(buckets.handle(client("a")).status()).isEqualTo(200);
+    HttpResponse limited = buckets.handle(client("a"));
+    Assertions.assertThat(limited.status()).isEqualTo(429);
+    Assertions.assertThat(limited.headers().get("retry-after")).containsExactly("1");
+    Assertions.assertThat(limited.headers().get("ratelimit-remaining")).containsExactly("0");
+    Assertions.assertThat(buckets.handle(client("b")).status()).isEqualTo(200);
+
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    Assertions.assertThat(buckets.handle(client("a")).status()).isEqualTo(200);
+    Assertions.assertThat(buckets.handle(client("a")).status()).isEqualTo(429);
+  }
+
+  @Test
+  public void testRequestsWithoutKeyAreNotLimited() {
+    HttpHandler buckets =
+        RateLimiter.builder()
+            .limit(1, Duration.ofSeconds(1))
+            .key(RateLimiter.byHeader("X-Client"))
+            .ticker(ticker)
+            .build()
+            .handle(router);
+    for (int i = 0; i < 3; i++) {
+      HttpResponse anonymous = buckets.handle(HttpRequest.get("http://localhost/a"));
+      Assertions.assertThat(anonymous.status()).isEqualTo(200);
+      Assertions.assertThat(anonymous.headers().get("ratelimit-limit")).isEmpty();
+    }
+  }
+
+  @Test
+  public void testSlidingWindowCountsThePreviousWindow() {
+    RateLimiter window =
+        RateLimiter.builder()
+            .limit(3, Duration.ofSeconds(1))
+            .slidingWindow()
+            .ticker(ticker)
+            .build();
+    for (int i = 0; i < 3; i++) {
+      Assertions.assertThat(window.tryAcquire("a")).isTrue();
+    }
+    Assertions.assertThat(window.tryAcquire("a")).isFalse();
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertThat(window.tryAcquire("a")).isFalse();
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(500));
+    Assertions.assertThat(window.tryAcquire("a")).isTrue();
+    Assertions.assertThat(window.tryAcquire("a")).isFalse();
+  }
+
+  @Test
+  public void testSlidingWindowForgetsCountsOfLongAgo() {
+    RateLimiter window =
+        RateLimiter.builder().limit(1, Duration.ofNanos(1)).slidingWindow().ticker(ticker).build();
+    Assertions.assertThat(window.tryAcquire("a")).isTrue();
+    Assertions.assertThat(window.tryAcquire("a")).isFalse();
+    //as many windows later as a 24 bit window number would wrap around in
+    nanos.set(1 << 24);
+    Assertions.assertThat(window.tryAcquire("a")).isTrue();
+    nanos.set(1L << 40);
+    Assertions.assertThat(window.tryAcquire("a")).isTrue();
+  }
+
+  @Test
+  public void testEachRouteHasItsOwnLimit() {
+    HttpHandler routes =
+        RateLimiter.builder()
+            .limit(1, Duration.ofMinutes(1))
+            .key(RateLimiter.byRoute(router))
+            .ticker(ticker)
+            .build()
+            .handle(router);
+    Assertions.assertThat(status(routes, "/a")).isEqualTo(200);
+    Assertions.assertThat(status(routes, "/a")).isEqualTo(429);
+    Assertions.assertThat(status(routes, "/b/1")).isEqualTo(200);
+    Assertions.assertThat(status(routes, "/b/2")).isEqualTo(429);
+    //unmatched requests fall through to the router
+    Assertions.assertThat(status(routes, "/c")).isEqualTo(404);
+  }
+
+  @Test
+  public void testKeysOverTheBoundShareALimitUntilIdleOnesAreForgotten() {
+    RateLimiter bounded =
+        RateLimiter.builder().limit(1, Duration.ofSeconds(1)).maxKeys(2).ticker(ticker).build();
+    Assertions.assertThat(bounded.tryAcquire("a")).isTrue();
+    Assertions.assertThat(bounded.tryAcquire("b")).isTrue();
+    Assertions.assertThat(bounded.tryAcquire("c")).isTrue();
+    Assertions.assertThat(bounded.tryAcquire("d")).isFalse();
+    Assertions.assertThat(bounded.trackedKeys()).isEqualTo(2);
+    nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+    Assertions.assertThat(bounded.tryAcquire("d")).isTrue();
+    Assertions.assertThat(bounded.trackedKeys()).isEqualTo(1);
+  }
+
+  @Test
+  public void testFullMapIsSweptAtMostOncePerPeriod() {
+    //each key is back to full 100ms after taking a permit
+    RateLimiter bounded =
+        RateLimiter.builder().limit(10, Duration.ofSeconds(1)).maxKeys(2).ticker(ticker).build();
+    Assertions.assertThat(bounded.tryAcquire("a")).isTrue();
+    Assertions.assertThat(bounded.tryAcquire("b")).isTrue();
+    Assertions.assertThat(bounded.tryAcquire("c")).isTrue();
+    Assertions.assertThat(bounded.trackedKeys()).isEqualTo(2);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(200));
+    Assertions.assertThat(bounded.tryAcquire("d")).isTrue();
+    Assertions.assertThat(bounded.trackedKeys()).isEqualTo(2);
+    nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(800));
+    Assertions.assertThat(bounded.tryAcquire("e")).isTrue();
+    Assertions.assertThat(bounded.trackedKeys()).isEqualTo(1);
+  }
+
+  @Test
+  public void testContendedPermitsAreNeverHandedOutTwice() throws Exception {
+    RateLimiter shared =
+        RateLimiter.builder().limit(1000, Duration.ofHours(1)).ticker(ticker).build();
+    ExecutorService threads = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<Integer>> granted = new ArrayList<>();
+      for (int t = 0; t < 8; t++) {
+        granted.add(
+            threads.submit(
+                () -> {
+                  int count = 0;
+                  for (int i = 0; i < 1000; i++) {
+                    count += shared.tryAcquire("hot") ? 1 : 0;
+                  }
+                  return count;
+                }));
+      }
+      int total = 0;
+      for (Future<Integer> count : granted) {
+        total += count.get(10, TimeUnit.SECONDS);
+      }
+      Assertions.assertThat(total).isEqualTo(1000);
+    } finally {
+      threads.shutdownNow();
+    }
+  }
+
+  private static int status(HttpHandler handler, String path) {
+    return handler.handle(HttpRequest.get("http://localhost" + path)).status();
+  }
+
+  private static HttpRequest client(String name) {
+    return new HttpRequest(
+        HttpMethod.GET,
+        new ByteArrayInputStream(new byte[0]),
+        0L,
+        LinkedListMultimap.create(ImmutableMultimap.of("x-client", name)),
+        URI.create("http://localhost/a"),
+        null,
+        Collections.emptyMap());
+  }
+}
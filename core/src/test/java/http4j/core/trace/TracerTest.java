@@ -0,0 +1,192 @@
+package http4j.core.trace;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.HttpHandler;
+import http4j.core.HttpHandlers;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.Router;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class TracerTest {
+
+  private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+  private final List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+  private final InMemorySpanExporter exporter = new InMemorySpanExporter();
+
+  @Test
+  public void testIncomingTraceIsContinuedAndPassedOn() throws IOException {
+    try (Tracer tracer = Tracer.builder().exporter(exporter).sampler(Sampler.always()).build()) {
+      HttpHandler server = tracer.server().handle(router(tracer));
+      Assertions.assertThat(
+              server.handle(traced("00-" + TRACE_ID + "-00f067aa0ba902b7-01")).status())
+          .isEqualTo(204);
+      tracer.flush();
+      List<Span> spans = exporter.spans();
+      Assertions.assertThat(spans).hasSize(2);
+      Span client = spans.get(0);
+      Span handled = spans.get(1);
+      Assertions.assertThat(handled.kind()).isEqualTo(Span.Kind.SERVER);
+      Assertions.assertThat(handled.name()).isEqualTo("GET /orders/{id}");
+      Assertions.assertThat(handled.traceId()).isEqualTo(TRACE_ID);
+      Assertions.assertThat(handled.parentSpanId()).contains("00f067aa0ba902b7");
+      Assertions.assertThat(handled.status()).isEqualTo(204);
+      Assertions.assertThat(handled.attributes()).containsEntry("http.route", "/orders/{id}");
+      Assertions.assertThat(client.kind()).isEqualTo(Span.Kind.CLIENT);
+      Assertions.assertThat(client.traceId()).isEqualTo(handled.traceId());
+      Assertions.assertThat(client.parentSpanId()).contains(handled.spanId());
+      Assertions.assertThat(client.attributes()).containsEntry("http.url", "http://stock/items");
+      Assertions.assertThat(forwarded)
+          .containsExactly("00-" + TRACE_ID + "-" + client.spanId() + "-01");
+      Assertions.assertThat(Tracer.current()).isEmpty();
+    }
+  }
+
+  @Test
+  public void testMalformedHeaderStartsANewTrace() throws IOException {
+    try (Tracer tracer = Tracer.builder().exporter(exporter).sampler(Sampler.always()).build()) {
+      HttpHandler server = tracer.server().handle(router(tracer));
+      server.handle(traced("00-" + TRACE_ID + "-0000000000000000-01"));
+      tracer.flush();
+      Span handled = exporter.spans().get(1);
+      Assertions.assertThat(handled.traceId()).isNotEqualTo(TRACE_ID);
+      Assertions.assertThat(handled.parentSpanId()).isEmpty();
+    }
+  }
+
+  @Test
+  public void testFailingHandlerIsRecorded() throws IOException {
+    try (Tracer tracer = Tracer.builder().exporter(exporter).sampler(Sampler.always()).build()) {
+      HttpHandler server = tracer.server().handle(router(tracer));
+      Assertions.assertThatThrownBy(() -> server.handle(HttpRequest.get("http://localhost/fail")))
+          .isInstanceOf(IllegalStateException.class);
+      tracer.flush();
+      Span failed = exporter.spans().get(0);
+      Assertions.assertThat(failed.error()).contains("java.lang.IllegalStateException: broken");
+      Assertions.assertThat(failed.toJson())
+          .startsWith("{\"traceId\":\"" + failed.traceId() + "\"")
+          .contains("\"status\":0,\"error\":\"java.lang.IllegalStateException: broken\"");
+    }
+  }
+
+  @Test
+  public void testUnsampledTraceIsStillPassedOn() throws IOException {
+    try (Tracer tracer = Tracer.builder().exporter(exporter).sampler(Sampler.never()).build()) {
+      HttpHandler downstream = downstream(tracer);
+      HttpHandler server =
+          tracer.server().handle(request -> downstream.handle(HttpRequest.get("http://stock/")));
+      server.handle(HttpRequest.get("http://localhost/"));
+      tracer.flush();
+      Assertions.assertThat(exporter.spans()).isEmpty();
+      Assertions.assertThat(forwarded).hasSize(1);
+      Assertions.assertThat(TraceContext.parse(forwarded.get(0), null).get().isSampled()).isFalse();
+    }
+  }
+
+  @Test
+  public void testSpansThatDontFitTheBufferAreDroppedAndCounted() throws IOException {
+    CountDownLatch stuck = new CountDownLatch(1);
+    try (Tracer tracer =
+        Tracer.builder()
+            .exporter(spans -> Uninterruptibles.awaitUninterruptibly(stuck))
+            .sampler(Sampler.always())
+            .bufferSize(1)
+            .build()) {
+      HttpHandler server = tracer.server().handle(HttpHandlers.pong());
+      for (int i = 0; i < 5; i++) {
+        server.handle(HttpRequest.get("http://localhost/ping"));
+      }
+      Assertions.assertThat(tracer.droppedSpans()).isBetween(3L, 4L);
+      stuck.countDown();
+    }
+  }
+
+  @Test
+  public void testRateLimitedSamplerBoundsNewTraces() {
+    Sampler limited = Sampler.rateLimited(5);
+    int sampled = 0;
+    for (int i = 0; i < 100; i++) {
+      sampled += limited.sample(null) ? 1 : 0;
+    }
+    Assertions.assertThat(sampled).isBetween(5, 6);
+  }
+
+  @Test
+  public void testParentBasedSamplerFollowsTheCaller() {
+    Assertions.assertThat(Sampler.parentBased(Sampler.never()).sample(TraceContext.root(true)))
+        .isTrue();
+    Assertions.assertThat(Sampler.parentBased(Sampler.always()).sample(TraceContext.root(false)))
+        .isFalse();
+  }
+
+  @Test
+  public void testFileExporterWritesALinePerSpan() throws IOException {
+    Path file = Files.createTempFile("http4j-spans", ".json");
+    try {
+      try (Tracer tracer =
+          Tracer.builder().exporter(new FileSpanExporter(file)).sampler(Sampler.always()).build()) {
+        tracer.server().handle(HttpHandlers.pong()).handle(HttpRequest.get("http://localhost/"));
+      }
+      List<String> lines = Files.readAllLines(file, UTF_8);
+      Assertions.assertThat(lines).hasSize(1);
+      Assertions.assertThat(lines.get(0)).contains("\"kind\":\"SERVER\"");
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private HttpHandler downstream(Tracer tracer) {
+    return tracer
+        .client()
+        .handle(
+            request -> {
+              forwarded.add(String.join(",", request.headers().get("traceparent")));
+              return HttpResponse.status(204);
+            });
+  }
+
+  private Router router(Tracer tracer) {
+    HttpHandler downstream = downstream(tracer);
+    return Router.builder()
+        .get(
+            "/orders/{id}",
+            request -> {
+              Assertions.assertThat(Tracer.current()).isEqualTo(request.attribute(Tracer.CONTEXT));
+              return downstream.handle(HttpRequest.get("http://stock/items"));
+            })
+        .get(
+            "/fail",
+            request -> {
+              throw new IllegalStateException("broken");
+            })
+        .build();
+  }
+
+  private static HttpRequest traced(String traceparent) {
+    return new HttpRequest(
+        HttpMethod.GET,
+        new ByteArrayInputStream(new byte[0]),
+        0L,
+        LinkedListMultimap.create(
+            ImmutableMultimap.of("traceparent", traceparent, "tracestate", "vendor=1")),
+        URI.create("http://localhost/orders/7"),
+        null,
+        Collections.emptyMap());
+  }
+}
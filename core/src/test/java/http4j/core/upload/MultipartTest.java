@@ -0,0 +1,115 @@
+package http4j.core.upload;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.util.Collections;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class MultipartTest {
+
+  private static final String BOUNDARY = "----http4j";
+  //boundary-like bytes in the content must not end the part
+  private static final String FILE = Strings.repeat("x\r\n------http4", 2000) + "\r\n--";
+  private static final String BODY =
+      "preamble\r\n"
+          + "--"
+          + BOUNDARY
+          + "\r\n"
+          + "Content-Disposition: form-data; name=\"title\"\r\n\r\n"
+          + "hello\r\n"
+          + "--"
+          + BOUNDARY
+          + "  \r\n"
+          + "Content-Disposition: form-data; name=\"upload\"; filename=\"a;b.txt\"\r\n"
+          + "Content-Type: application/octet-stream\r\n\r\n"
+          + FILE
+          + "\r\n"
+          + "--"
+          + BOUNDARY
+          + "--\r\nepilogue";
+
+  @Test
+  public void testPartsAreFoundHoweverTheBodyArrives() throws IOException {
+    for (int chunk : new int[] {1, 7, 64 * 1024}) {
+      HttpRequest request =
+          new HttpRequest(
+              HttpMethod.POST,
+              new ChunkedInputStream(BODY.getBytes(UTF_8), chunk),
+              null,
+              LinkedListMultimap.create(
+                  ImmutableMultimap.of(
+                      "content-type", "multipart/form-data; boundary=\"" + BOUNDARY + "\"")),
+              URI.create("http://localhost/form"),
+              null,
+              Collections.emptyMap());
+      try (Multipart multipart = Multipart.of(request)) {
+        Multipart.Part title = multipart.next();
+        Assertions.assertThat(title.name()).isEqualTo("title");
+        Assertions.assertThat(title.filename()).isEmpty();
+        Assertions.assertThat(title.contentType()).isEqualTo("text/plain");
+        Assertions.assertThat(read(title.body())).isEqualTo("hello");
+        Multipart.Part upload = multipart.next();
+        Assertions.assertThat(upload.name()).isEqualTo("upload");
+        Assertions.assertThat(upload.filename()).contains("a;b.txt");
+        Assertions.assertThat(upload.contentType()).isEqualTo("application/octet-stream");
+        Assertions.assertThat(read(upload.body())).isEqualTo(FILE);
+        Assertions.assertThat(multipart.next()).isNull();
+      }
+    }
+  }
+
+  @Test
+  public void testUnreadPartIsSkipped() throws IOException {
+    try (Multipart multipart =
+        Multipart.of(new ByteArrayInputStream(BODY.getBytes(UTF_8)), BOUNDARY)) {
+      Assertions.assertThat(multipart.next().name()).isEqualTo("title");
+      Assertions.assertThat(multipart.next().name()).isEqualTo("upload");
+      Assertions.assertThat(multipart.next()).isNull();
+    }
+  }
+
+  @Test
+  public void testBodyCutShortIsAnError() throws IOException {
+    byte[] cut = BODY.substring(0, BODY.length() / 2).getBytes(UTF_8);
+    try (Multipart multipart = Multipart.of(new ByteArrayInputStream(cut), BOUNDARY)) {
+      Assertions.assertThat(multipart.next().name()).isEqualTo("title");
+      Multipart.Part upload = multipart.next();
+      Assertions.assertThatThrownBy(() -> ByteStreams.exhaust(upload.body()))
+          .isInstanceOf(EOFException.class);
+    }
+  }
+
+  private static String read(InputStream body) throws IOException {
+    return CharStreams.toString(new InputStreamReader(body, UTF_8));
+  }
+
+  /** Hands out at most {@code chunk} bytes per read, like a body arriving in small packets. */
+  private static final class ChunkedInputStream extends ByteArrayInputStream {
+
+    private final int chunk;
+
+    ChunkedInputStream(byte[] bytes, int chunk) {
+      super(bytes);
+      this.chunk = chunk;
+    }
+
+    @Override
+    public synchronized int read(byte[] bytes, int offset, int length) {
+      return super.read(bytes, offset, Math.min(length, chunk));
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package http4j.core.util;
+
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class HeaderValuesTest {
+
+  @Test
+  public void testParsesLengthsWithSurroundingWhitespace() {
+    Assertions.assertThat(HeaderValues.parseLength("0")).isEqualTo(0);
+    Assertions.assertThat(HeaderValues.parseLength(" 1024\t")).isEqualTo(1024);
+    Assertions.assertThat(HeaderValues.parseLength("999999999999999999"))
+        .isEqualTo(999_999_999_999_999_999L);
+  }
+
+  @Test
+  public void testRefusesAnythingButDigits() {
+    for (String invalid :
+        new String[] {"", "  ", "-1", "+1", "1 2", "12a", "0x10", "1234567890123456789"}) {
+      Assertions.assertThat(HeaderValues.parseLength(invalid)).as(invalid).isEqualTo(-1);
+    }
+  }
+}
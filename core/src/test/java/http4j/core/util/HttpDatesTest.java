@@ -0,0 +1,84 @@
+package http4j.core.util;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class HttpDatesTest {
+
+  private static final DateTimeFormatter IMF_FIXDATE =
+      DateTimeFormatter.ofPattern("EEE, dd MMM uuuu HH:mm:ss 'GMT'", Locale.US)
+          .withZone(ZoneOffset.UTC);
+  private static final long MIN = Instant.parse("0000-01-01T00:00:00Z").getEpochSecond();
+  private static final long MAX = Instant.parse("9999-12-31T23:59:59Z").getEpochSecond();
+
+  @Test
+  public void testFormatsTheExampleOfTheRfc() {
+    Assertions.assertThat(HttpDates.format(784111777)).isEqualTo("Sun, 06 Nov 1994 08:49:37 GMT");
+  }
+
+  @Test
+  public void testAgreesWithJavaTimeAtTheEdges() {
+    for (long second : new long[] {0, -1, 784111777, 951782400, 4107542400L, MIN, MAX}) {
+      String expected = IMF_FIXDATE.format(Instant.ofEpochSecond(second));
+      Assertions.assertThat(HttpDates.format(second)).isEqualTo(expected);
+      Assertions.assertThat(HttpDates.parse(expected)).isEqualTo(second);
+    }
+  }
+
+  @Test
+  public void testAgreesWithJavaTimeOverTheWholeRange() {
+    Random random = new Random(47);
+    for (int i = 0; i < 10_000; i++) {
+      long second = MIN + (long) (random.nextDouble() * (MAX - MIN));
+      String formatted = HttpDates.format(second);
+      Assertions.assertThat(formatted).isEqualTo(IMF_FIXDATE.format(Instant.ofEpochSecond(second)));
+      Assertions.assertThat(HttpDates.parse(formatted)).isEqualTo(second);
+    }
+  }
+
+  @Test
+  public void testYearsBeyondFourDigitsFail() {
+    Assertions.assertThatThrownBy(() -> HttpDates.format(MAX + 1))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> HttpDates.format(MIN - 1))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testLeapDays() {
+    Assertions.assertThat(HttpDates.parse("Tue, 29 Feb 2000 00:00:00 GMT")).isEqualTo(951782400);
+    Assertions.assertThat(HttpDates.parse("Thu, 29 Feb 2001 08:49:37 GMT"))
+        .isEqualTo(HttpDates.INVALID);
+  }
+
+  @Test
+  public void testAnythingButAnImfFixdateIsRefused() {
+    for (String invalid :
+        new String[] {
+          "",
+          "Sunday, 06-Nov-94 08:49:37 GMT",
+          "Sun Nov  6 08:49:37 1994",
+          "Sun, 6 Nov 1994 08:49:37 GMT",
+          "Mon, 06 Nov 1994 08:49:37 GMT",
+          "Sun, 06 Nov 1994 08:49:37 UTC",
+          "Sun, 06 Foo 1994 08:49:37 GMT",
+          "Sun, 06 Nov 1994 24:00:00 GMT",
+          "Sun, 06 Nov 1994 0x:49:37 GMT",
+          "sun, 06 nov 1994 08:49:37 GMT"
+        }) {
+      Assertions.assertThat(HttpDates.parse(invalid)).as(invalid).isEqualTo(HttpDates.INVALID);
+    }
+  }
+
+  @Test
+  public void testCurrentDateIsKeptUpToDate() {
+    long now = HttpDates.parse(HttpDates.now());
+    Assertions.assertThat(now)
+        .isBetween(Instant.now().getEpochSecond() - 2, Instant.now().getEpochSecond());
+  }
+}
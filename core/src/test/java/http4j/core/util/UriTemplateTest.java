@@ -0,0 +1,86 @@
+package http4j.core.util;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.UUID;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class UriTemplateTest {
+
+  @Test
+  public void testExpandToRendersManyLinksIntoOneBuffer() {
+    UriTemplate file = UriTemplate.parse("/users/{id:int}/files/{path:*}");
+    StringBuilder links = new StringBuilder();
+    for (int id = 1; id <= 3; id++) {
+      file.expandTo(links, Integer.toString(id), "x").append(' ');
+    }
+    Assertions.assertThat(links.toString())
+        .isEqualTo("/users/1/files/x /users/2/files/x /users/3/files/x ");
+  }
+
+  @Test
+  public void testExpandKeepsSlashesOnlyInRestVariables() {
+    Assertions.assertThat(UriTemplate.parse("/files/{path:*}").expand("a b/c.txt"))
+        .isEqualTo("/files/a%20b/c.txt");
+    Assertions.assertThat(
+            UriTemplate.parse("/search/{term}/").expand(ImmutableMap.of("term", "a/b")))
+        .isEqualTo("/search/a%2Fb/");
+  }
+
+  @Test
+  public void testExpandWithWrongNumberOfValuesFails() {
+    Assertions.assertThatThrownBy(() -> UriTemplate.parse("/a/{b}").expand())
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testMatchReturnsVariables() {
+    Assertions.assertThat(
+            UriTemplate.parse("/hotels/{hotel}/bookings/{booking:int}")
+                .match("/hotels/1/bookings/42"))
+        .containsEntry("hotel", "1")
+        .containsEntry("booking", "42");
+    Assertions.assertThat(UriTemplate.parse("/hotels/{hotel}").match("/hotels")).isEmpty();
+  }
+
+  @Test
+  public void testMatchValuesParsesTypedValuesInPlace() {
+    UriTemplate template = UriTemplate.parse("/files/{owner:long}/{id:uuid}/{size:int}/{path:*}");
+    UriTemplate.Match match =
+        template.matchValues(
+            "/files/-9223372036854775808/123e4567-e89b-12d3-a456-426614174000/-2147483648/a/b");
+    Assertions.assertThat(match.template()).isSameAs(template);
+    Assertions.assertThat(match.longValue("owner")).isEqualTo(Long.MIN_VALUE);
+    Assertions.assertThat(match.uuidValue("id"))
+        .isEqualTo(UUID.fromString("123e4567-e89b-12d3-a456-426614174000"));
+    Assertions.assertThat(match.intValue("size")).isEqualTo(Integer.MIN_VALUE);
+    Assertions.assertThat(match.value("path")).isEqualTo("a/b");
+    Assertions.assertThat(match.values()).containsEntry("size", "-2147483648").hasSize(4);
+    Assertions.assertThat(template.matchValues("/files/1/2/3/x")).isNull();
+  }
+
+  @Test
+  public void testMatchValuesRejectsValuesOfAnotherType() {
+    UriTemplate.Match match =
+        UriTemplate.parse("/users/{name}/{id:long}").matchValues("/users/bob/9223372036854775807");
+    Assertions.assertThat(match.longValue("id")).isEqualTo(Long.MAX_VALUE);
+    Assertions.assertThatThrownBy(() -> match.intValue("id"))
+        .isInstanceOf(NumberFormatException.class);
+    Assertions.assertThatThrownBy(() -> match.longValue("name"))
+        .isInstanceOf(NumberFormatException.class);
+    Assertions.assertThatThrownBy(() -> match.uuidValue("name"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> match.value("missing"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testInvalidTemplatesFail() {
+    Assertions.assertThatThrownBy(() -> UriTemplate.parse("/a/{path:*}/b"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> UriTemplate.parse("/a/x{b}"))
+        .isInstanceOf(IllegalArgumentException.class);
+    Assertions.assertThatThrownBy(() -> UriTemplate.parse("/a/{b:color}"))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+}
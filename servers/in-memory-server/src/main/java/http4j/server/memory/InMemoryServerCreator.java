@@ -1,9 +1,13 @@
 package http4j.server.memory;
 
 import http4j.client.memory.InMemoryClient;
+import http4j.client.memory.LoopbackClient;
+import http4j.client.memory.WireFaults;
 import http4j.core.HttpHandler;
 import http4j.core.HttpServer;
 import http4j.core.HttpServerCreator;
+import http4j.core.Readiness;
+import java.time.Duration;
 import java.util.Objects;
 
 /**
@@ -15,6 +19,7 @@ public class InMemoryServerCreator implements HttpServerCreator {
   public static class InMemoryServer implements HttpServer {
 
     private final HttpHandler handler;
+    private final Readiness readiness = new Readiness();
 
     public InMemoryServer(HttpHandler handler) {
       this.handler = Objects.requireNonNull(handler);
@@ -27,18 +32,40 @@ public class InMemoryServerCreator implements HttpServerCreator {
 
     @Override
     public void start() {
-      //do nothing
+      readiness.markReady();
+    }
+
+    @Override
+    public int shutdown(Duration timeout) {
+      readiness.markNotReady();
+      //there are no connections to drain
+      return 0;
+    }
+
+    @Override
+    public Readiness readiness() {
+      return readiness;
     }
 
     @Override
     public void close() throws Exception {
-      //do nothing
+      shutdown(Duration.ZERO);
     }
 
     /** Create an in-memory http client */
     public HttpHandler getClient() {
       return new InMemoryClient(handler);
     }
+
+    /** Create a client that sends each exchange through the HTTP/1.1 codec over in-memory pipes */
+    public HttpHandler getLoopbackClient() {
+      return new LoopbackClient(handler);
+    }
+
+    /** Create a loopback client whose wire misbehaves as described */
+    public HttpHandler getLoopbackClient(WireFaults faults) {
+      return new LoopbackClient(handler, faults);
+    }
   }
 
   @Override
@@ -1,11 +1,49 @@
 package http4j.server.memory;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.LinkedListMultimap;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+import http4j.client.memory.InMemoryClient;
+import http4j.client.memory.WireFaults;
+import http4j.core.HttpFilters;
 import http4j.core.HttpHandler;
 import http4j.core.HttpHandlers;
+import http4j.core.HttpMethod;
+import http4j.core.HttpPipeline;
 import http4j.core.HttpRequest;
 import http4j.core.HttpResponse;
 import http4j.core.Router;
+import http4j.core.sse.EventStream;
+import http4j.core.sse.ServerSentEvent;
+import http4j.core.upload.UploadConfig;
+import http4j.core.websocket.WebSocket;
+import http4j.core.websocket.WebSocketConfig;
+import http4j.core.websocket.WebSocketHandler;
 import http4j.server.memory.InMemoryServerCreator.InMemoryServer;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Stream;
 import org.assertj.core.api.Assertions;
 import org.junit.Test;
 
@@ -24,4 +62,340 @@ public class InMemoryServerTest {
       Assertions.assertThat(response.status()).isEqualTo(200);
     }
   }
+
+  @Test
+  public void testPipelineRunsStagesAroundHandler() throws Exception {
+    List<String> calls = new ArrayList<>();
+    HttpHandler handler =
+        HttpPipeline.builder()
+            .onRequest(
+                (request, response) -> {
+                  calls.add("request 1");
+                  if (request.uri().getPath().equals("/private")) {
+                    response.status(401).body("nope");
+                    return null;
+                  }
+                  return request;
+                })
+            .onResponse(
+                (request, response) -> {
+                  calls.add("response 1");
+                  response.setHeader("X-Stage", "1");
+                })
+            .onRequest(
+                (request, response) -> {
+                  calls.add("request 2");
+                  return request;
+                })
+            .onResponse(
+                (request, response) -> {
+                  calls.add("response 2");
+                  response.addHeader("X-Stage", "2");
+                })
+            .build(
+                request -> {
+                  calls.add("handler");
+                  return HttpHandlers.pong().handle(request);
+                });
+
+    try (InMemoryServer server = new InMemoryServerCreator().create(handler)) {
+      server.start();
+      HttpHandler client = server.getClient();
+
+      HttpResponse response = client.handle(HttpRequest.get("http://localhost/ping"));
+      Assertions.assertThat(response.status()).isEqualTo(200);
+      Assertions.assertThat(response.length()).contains(4L);
+      //the first stage added is the outermost, so it sees the response last
+      Assertions.assertThat(response.headers().get("x-stage")).containsExactly("1");
+      Assertions.assertThat(calls)
+          .containsExactly("request 1", "request 2", "handler", "response 2", "response 1");
+
+      calls.clear();
+      response = client.handle(HttpRequest.get("http://localhost/private"));
+      Assertions.assertThat(response.status()).isEqualTo(401);
+      Assertions.assertThat(calls).containsExactly("request 1", "response 2", "response 1");
+    }
+  }
+
+  @Test
+  public void testEventStreamBody() throws Exception {
+    EventStream events = EventStream.builder().maxBuffered(64).build();
+    try (InMemoryServer server = new InMemoryServerCreator().create(request -> events.response())) {
+      server.start();
+      HttpResponse response = server.getClient().handle(HttpRequest.get("http://localhost/events"));
+      Assertions.assertThat(response.headers().get("content-type"))
+          .containsExactly("text/event-stream; charset=utf-8");
+      Assertions.assertThat(response.length()).isEmpty();
+
+      events.send(ServerSentEvent.builder().id("7").data("one\ntwo").build());
+      events.close();
+      Assertions.assertThat(events.send("too late")).isFalse();
+      Assertions.assertThat(CharStreams.toString(new InputStreamReader(response.body(), UTF_8)))
+          .isEqualTo("id: 7\ndata: one\ndata: two\n\n");
+    }
+
+    //a reader that falls behind is cut off instead of the events piling up
+    EventStream slow = EventStream.builder().maxBuffered(64).build();
+    List<String> closed = new ArrayList<>();
+    slow.onClose(() -> closed.add("closed"));
+    Assertions.assertThat(slow.send(Strings.repeat("x", 40))).isTrue();
+    Assertions.assertThat(slow.send(Strings.repeat("x", 40))).isFalse();
+    Assertions.assertThat(closed).containsExactly("closed");
+    Assertions.assertThatThrownBy(() -> slow.response().body().read())
+        .isInstanceOf(IOException.class);
+  }
+
+  @Test
+  public void testWebSocketThroughLocalClient() throws Exception {
+    //small frames, so longer messages are fragmented on the way in and out
+    WebSocketConfig config =
+        WebSocketConfig.builder().maxFrameSize(128).maxMessageSize(1024).build();
+    Router router =
+        Router.builder()
+            .websocket(
+                "/echo/{room}",
+                new WebSocketHandler() {
+                  @Override
+                  public void onText(WebSocket socket, String text) {
+                    socket.sendText(socket.request().params().get("room") + ": " + text);
+                  }
+
+                  @Override
+                  public void onBinary(WebSocket socket, ByteBuffer data) {
+                    socket.sendBinary(data);
+                  }
+                },
+                config)
+            .build();
+
+    try (InMemoryServer server = new InMemoryServerCreator().create(router)) {
+      server.start();
+      InMemoryClient client = (InMemoryClient) server.getClient();
+      Assertions.assertThatThrownBy(
+              () -> client.webSocket("http://localhost/missing", new WebSocketHandler() {}))
+          .isInstanceOf(IOException.class)
+          .hasMessageContaining("404");
+
+      BlockingQueue<Object> received = new LinkedBlockingQueue<>();
+      WebSocket socket =
+          client.webSocket(
+              HttpRequest.get("http://localhost/echo/lobby"),
+              new WebSocketHandler() {
+                @Override
+                public void onText(WebSocket socket, String text) {
+                  received.add(text);
+                }
+
+                @Override
+                public void onBinary(WebSocket socket, ByteBuffer data) {
+                  received.add(data);
+                }
+
+                @Override
+                public void onClose(WebSocket socket, int code, String reason) {
+                  received.add(code);
+                }
+              },
+              config);
+
+      String longText = Strings.repeat("héllo ", 100);
+      socket.sendText("hi");
+      socket.sendText(longText);
+      socket.sendBinary(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+      Assertions.assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("lobby: hi");
+      Assertions.assertThat(received.poll(5, TimeUnit.SECONDS)).isEqualTo("lobby: " + longText);
+      Assertions.assertThat(received.poll(5, TimeUnit.SECONDS))
+          .isEqualTo(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+
+      //more than the server takes in one message, even in frames it accepts
+      Assertions.assertThat(socket.sendText(Strings.repeat("x", 2000))).isTrue();
+      Assertions.assertThat(received.poll(5, TimeUnit.SECONDS))
+          .isEqualTo(WebSocket.MESSAGE_TOO_BIG);
+      Assertions.assertThat(socket.isOpen()).isFalse();
+    }
+  }
+
+  @Test
+  public void testLoopbackClientOverTheWire() throws Exception {
+    Router router =
+        Router.builder()
+            .post(
+                "/echo",
+                //no length, so the response goes back chunked
+                request -> HttpResponse.status(200).body(request.body(), null))
+            .get(
+                "/framing",
+                request ->
+                    HttpResponse.status(200)
+                        .header("x-length", String.valueOf(request.length().orElse(-1L)))
+                        .body(request.headers().get("host").toString()))
+            .head("/framing", request -> HttpResponse.status(200).body("ignored"))
+            .build();
+    String text = Strings.repeat("wire ", 5000);
+    Function<HttpResponse, String> read =
+        response -> {
+          try {
+            return CharStreams.toString(new InputStreamReader(response.body(), UTF_8));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+
+    Function<String, HttpRequest> post =
+        body ->
+            new HttpRequest(
+                HttpMethod.POST,
+                new ByteArrayInputStream(body.getBytes(UTF_8)),
+                null,
+                LinkedListMultimap.create(),
+                URI.create("http://localhost/echo"),
+                null,
+                Collections.emptyMap());
+
+    try (InMemoryServer server = new InMemoryServerCreator().create(router)) {
+      server.start();
+      HttpHandler client = server.getLoopbackClient();
+
+      HttpResponse response = client.handle(HttpRequest.get("http://example.com/framing"));
+      Assertions.assertThat(response.headers().get("content-length")).containsExactly("13");
+      Assertions.assertThat(response.headers().get("connection")).containsExactly("close");
+      Assertions.assertThat(read.apply(response)).isEqualTo("[example.com]");
+      response = client.handle(HttpRequest.create(HttpMethod.HEAD, "http://localhost/framing"));
+      Assertions.assertThat(response.headers().get("content-length")).containsExactly("7");
+      Assertions.assertThat(read.apply(response)).isEmpty();
+
+      //a body of unknown length is chunked both ways, concurrently with other connections
+      List<Future<String>> echoes = new ArrayList<>();
+      ExecutorService callers = Executors.newFixedThreadPool(8);
+      try {
+        for (int i = 0; i < 32; i++) {
+          String body = i + text;
+          echoes.add(
+              callers.submit(
+                  () -> {
+                    HttpResponse echo = client.handle(post.apply(body));
+                    Assertions.assertThat(echo.length()).isEmpty();
+                    Assertions.assertThat(echo.headers().get("transfer-encoding"))
+                        .containsExactly("chunked");
+                    return read.apply(echo);
+                  }));
+        }
+        for (int i = 0; i < echoes.size(); i++) {
+          Assertions.assertThat(echoes.get(i).get(10, TimeUnit.SECONDS)).isEqualTo(i + text);
+        }
+      } finally {
+        callers.shutdownNow();
+      }
+
+      //a slow wire with latency still carries every byte
+      HttpHandler slow =
+          server.getLoopbackClient(
+              WireFaults.builder()
+                  .latency(Duration.ofMillis(50))
+                  .bufferSize(512)
+                  .slowRequest(7, Duration.ZERO)
+                  .slowResponse(13, Duration.ZERO)
+                  .build());
+      long start = System.nanoTime();
+      HttpResponse echo = slow.handle(post.apply(text));
+      Assertions.assertThat(read.apply(echo)).isEqualTo(text);
+      Assertions.assertThat(System.nanoTime() - start)
+          .isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+      //a response cut short fails the reader instead of looking complete
+      HttpHandler cut =
+          server.getLoopbackClient(WireFaults.builder().truncateResponseAfter(200).build());
+      HttpResponse truncated = cut.handle(post.apply(text));
+      Assertions.assertThatThrownBy(() -> Assertions.assertThat(read.apply(truncated)).isEmpty())
+          .isInstanceOf(UncheckedIOException.class);
+      HttpHandler headless =
+          server.getLoopbackClient(WireFaults.builder().truncateResponseAfter(10).build());
+      Assertions.assertThatThrownBy(
+              () -> headless.handle(HttpRequest.get("http://localhost/framing")))
+          .isInstanceOf(UncheckedIOException.class);
+    }
+  }
+
+  @Test
+  public void testUploadLimitsAndSpooling() throws Exception {
+    Path spool = Files.createTempDirectory("http4j-spool-test");
+    List<Boolean> spooled = new ArrayList<>();
+    HttpHandler count =
+        request -> {
+          try {
+            return HttpResponse.status(200)
+                .body(String.valueOf(ByteStreams.exhaust(request.body())));
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        };
+    HttpHandler inspect =
+        request -> {
+          try (Stream<Path> files = Files.list(spool)) {
+            spooled.add(files.findAny().isPresent());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+          return count.handle(request);
+        };
+    Router router =
+        Router.builder()
+            .post("/limited", HttpFilters.maxBodySize(count, 100))
+            .post(
+                "/spooled",
+                HttpFilters.spool(
+                    inspect,
+                    UploadConfig.builder()
+                        .maxBodySize(1000)
+                        .memoryThreshold(50)
+                        .spoolDirectory(spool)
+                        .build()))
+            .build();
+    BiFunction<String, byte[], HttpRequest> chunked =
+        (path, body) ->
+            new HttpRequest(
+                HttpMethod.POST,
+                new ByteArrayInputStream(body),
+                null,
+                LinkedListMultimap.create(),
+                URI.create("http://localhost" + path),
+                null,
+                Collections.emptyMap());
+
+    try (InMemoryServer server = new InMemoryServerCreator().create(router)) {
+      server.start();
+      HttpHandler client = server.getClient();
+
+      //a declared length is refused before the handler reads anything, an unknown one as it reads
+      HttpResponse declared =
+          client.handle(
+              HttpRequest.create(HttpMethod.POST, "http://localhost/limited")
+                  .copy()
+                  .body(new ByteArrayInputStream(new byte[101]), 101L)
+                  .build());
+      Assertions.assertThat(declared.status()).isEqualTo(413);
+      Assertions.assertThat(declared.headers().get("connection")).containsExactly("close");
+      Assertions.assertThat(client.handle(chunked.apply("/limited", new byte[101])).status())
+          .isEqualTo(413);
+      HttpResponse fits = client.handle(chunked.apply("/limited", new byte[100]));
+      Assertions.assertThat(fits.status()).isEqualTo(200);
+      Assertions.assertThat(CharStreams.toString(new InputStreamReader(fits.body(), UTF_8)))
+          .isEqualTo("100");
+
+      //small bodies stay in memory, larger ones go to a file that is gone after the handler
+      Assertions.assertThat(client.handle(chunked.apply("/spooled", new byte[50])).status())
+          .isEqualTo(200);
+      HttpResponse large = client.handle(chunked.apply("/spooled", new byte[1000]));
+      Assertions.assertThat(CharStreams.toString(new InputStreamReader(large.body(), UTF_8)))
+          .isEqualTo("1000");
+      Assertions.assertThat(client.handle(chunked.apply("/spooled", new byte[1001])).status())
+          .isEqualTo(413);
+      Assertions.assertThat(spooled).containsExactly(false, true);
+      try (Stream<Path> files = Files.list(spool)) {
+        Assertions.assertThat(files.count()).isZero();
+      }
+    } finally {
+      Files.delete(spool);
+    }
+  }
 }
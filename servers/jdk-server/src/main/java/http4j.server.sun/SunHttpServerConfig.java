@@ -0,0 +1,273 @@
+package http4j.server.sun;
+
+import com.google.common.base.Preconditions;
+import http4j.core.Readiness;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Connection and keep-alive tuning for a {@link SunHttpServerCreator}.
+ *
+ * <p><b>The idle timeout, idle connection limit and request/response time limits are JVM-wide.</b>
+ * The JDK server only reads them from {@code sun.net.httpserver.*} system properties, once, when
+ * its classes are first used. A {@link SunHttpServerCreator} sets the properties for the ones that
+ * were configured when it is constructed, which changes them for every JDK server in the process,
+ * and does nothing at all once a JDK server has already been created. Properties given on the
+ * command line win, and properties for settings left unconfigured are never touched. Prefer the
+ * command line, or configure them only for the first server created.
+ */
+public final class SunHttpServerConfig {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SunHttpServerConfig.class);
+
+  private final int port;
+  private final int backlog;
+  private final int maxConcurrentRequests;
+  private final int maxIdleConnections;
+  @Nullable private final Duration idleTimeout;
+  @Nullable private final Duration requestTimeout;
+  @Nullable private final Duration responseTimeout;
+  private final long drainLimit;
+  private final long maxBodySize;
+  @Nullable private final Duration handlerTimeout;
+  @Nullable private final Executor executor;
+  private final Readiness readiness;
+  private final SunHttpServerStats stats;
+
+  private SunHttpServerConfig(Builder builder) {
+    this.port = builder.port;
+    this.backlog = builder.backlog;
+    this.maxConcurrentRequests = builder.maxConcurrentRequests;
+    this.maxIdleConnections = builder.maxIdleConnections;
+    this.idleTimeout = builder.idleTimeout;
+    this.requestTimeout = builder.requestTimeout;
+    this.responseTimeout = builder.responseTimeout;
+    this.drainLimit = builder.drainLimit;
+    this.maxBodySize = builder.maxBodySize;
+    this.handlerTimeout = builder.handlerTimeout;
+    this.executor = builder.executor;
+    this.readiness = builder.readiness;
+    this.stats = builder.stats;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** The port to listen on, 0 will find any random port. */
+  public int port() {
+    return port;
+  }
+
+  /** The listen backlog, 0 uses the system default. */
+  public int backlog() {
+    return backlog;
+  }
+
+  /** Requests beyond this many in flight are rejected with a 503, 0 means unlimited. */
+  public int maxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  /**
+   * How many request bytes left unread by a handler the server reads and discards after the
+   * response. The JDK server then reads up to {@code sun.net.httpserver.drainAmount} (64KiB by
+   * default) more itself when the exchange is closed, and only keeps the connection alive if that
+   * reaches the end of the body.
+   */
+  public long drainLimit() {
+    return drainLimit;
+  }
+
+  /**
+   * Request bodies larger than this are answered with a 413, whether declared by Content-Length or
+   * found while the handler reads a chunked body. 0 means unlimited.
+   */
+  public long maxBodySize() {
+    return maxBodySize;
+  }
+
+  /**
+   * How long the handler has to answer, after which the client gets a 504 and the handler is
+   * interrupted. Empty means no limit; see {@link http4j.core.HttpFilters#timeout}.
+   */
+  public Optional<Duration> handlerTimeout() {
+    return Optional.ofNullable(handlerTimeout);
+  }
+
+  /** The executor handlers are run on. */
+  public Optional<Executor> executor() {
+    return Optional.ofNullable(executor);
+  }
+
+  /** The readiness flag the server flips when started and when shutting down. */
+  public Readiness readiness() {
+    return readiness;
+  }
+
+  /** The counters the server keeps up to date while it runs. */
+  public SunHttpServerStats stats() {
+    return stats;
+  }
+
+  /**
+   * Set the system properties of the settings that were configured, unless already set. This
+   * changes them for the whole JVM, and only takes effect if no JDK server was created yet.
+   */
+  void applySystemProperties() {
+    if (idleTimeout != null) {
+      setIfAbsent("sun.net.httpserver.idleInterval", idleTimeout.getSeconds());
+    }
+    if (maxIdleConnections > 0) {
+      setIfAbsent("sun.net.httpserver.maxIdleConnections", maxIdleConnections);
+    }
+    if (requestTimeout != null) {
+      setIfAbsent("sun.net.httpserver.maxReqTime", requestTimeout.getSeconds());
+    }
+    if (responseTimeout != null) {
+      setIfAbsent("sun.net.httpserver.maxRspTime", responseTimeout.getSeconds());
+    }
+  }
+
+  private static void setIfAbsent(String property, long value) {
+    String existing = System.getProperty(property);
+    if (existing == null) {
+      System.setProperty(property, Long.toString(value));
+    } else if (!existing.equals(Long.toString(value))) {
+      LOG.warn("{} already set to {}, ignoring configured value {}", property, existing, value);
+    }
+  }
+
+  public static class Builder {
+
+    private int port;
+    private int backlog;
+    private int maxConcurrentRequests;
+    private int maxIdleConnections;
+    private Duration idleTimeout;
+    private Duration requestTimeout;
+    private Duration responseTimeout;
+    private long drainLimit = 64 * 1024;
+    private long maxBodySize;
+    private Duration handlerTimeout;
+    private Executor executor;
+    private Readiness readiness = new Readiness();
+    private SunHttpServerStats stats = new SunHttpServerStats();
+
+    private Builder() {}
+
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    public Builder backlog(int backlog) {
+      Preconditions.checkArgument(backlog >= 0, "backlog must be >= 0");
+      this.backlog = backlog;
+      return this;
+    }
+
+    public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+      Preconditions.checkArgument(maxConcurrentRequests >= 0, "maxConcurrentRequests must be >= 0");
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+
+    /**
+     * Maximum number of idle keep-alive connections held open.
+     *
+     * <p><b>JVM-wide:</b> sets {@code sun.net.httpserver.maxIdleConnections} for every JDK server
+     * in the process when the creator is constructed, unless already set, and has no effect once a
+     * JDK server was created. See {@link SunHttpServerConfig}.
+     */
+    public Builder maxIdleConnections(int maxIdleConnections) {
+      Preconditions.checkArgument(maxIdleConnections > 0, "maxIdleConnections must be > 0");
+      this.maxIdleConnections = maxIdleConnections;
+      return this;
+    }
+
+    /**
+     * How long an idle keep-alive connection is held open, in whole seconds.
+     *
+     * <p><b>JVM-wide:</b> sets {@code sun.net.httpserver.idleInterval} for every JDK server in the
+     * process when the creator is constructed, unless already set, and has no effect once a JDK
+     * server was created. See {@link SunHttpServerConfig}.
+     */
+    public Builder idleTimeout(Duration idleTimeout) {
+      this.idleTimeout = Objects.requireNonNull(idleTimeout);
+      return this;
+    }
+
+    /**
+     * Maximum time to read a request, in whole seconds.
+     *
+     * <p><b>JVM-wide:</b> sets {@code sun.net.httpserver.maxReqTime} for every JDK server in the
+     * process when the creator is constructed, unless already set, and has no effect once a JDK
+     * server was created. See {@link SunHttpServerConfig}.
+     */
+    public Builder requestTimeout(Duration requestTimeout) {
+      this.requestTimeout = Objects.requireNonNull(requestTimeout);
+      return this;
+    }
+
+    /**
+     * Maximum time to write a response, in whole seconds.
+     *
+     * <p><b>JVM-wide:</b> sets {@code sun.net.httpserver.maxRspTime} for every JDK server in the
+     * process when the creator is constructed, unless already set, and has no effect once a JDK
+     * server was created. See {@link SunHttpServerConfig}.
+     */
+    public Builder responseTimeout(Duration responseTimeout) {
+      this.responseTimeout = Objects.requireNonNull(responseTimeout);
+      return this;
+    }
+
+    public Builder drainLimit(long drainLimit) {
+      Preconditions.checkArgument(drainLimit >= 0, "drainLimit must be >= 0");
+      this.drainLimit = drainLimit;
+      return this;
+    }
+
+    public Builder maxBodySize(long maxBodySize) {
+      Preconditions.checkArgument(maxBodySize >= 0, "maxBodySize must be >= 0");
+      this.maxBodySize = maxBodySize;
+      return this;
+    }
+
+    /**
+     * Give each request a deadline this far out, or sooner if the client asks for less in the
+     * {@value http4j.core.Deadline#HEADER} header.
+     */
+    public Builder handlerTimeout(Duration handlerTimeout) {
+      Preconditions.checkArgument(!handlerTimeout.isNegative(), "handlerTimeout must be >= 0");
+      this.handlerTimeout = handlerTimeout;
+      return this;
+    }
+
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor);
+      return this;
+    }
+
+    /** Share a readiness flag, ex. with a health handler created before the server. */
+    public Builder readiness(Readiness readiness) {
+      this.readiness = Objects.requireNonNull(readiness);
+      return this;
+    }
+
+    /** Share a stats collector, ex. with a stats handler created before the server. */
+    public Builder stats(SunHttpServerStats stats) {
+      this.stats = Objects.requireNonNull(stats);
+      return this;
+    }
+
+    public SunHttpServerConfig build() {
+      return new SunHttpServerConfig(this);
+    }
+  }
+}
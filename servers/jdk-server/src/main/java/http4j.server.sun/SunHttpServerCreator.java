@@ -4,25 +4,37 @@ import com.google.common.base.Splitter;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.Multimap;
 import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
 import com.google.common.net.HttpHeaders;
-import com.google.common.primitives.Longs;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.sun.net.httpserver.HttpExchange;
+import http4j.core.HttpFilters;
 import http4j.core.HttpHandler;
 import http4j.core.HttpMethod;
 import http4j.core.HttpRequest;
 import http4j.core.HttpResponse;
 import http4j.core.HttpServer;
 import http4j.core.HttpServerCreator;
+import http4j.core.Readiness;
+import http4j.core.util.HeaderValues;
+import http4j.core.websocket.WebSocketUpgrade;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,12 +46,25 @@ public final class SunHttpServerCreator implements HttpServerCreator {
 
   private static final Logger LOG = LoggerFactory.getLogger(SunHttpServer.class);
 
+  private static final ThreadLocal<byte[]> DRAIN_BUFFER =
+      ThreadLocal.withInitial(() -> new byte[8192]);
+
+  private static final ThreadLocal<byte[]> STREAM_BUFFER =
+      ThreadLocal.withInitial(() -> new byte[8192]);
+
   public static final class SunHttpServer implements HttpServer {
 
     private final com.sun.net.httpserver.HttpServer server;
+    private final Readiness readiness;
+    private final SunHttpServerStats stats;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean draining;
 
-    private SunHttpServer(com.sun.net.httpserver.HttpServer server) {
+    private SunHttpServer(
+        com.sun.net.httpserver.HttpServer server, Readiness readiness, SunHttpServerStats stats) {
       this.server = Objects.requireNonNull(server);
+      this.readiness = Objects.requireNonNull(readiness);
+      this.stats = Objects.requireNonNull(stats);
     }
 
     public int getPort() {
@@ -50,16 +75,68 @@ public final class SunHttpServerCreator implements HttpServerCreator {
     public void start() {
       LOG.info("Starting server on port {}", getPort());
       this.server.start();
+      readiness.markReady();
     }
 
     @Override
-    public void close() throws Exception {
+    public Readiness readiness() {
+      return readiness;
+    }
+
+    /** The live counters of the server, see {@link SunHttpServerStats#handler()}. */
+    public SunHttpServerStats stats() {
+      return stats;
+    }
+
+    /**
+     * The listening socket is closed straight away, and requests arriving meanwhile on connections
+     * that are kept alive are answered with a 503 and {@code Connection: close}. The JDK server is
+     * stopped once, with the timeout rounded up to whole seconds as its delay.
+     */
+    @Override
+    public int shutdown(Duration timeout) {
       LOG.info("Stopping server on port {}", getPort());
-      this.server.stop(0);
+      readiness.markNotReady();
+      draining = true;
+
+      //stop(delay) closes the listener at once but, with nothing left to finish, only returns once
+      //the whole delay is up, so it runs on its own thread while this one watches the requests
+      long seconds =
+          timeout.isNegative() ? 0 : timeout.getSeconds() + (timeout.getNano() > 0 ? 1 : 0);
+      int delay = (int) Math.min(Integer.MAX_VALUE, seconds);
+      Thread stopper = new Thread(() -> server.stop(delay), "http4j-sun-stop-" + getPort());
+      stopper.setDaemon(true);
+      stopper.start();
+
+      long deadline = System.nanoTime() + Math.max(0, timeout.toNanos());
+      try {
+        while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+          Thread.sleep(10);
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+
+      int aborted = inFlight.get();
+      if (aborted > 0 || delay == 0) {
+        //the stop closes the remaining connections within a second of the deadline
+        Uninterruptibles.joinUninterruptibly(stopper);
+      }
+      if (aborted > 0) {
+        LOG.warn("Aborted {} in-flight requests that did not finish within {}", aborted, timeout);
+      }
+      return aborted;
+    }
+
+    @Override
+    public void close() throws Exception {
+      shutdown(Duration.ZERO);
     }
   }
 
   private final com.sun.net.httpserver.HttpServer server;
+  private final SunHttpServerConfig config;
+  @Nullable private final Semaphore permits;
 
   private static final Executor DEFAULT_EXECUTOR =
       Executors.newCachedThreadPool(
@@ -71,28 +148,90 @@ public final class SunHttpServerCreator implements HttpServerCreator {
 
   /**
    * Factory for a {@link SunHttpServer}
-   * @param port the port to open when {@link #create(HttpHandler)} is called. 0 will find any random port.
+   *
+   * @param port the port to open when {@link #create(HttpHandler)} is called. 0 will find any
+   *     random port.
    */
   public SunHttpServerCreator(int port) {
-    this(port, DEFAULT_EXECUTOR);
+    this(SunHttpServerConfig.builder().port(port).build());
   }
 
   public SunHttpServerCreator(int port, Executor executor) {
+    this(SunHttpServerConfig.builder().port(port).executor(executor).build());
+  }
+
+  public SunHttpServerCreator(SunHttpServerConfig config) {
+    this.config = Objects.requireNonNull(config);
+    this.permits =
+        config.maxConcurrentRequests() > 0 ? new Semaphore(config.maxConcurrentRequests()) : null;
+    config.applySystemProperties();
     try {
-      this.server = com.sun.net.httpserver.HttpServer.create(new InetSocketAddress(port), 0);
+      this.server =
+          com.sun.net.httpserver.HttpServer.create(
+              new InetSocketAddress(config.port()), config.backlog());
+      Executor executor = config.executor().orElse(DEFAULT_EXECUTOR);
       server.setExecutor(executor);
+      config.stats().executor(executor);
     } catch (IOException e) {
       throw new UncheckedIOException(e);
     }
   }
 
   @Override
-  public HttpServer create(HttpHandler handler) {
+  public SunHttpServer create(HttpHandler handler) {
+    SunHttpServerStats stats = config.stats();
+    SunHttpServer httpServer = new SunHttpServer(server, config.readiness(), stats);
+    HttpHandler limited =
+        config.maxBodySize() > 0 ? HttpFilters.maxBodySize(handler, config.maxBodySize()) : handler;
+    HttpHandler filtered =
+        config
+            .handlerTimeout()
+            .map(timeout -> HttpFilters.timeout(limited, timeout))
+            .orElse(limited);
     server.createContext(
         "/",
         httpExchange -> {
+          //counted before checking, so shutdown either sees this request or it sees the shutdown
+          httpServer.inFlight.incrementAndGet();
+          if (httpServer.draining) {
+            httpServer.inFlight.decrementAndGet();
+            //a request that arrived on a kept-alive connection after shutdown started
+            httpExchange.getResponseHeaders().set(HttpHeaders.CONNECTION, "close");
+            httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            httpExchange.close();
+            stats.responded(HttpURLConnection.HTTP_UNAVAILABLE);
+            return;
+          }
+          HttpMethod method = HttpMethod.parse(httpExchange.getRequestMethod());
+          if (method == null) {
+            httpServer.inFlight.decrementAndGet();
+            httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_IMPLEMENTED, -1);
+            drain(httpExchange);
+            httpExchange.close();
+            stats.responded(HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+            return;
+          }
+          if (permits != null && !permits.tryAcquire()) {
+            httpServer.inFlight.decrementAndGet();
+            LOG.warn("Rejecting request, {} requests in flight", config.maxConcurrentRequests());
+            httpExchange.sendResponseHeaders(HttpURLConnection.HTTP_UNAVAILABLE, -1);
+            drain(httpExchange);
+            httpExchange.close();
+            stats.rejected();
+            return;
+          }
+          stats.started();
+          //count the body bytes per exchange, and only add them to the shared counters at the end
+          CountingInputStream in = new CountingInputStream(httpExchange.getRequestBody());
+          CountingOutputStream out = new CountingOutputStream(httpExchange.getResponseBody());
+          httpExchange.setStreams(in, out);
+          int status = 500;
           try {
-            HttpResponse response = handler.handle(convert(httpExchange));
+            HttpResponse response = filtered.handle(convert(httpExchange, method));
+            if (WebSocketUpgrade.of(response).isPresent()) {
+              //HttpExchange can't hand over its connection, so there is no upgrading it
+              response = HttpResponse.status(501).body("WebSockets are not supported");
+            }
             //Take the response and use it
             response
                 .headers()
@@ -117,18 +256,72 @@ public final class SunHttpServerCreator implements HttpServerCreator {
             }
 
             httpExchange.sendResponseHeaders(response.status(), contentLength);
-            ByteStreams.copy(response.body(), httpExchange.getResponseBody());
+            status = response.status();
+            if (contentLength == 0) {
+              copyStreaming(response.body(), httpExchange.getResponseBody());
+            } else {
+              ByteStreams.copy(response.body(), httpExchange.getResponseBody());
+            }
+            drain(httpExchange);
           } catch (Throwable t) {
             LOG.error("Uncaught error thrown.", t);
+            stats.failed();
             httpExchange.sendResponseHeaders(500, -1);
+          } finally {
+            if (permits != null) {
+              permits.release();
+            }
+            httpServer.inFlight.decrementAndGet();
+            stats.finished(status, in.getCount(), out.getCount());
           }
           httpExchange.close();
         });
-    return new SunHttpServer(server);
+    return httpServer;
+  }
+
+  /**
+   * Copy a body of unknown length, flushing whenever the next read would block. Everything that is
+   * ready goes out in one chunk, and a body that is produced over time, like an event stream, is
+   * not held back in the exchange's buffer. The body is closed afterwards so a stream learns when
+   * its client has gone away.
+   */
+  private static void copyStreaming(InputStream body, OutputStream out) throws IOException {
+    try (InputStream in = body) {
+      byte[] buffer = STREAM_BUFFER.get();
+      int read;
+      while ((read = in.read(buffer)) >= 0) {
+        out.write(buffer, 0, read);
+        if (in.available() <= 0) {
+          out.flush();
+        }
+      }
+    }
+  }
+
+  /**
+   * Read and discard up to the drain limit of what the handler left of the request body. Closing
+   * the exchange then drains at most {@code sun.net.httpserver.drainAmount} more, and the JDK
+   * server only reuses the connection if that reaches the end of the body.
+   */
+  private void drain(HttpExchange exchange) {
+    InputStream body = exchange.getRequestBody();
+    try {
+      long remaining = config.drainLimit();
+      byte[] buffer = DRAIN_BUFFER.get();
+      while (remaining > 0) {
+        int read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+        if (read < 0) {
+          return;
+        }
+        remaining -= read;
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed to drain request body", e);
+    }
   }
 
   /** Create a {@link HttpRequest} from an {@link HttpExchange} */
-  private static HttpRequest convert(HttpExchange exchange) {
+  private static HttpRequest convert(HttpExchange exchange, HttpMethod method) {
     //Collect the headers
     Multimap<String, String> headers =
         exchange
@@ -148,15 +341,12 @@ public final class SunHttpServerCreator implements HttpServerCreator {
       params = Splitter.on('&').trimResults().withKeyValueSeparator("=").split(query);
     }
 
-    HttpMethod method = HttpMethod.method(exchange.getRequestMethod());
     final Long length;
     if (isChunkedTransferEncoding(exchange)) {
       length = null;
     } else {
-      length =
-          Optional.ofNullable(exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_LENGTH))
-              .map(Longs::tryParse)
-              .orElse(0L);
+      String declared = exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_LENGTH);
+      length = declared != null ? Math.max(0, HeaderValues.parseLength(declared)) : 0L;
     }
 
     return new HttpRequest(
@@ -166,7 +356,8 @@ public final class SunHttpServerCreator implements HttpServerCreator {
         headers,
         exchange.getRequestURI(),
         exchange.getRemoteAddress(),
-        params);
+        params,
+        exchange.getProtocol());
   }
 
   private static boolean isChunkedTransferEncoding(HttpExchange exchange) {
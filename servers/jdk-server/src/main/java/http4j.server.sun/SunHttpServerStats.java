@@ -0,0 +1,160 @@
+package http4j.server.sun;
+
+import com.google.common.net.HttpHeaders;
+import com.google.common.net.MediaType;
+import http4j.core.HttpHandler;
+import http4j.core.HttpResponse;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Live counters of a {@link SunHttpServerCreator}: requests in flight and by status class, body
+ * bytes read and written, and the state of the executor handlers run on. Expose it with {@link
+ * #handler()}.
+ *
+ * <p>Counters are {@link LongAdder}s, so the threads handling requests don't contend on them; the
+ * executor figures are only read when a snapshot is taken. The JDK server does not tell when
+ * connections are opened or closed, so requests in flight is the closest there is to active
+ * connections.
+ */
+public final class SunHttpServerStats {
+
+  private final long startedNanos = System.nanoTime();
+
+  private final LongAdder active = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder bytesIn = new LongAdder();
+  private final LongAdder bytesOut = new LongAdder();
+
+  //responses by status class, 1xx to 5xx, anything out of range is counted with 5xx
+  private final LongAdder[] statuses = new LongAdder[5];
+
+  @Nullable private volatile Executor executor;
+
+  public SunHttpServerStats() {
+    for (int i = 0; i < statuses.length; i++) {
+      statuses[i] = new LongAdder();
+    }
+  }
+
+  /** Requests being handled right now. */
+  public long activeRequests() {
+    return active.sum();
+  }
+
+  /** Requests answered so far, whatever the status. */
+  public long requests() {
+    return requests.sum();
+  }
+
+  /** Requests turned away with a 503 because too many were in flight. */
+  public long rejectedRequests() {
+    return rejected.sum();
+  }
+
+  /** Requests whose handler threw, answered with a 500. */
+  public long errors() {
+    return errors.sum();
+  }
+
+  /** Request body bytes read, including those drained after the handler. */
+  public long bytesIn() {
+    return bytesIn.sum();
+  }
+
+  /** Response body bytes written. */
+  public long bytesOut() {
+    return bytesOut.sum();
+  }
+
+  /**
+   * Responses with a status of the given class.
+   *
+   * @param statusClass 1 to 5, for 1xx to 5xx
+   */
+  public long responses(int statusClass) {
+    if (statusClass < 1 || statusClass > statuses.length) {
+      throw new IllegalArgumentException("statusClass must be between 1 and 5");
+    }
+    return statuses[statusClass - 1].sum();
+  }
+
+  /** A JSON snapshot of every figure. */
+  public String toJson() {
+    StringBuilder json = new StringBuilder(512);
+    json.append("{\"uptimeMillis\":").append((System.nanoTime() - startedNanos) / 1_000_000);
+    json.append(",\"requests\":{\"active\":").append(activeRequests());
+    json.append(",\"total\":").append(requests());
+    json.append(",\"rejected\":").append(rejectedRequests());
+    json.append(",\"errors\":").append(errors());
+    json.append("},\"responses\":{");
+    for (int i = 0; i < statuses.length; i++) {
+      json.append(i > 0 ? "," : "").append("\"").append(i + 1).append("xx\":");
+      json.append(statuses[i].sum());
+    }
+    json.append("},\"bytes\":{\"in\":").append(bytesIn());
+    json.append(",\"out\":").append(bytesOut()).append('}');
+    Executor current = executor;
+    if (current instanceof ThreadPoolExecutor) {
+      ThreadPoolExecutor pool = (ThreadPoolExecutor) current;
+      json.append(",\"executor\":{\"poolSize\":").append(pool.getPoolSize());
+      json.append(",\"activeThreads\":").append(pool.getActiveCount());
+      json.append(",\"largestPoolSize\":").append(pool.getLargestPoolSize());
+      json.append(",\"maximumPoolSize\":").append(pool.getMaximumPoolSize());
+      json.append(",\"queued\":").append(pool.getQueue().size());
+      json.append(",\"completedTasks\":").append(pool.getCompletedTaskCount()).append('}');
+    }
+    json.append(",\"jvmThreads\":").append(ManagementFactory.getThreadMXBean().getThreadCount());
+    return json.append('}').toString();
+  }
+
+  /** Answers every request with the {@link #toJson()} snapshot, never cached. */
+  public HttpHandler handler() {
+    return request ->
+        HttpResponse.status(200)
+            .header(HttpHeaders.CONTENT_TYPE, MediaType.JSON_UTF_8.toString())
+            .header(HttpHeaders.CACHE_CONTROL, "no-store")
+            .body(toJson());
+  }
+
+  @Override
+  public String toString() {
+    return toJson();
+  }
+
+  void executor(Executor executor) {
+    this.executor = executor;
+  }
+
+  void started() {
+    active.increment();
+  }
+
+  void rejected() {
+    rejected.increment();
+    responded(503);
+  }
+
+  void failed() {
+    errors.increment();
+  }
+
+  /** Count a response once it has been sent, with the body bytes that went either way. */
+  void finished(int status, long in, long out) {
+    active.decrement();
+    responded(status);
+    bytesIn.add(in);
+    bytesOut.add(out);
+  }
+
+  void responded(int status) {
+    requests.increment();
+    int statusClass = status / 100;
+    statuses[statusClass >= 1 && statusClass <= 5 ? statusClass - 1 : 4].increment();
+  }
+}
@@ -0,0 +1,493 @@
+package http4j.server.sun;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.HttpHandler;
+import http4j.core.HttpHandlers;
+import http4j.core.HttpResponse;
+import http4j.core.HttpServer;
+import http4j.core.Readiness;
+import http4j.core.ServerConformance;
+import http4j.core.sse.EventStream;
+import http4j.server.sun.SunHttpServerCreator.SunHttpServer;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class SunHttpServerCreatorTest {
+
+  private static final int CLIENTS = 8;
+  private static final int REQUESTS_PER_CLIENT = 50;
+
+  @Test
+  public void testConnectionsAreReusedUnderLoad() throws Exception {
+    Set<InetSocketAddress> remotes = ConcurrentHashMap.newKeySet();
+    SunHttpServerConfig config = SunHttpServerConfig.builder().port(0).backlog(128).build();
+    try (HttpServer server =
+        new SunHttpServerCreator(config)
+            .create(
+                request -> {
+                  remotes.add(request.remote());
+                  // deliberately leave the request body unread
+                  return HttpResponse.status(200).body("pong");
+                })) {
+      server.start();
+
+      ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+      try {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+          results.add(
+              clients.submit(
+                  () -> {
+                    int ok = 0;
+                    try (Socket socket = new Socket("localhost", server.getPort())) {
+                      InputStream in = new BufferedInputStream(socket.getInputStream());
+                      OutputStream out = socket.getOutputStream();
+                      for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        out.write(
+                            ("POST /ping HTTP/1.1\r\nHost: localhost\r\n"
+                                    + "Content-Length: 5\r\n\r\nhello")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        if (readResponse(in).equals("pong")) {
+                          ok++;
+                        }
+                      }
+                    }
+                    return ok;
+                  }));
+        }
+        for (Future<Integer> result : results) {
+          Assertions.assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo(REQUESTS_PER_CLIENT);
+        }
+      } finally {
+        clients.shutdownNow();
+      }
+    }
+    // every request from a client arrived over that client's single connection
+    Assertions.assertThat(remotes).hasSize(CLIENTS);
+  }
+
+  @Test
+  public void testRejectsRequestsOverConcurrencyLimit() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    SunHttpServerConfig config =
+        SunHttpServerConfig.builder().port(0).maxConcurrentRequests(1).build();
+    try (HttpServer server =
+        new SunHttpServerCreator(config)
+            .create(
+                request -> {
+                  entered.countDown();
+                  try {
+                    release.await();
+                  } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                  }
+                  return HttpHandlers.pong().handle(request);
+                })) {
+      server.start();
+      ExecutorService clients = Executors.newSingleThreadExecutor();
+      try {
+        Future<Integer> first = clients.submit(() -> status(server.getPort()));
+        Assertions.assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+        Assertions.assertThat(status(server.getPort())).isEqualTo(503);
+        release.countDown();
+        Assertions.assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(200);
+      } finally {
+        clients.shutdownNow();
+      }
+    }
+  }
+
+  @Test
+  public void testShutdownWaitsForInFlightRequests() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    Readiness readiness = new Readiness();
+    HttpServer server =
+        new SunHttpServerCreator(SunHttpServerConfig.builder().port(0).readiness(readiness).build())
+            .create(
+                request -> {
+                  entered.countDown();
+                  Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+                  return HttpHandlers.pong().handle(request);
+                });
+    server.start();
+    Assertions.assertThat(readiness.isReady()).isTrue();
+
+    ExecutorService clients = Executors.newSingleThreadExecutor();
+    try {
+      int port = server.getPort();
+      Future<Integer> inFlight = clients.submit(() -> status(port));
+      Assertions.assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Assertions.assertThat(server.shutdown(Duration.ofSeconds(10))).isEqualTo(0);
+      Assertions.assertThat(readiness.isReady()).isFalse();
+      Assertions.assertThat(inFlight.get(10, TimeUnit.SECONDS)).isEqualTo(200);
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testShutdownStopsAcceptingConnectionsWhileItDrains() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    HttpServer server =
+        new SunHttpServerCreator(0)
+            .create(
+                request -> {
+                  //only the first request is held
+                  if (entered.getCount() > 0) {
+                    entered.countDown();
+                    Uninterruptibles.awaitUninterruptibly(release);
+                  }
+                  return HttpHandlers.pong().handle(request);
+                });
+    server.start();
+
+    ExecutorService clients = Executors.newFixedThreadPool(2);
+    try {
+      int port = server.getPort();
+      Future<Integer> slow = clients.submit(() -> status(port));
+      Assertions.assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+      Future<Integer> aborted = clients.submit(() -> server.shutdown(Duration.ofSeconds(10)));
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+      while (accepts(port)) {
+        Assertions.assertThat(System.nanoTime() - deadline).isNegative();
+        Thread.sleep(10);
+      }
+      Assertions.assertThat(aborted.isDone()).isFalse();
+      release.countDown();
+      Assertions.assertThat(slow.get(10, TimeUnit.SECONDS)).isEqualTo(200);
+      Assertions.assertThat(aborted.get(10, TimeUnit.SECONDS)).isEqualTo(0);
+    } finally {
+      release.countDown();
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testShutdownReportsAbortedRequests() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    HttpServer server =
+        new SunHttpServerCreator(0)
+            .create(
+                request -> {
+                  entered.countDown();
+                  Uninterruptibles.awaitUninterruptibly(release);
+                  return HttpHandlers.pong().handle(request);
+                });
+    server.start();
+
+    ExecutorService clients = Executors.newSingleThreadExecutor();
+    try {
+      int port = server.getPort();
+      clients.submit(() -> status(port));
+      Assertions.assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Assertions.assertThat(server.shutdown(Duration.ofMillis(200))).isEqualTo(1);
+    } finally {
+      release.countDown();
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEventStreamIsFlushedPerEvent() throws Exception {
+    EventStream events = EventStream.create();
+    SunHttpServerConfig config = SunHttpServerConfig.builder().port(0).build();
+    HttpServer server = new SunHttpServerCreator(config).create(request -> events.response());
+    server.start();
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(10_000);
+      socket
+          .getOutputStream()
+          .write(
+              "GET /events HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                  .getBytes(StandardCharsets.US_ASCII));
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      //a single small event has to reach the client without waiting for the buffer to fill
+      events.send("hello");
+      StringBuilder received = new StringBuilder();
+      while (received.indexOf("data: hello\n\n") < 0) {
+        int c = in.read();
+        Assertions.assertThat(c).isNotNegative();
+        received.append((char) c);
+      }
+      events.close();
+    } finally {
+      server.shutdown(Duration.ZERO);
+    }
+  }
+
+  @Test
+  public void testUnknownMethodsAreNotImplemented() throws Exception {
+    SunHttpServerConfig config = SunHttpServerConfig.builder().port(0).build();
+    HttpServer server =
+        new SunHttpServerCreator(config)
+            .create(request -> HttpResponse.status(200).body(request.method().name()));
+    server.start();
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.setSoTimeout(10_000);
+      OutputStream out = socket.getOutputStream();
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      out.write(
+          "PATCH /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertThat(readResponse(in)).isEqualTo("PATCH");
+      out.write(
+          "BREW /pot HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertThat(readLine(in)).startsWith("HTTP/1.1 501");
+    } finally {
+      server.shutdown(Duration.ZERO);
+    }
+  }
+
+  @Test
+  public void testBodiesOverMaxSizeAreRefused() throws Exception {
+    SunHttpServerConfig config = SunHttpServerConfig.builder().port(0).maxBodySize(1024).build();
+    HttpServer server =
+        new SunHttpServerCreator(config)
+            .create(
+                request -> {
+                  try {
+                    return HttpResponse.status(200)
+                        .body(String.valueOf(ByteStreams.exhaust(request.body())));
+                  } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                  }
+                });
+    server.start();
+    try {
+      String fits = "POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 1024\r\n\r\n";
+      String declared = "POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 4096\r\n\r\n";
+      String chunked =
+          "POST /upload HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+              + "800\r\n";
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(10_000);
+        socket.getOutputStream().write(fits.getBytes(StandardCharsets.US_ASCII));
+        socket.getOutputStream().write(new byte[1024]);
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        Assertions.assertThat(readResponse(in)).isEqualTo("1024");
+      }
+      for (String head : new String[] {declared, chunked}) {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+          socket.setSoTimeout(10_000);
+          socket.getOutputStream().write(head.getBytes(StandardCharsets.US_ASCII));
+          socket.getOutputStream().write(new byte[2048]);
+          InputStream in = new BufferedInputStream(socket.getInputStream());
+          Assertions.assertThat(readLine(in)).startsWith("HTTP/1.1 413");
+        }
+      }
+    } finally {
+      server.shutdown(Duration.ZERO);
+    }
+  }
+
+  @Test
+  public void testStuckHandlersTimeOut() throws Exception {
+    SunHttpServerConfig config =
+        SunHttpServerConfig.builder().port(0).handlerTimeout(Duration.ofMillis(200)).build();
+    CountDownLatch stuck = new CountDownLatch(1);
+    HttpServer server =
+        new SunHttpServerCreator(config)
+            .create(
+                request -> {
+                  Uninterruptibles.awaitUninterruptibly(stuck);
+                  return HttpResponse.status(200);
+                });
+    server.start();
+    try {
+      long start = System.nanoTime();
+      Assertions.assertThat(status(server.getPort())).isEqualTo(504);
+      Assertions.assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+    } finally {
+      stuck.countDown();
+      server.shutdown(Duration.ZERO);
+    }
+  }
+
+  @Test
+  public void testStatsCountRequestsAndBytes() throws Exception {
+    SunHttpServerStats stats = new SunHttpServerStats();
+    HttpHandler statsHandler = stats.handler();
+    SunHttpServerConfig config = SunHttpServerConfig.builder().port(0).stats(stats).build();
+    SunHttpServer server =
+        new SunHttpServerCreator(config)
+            .create(
+                request -> {
+                  switch (request.uri().getPath()) {
+                    case "/stats":
+                      return statsHandler.handle(request);
+                    case "/fail":
+                      throw new IllegalStateException("broken");
+                    default:
+                      try {
+                        return HttpResponse.status(200)
+                            .body(String.valueOf(ByteStreams.exhaust(request.body())));
+                      } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                      }
+                  }
+                });
+    server.start();
+    try {
+      Assertions.assertThat(server.stats()).isSameAs(stats);
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(10_000);
+        OutputStream out = socket.getOutputStream();
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        out.write(
+            "POST /upload HTTP/1.1\r\nHost: localhost\r\nContent-Length: 100\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        out.write(new byte[100]);
+        Assertions.assertThat(readResponse(in)).isEqualTo("100");
+        out.write(
+            "BREW /pot HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(readLine(in)).startsWith("HTTP/1.1 501");
+      }
+      try (Socket socket = new Socket("localhost", server.getPort())) {
+        socket.setSoTimeout(10_000);
+        socket
+            .getOutputStream()
+            .write(
+                "GET /fail HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+        Assertions.assertThat(readLine(new BufferedInputStream(socket.getInputStream())))
+            .startsWith("HTTP/1.1 500");
+      }
+
+      //the counters are updated once the response is out, which the client may see first
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (stats.requests() < 3 && System.nanoTime() - deadline < 0) {
+        Thread.sleep(10);
+      }
+      Assertions.assertThat(stats.requests()).isEqualTo(3);
+      Assertions.assertThat(stats.responses(2)).isEqualTo(1);
+      Assertions.assertThat(stats.responses(5)).isEqualTo(2);
+      Assertions.assertThat(stats.errors()).isEqualTo(1);
+      Assertions.assertThat(stats.bytesIn()).isEqualTo(100);
+      Assertions.assertThat(stats.bytesOut()).isEqualTo(3);
+
+      HttpURLConnection connection =
+          (HttpURLConnection)
+              new URL(String.format("http://localhost:%s/stats", server.getPort()))
+                  .openConnection();
+      try {
+        Assertions.assertThat(connection.getContentType()).startsWith("application/json");
+        String json =
+            new String(
+                ByteStreams.toByteArray(connection.getInputStream()), StandardCharsets.UTF_8);
+        Assertions.assertThat(json)
+            .startsWith("{\"uptimeMillis\":")
+            .contains("\"requests\":{\"active\":1,\"total\":3,\"rejected\":0,\"errors\":1}")
+            .contains("\"responses\":{\"1xx\":0,\"2xx\":1,\"3xx\":0,\"4xx\":0,\"5xx\":2}")
+            .contains("\"bytes\":{\"in\":100,\"out\":3}")
+            .contains("\"executor\":{\"poolSize\":")
+            .endsWith("}");
+      } finally {
+        connection.disconnect();
+      }
+    } finally {
+      server.shutdown(Duration.ZERO);
+    }
+  }
+
+  private static boolean accepts(int port) {
+    try (Socket socket = new Socket("localhost", port)) {
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  private static int status(int port) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL(String.format("http://localhost:%s/ping", port)).openConnection();
+    try {
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /** Read a single Content-Length delimited response and return its body. */
+  private static String readResponse(InputStream in) throws IOException {
+    String statusLine = readLine(in);
+    Assertions.assertThat(statusLine).startsWith("HTTP/1.1 200");
+    long length = 0;
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      if (line.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+        length = Long.parseLong(line.substring("content-length:".length()).trim());
+      }
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    for (long i = 0; i < length; i++) {
+      body.write(in.read());
+    }
+    return new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    int c;
+    while ((c = in.read()) != '\n') {
+      if (c < 0) {
+        throw new IOException("Connection closed");
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  @Test
+  public void testConformance() throws Exception {
+    ServerConformance.builder(
+            () -> {
+              //idle workers go away quickly, so threads still alive after close are leaks
+              ThreadPoolExecutor workers =
+                  new ThreadPoolExecutor(
+                      0, Integer.MAX_VALUE, 50, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+              return new SunHttpServerCreator(
+                  SunHttpServerConfig.builder().port(0).backlog(256).executor(workers).build());
+            })
+        .connections(200)
+        .requestsPerConnection(5)
+        .clientThreads(16)
+        .largeBodySize(16 * 1024 * 1024)
+        .chunkedRequests(50)
+        .slowClients(50, Duration.ofSeconds(1))
+        .build()
+        .run();
+  }
+}
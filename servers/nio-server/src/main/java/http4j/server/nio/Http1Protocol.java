@@ -0,0 +1,741 @@
+package http4j.server.nio;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.BaseEncoding;
+import com.google.common.net.HttpHeaders;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.codec.ChunkedDecoder;
+import http4j.core.codec.Http1Encoder;
+import http4j.core.codec.HttpCodecException;
+import http4j.core.codec.HttpHead;
+import http4j.core.codec.HttpHeadParser;
+import http4j.core.codec.http2.Http2;
+import http4j.core.sse.EventStream;
+import http4j.core.util.HttpDates;
+import http4j.core.util.QueryParams;
+import http4j.core.websocket.WebSocketUpgrade;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP/1.1 over a {@link NioConnection}. Heads and bodies are parsed on the selector loop; each
+ * request is then handed to the worker executor, which runs the handler and streams the response
+ * back through the connection's write queue. Requests on a connection are answered one at a time,
+ * in order, so pipelined requests wait in the read buffer until the previous response is queued.
+ */
+final class Http1Protocol implements Protocol {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Http1Protocol.class);
+
+  private static final byte[] CONTINUE =
+      "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+  private static final byte[] SWITCHING_PROTOCOLS =
+      "HTTP/1.1 101 Switching Protocols\r\nConnection: Upgrade\r\nUpgrade: h2c\r\n\r\n"
+          .getBytes(StandardCharsets.US_ASCII);
+
+  private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  private final NioConnection connection;
+  private final NioHttpServer server;
+  private final HttpHeadParser parser;
+  private final long idleTimeoutNanos;
+  private final long headTimeoutNanos;
+
+  // only touched on the loop thread
+  @Nullable private Exchange exchange;
+  private long headStarted;
+  private boolean closing;
+  private boolean requestSeen;
+
+  Http1Protocol(NioConnection connection, NioHttpServer server) {
+    NioServerConfig config = server.config();
+    this.connection = connection;
+    this.server = server;
+    this.parser = new HttpHeadParser(HttpHeadParser.Kind.REQUEST, config.maxHeadSize());
+    this.idleTimeoutNanos = config.idleTimeout().toNanos();
+    this.headTimeoutNanos = config.headTimeout().toNanos();
+  }
+
+  @Override
+  public void onRead(ByteBuffer in) {
+    while (!closing) {
+      Exchange current = exchange;
+      if (current != null) {
+        if (!current.bodyComplete) {
+          readBody(current, in);
+          if (!current.bodyComplete) {
+            return;
+          }
+        }
+        if (!current.responseComplete) {
+          //a pipelined request, wait for the response in flight to be queued first
+          if (in.hasRemaining()) {
+            connection.suspendReads();
+          }
+          return;
+        }
+        exchange = null;
+      }
+      if (!in.hasRemaining()) {
+        return;
+      }
+      if (!requestSeen && !parser.inProgress() && server.config().http2()) {
+        int matched = Http2Protocol.matchPreface(in);
+        if (matched == Http2.PREFACE.length) {
+          //prior knowledge, the client skipped HTTP/1.1 altogether
+          Http2Protocol http2 = new Http2Protocol(connection, server, null);
+          connection.upgrade(http2, Http2Protocol.MIN_READ_BUFFER);
+          http2.start();
+          return;
+        } else if (matched == in.remaining()) {
+          //could still be the preface, wait for the rest
+          return;
+        }
+      }
+      if (!parser.inProgress()) {
+        headStarted = System.nanoTime();
+      }
+      HttpHead head;
+      try {
+        head = parser.parse(in);
+      } catch (HttpCodecException e) {
+        LOG.debug("Rejecting request from {}: {}", connection.remote(), e.getMessage());
+        reject(e.status());
+        return;
+      }
+      if (head == null) {
+        return;
+      }
+      requestSeen = true;
+      if (begin(head)) {
+        //the connection now speaks another protocol
+        return;
+      }
+    }
+  }
+
+  @Override
+  public void onInputClosed() {
+    Exchange current = exchange;
+    if (current != null && !current.responseComplete && current.events == null) {
+      //a half-closed client may still be waiting for its response, but not for an event stream
+      current.inputClosed = true;
+      if (!current.bodyComplete) {
+        current.body.fail(new IOException("Connection closed before the request body was read"));
+      }
+      return;
+    }
+    connection.close();
+  }
+
+  @Override
+  public void onTimer(long nowNanos) {
+    Exchange current = exchange;
+    EventStream events = current == null ? null : current.events;
+    if (events != null) {
+      if (server.isDraining()) {
+        //clients reconnect elsewhere, instead of holding up the shutdown
+        events.close();
+      } else {
+        events.tick(nowNanos);
+      }
+    }
+    if (exchange != null || closing) {
+      return;
+    }
+    if (parser.inProgress()) {
+      if (nowNanos - headStarted > headTimeoutNanos) {
+        LOG.debug("Timed out reading request head from {}", connection.remote());
+        reject(408);
+      }
+    } else if (nowNanos - connection.lastActivity() > idleTimeoutNanos) {
+      connection.close();
+    }
+  }
+
+  @Override
+  public boolean isIdle() {
+    return exchange == null && !parser.inProgress();
+  }
+
+  @Override
+  public void onClose() {
+    Exchange current = exchange;
+    if (current != null && !current.bodyComplete) {
+      current.body.fail(new IOException("Connection closed"));
+    }
+    EventStream events = current == null ? null : current.events;
+    if (events != null) {
+      events.close();
+    }
+  }
+
+  /**
+   * Set up the exchange for a parsed head and hand the request to a worker.
+   *
+   * @return true if the connection was upgraded to HTTP/2
+   */
+  private boolean begin(HttpHead head) {
+    HttpMethod method = HttpMethod.parse(head.method());
+    if (method == null) {
+      reject(501);
+      return false;
+    }
+    URI uri;
+    long contentLength;
+    try {
+      uri = new URI(head.target());
+      contentLength = head.contentLength();
+    } catch (URISyntaxException e) {
+      reject(400);
+      return false;
+    } catch (HttpCodecException e) {
+      reject(e.status());
+      return false;
+    }
+    boolean chunked = head.isChunked();
+    if (head.header(HttpHeaders.TRANSFER_ENCODING) != null && !chunked) {
+      reject(501);
+      return false;
+    }
+    if (chunked && contentLength >= 0) {
+      //both framings at once is a request smuggling attempt, RFC 7230 3.3.3
+      reject(400);
+      return false;
+    }
+    if (!chunked && contentLength <= 0 && isH2cUpgrade(head)) {
+      return upgrade(head, method, uri);
+    }
+
+    Exchange current = new Exchange(head);
+    InputStream body;
+    Long length;
+    if (chunked) {
+      current.decoder = new ChunkedDecoder();
+      current.body = newBodyStream();
+      body = current.body;
+      length = null;
+    } else if (contentLength > 0) {
+      current.remaining = contentLength;
+      current.body = newBodyStream();
+      body = current.body;
+      length = contentLength;
+    } else {
+      current.bodyComplete = true;
+      body = EMPTY_BODY;
+      length = 0L;
+    }
+
+    HttpRequest request =
+        new HttpRequest(
+            method,
+            body,
+            length,
+            head.headers(),
+            uri,
+            connection.remote(),
+            QueryParams.parse(uri.getQuery()),
+            head.version());
+
+    exchange = current;
+    server.requestStarted();
+    connection.loop().stats().requests.increment();
+    try {
+      if (head.expectsContinue() && !current.bodyComplete) {
+        connection.write(ByteBuffer.wrap(CONTINUE));
+      }
+      server.executor().execute(() -> respond(current, request));
+    } catch (IOException | RejectedExecutionException e) {
+      LOG.warn("Could not dispatch request from {}", connection.remote(), e);
+      server.requestFinished();
+      exchange = null;
+      reject(503);
+    }
+    return false;
+  }
+
+  /**
+   * Whether the client asked to switch to h2c, RFC 7540 3.2. Requests with a body are answered over
+   * HTTP/1.1 instead, which the client has to accept.
+   */
+  private boolean isH2cUpgrade(HttpHead head) {
+    if (!server.config().http2() || head.isHttp10() || server.isDraining()) {
+      return false;
+    }
+    String upgrade = head.header(HttpHeaders.UPGRADE);
+    String connectionHeader = head.header(HttpHeaders.CONNECTION);
+    return upgrade != null
+        && connectionHeader != null
+        && head.header(Http2Protocol.HTTP2_SETTINGS) != null
+        && Http2Protocol.hasToken(upgrade, "h2c")
+        && Http2Protocol.hasToken(connectionHeader, "upgrade")
+        && Http2Protocol.hasToken(connectionHeader, Http2Protocol.HTTP2_SETTINGS);
+  }
+
+  private boolean upgrade(HttpHead head, HttpMethod method, URI uri) {
+    ByteBuffer settings;
+    try {
+      settings =
+          ByteBuffer.wrap(
+              BaseEncoding.base64Url()
+                  .omitPadding()
+                  .decode(
+                      CharMatcher.is('=')
+                          .trimTrailingFrom(head.header(Http2Protocol.HTTP2_SETTINGS))));
+    } catch (IllegalArgumentException e) {
+      reject(400);
+      return false;
+    }
+    try {
+      connection.write(ByteBuffer.wrap(SWITCHING_PROTOCOLS));
+    } catch (IOException e) {
+      connection.close();
+      return false;
+    }
+    Http2Protocol http2 = new Http2Protocol(connection, server, settings);
+    connection.upgrade(http2, Http2Protocol.MIN_READ_BUFFER);
+    http2.start();
+    //the request that asked for the upgrade is answered on stream 1
+    http2.dispatchUpgraded(head, method, uri);
+    return true;
+  }
+
+  private RequestBodyStream newBodyStream() {
+    return new RequestBodyStream(
+        server.config().writeHighWaterMark(), connection::resumeReads, consumed -> {});
+  }
+
+  private void readBody(Exchange current, ByteBuffer in) {
+    while (in.hasRemaining() && !current.bodyComplete) {
+      if (current.body.isFull()) {
+        connection.suspendReads();
+        return;
+      }
+      ByteBuffer data;
+      if (current.decoder != null) {
+        try {
+          data = current.decoder.decode(in);
+        } catch (HttpCodecException e) {
+          current.body.fail(new IOException(e.getMessage()));
+          reject(e.status());
+          return;
+        }
+      } else {
+        int length = (int) Math.min(current.remaining, in.remaining());
+        data = in.slice();
+        data.limit(length);
+        in.position(in.position() + length);
+        current.remaining -= length;
+      }
+      if (data != null) {
+        if (current.body.isClosed()) {
+          //nobody wants the rest of this body, drop it unless there is too much of it
+          current.discarded += data.remaining();
+          if (current.discarded > server.config().drainLimit()) {
+            closing = true;
+            connection.close();
+            return;
+          }
+        } else {
+          current.body.offer(data);
+        }
+      }
+      if (current.decoder != null ? current.decoder.isDone() : current.remaining == 0) {
+        current.bodyComplete = true;
+        current.body.finish();
+      }
+    }
+  }
+
+  /** Answer with an error status and close the connection, ignoring anything else it sends. */
+  private void reject(int status) {
+    closing = true;
+    parser.reset();
+    connection.suspendReads();
+    List<Map.Entry<String, String>> headers =
+        ImmutableList.of(
+            header(HttpHeaders.CONTENT_LENGTH, "0"),
+            header(HttpHeaders.CONNECTION, "close"),
+            header(HttpHeaders.DATE, date()));
+    try {
+      connection.write(ByteBuffer.wrap(Http1Encoder.responseHead("HTTP/1.1", status, headers)));
+      connection.closeAfterWrite();
+    } catch (IOException e) {
+      connection.close();
+    }
+  }
+
+  /** Run the handler and write its response. Worker thread. */
+  private void respond(Exchange current, HttpRequest request) {
+    HttpResponse response;
+    try {
+      response = server.handler().handle(request);
+    } catch (Throwable t) {
+      LOG.error("Uncaught error thrown.", t);
+      response = HttpResponse.status(500);
+    }
+    boolean detached = false;
+    try {
+      detached = write(current, response);
+    } catch (IOException e) {
+      LOG.debug("Failed to write response to {}", connection.remote(), e);
+      current.keepAlive = false;
+      connection.close();
+    } catch (RuntimeException e) {
+      LOG.error("Failed to write response to {}", connection.remote(), e);
+      current.keepAlive = false;
+      connection.close();
+    } finally {
+      if (!detached) {
+        try {
+          response.body().close();
+        } catch (IOException e) {
+          LOG.debug("Failed to close response body", e);
+        }
+        connection.loop().execute(() -> responseComplete(current));
+      }
+    }
+  }
+
+  /**
+   * Write the response, or for an event stream just its head.
+   *
+   * @return true if the body was handed to an {@link EventStream} subscriber, which completes the
+   *     response when the stream ends, instead of being written by this thread
+   */
+  private boolean write(Exchange current, HttpResponse response) throws IOException {
+    HttpHead head = current.head;
+    WebSocketUpgrade upgrade = WebSocketUpgrade.of(response).orElse(null);
+    if (upgrade != null) {
+      if (isUpgradable(head) && !current.inputClosed && !server.isDraining()) {
+        return writeUpgrade(current, response, upgrade);
+      }
+      response = HttpResponse.status(head.isHttp10() ? 400 : 503);
+    }
+    int status = response.status();
+    boolean headRequest = "HEAD".equalsIgnoreCase(head.method());
+    boolean noBodyStatus = (status >= 100 && status < 200) || status == 204 || status == 304;
+    boolean keepAlive = head.isKeepAlive() && !current.inputClosed && !server.isDraining();
+
+    List<Map.Entry<String, String>> headers = new ArrayList<>(response.headers().size() + 4);
+    boolean hasDate = false;
+    for (Map.Entry<String, String> entry : response.headers().entries()) {
+      String name = entry.getKey();
+      if (name.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH)
+          || name.equalsIgnoreCase(HttpHeaders.TRANSFER_ENCODING)) {
+        //framing is decided here from the response length
+        continue;
+      }
+      if (name.equalsIgnoreCase(HttpHeaders.CONNECTION)) {
+        if (entry.getValue().equalsIgnoreCase("close")) {
+          keepAlive = false;
+        }
+        continue;
+      }
+      hasDate |= name.equalsIgnoreCase(HttpHeaders.DATE);
+      headers.add(entry);
+    }
+    if (!hasDate) {
+      headers.add(header(HttpHeaders.DATE, date()));
+    }
+
+    Long length = response.length().orElse(null);
+    boolean chunked = false;
+    if (noBodyStatus) {
+      length = 0L;
+    } else if (length != null) {
+      headers.add(header(HttpHeaders.CONTENT_LENGTH, Long.toString(length)));
+    } else if (!headRequest) {
+      if (head.isHttp10()) {
+        //no chunked encoding in HTTP/1.0, the end of the body is the end of the connection
+        keepAlive = false;
+      } else {
+        chunked = true;
+        headers.add(header(HttpHeaders.TRANSFER_ENCODING, "chunked"));
+      }
+    }
+    if (!keepAlive) {
+      headers.add(header(HttpHeaders.CONNECTION, "close"));
+    } else if (head.isHttp10()) {
+      headers.add(header(HttpHeaders.CONNECTION, "keep-alive"));
+    }
+    current.keepAlive = keepAlive;
+
+    byte[] responseHead = Http1Encoder.responseHead("HTTP/1.1", status, headers);
+    EventStream events =
+        headRequest || noBodyStatus || length != null
+            ? null
+            : EventStream.of(response.body()).orElse(null);
+    if (events != null) {
+      connection.write(ByteBuffer.wrap(responseHead));
+      current.events = events;
+      events.subscribe(new EventSubscriber(current, chunked));
+      return true;
+    }
+    if (headRequest || noBodyStatus) {
+      connection.write(ByteBuffer.wrap(responseHead));
+    } else if (chunked) {
+      writeChunked(responseHead, response.body());
+    } else {
+      writeFixed(current, responseHead, response.body(), length == null ? Long.MAX_VALUE : length);
+    }
+    if (!current.keepAlive) {
+      connection.closeAfterWrite();
+    }
+    return false;
+  }
+
+  /** Whether the connection can be handed over once the response is written. */
+  private static boolean isUpgradable(HttpHead head) {
+    try {
+      return !head.isHttp10() && !head.isChunked() && head.contentLength() <= 0;
+    } catch (HttpCodecException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Write the 101 of an accepted WebSocket handshake. The connection switches over once the
+   * response is complete, on the loop, so no frame can be read as the next request.
+   */
+  private boolean writeUpgrade(Exchange current, HttpResponse response, WebSocketUpgrade upgrade)
+      throws IOException {
+    List<Map.Entry<String, String>> headers = new ArrayList<>(response.headers().size() + 1);
+    boolean hasDate = false;
+    for (Map.Entry<String, String> entry : response.headers().entries()) {
+      hasDate |= entry.getKey().equalsIgnoreCase(HttpHeaders.DATE);
+      headers.add(entry);
+    }
+    if (!hasDate) {
+      headers.add(header(HttpHeaders.DATE, date()));
+    }
+    connection.write(ByteBuffer.wrap(Http1Encoder.responseHead("HTTP/1.1", 101, headers)));
+    current.upgrade = upgrade;
+    current.keepAlive = true;
+    return false;
+  }
+
+  private void writeFixed(Exchange current, byte[] head, InputStream body, long length)
+      throws IOException {
+    ByteBuffer pendingHead = ByteBuffer.wrap(head);
+    long remaining = length;
+    while (remaining > 0) {
+      byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE, remaining)];
+      int read = fill(body, buffer);
+      if (read < 0) {
+        if (length != Long.MAX_VALUE) {
+          LOG.warn("Response body shorter than its length of {}, closing connection", length);
+        }
+        current.keepAlive = false;
+        break;
+      }
+      remaining -= read;
+      if (pendingHead != null) {
+        //the head goes out with the first piece of the body
+        connection.write(pendingHead, ByteBuffer.wrap(buffer, 0, read));
+        pendingHead = null;
+      } else {
+        connection.write(ByteBuffer.wrap(buffer, 0, read));
+      }
+      connection.awaitWritable();
+    }
+    if (pendingHead != null) {
+      connection.write(pendingHead);
+    }
+  }
+
+  private void writeChunked(byte[] head, InputStream body) throws IOException {
+    ByteBuffer pendingHead = ByteBuffer.wrap(head);
+    while (true) {
+      byte[] buffer = new byte[CHUNK_SIZE];
+      int read = fill(body, buffer);
+      List<ByteBuffer> buffers = new ArrayList<>(5);
+      if (pendingHead != null) {
+        buffers.add(pendingHead);
+        pendingHead = null;
+      }
+      if (read > 0) {
+        buffers.add(ByteBuffer.wrap(Http1Encoder.chunkHeader(read)));
+        buffers.add(ByteBuffer.wrap(buffer, 0, read));
+        buffers.add(ByteBuffer.wrap(Http1Encoder.CRLF));
+      }
+      if (read < 0) {
+        buffers.add(ByteBuffer.wrap(Http1Encoder.LAST_CHUNK));
+        connection.write(buffers.toArray(new ByteBuffer[0]));
+        return;
+      }
+      connection.write(buffers.toArray(new ByteBuffer[0]));
+      connection.awaitWritable();
+    }
+  }
+
+  /**
+   * Read until the buffer is full, the stream ends or the next read would block. Small bodies go
+   * out in one write, and bodies that are produced bit by bit are sent as they come instead of
+   * being held back until a whole buffer is ready.
+   *
+   * @return the bytes read, or -1 once the stream has ended
+   */
+  static int fill(InputStream body, byte[] buffer) throws IOException {
+    int filled = 0;
+    while (filled < buffer.length) {
+      int read = body.read(buffer, filled, buffer.length - filled);
+      if (read < 0) {
+        return filled == 0 ? -1 : filled;
+      }
+      filled += read;
+      if (body.available() <= 0) {
+        break;
+      }
+    }
+    return filled;
+  }
+
+  /**
+   * Pushes an event stream straight into the write queue from whichever thread sends the events, so
+   * no worker waits on an open stream.
+   */
+  private final class EventSubscriber implements EventStream.Subscriber {
+
+    private final Exchange current;
+    private final boolean chunked;
+    private final AtomicBoolean done = new AtomicBoolean();
+
+    private EventSubscriber(Exchange current, boolean chunked) {
+      this.current = current;
+      this.chunked = chunked;
+    }
+
+    @Override
+    public long write(byte[] bytes) throws IOException {
+      if (chunked) {
+        connection.write(
+            ByteBuffer.wrap(Http1Encoder.chunkHeader(bytes.length)),
+            ByteBuffer.wrap(bytes),
+            ByteBuffer.wrap(Http1Encoder.CRLF));
+      } else {
+        connection.write(ByteBuffer.wrap(bytes));
+      }
+      return connection.pendingBytes();
+    }
+
+    @Override
+    public void end() {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        if (chunked) {
+          connection.write(ByteBuffer.wrap(Http1Encoder.LAST_CHUNK));
+        }
+        if (!current.keepAlive) {
+          connection.closeAfterWrite();
+        }
+      } catch (IOException e) {
+        LOG.debug("Failed to end event stream to {}", connection.remote(), e);
+      }
+      connection.loop().execute(() -> responseComplete(current));
+    }
+
+    @Override
+    public void abort() {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      current.keepAlive = false;
+      connection.close();
+      connection.loop().execute(() -> responseComplete(current));
+    }
+  }
+
+  /** The response has been queued; move on to the next request. Loop thread. */
+  private void responseComplete(Exchange current) {
+    server.requestFinished();
+    current.responseComplete = true;
+    if (connection.isClosed() || closing) {
+      return;
+    }
+    if (!current.keepAlive || current.inputClosed) {
+      closing = true;
+      connection.closeAfterWrite();
+      return;
+    }
+    if (current.upgrade != null) {
+      closing = true;
+      exchange = null;
+      WebSocketProtocol webSocket = new WebSocketProtocol(connection, server, current.upgrade);
+      connection.upgrade(webSocket, webSocket.minReadBuffer());
+      webSocket.start();
+      //frames the client sent right after the handshake are already in the read buffer
+      connection.resumeReads();
+      return;
+    }
+    if (!current.bodyComplete) {
+      current.body.close();
+      if (current.decoder == null && current.remaining > server.config().drainLimit()) {
+        closing = true;
+        connection.closeAfterWrite();
+        return;
+      }
+    }
+    connection.resumeReads();
+    if (current.bodyComplete) {
+      exchange = null;
+    }
+  }
+
+  private static Map.Entry<String, String> header(String name, String value) {
+    return new SimpleImmutableEntry<>(name, value);
+  }
+
+  static String date() {
+    return HttpDates.now();
+  }
+
+  /** A request and the progress of its body and response. */
+  private static final class Exchange {
+    private final HttpHead head;
+    @Nullable private RequestBodyStream body;
+    @Nullable private ChunkedDecoder decoder;
+    private long remaining;
+    private long discarded;
+    private boolean bodyComplete;
+
+    // read by the worker when deciding whether to keep the connection
+    private volatile boolean inputClosed;
+
+    // set on the worker and read on the loop after responseComplete is queued
+    private volatile boolean keepAlive;
+    private boolean responseComplete;
+
+    // set on the worker before the stream is subscribed, read on the loop by the timer
+    @Nullable private volatile EventStream events;
+
+    // set on the worker and read on the loop after responseComplete is queued
+    @Nullable private volatile WebSocketUpgrade upgrade;
+
+    private Exchange(HttpHead head) {
+      this.head = head;
+    }
+  }
+}
@@ -0,0 +1,1033 @@
+package http4j.server.nio;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ListMultimap;
+import http4j.core.HttpMethod;
+import http4j.core.HttpRequest;
+import http4j.core.HttpResponse;
+import http4j.core.codec.HttpHead;
+import http4j.core.codec.http2.HpackDecoder;
+import http4j.core.codec.http2.HpackEncoder;
+import http4j.core.codec.http2.Http2;
+import http4j.core.codec.http2.Http2Exception;
+import http4j.core.util.HeaderValues;
+import http4j.core.util.QueryParams;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP/2 over cleartext TCP, RFC 7540, either with prior knowledge or after an HTTP/1.1 upgrade.
+ * Frames are parsed on the selector loop and every stream is handed to the worker executor as its
+ * own request, so one slow handler no longer holds up the rest of the connection.
+ *
+ * <p>Request bodies are bounded by flow control: the window of a stream is only opened again as the
+ * handler consumes its body. Responses wait on the peer's windows before each DATA frame, and on
+ * the connection's write queue like HTTP/1.1 responses do.
+ */
+final class Http2Protocol implements Protocol {
+
+  private static final Logger LOG = LoggerFactory.getLogger(Http2Protocol.class);
+
+  static final String HTTP2_SETTINGS = "HTTP2-Settings";
+
+  /** Room for a whole frame of the largest size this side accepts, header included. */
+  static final int MIN_READ_BUFFER = Http2.DEFAULT_MAX_FRAME_SIZE + Http2.FRAME_HEADER_LENGTH;
+
+  private static final String PROTOCOL = "HTTP/2.0";
+
+  // the window this side gives the whole connection, streams keep the default
+  private static final int CONNECTION_WINDOW = 1024 * 1024;
+  private static final int STREAM_WINDOW = Http2.DEFAULT_WINDOW_SIZE;
+
+  private static final Set<String> CONNECTION_HEADERS =
+      ImmutableSet.of(
+          "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+
+  private static final InputStream EMPTY_BODY = new ByteArrayInputStream(new byte[0]);
+
+  private final NioConnection connection;
+  private final NioHttpServer server;
+  private final NioServerConfig config;
+  private final HpackDecoder decoder;
+  @Nullable private final ByteBuffer upgradeSettings;
+  private final long startedNanos = System.nanoTime();
+
+  // keeps the frames of one HEADERS block, and each DATA frame, whole when written from many threads
+  private final Object writeLock = new Object();
+
+  // the peer's flow control windows, waited on by the workers writing responses
+  private final Object flowLock = new Object();
+
+  @GuardedBy("flowLock")
+  private long connectionSendWindow = Http2.DEFAULT_WINDOW_SIZE;
+
+  @GuardedBy("flowLock")
+  private int peerInitialWindow = Http2.DEFAULT_WINDOW_SIZE;
+
+  private volatile int peerMaxFrameSize = Http2.DEFAULT_MAX_FRAME_SIZE;
+
+  // bytes handed back by the handlers since the last connection WINDOW_UPDATE
+  private final AtomicInteger connectionConsumed = new AtomicInteger();
+
+  // only touched on the loop thread
+  private final Map<Integer, Stream> streams = new HashMap<>();
+  private int connectionReceiveWindow = CONNECTION_WINDOW;
+  private int lastStreamId;
+  private boolean prefaceReceived;
+  private boolean settingsReceived;
+  private boolean goingAway;
+  private boolean failed;
+  private int headersStreamId;
+  private int headersFlags;
+  private final ByteArrayOutputStream headerBlock = new ByteArrayOutputStream();
+
+  private volatile boolean closed;
+
+  /**
+   * @param settings the client's settings from the HTTP2-Settings header when upgrading from
+   *     HTTP/1.1, or null with prior knowledge
+   */
+  Http2Protocol(NioConnection connection, NioHttpServer server, @Nullable ByteBuffer settings) {
+    this.connection = connection;
+    this.server = server;
+    this.config = server.config();
+    this.decoder = new HpackDecoder(Http2.DEFAULT_HEADER_TABLE_SIZE, config.maxHeadSize());
+    this.upgradeSettings = settings;
+  }
+
+  /**
+   * How many of the leading bytes match the connection preface, without consuming any of them.
+   * Equal to the preface length on a full match.
+   */
+  static int matchPreface(ByteBuffer in) {
+    int length = Math.min(in.remaining(), Http2.PREFACE.length);
+    for (int i = 0; i < length; i++) {
+      if (in.get(in.position() + i) != Http2.PREFACE[i]) {
+        return i;
+      }
+    }
+    return length;
+  }
+
+  /** Whether a comma separated header value contains the token, ignoring case. */
+  static boolean hasToken(String value, String token) {
+    for (String part : Splitter.on(',').trimResults().split(value)) {
+      if (part.equalsIgnoreCase(token)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Send the server preface. Loop thread, right after the connection switched to HTTP/2. */
+  void start() {
+    if (upgradeSettings != null) {
+      try {
+        applySettings(upgradeSettings);
+      } catch (Http2Exception e) {
+        connectionError(e);
+        return;
+      }
+    }
+    send(
+        Http2.settings(
+            Http2.SETTINGS_MAX_CONCURRENT_STREAMS,
+            config.maxConcurrentStreams(),
+            Http2.SETTINGS_MAX_HEADER_LIST_SIZE,
+            config.maxHeadSize()),
+        Http2.windowUpdate(0, CONNECTION_WINDOW - Http2.DEFAULT_WINDOW_SIZE));
+  }
+
+  /** Answer the HTTP/1.1 request that asked for the upgrade on stream 1, RFC 7540 3.2. */
+  void dispatchUpgraded(HttpHead head, HttpMethod method, URI uri) {
+    if (failed) {
+      return;
+    }
+    lastStreamId = 1;
+    Stream stream = newStream(1, head.method(), false);
+    stream.remoteClosed = true;
+    ListMultimap<String, String> headers = ArrayListMultimap.create();
+    for (Map.Entry<String, String> header : head.headers().entries()) {
+      String name = header.getKey().toLowerCase(Locale.ROOT);
+      if (!CONNECTION_HEADERS.contains(name) && !name.equalsIgnoreCase(HTTP2_SETTINGS)) {
+        headers.put(name, header.getValue());
+      }
+    }
+    dispatch(
+        stream,
+        new HttpRequest(
+            method,
+            EMPTY_BODY,
+            0L,
+            headers,
+            uri,
+            connection.remote(),
+            QueryParams.parse(uri.getQuery()),
+            PROTOCOL));
+  }
+
+  @Override
+  public void onRead(ByteBuffer in) {
+    if (!prefaceReceived) {
+      int matched = matchPreface(in);
+      if (matched < in.remaining() && matched < Http2.PREFACE.length) {
+        LOG.debug("Invalid HTTP/2 preface from {}", connection.remote());
+        failed = true;
+        connection.close();
+        return;
+      }
+      if (matched < Http2.PREFACE.length) {
+        return;
+      }
+      in.position(in.position() + Http2.PREFACE.length);
+      prefaceReceived = true;
+    }
+    while (!failed && in.remaining() >= Http2.FRAME_HEADER_LENGTH) {
+      int start = in.position();
+      int length =
+          (in.get(start) & 0xFF) << 16 | (in.get(start + 1) & 0xFF) << 8 | in.get(start + 2) & 0xFF;
+      if (length > Http2.DEFAULT_MAX_FRAME_SIZE) {
+        connectionError(
+            Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Frame larger than SETTINGS"));
+        return;
+      }
+      if (in.remaining() < Http2.FRAME_HEADER_LENGTH + length) {
+        //wait for the whole frame, the read buffer always has room for one
+        return;
+      }
+      int type = in.get(start + 3) & 0xFF;
+      int flags = in.get(start + 4) & 0xFF;
+      int streamId = in.getInt(start + 5) & 0x7FFFFFFF;
+      ByteBuffer payload = in.slice();
+      payload.position(Http2.FRAME_HEADER_LENGTH);
+      payload.limit(Http2.FRAME_HEADER_LENGTH + length);
+      payload = payload.slice();
+      in.position(start + Http2.FRAME_HEADER_LENGTH + length);
+      try {
+        onFrame(type, flags, streamId, payload);
+      } catch (Http2Exception e) {
+        if (e.isConnectionError()) {
+          connectionError(e);
+          return;
+        }
+        streamError(e);
+      }
+    }
+  }
+
+  private void onFrame(int type, int flags, int streamId, ByteBuffer payload) {
+    if (!settingsReceived && (type != Http2.SETTINGS || (flags & Http2.FLAG_ACK) != 0)) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Expected SETTINGS first");
+    }
+    if (headersStreamId != 0 && (type != Http2.CONTINUATION || streamId != headersStreamId)) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Expected CONTINUATION");
+    }
+    switch (type) {
+      case Http2.DATA:
+        onData(flags, streamId, payload);
+        break;
+      case Http2.HEADERS:
+        onHeaders(flags, streamId, payload);
+        break;
+      case Http2.CONTINUATION:
+        if (headersStreamId == 0) {
+          throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Unexpected CONTINUATION");
+        }
+        appendHeaderBlock(payload);
+        if ((flags & Http2.FLAG_END_HEADERS) != 0) {
+          int id = headersStreamId;
+          headersStreamId = 0;
+          onHeaderBlock(id, headersFlags);
+        }
+        break;
+      case Http2.PRIORITY:
+        if (streamId == 0) {
+          throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "PRIORITY on stream 0");
+        }
+        if (payload.remaining() != 5) {
+          throw Http2Exception.stream(Http2.FRAME_SIZE_ERROR, streamId, "Bad PRIORITY length");
+        }
+        //priorities are only advice, every stream is served as soon as it is ready
+        break;
+      case Http2.RST_STREAM:
+        onRstStream(streamId, payload);
+        break;
+      case Http2.SETTINGS:
+        onSettings(flags, streamId, payload);
+        break;
+      case Http2.PUSH_PROMISE:
+        throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Clients can not push");
+      case Http2.PING:
+        if (streamId != 0) {
+          throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "PING on a stream");
+        }
+        if (payload.remaining() != 8) {
+          throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Bad PING length");
+        }
+        if ((flags & Http2.FLAG_ACK) == 0) {
+          send(Http2.pingAck(payload));
+        }
+        break;
+      case Http2.GOAWAY:
+        if (streamId != 0) {
+          throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "GOAWAY on a stream");
+        }
+        //the client opens no more streams, finish the ones in flight and close
+        goingAway = true;
+        if (streams.isEmpty()) {
+          connection.closeAfterWrite();
+        }
+        break;
+      case Http2.WINDOW_UPDATE:
+        onWindowUpdate(streamId, payload);
+        break;
+      default:
+        //unknown frame types must be ignored, RFC 7540 4.1
+        break;
+    }
+  }
+
+  private void onData(int flags, int streamId, ByteBuffer payload) {
+    if (streamId == 0) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "DATA on stream 0");
+    }
+    int length = payload.remaining();
+    connectionReceiveWindow -= length;
+    if (connectionReceiveWindow < 0) {
+      throw Http2Exception.connection(Http2.FLOW_CONTROL_ERROR, "Connection window exceeded");
+    }
+    Stream stream = streams.get(streamId);
+    if (stream == null || stream.remoteClosed) {
+      //nobody will read this, hand the window straight back
+      consumedOnConnection(length);
+      if (streamId > lastStreamId) {
+        throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "DATA on an idle stream");
+      }
+      if (stream != null && stream.reset) {
+        return;
+      }
+      throw Http2Exception.stream(Http2.STREAM_CLOSED, streamId, "DATA on a closed stream");
+    }
+    stream.receiveWindow -= length;
+    if (stream.receiveWindow < 0) {
+      consumedOnConnection(length);
+      throw Http2Exception.stream(Http2.FLOW_CONTROL_ERROR, streamId, "Stream window exceeded");
+    }
+    ByteBuffer data = unpad(flags, streamId, payload);
+    int padding = length - data.remaining();
+    if (padding > 0) {
+      stream.consumed(padding);
+    }
+    stream.received += data.remaining();
+    stream.body.offer(data);
+    if (stream.expectedLength >= 0 && stream.received > stream.expectedLength) {
+      throw Http2Exception.stream(Http2.PROTOCOL_ERROR, streamId, "Body longer than its length");
+    }
+    if ((flags & Http2.FLAG_END_STREAM) != 0) {
+      endOfRequest(stream);
+    }
+  }
+
+  private void onHeaders(int flags, int streamId, ByteBuffer payload) {
+    if (streamId == 0) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "HEADERS on stream 0");
+    }
+    ByteBuffer fragment = unpad(flags, streamId, payload);
+    if ((flags & Http2.FLAG_PRIORITY) != 0) {
+      if (fragment.remaining() < 5) {
+        throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "HEADERS too short");
+      }
+      if ((fragment.getInt() & 0x7FFFFFFF) == streamId) {
+        throw Http2Exception.stream(Http2.PROTOCOL_ERROR, streamId, "Stream depends on itself");
+      }
+      fragment.get();
+    }
+    headerBlock.reset();
+    appendHeaderBlock(fragment);
+    if ((flags & Http2.FLAG_END_HEADERS) != 0) {
+      onHeaderBlock(streamId, flags);
+    } else {
+      headersStreamId = streamId;
+      headersFlags = flags;
+    }
+  }
+
+  private void appendHeaderBlock(ByteBuffer fragment) {
+    if (headerBlock.size() + fragment.remaining() > config.maxHeadSize() * 2) {
+      //compressed headers far beyond what they may decode to
+      throw Http2Exception.connection(Http2.ENHANCE_YOUR_CALM, "Header block too large");
+    }
+    byte[] bytes = new byte[fragment.remaining()];
+    fragment.get(bytes);
+    headerBlock.write(bytes, 0, bytes.length);
+  }
+
+  /** A complete header block, either a new request or trailers. */
+  private void onHeaderBlock(int streamId, int flags) {
+    //always decode, even blocks that are refused, to keep the decoder's table in step
+    List<Map.Entry<String, String>> fields = new ArrayList<>();
+    decoder.decode(
+        ByteBuffer.wrap(headerBlock.toByteArray()),
+        (name, value) -> fields.add(header(name, value)));
+    headerBlock.reset();
+    boolean endStream = (flags & Http2.FLAG_END_STREAM) != 0;
+
+    Stream existing = streams.get(streamId);
+    if (existing != null || streamId <= lastStreamId) {
+      if (existing == null || existing.remoteClosed) {
+        throw Http2Exception.stream(Http2.STREAM_CLOSED, streamId, "HEADERS on a closed stream");
+      }
+      if (!endStream) {
+        throw Http2Exception.stream(Http2.PROTOCOL_ERROR, streamId, "Trailers without END_STREAM");
+      }
+      //trailers are not passed on to handlers
+      endOfRequest(existing);
+      return;
+    }
+    if (streamId % 2 == 0) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Even stream id from a client");
+    }
+    lastStreamId = streamId;
+    if (goingAway) {
+      send(Http2.rstStream(streamId, Http2.REFUSED_STREAM));
+      return;
+    }
+    if (streams.size() >= config.maxConcurrentStreams()) {
+      throw Http2Exception.stream(Http2.REFUSED_STREAM, streamId, "Too many streams");
+    }
+
+    String method = null;
+    String path = null;
+    String scheme = null;
+    String authority = null;
+    ListMultimap<String, String> headers = ArrayListMultimap.create();
+    for (Map.Entry<String, String> field : fields) {
+      String name = field.getKey();
+      String value = field.getValue();
+      if (name.startsWith(":")) {
+        if (!headers.isEmpty()) {
+          throw malformed(streamId, "Pseudo header after a regular header");
+        }
+        switch (name) {
+          case ":method":
+            method = unique(streamId, method, value);
+            break;
+          case ":path":
+            path = unique(streamId, path, value);
+            break;
+          case ":scheme":
+            scheme = unique(streamId, scheme, value);
+            break;
+          case ":authority":
+            authority = unique(streamId, authority, value);
+            break;
+          default:
+            throw malformed(streamId, "Unknown pseudo header " + name);
+        }
+      } else {
+        if (!name.equals(name.toLowerCase(Locale.ROOT))) {
+          throw malformed(streamId, "Upper case header name");
+        }
+        if (CONNECTION_HEADERS.contains(name)
+            || (name.equals("te") && !value.equalsIgnoreCase("trailers"))) {
+          throw malformed(streamId, "Connection specific header " + name);
+        }
+        headers.put(name, value);
+      }
+    }
+    if (method == null || scheme == null || path == null || path.isEmpty()) {
+      throw malformed(streamId, "Missing pseudo header");
+    }
+    if (authority != null && !headers.containsKey("host")) {
+      headers.put("host", authority);
+    }
+
+    HttpMethod httpMethod = HttpMethod.parse(method);
+    if (httpMethod == null) {
+      respondNow(streamId, 501, endStream);
+      return;
+    }
+    URI uri;
+    try {
+      uri = new URI(path);
+    } catch (URISyntaxException e) {
+      respondNow(streamId, 400, endStream);
+      return;
+    }
+    long expectedLength = -1;
+    List<String> contentLength = headers.get("content-length");
+    if (!contentLength.isEmpty()) {
+      expectedLength = HeaderValues.parseLength(contentLength.get(0));
+      if (expectedLength < 0 || (endStream && expectedLength != 0)) {
+        throw malformed(streamId, "Bad content-length");
+      }
+    }
+
+    Stream stream = newStream(streamId, method, !endStream);
+    stream.expectedLength = expectedLength;
+    stream.remoteClosed = endStream;
+    InputStream body = endStream ? EMPTY_BODY : stream.body;
+    Long length = endStream ? Long.valueOf(0L) : expectedLength >= 0 ? expectedLength : null;
+    dispatch(
+        stream,
+        new HttpRequest(
+            httpMethod,
+            body,
+            length,
+            headers,
+            uri,
+            connection.remote(),
+            QueryParams.parse(uri.getQuery()),
+            PROTOCOL));
+  }
+
+  private static Http2Exception malformed(int streamId, String message) {
+    return Http2Exception.stream(Http2.PROTOCOL_ERROR, streamId, message);
+  }
+
+  private static String unique(int streamId, @Nullable String current, String value) {
+    if (current != null) {
+      throw malformed(streamId, "Repeated pseudo header");
+    }
+    return value;
+  }
+
+  private Stream newStream(int streamId, String method, boolean hasBody) {
+    Stream stream = new Stream(streamId, method, hasBody);
+    synchronized (flowLock) {
+      stream.sendWindow = peerInitialWindow;
+    }
+    streams.put(streamId, stream);
+    return stream;
+  }
+
+  private void dispatch(Stream stream, HttpRequest request) {
+    server.requestStarted();
+    connection.loop().stats().requests.increment();
+    try {
+      server.executor().execute(() -> respond(stream, request));
+    } catch (RejectedExecutionException e) {
+      LOG.warn("Could not dispatch request from {}", connection.remote(), e);
+      server.requestFinished();
+      removeStream(stream);
+      send(Http2.rstStream(stream.id, Http2.REFUSED_STREAM));
+    }
+  }
+
+  private void endOfRequest(Stream stream) {
+    if (stream.expectedLength >= 0 && stream.received != stream.expectedLength) {
+      throw Http2Exception.stream(Http2.PROTOCOL_ERROR, stream.id, "Body shorter than its length");
+    }
+    stream.remoteClosed = true;
+    stream.body.finish();
+  }
+
+  private void onRstStream(int streamId, ByteBuffer payload) {
+    if (streamId == 0) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "RST_STREAM on stream 0");
+    }
+    if (payload.remaining() != 4) {
+      throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Bad RST_STREAM length");
+    }
+    if (streamId > lastStreamId) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "RST_STREAM on an idle stream");
+    }
+    Stream stream = streams.get(streamId);
+    if (stream != null) {
+      reset(stream, new IOException("Stream reset by the client"));
+    }
+  }
+
+  /** The stream is dead, stop its handler reading or writing. Loop thread. */
+  private void reset(Stream stream, IOException cause) {
+    stream.reset = true;
+    stream.remoteClosed = true;
+    if (stream.body != null) {
+      stream.body.fail(cause);
+    }
+    synchronized (flowLock) {
+      flowLock.notifyAll();
+    }
+  }
+
+  private void onSettings(int flags, int streamId, ByteBuffer payload) {
+    if (streamId != 0) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "SETTINGS on a stream");
+    }
+    if ((flags & Http2.FLAG_ACK) != 0) {
+      if (payload.hasRemaining()) {
+        throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "SETTINGS ACK with a payload");
+      }
+      return;
+    }
+    applySettings(payload);
+    settingsReceived = true;
+    send(Http2.settingsAck());
+  }
+
+  private void applySettings(ByteBuffer payload) {
+    if (payload.remaining() % 6 != 0) {
+      throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Bad SETTINGS length");
+    }
+    while (payload.hasRemaining()) {
+      int id = payload.getShort() & 0xFFFF;
+      int value = payload.getInt();
+      switch (id) {
+        case Http2.SETTINGS_ENABLE_PUSH:
+          if (value != 0 && value != 1) {
+            throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Bad ENABLE_PUSH");
+          }
+          break;
+        case Http2.SETTINGS_INITIAL_WINDOW_SIZE:
+          if (value < 0) {
+            throw Http2Exception.connection(Http2.FLOW_CONTROL_ERROR, "Bad INITIAL_WINDOW_SIZE");
+          }
+          synchronized (flowLock) {
+            //the change applies to every open stream, RFC 7540 6.9.2
+            int delta = value - peerInitialWindow;
+            peerInitialWindow = value;
+            for (Stream stream : streams.values()) {
+              stream.sendWindow += delta;
+              if (stream.sendWindow > Http2.MAX_WINDOW_SIZE) {
+                throw Http2Exception.connection(Http2.FLOW_CONTROL_ERROR, "Window overflow");
+              }
+            }
+            flowLock.notifyAll();
+          }
+          break;
+        case Http2.SETTINGS_MAX_FRAME_SIZE:
+          if (value < Http2.DEFAULT_MAX_FRAME_SIZE || value > Http2.MAX_FRAME_SIZE_LIMIT) {
+            throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Bad MAX_FRAME_SIZE");
+          }
+          peerMaxFrameSize = value;
+          break;
+        default:
+          //the encoder never uses the dynamic table, so HEADER_TABLE_SIZE does not matter, and
+          //nothing is pushed or limited by the other settings
+          break;
+      }
+    }
+  }
+
+  private void onWindowUpdate(int streamId, ByteBuffer payload) {
+    if (payload.remaining() != 4) {
+      throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Bad WINDOW_UPDATE length");
+    }
+    int increment = payload.getInt() & 0x7FFFFFFF;
+    if (increment == 0) {
+      if (streamId == 0) {
+        throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Empty WINDOW_UPDATE");
+      }
+      throw Http2Exception.stream(Http2.PROTOCOL_ERROR, streamId, "Empty WINDOW_UPDATE");
+    }
+    synchronized (flowLock) {
+      if (streamId == 0) {
+        connectionSendWindow += increment;
+        if (connectionSendWindow > Http2.MAX_WINDOW_SIZE) {
+          throw Http2Exception.connection(Http2.FLOW_CONTROL_ERROR, "Window overflow");
+        }
+      } else {
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+          //updates may cross with the end of a stream
+          return;
+        }
+        stream.sendWindow += increment;
+        if (stream.sendWindow > Http2.MAX_WINDOW_SIZE) {
+          throw Http2Exception.stream(Http2.FLOW_CONTROL_ERROR, streamId, "Window overflow");
+        }
+      }
+      flowLock.notifyAll();
+    }
+  }
+
+  /** Strip the padding of a DATA or HEADERS frame. */
+  private static ByteBuffer unpad(int flags, int streamId, ByteBuffer payload) {
+    if ((flags & Http2.FLAG_PADDED) == 0) {
+      return payload;
+    }
+    if (!payload.hasRemaining()) {
+      throw Http2Exception.connection(Http2.FRAME_SIZE_ERROR, "Padded frame without padding");
+    }
+    int padding = payload.get() & 0xFF;
+    if (padding > payload.remaining()) {
+      throw Http2Exception.connection(Http2.PROTOCOL_ERROR, "Padding longer than the frame");
+    }
+    ByteBuffer data = payload.slice();
+    data.limit(data.limit() - padding);
+    return data;
+  }
+
+  private void connectionError(Http2Exception e) {
+    LOG.debug("HTTP/2 connection error from {}: {}", connection.remote(), e.getMessage());
+    failed = true;
+    goingAway = true;
+    send(Http2.goAway(lastStreamId, e.errorCode(), e.getMessage()));
+    connection.closeAfterWrite();
+  }
+
+  private void streamError(Http2Exception e) {
+    LOG.debug("HTTP/2 stream error from {}: {}", connection.remote(), e.getMessage());
+    Stream stream = streams.get(e.streamId());
+    if (stream != null) {
+      if (stream.reset) {
+        return;
+      }
+      reset(stream, new IOException(e.getMessage()));
+    }
+    send(Http2.rstStream(e.streamId(), e.errorCode()));
+  }
+
+  /** Answer a request that never reaches a handler with an empty response. Loop thread. */
+  private void respondNow(int streamId, int status, boolean endStream) {
+    List<Map.Entry<String, String>> headers = new ArrayList<>(2);
+    headers.add(header(":status", Integer.toString(status)));
+    headers.add(header("date", Http1Protocol.date()));
+    send(
+        Http2.frame(
+            Http2.HEADERS,
+            Http2.FLAG_END_HEADERS | Http2.FLAG_END_STREAM,
+            streamId,
+            ByteBuffer.wrap(HpackEncoder.encode(headers))));
+    if (!endStream) {
+      //the rest of the request is not wanted
+      send(Http2.rstStream(streamId, Http2.NO_ERROR));
+    }
+  }
+
+  private void send(ByteBuffer... frames) {
+    try {
+      synchronized (writeLock) {
+        connection.write(frames);
+      }
+    } catch (IOException e) {
+      LOG.debug("Failed writing to {}", connection.remote(), e);
+    }
+  }
+
+  private void consumedOnConnection(int bytes) {
+    int total = connectionConsumed.addAndGet(bytes);
+    if (total >= CONNECTION_WINDOW / 2 && total - bytes < CONNECTION_WINDOW / 2) {
+      connection.loop().execute(this::updateConnectionWindow);
+    }
+  }
+
+  private void updateConnectionWindow() {
+    int increment = connectionConsumed.getAndSet(0);
+    if (increment > 0 && !closed) {
+      connectionReceiveWindow += increment;
+      send(Http2.windowUpdate(0, increment));
+    }
+  }
+
+  private void updateStreamWindow(Stream stream) {
+    int increment = stream.consumed.getAndSet(0);
+    if (increment > 0 && !closed && !stream.remoteClosed && streams.get(stream.id) == stream) {
+      //no point opening the window of a stream that the client has finished sending on
+      stream.receiveWindow += increment;
+      send(Http2.windowUpdate(stream.id, increment));
+    }
+  }
+
+  /** Run the handler and write its response. Worker thread. */
+  private void respond(Stream stream, HttpRequest request) {
+    HttpResponse response;
+    try {
+      response = server.handler().handle(request);
+    } catch (Throwable t) {
+      LOG.error("Uncaught error thrown.", t);
+      response = HttpResponse.status(500);
+    }
+    try {
+      write(stream, response);
+    } catch (IOException e) {
+      LOG.debug("Failed to write response to {}", connection.remote(), e);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to write response to {}", connection.remote(), e);
+      resetFromWorker(stream, Http2.INTERNAL_ERROR);
+    } finally {
+      try {
+        response.body().close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close response body", e);
+      }
+      connection.loop().execute(() -> responseComplete(stream));
+    }
+  }
+
+  private void write(Stream stream, HttpResponse response) throws IOException {
+    int status = response.status();
+    boolean headersOnly =
+        stream.method.equalsIgnoreCase("HEAD")
+            || (status >= 100 && status < 200)
+            || status == 204
+            || status == 304;
+
+    List<Map.Entry<String, String>> headers = new ArrayList<>(response.headers().size() + 3);
+    headers.add(header(":status", Integer.toString(status)));
+    boolean hasDate = false;
+    for (Map.Entry<String, String> entry : response.headers().entries()) {
+      String name = entry.getKey().toLowerCase(Locale.ROOT);
+      if (CONNECTION_HEADERS.contains(name) || name.equals("content-length")) {
+        //framing is decided here, and HTTP/2 has no connection specific headers
+        continue;
+      }
+      hasDate |= name.equals("date");
+      headers.add(header(name, entry.getValue()));
+    }
+    if (!hasDate) {
+      headers.add(header("date", Http1Protocol.date()));
+    }
+    Long length = response.length().orElse(null);
+    if (length != null && !(status >= 100 && status < 200) && status != 204) {
+      headers.add(header("content-length", Long.toString(length)));
+    }
+    //an empty body ends the stream with the headers rather than with an empty DATA frame
+    headersOnly |= length != null && length == 0;
+    writeHeaders(stream, HpackEncoder.encode(headers), headersOnly);
+    if (!headersOnly) {
+      writeData(stream, response.body(), length == null ? Long.MAX_VALUE : length);
+    }
+  }
+
+  /** HEADERS and any CONTINUATION frames, written together so nothing comes between them. */
+  private void writeHeaders(Stream stream, byte[] block, boolean endStream) throws IOException {
+    int maxFrameSize = peerMaxFrameSize;
+    List<ByteBuffer> frames = new ArrayList<>(1);
+    int offset = 0;
+    do {
+      int length = Math.min(maxFrameSize, block.length - offset);
+      boolean last = offset + length == block.length;
+      int flags = last ? Http2.FLAG_END_HEADERS : 0;
+      if (offset == 0 && endStream) {
+        flags |= Http2.FLAG_END_STREAM;
+      }
+      frames.add(
+          Http2.frame(
+              offset == 0 ? Http2.HEADERS : Http2.CONTINUATION,
+              flags,
+              stream.id,
+              ByteBuffer.wrap(block, offset, length)));
+      offset += length;
+    } while (offset < block.length);
+    writeFrames(stream, frames.toArray(new ByteBuffer[0]));
+  }
+
+  private void writeData(Stream stream, InputStream body, long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      byte[] buffer = new byte[(int) Math.min(peerMaxFrameSize, remaining)];
+      int read = Http1Protocol.fill(body, buffer);
+      if (read < 0) {
+        if (length != Long.MAX_VALUE) {
+          LOG.warn("Response body shorter than its length of {}, resetting stream", length);
+          resetFromWorker(stream, Http2.INTERNAL_ERROR);
+        } else {
+          sendData(stream, buffer, 0, true);
+        }
+        return;
+      }
+      remaining -= read;
+      sendData(stream, buffer, read, remaining == 0);
+      connection.awaitWritable();
+    }
+  }
+
+  /** Send the bytes in as many DATA frames as the peer's windows allow. */
+  private void sendData(Stream stream, byte[] buffer, int length, boolean endStream)
+      throws IOException {
+    int offset = 0;
+    do {
+      int allowed = length == 0 ? 0 : acquireWindow(stream, length - offset);
+      boolean last = offset + allowed == length;
+      writeFrames(
+          stream,
+          Http2.frameHeader(
+              allowed, Http2.DATA, last && endStream ? Http2.FLAG_END_STREAM : 0, stream.id),
+          ByteBuffer.wrap(buffer, offset, allowed));
+      offset += allowed;
+    } while (offset < length);
+  }
+
+  /** Block until the windows allow some bytes to be sent, and take up to wanted of them. */
+  private int acquireWindow(Stream stream, int wanted) throws IOException {
+    synchronized (flowLock) {
+      while (true) {
+        if (closed || stream.reset) {
+          throw new IOException("Stream closed");
+        }
+        long available = Math.min(connectionSendWindow, stream.sendWindow);
+        if (available > 0) {
+          int taken = (int) Math.min(available, wanted);
+          connectionSendWindow -= taken;
+          stream.sendWindow -= taken;
+          return taken;
+        }
+        try {
+          flowLock.wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting for the flow control window");
+        }
+      }
+    }
+  }
+
+  private void writeFrames(Stream stream, ByteBuffer... frames) throws IOException {
+    synchronized (writeLock) {
+      if (stream.reset) {
+        throw new IOException("Stream reset");
+      }
+      connection.write(frames);
+    }
+  }
+
+  private void resetFromWorker(Stream stream, int errorCode) {
+    synchronized (writeLock) {
+      if (stream.reset) {
+        return;
+      }
+      stream.reset = true;
+      send(Http2.rstStream(stream.id, errorCode));
+    }
+  }
+
+  /** The response has been queued, forget the stream. Loop thread. */
+  private void responseComplete(Stream stream) {
+    server.requestFinished();
+    if (closed) {
+      return;
+    }
+    if (!stream.remoteClosed && !stream.reset) {
+      //the handler did not wait for the whole request, tell the client to stop sending it
+      stream.reset = true;
+      send(Http2.rstStream(stream.id, Http2.NO_ERROR));
+    }
+    if (stream.body != null) {
+      stream.body.close();
+    }
+    removeStream(stream);
+    if (goingAway && streams.isEmpty()) {
+      connection.closeAfterWrite();
+    }
+  }
+
+  private void removeStream(Stream stream) {
+    streams.remove(stream.id);
+  }
+
+  private static Map.Entry<String, String> header(String name, String value) {
+    return new SimpleImmutableEntry<>(name, value);
+  }
+
+  @Override
+  public void onInputClosed() {
+    connection.close();
+  }
+
+  @Override
+  public void onTimer(long nowNanos) {
+    if (failed) {
+      return;
+    }
+    if (!settingsReceived) {
+      if (nowNanos - startedNanos > config.headTimeout().toNanos()) {
+        LOG.debug("Timed out waiting for the HTTP/2 preface from {}", connection.remote());
+        connection.close();
+      }
+      return;
+    }
+    if (!goingAway && server.isDraining()) {
+      goingAway = true;
+      send(Http2.goAway(lastStreamId, Http2.NO_ERROR, ""));
+      if (streams.isEmpty()) {
+        connection.closeAfterWrite();
+      }
+    } else if (streams.isEmpty()
+        && headersStreamId == 0
+        && nowNanos - connection.lastActivity() > config.idleTimeout().toNanos()) {
+      goingAway = true;
+      send(Http2.goAway(lastStreamId, Http2.NO_ERROR, ""));
+      connection.closeAfterWrite();
+    }
+  }
+
+  @Override
+  public boolean isIdle() {
+    return streams.isEmpty() && headersStreamId == 0;
+  }
+
+  @Override
+  public void onClose() {
+    closed = true;
+    for (Stream stream : streams.values()) {
+      stream.reset = true;
+      if (stream.body != null) {
+        stream.body.fail(new IOException("Connection closed"));
+      }
+    }
+    synchronized (flowLock) {
+      flowLock.notifyAll();
+    }
+  }
+
+  /** One request and response exchanged on the connection. */
+  private final class Stream {
+    private final int id;
+    private final String method;
+    @Nullable private final RequestBodyStream body;
+
+    // bytes the handler has read since the last WINDOW_UPDATE for this stream
+    private final AtomicInteger consumed = new AtomicInteger();
+
+    // only touched on the loop thread
+    private int receiveWindow = STREAM_WINDOW;
+    private long expectedLength = -1;
+    private long received;
+    private boolean remoteClosed;
+
+    // guarded by the protocol's flowLock
+    private long sendWindow;
+
+    // set once either side has reset the stream, after which nothing more is written
+    private volatile boolean reset;
+
+    private Stream(int id, String method, boolean hasBody) {
+      this.id = id;
+      this.method = method;
+      //flow control bounds what is buffered, so the body never asks to pause reads
+      this.body =
+          hasBody ? new RequestBodyStream(Integer.MAX_VALUE, () -> {}, this::consumed) : null;
+    }
+
+    /** The handler is done with some of the body, open the windows once enough has piled up. */
+    private void consumed(int bytes) {
+      consumedOnConnection(bytes);
+      int total = consumed.addAndGet(bytes);
+      if (total >= STREAM_WINDOW / 2 && total - bytes < STREAM_WINDOW / 2) {
+        connection.loop().execute(() -> updateStreamWindow(this));
+      }
+    }
+  }
+}
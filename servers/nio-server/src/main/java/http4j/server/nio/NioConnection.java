@@ -0,0 +1,333 @@
+package http4j.server.nio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client connection owned by a {@link SelectorLoop}. Reads happen on the loop and are handed to
+ * the {@link Protocol}. Writes may be queued from any thread; the loop gathers everything queued so
+ * far into as few socket writes as possible, and producers that get too far ahead of the socket are
+ * paused with {@link #awaitWritable()}.
+ */
+final class NioConnection {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioConnection.class);
+
+  // queued after the last bytes of a connection that should be closed once they are written
+  private static final ByteBuffer CLOSE = ByteBuffer.allocate(0);
+
+  private static final int MAX_GATHER = 16;
+  //a backstop only, writers are woken as soon as the queue drains
+  private static final long WRITER_WAIT_MILLIS = 100;
+
+  private final SelectorLoop loop;
+  private final SocketChannel channel;
+  private final SelectionKey key;
+  private final InetSocketAddress remote;
+  private final int highWaterMark;
+
+  private final Queue<ByteBuffer> outbound = new ConcurrentLinkedQueue<>();
+  private final AtomicLong pendingBytes = new AtomicLong();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private final Runnable flushTask = this::scheduledFlush;
+  private final Object writerLock = new Object();
+  private volatile boolean writerWaiting;
+
+  // only touched on the loop thread
+  private final ArrayDeque<ByteBuffer> writing = new ArrayDeque<>();
+  private final ByteBuffer[] gather = new ByteBuffer[MAX_GATHER];
+  private ByteBuffer readBuffer;
+  private Protocol protocol;
+  private boolean readsSuspended;
+  private boolean processing;
+  private long lastActivity;
+
+  private volatile boolean closed;
+
+  NioConnection(SelectorLoop loop, SocketChannel channel, SelectionKey key) throws IOException {
+    NioServerConfig config = loop.server().config();
+    this.loop = loop;
+    this.channel = channel;
+    this.key = key;
+    this.remote = (InetSocketAddress) channel.getRemoteAddress();
+    this.readBuffer = ByteBuffer.allocate(config.readBufferSize());
+    this.highWaterMark = config.writeHighWaterMark();
+    this.lastActivity = System.nanoTime();
+    this.protocol = new Http1Protocol(this, loop.server());
+  }
+
+  SelectorLoop loop() {
+    return loop;
+  }
+
+  Protocol protocol() {
+    return protocol;
+  }
+
+  InetSocketAddress remote() {
+    return remote;
+  }
+
+  long lastActivity() {
+    return lastActivity;
+  }
+
+  boolean isClosed() {
+    return closed;
+  }
+
+  /** Read whatever is available and hand it to the protocol. Loop thread only. */
+  void onReadable() throws IOException {
+    int read = channel.read(readBuffer);
+    if (read < 0) {
+      suspendReads();
+      protocol.onInputClosed();
+      return;
+    }
+    if (read > 0) {
+      lastActivity = System.nanoTime();
+      loop.stats().bytesRead.add(read);
+      process();
+    }
+  }
+
+  private void process() {
+    readBuffer.flip();
+    processing = true;
+    try {
+      Protocol current;
+      do {
+        current = protocol;
+        current.onRead(readBuffer);
+        //an upgraded protocol takes over whatever the old one left unread
+      } while (protocol != current && readBuffer.hasRemaining());
+    } finally {
+      processing = false;
+      readBuffer.compact();
+    }
+    if (!readBuffer.hasRemaining()) {
+      //the protocol is not consuming, stop reading until it asks for more
+      suspendReads();
+    }
+  }
+
+  /**
+   * Hand the connection over to another protocol, ex. after an HTTP/1.1 upgrade. Bytes already read
+   * are passed on to the new protocol. Loop thread only.
+   *
+   * @param minReadBuffer the smallest read buffer the new protocol can work with
+   */
+  void upgrade(Protocol next, int minReadBuffer) {
+    if (readBuffer.capacity() < minReadBuffer) {
+      ByteBuffer larger = ByteBuffer.allocate(minReadBuffer);
+      if (processing) {
+        //the buffer is in read mode, and must be left that way
+        larger.put(readBuffer);
+        larger.flip();
+      } else {
+        readBuffer.flip();
+        larger.put(readBuffer);
+      }
+      readBuffer = larger;
+    }
+    protocol = next;
+  }
+
+  /** Stop reading from the socket. Loop thread only. */
+  void suspendReads() {
+    if (!readsSuspended && key.isValid()) {
+      readsSuspended = true;
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+    }
+  }
+
+  /**
+   * Resume reading from the socket, first offering the protocol anything that was already buffered.
+   * May be called from any thread.
+   */
+  void resumeReads() {
+    loop.execute(
+        () -> {
+          if (closed) {
+            return;
+          }
+          if (readsSuspended) {
+            readsSuspended = false;
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+          }
+          if (readBuffer.position() > 0) {
+            process();
+          }
+        });
+  }
+
+  /**
+   * Queue bytes to be written, in order. May be called from any thread.
+   *
+   * @throws IOException if the connection has already been closed
+   */
+  void write(ByteBuffer... buffers) throws IOException {
+    if (closed) {
+      throw new IOException("Connection closed");
+    }
+    for (ByteBuffer buffer : buffers) {
+      pendingBytes.addAndGet(buffer.remaining());
+      outbound.add(buffer);
+    }
+    if (flushScheduled.compareAndSet(false, true)) {
+      loop.execute(flushTask);
+    }
+  }
+
+  /** Close the connection once everything queued so far has been written. */
+  void closeAfterWrite() {
+    outbound.add(CLOSE);
+    if (flushScheduled.compareAndSet(false, true)) {
+      loop.execute(flushTask);
+    }
+  }
+
+  /** Bytes queued by producers but not yet written to the socket. */
+  long pendingBytes() {
+    return pendingBytes.get();
+  }
+
+  /**
+   * Block until the bytes queued but not yet written fall back under the high water mark. Called by
+   * producers that are not on the loop thread.
+   *
+   * @throws IOException if the connection is closed while waiting
+   */
+  void awaitWritable() throws IOException {
+    if (pendingBytes.get() <= highWaterMark) {
+      return;
+    }
+    synchronized (writerLock) {
+      while (true) {
+        //announced before checking, so a flush that drains in between sees it and wakes us up
+        writerWaiting = true;
+        if (pendingBytes.get() <= highWaterMark / 2 || closed) {
+          break;
+        }
+        try {
+          writerLock.wait(WRITER_WAIT_MILLIS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted waiting to write");
+        }
+      }
+    }
+    if (closed) {
+      throw new IOException("Connection closed");
+    }
+  }
+
+  private void scheduledFlush() {
+    flushScheduled.set(false);
+    try {
+      flush();
+    } catch (IOException e) {
+      LOG.debug("Failed writing to {}", remote, e);
+      close();
+    }
+  }
+
+  /** Write as much as the socket will take. Loop thread only. */
+  void flush() throws IOException {
+    if (closed) {
+      return;
+    }
+    ByteBuffer next;
+    while ((next = outbound.poll()) != null) {
+      writing.add(next);
+    }
+    while (!writing.isEmpty()) {
+      if (writing.peekFirst() == CLOSE) {
+        close();
+        return;
+      }
+      int count = 0;
+      long requested = 0;
+      for (ByteBuffer buffer : writing) {
+        if (buffer == CLOSE || count == MAX_GATHER) {
+          break;
+        }
+        gather[count++] = buffer;
+        requested += buffer.remaining();
+      }
+      long written = channel.write(gather, 0, count);
+      Arrays.fill(gather, 0, count, null);
+      if (written > 0) {
+        lastActivity = System.nanoTime();
+        loop.stats().bytesWritten.add(written);
+        pendingBytes.addAndGet(-written);
+      }
+      while (!writing.isEmpty()
+          && writing.peekFirst() != CLOSE
+          && !writing.peekFirst().hasRemaining()) {
+        writing.removeFirst();
+      }
+      if (written < requested) {
+        //the socket buffer is full, carry on when it drains
+        key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        wakeWriters();
+        return;
+      }
+    }
+    if ((key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+      key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+    }
+    wakeWriters();
+  }
+
+  /**
+   * Wake producers waiting in {@link #awaitWritable()}. The count is lowered before the flag is
+   * read here, and a writer raises the flag before reading the count, so one of them always sees
+   * the other.
+   */
+  private void wakeWriters() {
+    if (writerWaiting && pendingBytes.get() <= highWaterMark / 2) {
+      synchronized (writerLock) {
+        writerWaiting = false;
+        writerLock.notifyAll();
+      }
+    }
+  }
+
+  /** Close the connection straight away. May be called from any thread. */
+  void close() {
+    if (!loop.inLoop()) {
+      loop.execute(this::close);
+      return;
+    }
+    if (closed) {
+      return;
+    }
+    closed = true;
+    key.cancel();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close connection from {}", remote, e);
+    }
+    loop.remove(this);
+    outbound.clear();
+    writing.clear();
+    synchronized (writerLock) {
+      writerLock.notifyAll();
+    }
+    protocol.onClose();
+  }
+}
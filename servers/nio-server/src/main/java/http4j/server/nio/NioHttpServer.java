@@ -0,0 +1,222 @@
+package http4j.server.nio;
+
+import static java.util.stream.Collectors.toList;
+
+import com.google.common.collect.ImmutableList;
+import http4j.core.HttpHandler;
+import http4j.core.HttpServer;
+import http4j.core.Readiness;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A non-blocking server with one or more selector loops. With {@code SO_REUSEPORT} every loop gets
+ * its own listening socket and the kernel spreads new connections across them, otherwise the loops
+ * share a single listener. Handlers run on the executor, never on a selector loop.
+ */
+public final class NioHttpServer implements HttpServer {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioHttpServer.class);
+
+  // only present from Java 9, and only usable where the platform supports it
+  @Nullable private static final SocketOption<Boolean> SO_REUSEPORT = reusePortOption();
+
+  private final NioServerConfig config;
+  private final HttpHandler handler;
+  private final Executor executor;
+  private final List<SelectorLoop> loops;
+  private final List<ServerSocketChannel> listeners;
+  private final int port;
+  private final NioServerStats stats;
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private volatile boolean draining;
+
+  NioHttpServer(NioServerConfig config, HttpHandler handler, Executor executor) throws IOException {
+    this.config = config;
+    this.handler = handler;
+    this.executor = executor;
+
+    List<SelectorLoop> loops = new ArrayList<>(config.selectorThreads());
+    for (int i = 0; i < config.selectorThreads(); i++) {
+      loops.add(new SelectorLoop(i, this));
+    }
+    this.loops = ImmutableList.copyOf(loops);
+    this.listeners = bind(loops);
+    this.port = ((InetSocketAddress) listeners.get(0).getLocalAddress()).getPort();
+    this.stats = new NioServerStats(loops.stream().map(SelectorLoop::stats).collect(toList()));
+  }
+
+  private List<ServerSocketChannel> bind(List<SelectorLoop> loops) throws IOException {
+    List<ServerSocketChannel> listeners = new ArrayList<>();
+    try {
+      if (config.reusePort() && loops.size() > 1 && supportsReusePort()) {
+        int port = config.port();
+        for (SelectorLoop loop : loops) {
+          ServerSocketChannel listener = ServerSocketChannel.open();
+          listeners.add(listener);
+          listener.setOption(SO_REUSEPORT, true);
+          port = listen(listener, port);
+          loop.listen(listener);
+        }
+      } else {
+        if (config.reusePort() && loops.size() > 1) {
+          LOG.warn("SO_REUSEPORT is not supported here, selector loops will share one listener");
+        }
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listeners.add(listener);
+        listen(listener, config.port());
+        for (SelectorLoop loop : loops) {
+          loop.listen(listener);
+        }
+      }
+    } catch (IOException e) {
+      for (ServerSocketChannel listener : listeners) {
+        try {
+          listener.close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+      throw e;
+    }
+    return ImmutableList.copyOf(listeners);
+  }
+
+  private int listen(ServerSocketChannel listener, int port) throws IOException {
+    listener.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+    listener.bind(new InetSocketAddress(port), config.backlog());
+    listener.configureBlocking(false);
+    return ((InetSocketAddress) listener.getLocalAddress()).getPort();
+  }
+
+  private static boolean supportsReusePort() throws IOException {
+    if (SO_REUSEPORT == null) {
+      return false;
+    }
+    try (ServerSocketChannel probe = ServerSocketChannel.open()) {
+      return probe.supportedOptions().contains(SO_REUSEPORT);
+    }
+  }
+
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> reusePortOption() {
+    try {
+      Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+      return (SocketOption<Boolean>) field.get(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  NioServerConfig config() {
+    return config;
+  }
+
+  HttpHandler handler() {
+    return handler;
+  }
+
+  Executor executor() {
+    return executor;
+  }
+
+  boolean isDraining() {
+    return draining;
+  }
+
+  void requestStarted() {
+    inFlight.incrementAndGet();
+  }
+
+  void requestFinished() {
+    inFlight.decrementAndGet();
+  }
+
+  /** Counters for the whole server, with a breakdown per selector loop. */
+  public NioServerStats stats() {
+    return stats;
+  }
+
+  /** Whether each selector loop has its own listening socket. */
+  public boolean isReusePort() {
+    return listeners.size() > 1;
+  }
+
+  @Override
+  public int getPort() {
+    return port;
+  }
+
+  @Override
+  public void start() {
+    LOG.info(
+        "Starting server on port {} with {} selector loops{}",
+        getPort(),
+        loops.size(),
+        isReusePort() ? " using SO_REUSEPORT" : "");
+    loops.forEach(SelectorLoop::start);
+    config.readiness().markReady();
+  }
+
+  @Override
+  public Readiness readiness() {
+    return config.readiness();
+  }
+
+  @Override
+  public int shutdown(Duration timeout) {
+    LOG.info("Stopping server on port {}", getPort());
+    config.readiness().markNotReady();
+    draining = true;
+
+    for (SelectorLoop loop : loops) {
+      loop.execute(
+          () -> {
+            loop.stopAccepting();
+            //connections between requests would otherwise sit there until the idle timeout
+            loop.closeIdle();
+          });
+    }
+    for (ServerSocketChannel listener : listeners) {
+      try {
+        listener.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close listener", e);
+      }
+    }
+
+    long deadline = System.nanoTime() + timeout.toNanos();
+    try {
+      while (inFlight.get() > 0 && System.nanoTime() - deadline < 0) {
+        Thread.sleep(10);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    int aborted = Math.max(0, inFlight.get());
+    loops.forEach(SelectorLoop::shutdown);
+    if (aborted > 0) {
+      LOG.warn("Aborted {} in-flight requests that did not finish within {}", aborted, timeout);
+    }
+    return aborted;
+  }
+
+  @Override
+  public void close() {
+    shutdown(Duration.ZERO);
+  }
+}
@@ -0,0 +1,54 @@
+package http4j.server.nio;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import http4j.core.HttpHandler;
+import http4j.core.HttpServerCreator;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Factory for a {@link NioHttpServer}, a server built directly on NIO selectors with one selector
+ * thread per core by default.
+ */
+public final class NioHttpServerCreator implements HttpServerCreator {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioHttpServerCreator.class);
+
+  private static final Executor DEFAULT_EXECUTOR =
+      Executors.newCachedThreadPool(
+          new ThreadFactoryBuilder()
+              .setNameFormat("nio-http-server-%d")
+              .setDaemon(true)
+              .setUncaughtExceptionHandler(
+                  (t, e) -> LOG.error("Uncaught exception for {}", t.getName(), e))
+              .build());
+
+  private final NioServerConfig config;
+
+  /**
+   * @param port the port to open when {@link #create(HttpHandler)} is called. 0 will find any
+   *     random port.
+   */
+  public NioHttpServerCreator(int port) {
+    this(NioServerConfig.builder().port(port).build());
+  }
+
+  public NioHttpServerCreator(NioServerConfig config) {
+    this.config = Objects.requireNonNull(config);
+  }
+
+  @Override
+  public NioHttpServer create(HttpHandler handler) {
+    try {
+      return new NioHttpServer(
+          config, Objects.requireNonNull(handler), config.executor().orElse(DEFAULT_EXECUTOR));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+package http4j.server.nio;
+
+import com.google.common.base.Preconditions;
+import http4j.core.Readiness;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/** Configuration for a {@link NioHttpServerCreator}. */
+public final class NioServerConfig {
+
+  private final int port;
+  private final int backlog;
+  private final int selectorThreads;
+  private final boolean reusePort;
+  private final Duration idleTimeout;
+  private final Duration headTimeout;
+  private final int maxHeadSize;
+  private final int readBufferSize;
+  private final int writeHighWaterMark;
+  private final long drainLimit;
+  private final boolean http2;
+  private final int maxConcurrentStreams;
+  @Nullable private final Executor executor;
+  private final Readiness readiness;
+
+  private NioServerConfig(Builder builder) {
+    this.port = builder.port;
+    this.backlog = builder.backlog;
+    this.selectorThreads = builder.selectorThreads;
+    this.reusePort = builder.reusePort;
+    this.idleTimeout = builder.idleTimeout;
+    this.headTimeout = builder.headTimeout;
+    this.maxHeadSize = builder.maxHeadSize;
+    this.readBufferSize = builder.readBufferSize;
+    this.writeHighWaterMark = builder.writeHighWaterMark;
+    this.drainLimit = builder.drainLimit;
+    this.http2 = builder.http2;
+    this.maxConcurrentStreams = builder.maxConcurrentStreams;
+    this.executor = builder.executor;
+    this.readiness = builder.readiness;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** The port to listen on, 0 will find any random port. */
+  public int port() {
+    return port;
+  }
+
+  /** The listen backlog, 0 uses the system default. */
+  public int backlog() {
+    return backlog;
+  }
+
+  /** The number of selector loops, each on its own thread, that connections are spread across. */
+  public int selectorThreads() {
+    return selectorThreads;
+  }
+
+  /**
+   * Whether every selector loop binds its own listening socket to the port with SO_REUSEPORT, so
+   * the kernel spreads new connections across them. Otherwise the loops share a single socket.
+   */
+  public boolean reusePort() {
+    return reusePort;
+  }
+
+  /** How long a kept-alive connection may sit idle between requests before it is closed. */
+  public Duration idleTimeout() {
+    return idleTimeout;
+  }
+
+  /** How long a client may take to send the head of a request once it has started. */
+  public Duration headTimeout() {
+    return headTimeout;
+  }
+
+  /** The largest request line plus headers accepted; larger heads are answered with 431. */
+  public int maxHeadSize() {
+    return maxHeadSize;
+  }
+
+  /** Size of the per-connection read buffer. */
+  public int readBufferSize() {
+    return readBufferSize;
+  }
+
+  /**
+   * Bytes queued for a connection, or buffered from it for a handler, above which the producer is
+   * paused until the other side catches up.
+   */
+  public int writeHighWaterMark() {
+    return writeHighWaterMark;
+  }
+
+  /**
+   * Request bytes left unread by a handler that the server will read and discard so the connection
+   * can be kept alive. If more than this is left the connection is closed instead.
+   */
+  public long drainLimit() {
+    return drainLimit;
+  }
+
+  /**
+   * Whether cleartext HTTP/2 (h2c) is accepted, either from clients that start with the HTTP/2
+   * preface (prior knowledge) or that ask for it with {@code Upgrade: h2c}.
+   */
+  public boolean http2() {
+    return http2;
+  }
+
+  /** The most HTTP/2 streams a client may have open on one connection. */
+  public int maxConcurrentStreams() {
+    return maxConcurrentStreams;
+  }
+
+  /** The executor handlers are run on. */
+  public Optional<Executor> executor() {
+    return Optional.ofNullable(executor);
+  }
+
+  /** The readiness flag the server flips when started and when shutting down. */
+  public Readiness readiness() {
+    return readiness;
+  }
+
+  public static class Builder {
+
+    private int port;
+    private int backlog;
+    private int selectorThreads = Runtime.getRuntime().availableProcessors();
+    private boolean reusePort;
+    private Duration idleTimeout = Duration.ofSeconds(30);
+    private Duration headTimeout = Duration.ofSeconds(30);
+    private int maxHeadSize = 16 * 1024;
+    private int readBufferSize = 16 * 1024;
+    private int writeHighWaterMark = 64 * 1024;
+    private long drainLimit = 64 * 1024;
+    private boolean http2;
+    private int maxConcurrentStreams = 100;
+    private Executor executor;
+    private Readiness readiness = new Readiness();
+
+    private Builder() {}
+
+    public Builder port(int port) {
+      this.port = port;
+      return this;
+    }
+
+    public Builder backlog(int backlog) {
+      Preconditions.checkArgument(backlog >= 0, "backlog must be >= 0");
+      this.backlog = backlog;
+      return this;
+    }
+
+    public Builder selectorThreads(int selectorThreads) {
+      Preconditions.checkArgument(selectorThreads > 0, "selectorThreads must be > 0");
+      this.selectorThreads = selectorThreads;
+      return this;
+    }
+
+    public Builder reusePort(boolean reusePort) {
+      this.reusePort = reusePort;
+      return this;
+    }
+
+    public Builder idleTimeout(Duration idleTimeout) {
+      this.idleTimeout = Objects.requireNonNull(idleTimeout);
+      return this;
+    }
+
+    public Builder headTimeout(Duration headTimeout) {
+      this.headTimeout = Objects.requireNonNull(headTimeout);
+      return this;
+    }
+
+    public Builder maxHeadSize(int maxHeadSize) {
+      Preconditions.checkArgument(maxHeadSize > 0, "maxHeadSize must be > 0");
+      this.maxHeadSize = maxHeadSize;
+      return this;
+    }
+
+    public Builder readBufferSize(int readBufferSize) {
+      Preconditions.checkArgument(readBufferSize >= 1024, "readBufferSize must be >= 1024");
+      this.readBufferSize = readBufferSize;
+      return this;
+    }
+
+    public Builder writeHighWaterMark(int writeHighWaterMark) {
+      Preconditions.checkArgument(writeHighWaterMark > 0, "writeHighWaterMark must be > 0");
+      this.writeHighWaterMark = writeHighWaterMark;
+      return this;
+    }
+
+    public Builder drainLimit(long drainLimit) {
+      Preconditions.checkArgument(drainLimit >= 0, "drainLimit must be >= 0");
+      this.drainLimit = drainLimit;
+      return this;
+    }
+
+    public Builder http2(boolean http2) {
+      this.http2 = http2;
+      return this;
+    }
+
+    public Builder maxConcurrentStreams(int maxConcurrentStreams) {
+      Preconditions.checkArgument(maxConcurrentStreams > 0, "maxConcurrentStreams must be > 0");
+      this.maxConcurrentStreams = maxConcurrentStreams;
+      return this;
+    }
+
+    public Builder executor(Executor executor) {
+      this.executor = Objects.requireNonNull(executor);
+      return this;
+    }
+
+    /** Share a readiness flag, ex. with a health handler created before the server. */
+    public Builder readiness(Readiness readiness) {
+      this.readiness = Objects.requireNonNull(readiness);
+      return this;
+    }
+
+    public NioServerConfig build() {
+      return new NioServerConfig(this);
+    }
+  }
+}
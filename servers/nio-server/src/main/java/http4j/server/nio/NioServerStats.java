@@ -0,0 +1,87 @@
+package http4j.server.nio;
+
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for a {@link NioHttpServer}, kept per selector loop so that loops never contend on them,
+ * and summed across loops when read.
+ */
+public final class NioServerStats {
+
+  private final List<LoopStats> loops;
+
+  NioServerStats(List<LoopStats> loops) {
+    this.loops = ImmutableList.copyOf(loops);
+  }
+
+  /** Connections accepted since the server started. */
+  public long accepted() {
+    return loops.stream().mapToLong(LoopStats::accepted).sum();
+  }
+
+  /** Connections currently open. */
+  public long active() {
+    return loops.stream().mapToLong(LoopStats::active).sum();
+  }
+
+  /** Requests dispatched to the handler since the server started. */
+  public long requests() {
+    return loops.stream().mapToLong(LoopStats::requests).sum();
+  }
+
+  /** Bytes read from all connections. */
+  public long bytesRead() {
+    return loops.stream().mapToLong(LoopStats::bytesRead).sum();
+  }
+
+  /** Bytes written to all connections. */
+  public long bytesWritten() {
+    return loops.stream().mapToLong(LoopStats::bytesWritten).sum();
+  }
+
+  /** The counters of each selector loop, useful to check connections are evenly spread. */
+  public List<LoopStats> loops() {
+    return loops;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "accepted=%d active=%d requests=%d bytesRead=%d bytesWritten=%d",
+        accepted(), active(), requests(), bytesRead(), bytesWritten());
+  }
+
+  /** The counters of a single selector loop. */
+  public static final class LoopStats {
+
+    final LongAdder accepted = new LongAdder();
+    final LongAdder active = new LongAdder();
+    final LongAdder requests = new LongAdder();
+    final LongAdder bytesRead = new LongAdder();
+    final LongAdder bytesWritten = new LongAdder();
+
+    LoopStats() {}
+
+    public long accepted() {
+      return accepted.sum();
+    }
+
+    public long active() {
+      return active.sum();
+    }
+
+    public long requests() {
+      return requests.sum();
+    }
+
+    public long bytesRead() {
+      return bytesRead.sum();
+    }
+
+    public long bytesWritten() {
+      return bytesWritten.sum();
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package http4j.server.nio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The application protocol spoken over a {@link NioConnection}. All methods are called on the
+ * connection's selector loop thread.
+ */
+interface Protocol {
+
+  /**
+   * Consume bytes read from the connection. Anything left in the buffer is kept and offered again
+   * once more bytes arrive or reads are resumed.
+   *
+   * @param in the buffered bytes, in read mode
+   */
+  void onRead(ByteBuffer in);
+
+  /** The peer has shut down its side of the connection. */
+  void onInputClosed();
+
+  /** Called about once a second to enforce timeouts. */
+  void onTimer(long nowNanos);
+
+  /** Whether the connection is between requests and can be closed without losing any work. */
+  boolean isIdle();
+
+  /** The connection has been closed. */
+  void onClose();
+}
@@ -0,0 +1,185 @@
+package http4j.server.nio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.function.IntConsumer;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * The body of a request as a blocking {@link InputStream} for handlers, fed by the selector loop as
+ * bytes arrive. Once more than the high water mark is buffered the loop stops reading from the
+ * socket, and the stream resumes it when the handler has caught up, so a slow handler never makes
+ * the server buffer an entire upload. HTTP/2 relies on flow control instead, and is told about
+ * every byte the handler consumes so it can open the window again.
+ */
+final class RequestBodyStream extends InputStream {
+
+  private final int highWaterMark;
+  private final Runnable resume;
+  private final IntConsumer consumed;
+
+  @GuardedBy("this")
+  private final ArrayDeque<byte[]> chunks = new ArrayDeque<>();
+
+  @GuardedBy("this")
+  @Nullable
+  private byte[] current;
+
+  @GuardedBy("this")
+  private int position;
+
+  @GuardedBy("this")
+  private long buffered;
+
+  @GuardedBy("this")
+  private boolean finished;
+
+  @GuardedBy("this")
+  private boolean closed;
+
+  @GuardedBy("this")
+  private boolean paused;
+
+  @GuardedBy("this")
+  @Nullable
+  private IOException failure;
+
+  /**
+   * @param highWaterMark buffered bytes above which {@link #isFull()} asks the loop to pause
+   * @param resume called once the reader has caught up after a pause
+   * @param consumed called with the number of bytes each time the reader consumes or discards some
+   */
+  RequestBodyStream(int highWaterMark, Runnable resume, IntConsumer consumed) {
+    this.highWaterMark = highWaterMark;
+    this.resume = resume;
+    this.consumed = consumed;
+  }
+
+  /** Hand body bytes to the reader; they are copied. Loop thread only. */
+  synchronized void offer(ByteBuffer data) {
+    if (!data.hasRemaining()) {
+      return;
+    }
+    if (closed) {
+      consumed.accept(data.remaining());
+      data.position(data.limit());
+      return;
+    }
+    byte[] copy = new byte[data.remaining()];
+    data.get(copy);
+    chunks.add(copy);
+    buffered += copy.length;
+    notifyAll();
+  }
+
+  /**
+   * Whether the reader has fallen too far behind. If so the stream remembers to resume reads on the
+   * connection once the reader catches up. Loop thread only.
+   */
+  synchronized boolean isFull() {
+    if (buffered >= highWaterMark) {
+      paused = true;
+      return true;
+    }
+    return false;
+  }
+
+  /** Whether the reader has closed the stream, so further bytes can be thrown away. */
+  synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /** The whole body has been offered. Loop thread only. */
+  synchronized void finish() {
+    finished = true;
+    notifyAll();
+  }
+
+  /** The body can not be completed, ex. the connection was closed. */
+  synchronized void fail(IOException e) {
+    if (!finished) {
+      failure = e;
+      notifyAll();
+    }
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] one = new byte[1];
+    int read = read(one, 0, 1);
+    return read < 0 ? -1 : one[0] & 0xFF;
+  }
+
+  @Override
+  public synchronized int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+    while (current == null) {
+      if (closed) {
+        throw new IOException("Stream closed");
+      }
+      current = chunks.poll();
+      position = 0;
+      if (current != null) {
+        break;
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      if (finished) {
+        return -1;
+      }
+      try {
+        wait();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted reading request body");
+      }
+    }
+    int read = Math.min(len, current.length - position);
+    System.arraycopy(current, position, b, off, read);
+    position += read;
+    buffered -= read;
+    if (position == current.length) {
+      current = null;
+    }
+    consumed.accept(read);
+    resumeIfDrained();
+    return read;
+  }
+
+  @Override
+  public synchronized int available() {
+    return (int) Math.min(Integer.MAX_VALUE, buffered);
+  }
+
+  /** Stop reading the body; whatever else arrives is discarded. */
+  @Override
+  public synchronized void close() {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    chunks.clear();
+    current = null;
+    if (buffered > 0) {
+      consumed.accept((int) buffered);
+    }
+    buffered = 0;
+    notifyAll();
+    resumeIfDrained();
+  }
+
+  @GuardedBy("this")
+  private void resumeIfDrained() {
+    if (paused && buffered <= highWaterMark / 2) {
+      paused = false;
+      resume.run();
+    }
+  }
+}
@@ -0,0 +1,235 @@
+package http4j.server.nio;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.server.nio.NioServerStats.LoopStats;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.annotation.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A single selector thread that accepts connections and performs all non-blocking reads and writes
+ * for the connections it owns. Other threads hand it work through {@link #execute(Runnable)}.
+ */
+final class SelectorLoop implements Runnable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(SelectorLoop.class);
+
+  private static final long TIMER_INTERVAL_MILLIS = 1000;
+
+  // accept at most this many connections per wakeup so reads and writes are not starved
+  private static final int MAX_ACCEPTS = 64;
+
+  private final int id;
+  private final NioHttpServer server;
+  private final Selector selector;
+  private final LoopStats stats = new LoopStats();
+  private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean wakeupPending = new AtomicBoolean();
+  private final Set<NioConnection> connections = new HashSet<>();
+
+  @Nullable private ServerSocketChannel listener;
+  @Nullable private SelectionKey acceptKey;
+  @Nullable private Thread thread;
+  private volatile boolean running = true;
+  private long nextTimer;
+
+  SelectorLoop(int id, NioHttpServer server) throws IOException {
+    this.id = id;
+    this.server = server;
+    this.selector = Selector.open();
+  }
+
+  /** Accept connections from the listener. Must be called before {@link #start()}. */
+  void listen(ServerSocketChannel listener) throws IOException {
+    this.listener = listener;
+    this.acceptKey = listener.register(selector, SelectionKey.OP_ACCEPT);
+  }
+
+  void start() {
+    thread = new Thread(this, "nio-http-server-loop-" + id);
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  LoopStats stats() {
+    return stats;
+  }
+
+  NioHttpServer server() {
+    return server;
+  }
+
+  boolean inLoop() {
+    return Thread.currentThread() == thread;
+  }
+
+  /** Run the task on the loop thread, waking the selector if it is blocked. */
+  void execute(Runnable task) {
+    tasks.add(task);
+    if (!inLoop() && wakeupPending.compareAndSet(false, true)) {
+      selector.wakeup();
+    }
+  }
+
+  /** Stop accepting new connections. */
+  void stopAccepting() {
+    if (acceptKey != null) {
+      acceptKey.cancel();
+      acceptKey = null;
+    }
+  }
+
+  /** Close every connection that is between requests. */
+  void closeIdle() {
+    for (NioConnection connection : new ArrayList<>(connections)) {
+      if (connection.protocol().isIdle()) {
+        connection.close();
+      }
+    }
+  }
+
+  /** Stop the loop, closing all its connections, and wait for the thread to exit. */
+  void shutdown() {
+    running = false;
+    if (thread == null) {
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close selector", e);
+      }
+      return;
+    }
+    selector.wakeup();
+    if (!inLoop()) {
+      Uninterruptibles.joinUninterruptibly(thread, 10, TimeUnit.SECONDS);
+    }
+  }
+
+  void remove(NioConnection connection) {
+    if (connections.remove(connection)) {
+      stats.active.decrement();
+    }
+  }
+
+  @Override
+  public void run() {
+    nextTimer = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMER_INTERVAL_MILLIS);
+    try {
+      while (running) {
+        selector.select(TIMER_INTERVAL_MILLIS);
+        wakeupPending.set(false);
+        runTasks();
+        processKeys();
+        runTasks();
+        long now = System.nanoTime();
+        if (now - nextTimer >= 0) {
+          nextTimer = now + TimeUnit.MILLISECONDS.toNanos(TIMER_INTERVAL_MILLIS);
+          for (NioConnection connection : new ArrayList<>(connections)) {
+            connection.protocol().onTimer(now);
+          }
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      for (NioConnection connection : new ArrayList<>(connections)) {
+        connection.close();
+      }
+      try {
+        selector.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close selector", e);
+      }
+    }
+  }
+
+  private void runTasks() {
+    Runnable task;
+    while ((task = tasks.poll()) != null) {
+      try {
+        task.run();
+      } catch (RuntimeException e) {
+        LOG.error("Uncaught error in selector loop task.", e);
+      }
+    }
+  }
+
+  private void processKeys() {
+    Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+    while (keys.hasNext()) {
+      SelectionKey key = keys.next();
+      keys.remove();
+      if (!key.isValid()) {
+        continue;
+      }
+      if (key == acceptKey) {
+        accept();
+        continue;
+      }
+      NioConnection connection = (NioConnection) key.attachment();
+      try {
+        if (key.isWritable()) {
+          connection.flush();
+        }
+        if (key.isValid() && key.isReadable()) {
+          connection.onReadable();
+        }
+      } catch (IOException | CancelledKeyException e) {
+        LOG.debug("Closing connection from {}", connection.remote(), e);
+        connection.close();
+      } catch (RuntimeException e) {
+        LOG.error("Uncaught error on connection from {}", connection.remote(), e);
+        connection.close();
+      }
+    }
+  }
+
+  private void accept() {
+    for (int i = 0; i < MAX_ACCEPTS; i++) {
+      SocketChannel channel;
+      try {
+        channel = listener.accept();
+      } catch (IOException e) {
+        LOG.warn("Failed to accept connection", e);
+        return;
+      }
+      if (channel == null) {
+        //nothing left, or another loop sharing the listener got there first
+        return;
+      }
+      try {
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+        NioConnection connection = new NioConnection(this, channel, key);
+        key.attach(connection);
+        connections.add(connection);
+        stats.accepted.increment();
+        stats.active.increment();
+      } catch (IOException e) {
+        LOG.warn("Failed to register connection", e);
+        try {
+          channel.close();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+      }
+    }
+  }
+}
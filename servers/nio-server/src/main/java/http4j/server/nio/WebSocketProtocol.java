@@ -0,0 +1,96 @@
+package http4j.server.nio;
+
+import http4j.core.websocket.WebSocket;
+import http4j.core.websocket.WebSocketEngine;
+import http4j.core.websocket.WebSocketUpgrade;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link NioConnection} after an accepted WebSocket upgrade. Frames are decoded on the selector
+ * loop straight out of the read buffer and the handler runs on the worker executor, so an open
+ * WebSocket holds no thread while it waits for messages.
+ */
+final class WebSocketProtocol implements Protocol, WebSocketEngine.Transport {
+
+  private final NioConnection connection;
+  private final NioHttpServer server;
+  private final WebSocketEngine engine;
+
+  // only touched on the loop thread
+  private boolean goingAway;
+
+  WebSocketProtocol(NioConnection connection, NioHttpServer server, WebSocketUpgrade upgrade) {
+    this.connection = connection;
+    this.server = server;
+    this.engine = WebSocketEngine.server(upgrade, this, server.executor());
+  }
+
+  int minReadBuffer() {
+    return engine.minReadBuffer();
+  }
+
+  void start() {
+    engine.start();
+  }
+
+  @Override
+  public void onRead(ByteBuffer in) {
+    engine.onRead(in);
+  }
+
+  @Override
+  public void onInputClosed() {
+    connection.close();
+  }
+
+  @Override
+  public void onTimer(long nowNanos) {
+    if (server.isDraining() && !goingAway) {
+      goingAway = true;
+      engine.close(WebSocket.GOING_AWAY, "Server shutting down");
+    }
+    engine.tick(nowNanos);
+  }
+
+  @Override
+  public boolean isIdle() {
+    return false;
+  }
+
+  @Override
+  public void onClose() {
+    engine.onTransportClosed();
+  }
+
+  @Override
+  public long write(ByteBuffer... buffers) throws IOException {
+    connection.write(buffers);
+    return connection.pendingBytes();
+  }
+
+  @Override
+  public void awaitWritable() throws IOException {
+    connection.awaitWritable();
+  }
+
+  @Override
+  public void suspendReads() {
+    connection.suspendReads();
+  }
+
+  @Override
+  public void resumeReads() {
+    connection.resumeReads();
+  }
+
+  @Override
+  public void closeAfterWrite() {
+    connection.closeAfterWrite();
+  }
+
+  @Override
+  public void close() {
+    connection.close();
+  }
+}
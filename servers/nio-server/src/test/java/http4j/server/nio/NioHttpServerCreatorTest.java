@@ -0,0 +1,663 @@
+package http4j.server.nio;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
+import http4j.core.HttpHandler;
+import http4j.core.HttpHandlers;
+import http4j.core.HttpResponse;
+import http4j.core.HttpServer;
+import http4j.core.Readiness;
+import http4j.core.Router;
+import http4j.core.ServerConformance;
+import http4j.core.codec.http2.HpackDecoder;
+import http4j.core.codec.http2.HpackEncoder;
+import http4j.core.codec.http2.Http2;
+import http4j.core.sse.EventStream;
+import http4j.core.sse.ServerSentEvent;
+import http4j.core.websocket.WebSocket;
+import http4j.core.websocket.WebSocketHandler;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.assertj.core.api.Assertions;
+import org.junit.Test;
+
+public class NioHttpServerCreatorTest {
+
+  private static final int CLIENTS = 8;
+  private static final int REQUESTS_PER_CLIENT = 50;
+
+  private static final HttpHandler ECHO =
+      request -> HttpResponse.status(200).body(request.body(), request.length().orElse(null));
+
+  @Test
+  public void testPing() throws Exception {
+    try (HttpServer server = new NioHttpServerCreator(0).create(HttpHandlers.pong())) {
+      server.start();
+      HttpURLConnection connection =
+          (HttpURLConnection)
+              new URL(String.format("http://localhost:%s/ping", server.getPort())).openConnection();
+      Assertions.assertThat(connection.getResponseCode()).isEqualTo(200);
+      try (InputStream in = connection.getInputStream()) {
+        Assertions.assertThat(new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8))
+            .isEqualTo("pong");
+      }
+    }
+  }
+
+  @Test
+  public void testEchoesLargeBodyThroughBackpressure() throws Exception {
+    byte[] payload = new byte[1024 * 1024];
+    for (int i = 0; i < payload.length; i++) {
+      payload[i] = (byte) i;
+    }
+    NioServerConfig config =
+        NioServerConfig.builder().port(0).readBufferSize(4096).writeHighWaterMark(8192).build();
+    try (HttpServer server = new NioHttpServerCreator(config).create(ECHO)) {
+      server.start();
+      HttpURLConnection connection =
+          (HttpURLConnection)
+              new URL(String.format("http://localhost:%s/echo", server.getPort())).openConnection();
+      connection.setDoOutput(true);
+      connection.setFixedLengthStreamingMode(payload.length);
+      try (OutputStream out = connection.getOutputStream()) {
+        out.write(payload);
+      }
+      Assertions.assertThat(connection.getResponseCode()).isEqualTo(200);
+      try (InputStream in = connection.getInputStream()) {
+        Assertions.assertThat(ByteStreams.toByteArray(in)).isEqualTo(payload);
+      }
+    }
+  }
+
+  @Test
+  public void testProducersWaitingAtTheHighWaterMarkAreAlwaysWoken() throws Exception {
+    //a byte at a time against a mark of one byte, so every write waits while the loop drains
+    HttpHandler trickle =
+        request ->
+            HttpResponse.status(200)
+                .body(
+                    new InputStream() {
+                      private int left = 512;
+
+                      @Override
+                      public int read() {
+                        return left-- > 0 ? 'x' : -1;
+                      }
+
+                      @Override
+                      public int read(byte[] b, int off, int len) {
+                        int read = read();
+                        if (read < 0) {
+                          return -1;
+                        }
+                        b[off] = (byte) read;
+                        return 1;
+                      }
+                    },
+                    null);
+    NioServerConfig config = NioServerConfig.builder().port(0).writeHighWaterMark(1).build();
+    ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+    try (HttpServer server = new NioHttpServerCreator(config).create(trickle)) {
+      int port = startAndPort(server);
+      List<Future<Integer>> lengths = new ArrayList<>();
+      for (int i = 0; i < CLIENTS * 4; i++) {
+        lengths.add(
+            clients.submit(
+                () -> {
+                  HttpURLConnection connection =
+                      (HttpURLConnection)
+                          new URL(String.format("http://localhost:%s/trickle", port))
+                              .openConnection();
+                  try (InputStream in = connection.getInputStream()) {
+                    return ByteStreams.toByteArray(in).length;
+                  }
+                }));
+      }
+      for (Future<Integer> length : lengths) {
+        Assertions.assertThat(length.get(30, TimeUnit.SECONDS)).isEqualTo(512);
+      }
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testChunkedAndPipelinedRequests() throws Exception {
+    try (HttpServer server = new NioHttpServerCreator(0).create(ECHO);
+        Socket socket = new Socket("localhost", startAndPort(server))) {
+      OutputStream out = socket.getOutputStream();
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      //three requests in a single write, the middle one chunked
+      out.write(
+          ("POST /a HTTP/1.1\r\nHost: localhost\r\nContent-Length: 3\r\n\r\none"
+                  + "POST /b HTTP/1.1\r\nHost: localhost\r\nTransfer-Encoding: chunked\r\n\r\n"
+                  + "3\r\ntwo\r\n5;ext=1\r\n-more\r\n0\r\n\r\n"
+                  + "GET /c HTTP/1.1\r\nHost: localhost\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      Assertions.assertThat(readResponse(in)).isEqualTo("200 one");
+      Assertions.assertThat(readResponse(in)).isEqualTo("200 two-more");
+      Assertions.assertThat(readResponse(in)).isEqualTo("200 ");
+    }
+  }
+
+  @Test
+  public void testRejectsMalformedRequests() throws Exception {
+    try (HttpServer server = new NioHttpServerCreator(0).create(HttpHandlers.pong())) {
+      server.start();
+      Assertions.assertThat(rawStatus(server, "BREW /pot HTTP/1.1\r\nHost: localhost\r\n\r\n"))
+          .isEqualTo("501");
+      //methods are case-sensitive
+      Assertions.assertThat(rawStatus(server, "get /ping HTTP/1.1\r\nHost: localhost\r\n\r\n"))
+          .isEqualTo("501");
+      Assertions.assertThat(rawStatus(server, "OPTIONS /ping HTTP/1.1\r\nHost: localhost\r\n\r\n"))
+          .isEqualTo("200");
+      Assertions.assertThat(
+              rawStatus(
+                  server,
+                  "POST / HTTP/1.1\r\nHost: localhost\r\nContent-Length: 3\r\n"
+                      + "Transfer-Encoding: chunked\r\n\r\n"))
+          .isEqualTo("400");
+      Assertions.assertThat(rawStatus(server, "GET / HTTP/2.7\r\n\r\n")).isEqualTo("505");
+    }
+  }
+
+  @Test
+  public void testConnectionsAreSpreadAcrossLoops() throws Exception {
+    NioServerConfig config = NioServerConfig.builder().port(0).selectorThreads(4).build();
+    NioHttpServer server = new NioHttpServerCreator(config).create(HttpHandlers.pong());
+    try {
+      server.start();
+      ExecutorService clients = Executors.newFixedThreadPool(CLIENTS);
+      try {
+        List<Future<Integer>> results = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+          results.add(
+              clients.submit(
+                  () -> {
+                    int ok = 0;
+                    try (Socket socket = new Socket("localhost", server.getPort())) {
+                      InputStream in = new BufferedInputStream(socket.getInputStream());
+                      OutputStream out = socket.getOutputStream();
+                      for (int r = 0; r < REQUESTS_PER_CLIENT; r++) {
+                        out.write(
+                            "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                                .getBytes(StandardCharsets.US_ASCII));
+                        out.flush();
+                        if (readResponse(in).equals("200 pong")) {
+                          ok++;
+                        }
+                      }
+                    }
+                    return ok;
+                  }));
+        }
+        for (Future<Integer> result : results) {
+          Assertions.assertThat(result.get(30, TimeUnit.SECONDS)).isEqualTo(REQUESTS_PER_CLIENT);
+        }
+      } finally {
+        clients.shutdownNow();
+      }
+
+      NioServerStats stats = server.stats();
+      Assertions.assertThat(stats.loops()).hasSize(4);
+      Assertions.assertThat(stats.accepted()).isEqualTo(CLIENTS);
+      Assertions.assertThat(stats.requests()).isEqualTo(CLIENTS * REQUESTS_PER_CLIENT);
+      //the aggregate is the sum of the loops, whichever loop each connection landed on
+      Assertions.assertThat(
+              stats.loops().stream().mapToLong(NioServerStats.LoopStats::requests).sum())
+          .isEqualTo(CLIENTS * REQUESTS_PER_CLIENT);
+      Assertions.assertThat(stats.bytesRead()).isGreaterThan(0);
+      Assertions.assertThat(stats.bytesWritten()).isGreaterThan(0);
+    } finally {
+      server.close();
+    }
+  }
+
+  @Test
+  public void testShutdownWaitsForInFlightRequests() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    Readiness readiness = new Readiness();
+    HttpServer server =
+        new NioHttpServerCreator(NioServerConfig.builder().port(0).readiness(readiness).build())
+            .create(
+                request -> {
+                  entered.countDown();
+                  Uninterruptibles.sleepUninterruptibly(300, TimeUnit.MILLISECONDS);
+                  return HttpHandlers.pong().handle(request);
+                });
+    server.start();
+    Assertions.assertThat(readiness.isReady()).isTrue();
+
+    ExecutorService clients = Executors.newSingleThreadExecutor();
+    try {
+      int port = server.getPort();
+      Future<Integer> inFlight = clients.submit(() -> status(port));
+      Assertions.assertThat(entered.await(10, TimeUnit.SECONDS)).isTrue();
+
+      Assertions.assertThat(server.shutdown(Duration.ofSeconds(10))).isEqualTo(0);
+      Assertions.assertThat(readiness.isReady()).isFalse();
+      Assertions.assertThat(inFlight.get(10, TimeUnit.SECONDS)).isEqualTo(200);
+    } finally {
+      clients.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testHttp2WithPriorKnowledge() throws Exception {
+    NioServerConfig config = NioServerConfig.builder().port(0).http2(true).build();
+    HttpHandler handler =
+        request ->
+            HttpResponse.status(200)
+                .header("X-Protocol", request.protocol())
+                .body(
+                    new ByteArrayInputStream(
+                        request.uri().getPath().getBytes(StandardCharsets.UTF_8)),
+                    null);
+    try (HttpServer server = new NioHttpServerCreator(config).create(handler);
+        Socket socket = new Socket("localhost", startAndPort(server))) {
+      OutputStream out = socket.getOutputStream();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out.write(Http2.PREFACE);
+      writeFrame(out, Http2.settings());
+      //three streams in flight at once on the one connection
+      for (int stream = 1; stream <= 5; stream += 2) {
+        writeFrame(out, requestHeaders(stream, "GET", "/stream-" + stream));
+      }
+      out.flush();
+
+      Map<Integer, String> responses = readHttp2Responses(in, 3);
+      Assertions.assertThat(responses)
+          .containsEntry(1, "200 HTTP/2.0 /stream-1")
+          .containsEntry(3, "200 HTTP/2.0 /stream-3")
+          .containsEntry(5, "200 HTTP/2.0 /stream-5");
+    }
+  }
+
+  @Test
+  public void testHttp2Upgrade() throws Exception {
+    NioServerConfig config = NioServerConfig.builder().port(0).http2(true).build();
+    HttpHandler handler =
+        request -> HttpResponse.status(200).header("X-Protocol", request.protocol()).body("pong");
+    try (HttpServer server = new NioHttpServerCreator(config).create(handler);
+        Socket socket = new Socket("localhost", startAndPort(server))) {
+      OutputStream out = socket.getOutputStream();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      out.write(
+          ("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: Upgrade, HTTP2-Settings\r\n"
+                  + "Upgrade: h2c\r\nHTTP2-Settings: AAMAAABkAAQAAP__\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      out.flush();
+      Assertions.assertThat(readLine(in)).isEqualTo("HTTP/1.1 101 Switching Protocols");
+      for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+        //skip the upgrade headers
+      }
+      out.write(Http2.PREFACE);
+      writeFrame(out, Http2.settings());
+      out.flush();
+
+      //the request that asked for the upgrade is answered on stream 1
+      Assertions.assertThat(readHttp2Responses(in, 1)).containsEntry(1, "200 HTTP/2.0 pong");
+    }
+  }
+
+  @Test
+  public void testHttp2IsOffByDefault() throws Exception {
+    try (HttpServer server = new NioHttpServerCreator(0).create(HttpHandlers.pong())) {
+      server.start();
+      //the preface is not a valid HTTP/1.1 request line
+      Assertions.assertThat(rawStatus(server, new String(Http2.PREFACE, StandardCharsets.US_ASCII)))
+          .isEqualTo("505");
+    }
+  }
+
+  @Test
+  public void testEventStreamsDoNotHoldWorkers() throws Exception {
+    List<EventStream> streams = new CopyOnWriteArrayList<>();
+    HttpHandler handler =
+        request -> {
+          if (!request.uri().getPath().equals("/events")) {
+            return HttpHandlers.pong().handle(request);
+          }
+          EventStream events = EventStream.create();
+          streams.add(events);
+          return events.response();
+        };
+    //a single worker, which would be stuck on the first stream if it had to wait on it
+    ExecutorService worker = Executors.newSingleThreadExecutor();
+    NioServerConfig config = NioServerConfig.builder().port(0).executor(worker).build();
+    try (HttpServer server = new NioHttpServerCreator(config).create(handler);
+        Socket first = new Socket("localhost", startAndPort(server));
+        Socket second = new Socket("localhost", server.getPort())) {
+      InputStream firstIn = subscribe(first);
+      InputStream secondIn = subscribe(second);
+      Assertions.assertThat(status(server.getPort())).isEqualTo(200);
+      Assertions.assertThat(streams).hasSize(2);
+
+      Assertions.assertThat(
+              streams.get(0).send(ServerSentEvent.builder().event("tick").data("1").build()))
+          .isTrue();
+      streams.get(1).send("a\nb");
+      Assertions.assertThat(readChunk(firstIn)).isEqualTo("event: tick\ndata: 1\n\n");
+      Assertions.assertThat(readChunk(secondIn)).isEqualTo("data: a\ndata: b\n\n");
+
+      //ending a stream ends the response and leaves the connection ready for the next request
+      streams.get(0).close();
+      Assertions.assertThat(readChunk(firstIn)).isEmpty();
+      first
+          .getOutputStream()
+          .write(
+              "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+      Assertions.assertThat(readResponse(firstIn)).isEqualTo("200 pong");
+    } finally {
+      worker.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testEventStreamHeartbeatAndSlowClient() throws Exception {
+    List<EventStream> streams = new CopyOnWriteArrayList<>();
+    CountDownLatch closed = new CountDownLatch(1);
+    HttpHandler handler =
+        request -> {
+          EventStream events =
+              EventStream.builder()
+                  .heartbeat(Duration.ofMillis(100))
+                  .maxBuffered(64 * 1024)
+                  .build();
+          events.onClose(closed::countDown);
+          streams.add(events);
+          return events.response();
+        };
+    try (HttpServer server = new NioHttpServerCreator(0).create(handler);
+        Socket socket = new Socket("localhost", startAndPort(server))) {
+      socket.setReceiveBufferSize(4096);
+      socket.setSoTimeout(10_000);
+      InputStream in = subscribe(socket);
+      //nothing is sent, so the server keeps the stream alive with comments
+      Assertions.assertThat(readChunk(in)).isEqualTo(":\n\n");
+
+      //then stop reading, the client is dropped once it falls too far behind
+      byte[] kilobyte = new byte[1024];
+      Arrays.fill(kilobyte, (byte) 'x');
+      String data = new String(kilobyte, StandardCharsets.US_ASCII);
+      EventStream events = streams.get(0);
+      int sent = 0;
+      while (events.send(data) && sent < 1_000_000) {
+        sent++;
+      }
+      Assertions.assertThat(events.isOpen()).isFalse();
+      Assertions.assertThat(closed.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+  }
+
+  @Test
+  public void testWebSocketEcho() throws Exception {
+    Router router =
+        Router.builder()
+            .websocket(
+                "/ws",
+                new WebSocketHandler() {
+                  @Override
+                  public void onText(WebSocket socket, String text) {
+                    socket.sendText(text.toUpperCase(Locale.ROOT));
+                  }
+                })
+            .build();
+    try (HttpServer server = new NioHttpServerCreator(0).create(router);
+        Socket socket = new Socket("localhost", startAndPort(server))) {
+      socket.setSoTimeout(10_000);
+      OutputStream out = socket.getOutputStream();
+      //the first frame is sent right behind the handshake, before the 101 arrives
+      out.write(
+          ("GET /ws HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                  + "Connection: Upgrade\r\nSec-WebSocket-Version: 13\r\n"
+                  + "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n\r\n")
+              .getBytes(StandardCharsets.US_ASCII));
+      out.write(maskedFrame(0x1, "hello".getBytes(StandardCharsets.UTF_8)));
+      out.flush();
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+      Assertions.assertThat(readLine(in)).startsWith("HTTP/1.1 101");
+      List<String> headers = new ArrayList<>();
+      for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+        headers.add(line.toLowerCase(Locale.ROOT));
+      }
+      //the sample handshake from RFC 6455 1.3
+      Assertions.assertThat(headers)
+          .contains("upgrade: websocket", "sec-websocket-accept: s3pplmbitxaq9kygzzhzrbk+xoo=");
+      Assertions.assertThat(readFrame(in)).isEqualTo("1 HELLO");
+
+      out.write(maskedFrame(0x9, "are you there".getBytes(StandardCharsets.UTF_8)));
+      Assertions.assertThat(readFrame(in)).isEqualTo("10 are you there");
+
+      //the server answers the closing handshake with the same code, then hangs up
+      out.write(maskedFrame(0x8, new byte[] {0x03, (byte) 0xE8}));
+      Assertions.assertThat(readFrame(in)).isEqualTo("8 \u0003\ufffd");
+      Assertions.assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  /** A final frame as a client sends it, masked with a fixed key. */
+  private static byte[] maskedFrame(int opcode, byte[] payload) {
+    byte[] mask = {0x12, 0x34, 0x56, 0x78};
+    ByteBuffer frame = ByteBuffer.allocate(6 + payload.length);
+    frame.put((byte) (0x80 | opcode)).put((byte) (0x80 | payload.length)).put(mask);
+    for (int i = 0; i < payload.length; i++) {
+      frame.put((byte) (payload[i] ^ mask[i % 4]));
+    }
+    return frame.array();
+  }
+
+  /** Read an unmasked server frame with a short payload, as its opcode and payload text. */
+  private static String readFrame(DataInputStream in) throws IOException {
+    int first = in.readUnsignedByte();
+    byte[] payload = new byte[in.readUnsignedByte()];
+    in.readFully(payload);
+    return (first & 0x0F) + " " + new String(payload, StandardCharsets.UTF_8);
+  }
+
+  /** Open an event stream on the socket, returning the input positioned at the first chunk. */
+  private static InputStream subscribe(Socket socket) throws IOException {
+    socket
+        .getOutputStream()
+        .write(
+            "GET /events HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+    InputStream in = new BufferedInputStream(socket.getInputStream());
+    Assertions.assertThat(readLine(in)).isEqualTo("HTTP/1.1 200 OK");
+    List<String> headers = new ArrayList<>();
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      headers.add(line.toLowerCase(Locale.ROOT));
+    }
+    Assertions.assertThat(headers)
+        .contains("content-type: text/event-stream; charset=utf-8", "transfer-encoding: chunked");
+    return in;
+  }
+
+  /** Read one chunk of a chunked body, empty for the last chunk. */
+  private static String readChunk(InputStream in) throws IOException {
+    int size = Integer.parseInt(readLine(in), 16);
+    byte[] chunk = new byte[size];
+    for (int i = 0; i < size; i++) {
+      chunk[i] = (byte) in.read();
+    }
+    readLine(in);
+    return new String(chunk, StandardCharsets.UTF_8);
+  }
+
+  private static ByteBuffer requestHeaders(int stream, String method, String path) {
+    List<Map.Entry<String, String>> headers = new ArrayList<>();
+    headers.add(new SimpleImmutableEntry<>(":method", method));
+    headers.add(new SimpleImmutableEntry<>(":scheme", "http"));
+    headers.add(new SimpleImmutableEntry<>(":path", path));
+    headers.add(new SimpleImmutableEntry<>(":authority", "localhost"));
+    return Http2.frame(
+        Http2.HEADERS,
+        Http2.FLAG_END_HEADERS | Http2.FLAG_END_STREAM,
+        stream,
+        ByteBuffer.wrap(HpackEncoder.encode(headers)));
+  }
+
+  private static void writeFrame(OutputStream out, ByteBuffer frame) throws IOException {
+    byte[] bytes = new byte[frame.remaining()];
+    frame.get(bytes);
+    out.write(bytes);
+  }
+
+  /**
+   * Read frames until the given number of streams have ended, returning the status, the X-Protocol
+   * header and the body of each stream separated by spaces.
+   */
+  private static Map<Integer, String> readHttp2Responses(DataInputStream in, int count)
+      throws IOException {
+    HpackDecoder decoder = new HpackDecoder(Http2.DEFAULT_HEADER_TABLE_SIZE, 64 * 1024);
+    Map<Integer, String> heads = new HashMap<>();
+    Map<Integer, ByteArrayOutputStream> bodies = new HashMap<>();
+    Map<Integer, String> responses = new HashMap<>();
+    while (responses.size() < count) {
+      int length = in.readUnsignedByte() << 16 | in.readUnsignedShort();
+      int type = in.readUnsignedByte();
+      int flags = in.readUnsignedByte();
+      int stream = in.readInt() & 0x7FFFFFFF;
+      byte[] payload = new byte[length];
+      in.readFully(payload);
+      if (type == Http2.HEADERS) {
+        Assertions.assertThat(flags & Http2.FLAG_END_HEADERS).isNotZero();
+        Map<String, String> fields = new HashMap<>();
+        decoder.decode(ByteBuffer.wrap(payload), fields::put);
+        heads.put(stream, fields.get(":status") + " " + fields.get("x-protocol"));
+        bodies.put(stream, new ByteArrayOutputStream());
+      } else if (type == Http2.DATA) {
+        bodies.get(stream).write(payload);
+      } else if (type == Http2.GOAWAY || type == Http2.RST_STREAM) {
+        throw new AssertionError("Unexpected frame type " + type);
+      }
+      if ((type == Http2.HEADERS || type == Http2.DATA) && (flags & Http2.FLAG_END_STREAM) != 0) {
+        responses.put(
+            stream,
+            heads.get(stream)
+                + " "
+                + new String(bodies.get(stream).toByteArray(), StandardCharsets.UTF_8));
+      }
+    }
+    return responses;
+  }
+
+  private static int startAndPort(HttpServer server) {
+    server.start();
+    return server.getPort();
+  }
+
+  private static int status(int port) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection)
+            new URL(String.format("http://localhost:%s/ping", port)).openConnection();
+    try {
+      return connection.getResponseCode();
+    } finally {
+      connection.disconnect();
+    }
+  }
+
+  /** Send a raw request on a new connection and return the status code of the response. */
+  private static String rawStatus(HttpServer server, String request) throws IOException {
+    try (Socket socket = new Socket("localhost", server.getPort())) {
+      socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+      InputStream in = new BufferedInputStream(socket.getInputStream());
+      return readLine(in).split(" ")[1];
+    }
+  }
+
+  /** Read a single response and return its status code and body separated by a space. */
+  private static String readResponse(InputStream in) throws IOException {
+    String status = readLine(in).split(" ")[1];
+    long length = 0;
+    boolean chunked = false;
+    for (String line = readLine(in); !line.isEmpty(); line = readLine(in)) {
+      String lower = line.toLowerCase(Locale.ROOT);
+      if (lower.startsWith("content-length:")) {
+        length = Long.parseLong(line.substring("content-length:".length()).trim());
+      } else if (lower.startsWith("transfer-encoding:")) {
+        chunked = lower.contains("chunked");
+      }
+    }
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    if (chunked) {
+      for (int size = Integer.parseInt(readLine(in), 16);
+          size > 0;
+          size = Integer.parseInt(readLine(in), 16)) {
+        for (int i = 0; i < size; i++) {
+          body.write(in.read());
+        }
+        readLine(in);
+      }
+      readLine(in);
+    } else {
+      for (long i = 0; i < length; i++) {
+        body.write(in.read());
+      }
+    }
+    return status + " " + new String(body.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  private static String readLine(InputStream in) throws IOException {
+    StringBuilder line = new StringBuilder();
+    for (int c = in.read(); c != '\n'; c = in.read()) {
+      if (c < 0) {
+        throw new IOException("Connection closed");
+      }
+      if (c != '\r') {
+        line.append((char) c);
+      }
+    }
+    return line.toString();
+  }
+
+  @Test
+  public void testConformance() throws Exception {
+    ServerConformance.builder(
+            () -> {
+              //idle workers go away quickly, so threads still alive after close are leaks
+              ThreadPoolExecutor workers =
+                  new ThreadPoolExecutor(
+                      0, Integer.MAX_VALUE, 50, TimeUnit.MILLISECONDS, new SynchronousQueue<>());
+              return new NioHttpServerCreator(
+                  NioServerConfig.builder().port(0).backlog(256).executor(workers).build());
+            })
+        .connections(200)
+        .requestsPerConnection(5)
+        .clientThreads(16)
+        .largeBodySize(16 * 1024 * 1024)
+        .chunkedRequests(50)
+        .slowClients(50, Duration.ofSeconds(1))
+        .build()
+        .run();
+  }
+}